@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.benchmarks.cluster;
+
+import net.e6tech.elements.network.cluster.Events;
+import net.e6tech.elements.network.cluster.codec.BinaryCodec;
+import net.e6tech.elements.network.cluster.codec.JavaSerializationCodec;
+import net.e6tech.elements.network.cluster.codec.RegistrySerializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Encodes and decodes registry invocations with BinaryCodec and with Java serialization.  The payloads are the
+ * arguments of a typical call: a couple of scalars, one bean with nested beans, and a list of twenty beans.
+ * The encoded sizes are printed during setup.
+ *
+ * Run with ./gradlew :benchmarks:jmh -PjmhInclude=RegistryCodecBenchmark
+ */
+@State(Scope.Benchmark)
+public class RegistryCodecBenchmark {
+
+    @Param({"scalars", "bean", "beans"})
+    private String payload;
+
+    private RegistrySerializer binary;
+    private RegistrySerializer java;
+    private Events.Invocation invocation;
+    private byte[] binaryBytes;
+    private byte[] javaBytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        binary = new RegistrySerializer(new BinaryCodec());
+        java = new RegistrySerializer(new JavaSerializationCodec());
+        Object[] arguments;
+        switch (payload) {
+            case "scalars":
+                arguments = new Object[] {"customer-42", 17, 250L, true};
+                break;
+            case "bean":
+                arguments = new Object[] {"customer-42", order(0)};
+                break;
+            default:
+                List<Order> orders = new ArrayList<>();
+                for (int i = 0; i < 20; i++)
+                    orders.add(order(i));
+                arguments = new Object[] {"customer-42", orders};
+                break;
+        }
+        invocation = new Events.Invocation("orders@net.e6tech.OrderService::submit(java.lang.String,java.lang.Object)", arguments);
+        binaryBytes = binary.toBinary(invocation);
+        javaBytes = java.toBinary(invocation);
+        System.out.println(String.format("%n%s: binary %d bytes, java serialization %d bytes", payload, binaryBytes.length, javaBytes.length));
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return binary.toBinary(invocation);
+    }
+
+    @Benchmark
+    public Object binaryDecode() {
+        return binary.fromBinary(binaryBytes);
+    }
+
+    @Benchmark
+    public byte[] javaEncode() {
+        return java.toBinary(invocation);
+    }
+
+    @Benchmark
+    public Object javaDecode() {
+        return java.fromBinary(javaBytes);
+    }
+
+    static Order order(int n) {
+        Order order = new Order();
+        order.id = 1000L + n;
+        order.customer = "ACME Corporation";
+        order.amount = new BigDecimal("129.95");
+        order.created = new Date(1496275200000L + n);
+        order.tags = Arrays.asList("priority", "export");
+        for (int i = 0; i < 3; i++) {
+            Line line = new Line();
+            line.sku = "SKU-" + n + "-" + i;
+            line.quantity = i + 1;
+            line.price = 9.99 * (i + 1);
+            order.lines.add(line);
+        }
+        return order;
+    }
+
+    public static class Order implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private long id;
+        private String customer;
+        private BigDecimal amount;
+        private Date created;
+        private List<String> tags;
+        private List<Line> lines = new ArrayList<>();
+    }
+
+    public static class Line implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private String sku;
+        private int quantity;
+        private double price;
+    }
+}
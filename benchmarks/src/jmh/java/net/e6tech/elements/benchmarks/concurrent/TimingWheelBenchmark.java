@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.benchmarks.concurrent;
+
+import net.e6tech.elements.common.util.concurrent.TimingWheel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules and cancels a timeout, which is what TimeoutMonitor does for every transaction, while
+ * "pending" other timeouts are outstanding.  Compares the TimingWheel against a ScheduledThreadPoolExecutor,
+ * whose delay queue is a heap.
+ *
+ * Run with ./gradlew :benchmarks:jmh -PjmhInclude=TimingWheelBenchmark
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+public class TimingWheelBenchmark {
+
+    private static final Runnable NOOP = () -> {};
+
+    @Param({"1000", "100000"})
+    public int pending;
+
+    private TimingWheel wheel;
+    private ScheduledThreadPoolExecutor scheduler;
+    private List<Object> outstanding = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        wheel = new TimingWheel(null);
+        scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(true);
+        for (int i = 0; i < pending; i++) {
+            outstanding.add(wheel.schedule(NOOP, 1, TimeUnit.HOURS));
+            outstanding.add(scheduler.schedule(NOOP, 1, TimeUnit.HOURS));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        wheel.stop();
+        scheduler.shutdownNow();
+        outstanding.clear();
+    }
+
+    @Benchmark
+    public boolean timingWheel() {
+        TimingWheel.Timeout timeout = wheel.schedule(NOOP, ThreadLocalRandom.current().nextInt(1000, 60000), TimeUnit.MILLISECONDS);
+        return timeout.cancel();
+    }
+
+    @Benchmark
+    public boolean scheduledThreadPool() {
+        ScheduledFuture<?> future = scheduler.schedule(NOOP, ThreadLocalRandom.current().nextInt(1000, 60000), TimeUnit.MILLISECONDS);
+        return future.cancel(false);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.benchmarks.inject;
+
+import net.e6tech.elements.common.inject.Inject;
+import net.e6tech.elements.common.inject.Injector;
+import net.e6tech.elements.common.inject.Module;
+import net.e6tech.elements.common.inject.ModuleFactory;
+import net.e6tech.elements.common.inject.spi.InjectorImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Measures injecting an object through a child injector whose bindings mostly live in the parent,
+ * the same shape as Resources injecting through the ResourceManager module.  Compare generated
+ * injectors against the MethodHandle path with the generated parameter.
+ *
+ * Run with ./gradlew :benchmarks:jmh -PjmhInclude=InjectorBenchmark
+ */
+@State(Scope.Benchmark)
+public class InjectorBenchmark {
+
+    @Param({"true", "false"})
+    public boolean generated;
+
+    private Injector injector;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        InjectorImpl.setGeneratedInjectors(generated);
+        Module parent = ModuleFactory.getInstance().create();
+        parent.bindInstance(String.class, "parent");
+        parent.bindInstance(Long.class, 1L);
+        parent.bindInstance(Executor.class, (Executor) Runnable::run);
+        Module child = ModuleFactory.getInstance().create();
+        child.bindInstance(Integer.class, 1);
+        injector = child.build(parent);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        InjectorImpl.setGeneratedInjectors(true);
+    }
+
+    @Benchmark
+    public Target inject() {
+        Target target = new Target();
+        injector.inject(target);
+        return target;
+    }
+
+    @Benchmark
+    public Executor getInstance() {
+        return injector.getInstance(Executor.class);
+    }
+
+    public static class Target {
+        @Inject
+        public String name;
+
+        @Inject
+        public Long id;
+
+        @Inject
+        public Executor executor;
+
+        private Integer count;
+
+        public Integer getCount() {
+            return count;
+        }
+
+        @Inject
+        public void setCount(Integer count) {
+            this.count = count;
+        }
+    }
+}
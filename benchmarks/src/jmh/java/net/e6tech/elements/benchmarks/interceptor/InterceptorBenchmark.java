@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.benchmarks.interceptor;
+
+import net.e6tech.elements.common.interceptor.CallFrame;
+import net.e6tech.elements.common.interceptor.Interceptor;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+
+/**
+ * Calls a small method directly, through an Interceptor proxy whose handler just proceeds, and through
+ * the two paths CallFrame used to take: bindTo + invokeWithArguments and Method.invoke.
+ *
+ * Run with ./gradlew :benchmarks:jmh -PjmhInclude=InterceptorBenchmark
+ */
+@State(Scope.Benchmark)
+public class InterceptorBenchmark {
+
+    private Service direct;
+    private Service proxy;
+    private MethodHandle handle;
+    private Method method;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        direct = new Service();
+        proxy = Interceptor.getInstance().newInterceptor(new Service(), CallFrame::invoke);
+        method = Service.class.getMethod("add", int.class, int.class);
+        handle = MethodHandles.publicLookup().unreflect(method);
+    }
+
+    @Benchmark
+    public int direct() {
+        return direct.add(counter++, 1);
+    }
+
+    @Benchmark
+    public int intercepted() {
+        return proxy.add(counter++, 1);
+    }
+
+    @Benchmark
+    public Object invokeWithArguments() throws Throwable {
+        return handle.bindTo(direct).invokeWithArguments(counter++, 1);
+    }
+
+    @Benchmark
+    public Object reflection() throws Exception {
+        return method.invoke(direct, counter++, 1);
+    }
+
+    public static class Service {
+        public int add(int a, int b) {
+            return a + b;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.benchmarks.jmx;
+
+import net.e6tech.elements.jmx.stat.HistogramMeasurement;
+import net.e6tech.elements.jmx.stat.Measurement;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares recording into the sorted list based Measurement against the lock-free HistogramMeasurement
+ * when several threads record into the same instance, which is what happens when concurrent requests
+ * hit the same RESTful method.
+ *
+ * Run with ./gradlew :benchmarks:jmh -PjmhInclude=MeasurementBenchmark
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+public class MeasurementBenchmark {
+
+    @Param({"1000", "10000"})
+    public int windowMaxCount;
+
+    private Measurement measurement;
+    private HistogramMeasurement histogramMeasurement;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        measurement = new Measurement("sorted", "ms", true);
+        measurement.setWindowMaxCount(windowMaxCount);
+        histogramMeasurement = new HistogramMeasurement("histogram", "ms", true);
+    }
+
+    @Benchmark
+    public void measurementAdd() {
+        measurement.add(ThreadLocalRandom.current().nextInt(1, 500));
+    }
+
+    @Benchmark
+    public void histogramMeasurementAdd() {
+        histogramMeasurement.add(ThreadLocalRandom.current().nextInt(1, 500));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public double histogramMeasurementP99() {
+        return histogramMeasurement.getP99();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.benchmarks.reflection;
+
+import net.e6tech.elements.common.reflection.BeanCopier;
+import net.e6tech.elements.common.reflection.CopyListener;
+import net.e6tech.elements.common.reflection.Reflection;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Copies a small bean with Reflection.copyInstance, which uses the generated BeanCopier, with a BeanCopier held
+ * directly, and with a CopyListener that declines every property, which forces the reflective Replicator loop.
+ *
+ * Run with ./gradlew :benchmarks:jmh -PjmhInclude=ReplicatorBenchmark
+ */
+@State(Scope.Benchmark)
+public class ReplicatorBenchmark {
+
+    private static final CopyListener REFLECTIVE = (target, targetDesc, object, objectDesc) -> false;
+
+    private Bean source;
+    private BeanCopier copier;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        source = new Bean();
+        source.setName("name");
+        source.setId(42L);
+        source.setCount(7);
+        source.setActive(true);
+        source.setRate(0.5d);
+        copier = BeanCopier.of(Bean.class, Bean.class);
+    }
+
+    @Benchmark
+    public Bean copyInstance() {
+        return Reflection.copyInstance(new Bean(), source);
+    }
+
+    @Benchmark
+    public Bean beanCopier() {
+        Bean target = new Bean();
+        copier.copy(target, source);
+        return target;
+    }
+
+    @Benchmark
+    public Bean reflective() {
+        return Reflection.copyInstance(new Bean(), source, REFLECTIVE);
+    }
+
+    public static class Bean {
+        private String name;
+        private long id;
+        private int count;
+        private boolean active;
+        private double rate;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public void setActive(boolean active) {
+            this.active = active;
+        }
+
+        public double getRate() {
+            return rate;
+        }
+
+        public void setRate(double rate) {
+            this.rate = rate;
+        }
+    }
+}
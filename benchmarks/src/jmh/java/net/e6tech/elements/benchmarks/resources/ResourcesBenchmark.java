@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.benchmarks.resources;
+
+import net.e6tech.elements.common.resources.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Properties;
+
+/**
+ * Measures the per request cost of the Resources lifecycle: newResources, ResourceManager.open with
+ * the registered ResourceProviders, commit/abort, UnitOfWork.submit and Provision.open().apply.
+ * The number of registered ResourceProviders is a parameter so that the cost of copying and
+ * calling the provider list is visible.
+ *
+ * Run with ./gradlew :benchmarks:jmh -PjmhInclude=ResourcesBenchmark
+ */
+@State(Scope.Benchmark)
+public class ResourcesBenchmark {
+
+    @Param({"0", "1", "10"})
+    public int providers;
+
+    private ResourceManager resourceManager;
+    private Provision provision;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Properties properties = new Properties();
+        properties.setProperty("name", "benchmark");
+        resourceManager = new ResourceManager(properties);
+        resourceManager.setSilent(true);
+        for (int i = 0; i < providers; i++)
+            resourceManager.addResourceProvider(new StandInResourceProvider("provider" + i));
+        provision = resourceManager.getInstance(Provision.class);
+    }
+
+    @Benchmark
+    public Resources newResources() {
+        return resourceManager.newResources();
+    }
+
+    @Benchmark
+    public Resources openAbort() {
+        Resources resources = resourceManager.open(new Configurator());
+        resources.abort();
+        return resources;
+    }
+
+    @Benchmark
+    public Object openCommit() {
+        Resources resources = resourceManager.open(new Configurator());
+        return resources.commit();
+    }
+
+    @Benchmark
+    public Object openGetInstanceCommit(Blackhole blackhole) {
+        Resources resources = resourceManager.open(new Configurator());
+        blackhole.consume(resources.getInstance(Provision.class));
+        return resources.commit();
+    }
+
+    @Benchmark
+    public Object unitOfWorkSubmit() {
+        UnitOfWork unitOfWork = provision.open();
+        unitOfWork.open();
+        Object ret = unitOfWork.submit(() -> {
+            return unitOfWork.getResources();
+        });
+        unitOfWork.commit();
+        return ret;
+    }
+
+    @Benchmark
+    public Object provisionApply() {
+        return provision.open().apply(Resources.class, res -> res.configurator());
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.benchmarks.resources;
+
+import net.e6tech.elements.common.resources.ResourceProvider;
+import net.e6tech.elements.common.resources.Resources;
+
+/**
+ * A local ResourceProvider that behaves like a typical provider, e.g. an EntityManager provider,
+ * without touching any external system: it binds a resource on open and marks it on commit or abort.
+ */
+public class StandInResourceProvider implements ResourceProvider {
+
+    private final String name;
+
+    public StandInResourceProvider(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public void onOpen(Resources resources) {
+        resources.bindNamedInstance(StandInResource.class, name, new StandInResource());
+    }
+
+    @Override
+    public void onCommit(Resources resources) {
+        StandInResource resource = resources.getNamedInstance(StandInResource.class, name);
+        if (resource != null)
+            resource.committed = true;
+    }
+
+    @Override
+    public void onAbort(Resources resources) {
+        StandInResource resource = resources.getNamedInstance(StandInResource.class, name);
+        if (resource != null)
+            resource.aborted = true;
+    }
+
+    @Override
+    public String getDescription() {
+        return "StandInResourceProvider " + name;
+    }
+
+    public static class StandInResource {
+        boolean committed;
+        boolean aborted;
+
+        public boolean isCommitted() {
+            return committed;
+        }
+
+        public boolean isAborted() {
+            return aborted;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.benchmarks.util;
+
+import net.e6tech.elements.common.util.Template;
+import net.e6tech.elements.common.util.TextSubstitution;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Renders a per-request message with a compiled Template, with TextSubstitution built from the template text,
+ * which looks up the compiled template, and with the String.replace loop TextSubstitution used to run once per
+ * variable over the whole template.
+ *
+ * Run with ./gradlew :benchmarks:jmh -PjmhInclude=TemplateBenchmark
+ */
+@State(Scope.Benchmark)
+public class TemplateBenchmark {
+
+    private static final String TEXT = "Dear ${customer.name}, your order ${order} of ${count} items totaling ${amount} "
+            + "was shipped to ${address} on ${date}${note:+. Note: }${note}.";
+
+    private Template template;
+    private Map<String, Object> binding;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        template = Template.compile(TEXT);
+        Map<String, Object> customer = new HashMap<>();
+        customer.put("name", "Jane Doe");
+        binding = new HashMap<>();
+        binding.put("customer", customer);
+        binding.put("order", "A-1234567");
+        binding.put("count", 3);
+        binding.put("amount", "125.40");
+        binding.put("address", "112 Main St.");
+        binding.put("date", "2017-05-01");
+        binding.put("note", "leave at the door");
+    }
+
+    @Benchmark
+    public String template() {
+        return template.render(binding);
+    }
+
+    @Benchmark
+    public String textSubstitution() {
+        return new TextSubstitution(TEXT).build(binding);
+    }
+
+    @Benchmark
+    public String replace() {
+        String text = TEXT;
+        for (String expression : template.getExpressions()) {
+            String value = Template.compile("${" + expression + "}").render(binding);
+            text = text.replace("${" + expression + "}", value);
+        }
+        return text;
+    }
+}
@@ -20,7 +20,6 @@ import net.e6tech.elements.common.util.SystemException;
 import javax.cache.Cache;
 import javax.cache.CacheException;
 import javax.cache.CacheManager;
-import javax.cache.Caching;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -40,6 +39,15 @@ public class CacheConfiguration {
     private long expiry = DEFAULT_EXPIRY;
     private long maxEntries = 1024L;
     private boolean storeByValue = false;
+    private long heapSize = 0;
+    private long offHeapSize = 0;
+    private long diskSize = 0;
+    private String diskPath;
+    private boolean diskPersistent = false;
+    private Class keySerializer;
+    private Class valueSerializer;
+    private double refreshAhead = 0;
+    private long negativeExpiry = 0;
 
     public CacheConfiguration() {
         // default constructor
@@ -79,6 +87,106 @@ public class CacheConfiguration {
         this.storeByValue = storeByValue;
     }
 
+    /**
+     * Heap tier limit in bytes.  When 0, the heap tier is limited by maxEntries instead.
+     */
+    public long getHeapSize() {
+        return heapSize;
+    }
+
+    public void setHeapSize(long heapSize) {
+        this.heapSize = heapSize;
+    }
+
+    /**
+     * Off-heap tier limit in bytes; 0 for no off-heap tier.  Entries in this tier are kept
+     * serialized outside of the Java heap, so keys and values must be serializable or have serializers.
+     */
+    public long getOffHeapSize() {
+        return offHeapSize;
+    }
+
+    public void setOffHeapSize(long offHeapSize) {
+        this.offHeapSize = offHeapSize;
+    }
+
+    /**
+     * Local disk tier limit in bytes; 0 for no disk tier.  Requires diskPath.
+     */
+    public long getDiskSize() {
+        return diskSize;
+    }
+
+    public void setDiskSize(long diskSize) {
+        this.diskSize = diskSize;
+    }
+
+    public String getDiskPath() {
+        return diskPath;
+    }
+
+    public void setDiskPath(String diskPath) {
+        this.diskPath = diskPath;
+    }
+
+    /**
+     * Whether the disk tier survives a restart.
+     */
+    public boolean isDiskPersistent() {
+        return diskPersistent;
+    }
+
+    public void setDiskPersistent(boolean diskPersistent) {
+        this.diskPersistent = diskPersistent;
+    }
+
+    /**
+     * Serializer class for keys stored off heap or on disk, as understood by the provider,
+     * e.g. an org.ehcache.spi.serialization.Serializer for Ehcache.  Defaults to Java serialization.
+     */
+    public Class getKeySerializer() {
+        return keySerializer;
+    }
+
+    public void setKeySerializer(Class keySerializer) {
+        this.keySerializer = keySerializer;
+    }
+
+    public Class getValueSerializer() {
+        return valueSerializer;
+    }
+
+    public void setValueSerializer(Class valueSerializer) {
+        this.valueSerializer = valueSerializer;
+    }
+
+    /**
+     * Fraction of the expiry after which a hit triggers an asynchronous reload of the entry, so that
+     * hot keys are refreshed before they expire.  0 disables refresh-ahead.
+     */
+    public double getRefreshAhead() {
+        return refreshAhead;
+    }
+
+    public void setRefreshAhead(double refreshAhead) {
+        if (refreshAhead < 0 || refreshAhead >= 1)
+            throw new IllegalArgumentException("refreshAhead must be in [0, 1)");
+        this.refreshAhead = refreshAhead;
+    }
+
+    /**
+     * How long, in milliseconds, a load that returned null is remembered.  0 disables negative caching.
+     */
+    public long getNegativeExpiry() {
+        return negativeExpiry;
+    }
+
+    public void setNegativeExpiry(long negativeExpiry) {
+        if (negativeExpiry < 0)
+            throw new IllegalArgumentException();
+        this.negativeExpiry = negativeExpiry;
+    }
+
     public synchronized CacheManager getCacheManager() {
         if (cacheManager != null)
             return cacheManager;
@@ -90,7 +198,10 @@ public class CacheConfiguration {
                 throw new SystemException(e);
             }
         }
-        cacheManager = managers.computeIfAbsent(provider.getProviderClassName(), key ->  Caching.getCachingProvider(key).getCacheManager());
+        if (diskSize > 0 && diskPath == null)
+            throw new IllegalStateException("diskPath is required for a disk tier");
+        String key = provider.getProviderClassName() + ((diskSize > 0) ? "|" + diskPath : "");
+        cacheManager = managers.computeIfAbsent(key, k -> provider.createCacheManager(this));
         return cacheManager;
     }
 
@@ -17,21 +17,37 @@
 package net.e6tech.elements.common.cache;
 
 import net.e6tech.elements.common.inject.Inject;
+import net.e6tech.elements.common.logging.Logger;
 import net.e6tech.elements.common.reflection.Reflection;
 import net.e6tech.elements.common.util.SystemException;
+import net.e6tech.elements.common.util.concurrent.ThreadPool;
 
 import javax.cache.Cache;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
-import java.util.concurrent.Callable;
+import java.util.Map;
+import java.util.concurrent.*;
 import java.util.function.Consumer;
 
 /**
  * This class should be instantiated as an anonymous class.  For example,
  * {@code new CacheFacade&lt;K,V&gt;("name") {}}
+ *
+ * get(key, callable) loads at most once per key at a time; concurrent misses wait for the same load.
+ * Exceptions thrown by the callable are wrapped in a SystemException, as they always have been, and
+ * every waiting caller receives the same one.
+ * Depending on the CacheConfiguration, hits close to expiry are refreshed in the background and null
+ * results are remembered for negativeExpiry milliseconds.  Statistics are kept per cache name and
+ * registered as net.e6tech:type=Cache,name=&lt;name&gt;.
  * Created by futeh.
  */
 public abstract class CacheFacade<K, V> {
+    private static final Logger logger = Logger.getLogger();
+    private static final Map<String, Loading> loadings = new ConcurrentHashMap<>();
+    private static Executor refreshExecutor;
+
     protected CacheConfiguration configuration;
     protected String name;
     protected Class keyClass;
@@ -112,26 +128,128 @@ public abstract class CacheFacade<K, V> {
 
     public V get(K key, Callable<V> callable) {
         Cache<K,V> c = getCache();
+        Loading loading = getLoading();
         V value = c.get(key);
-        if (value == null) {
-            try {
-                value = callable.call();
-                if (value != null)
-                    c.put(key, value);
-            } catch (Exception e) {
-                throw new SystemException(e);
-            }
+        if (value != null) {
+            loading.statistics.hit();
+            if (loading.isStale(key, configuration))
+                refresh(c, loading, key, callable);
+            return value;
+        }
+
+        if (loading.isNegative(key)) {
+            loading.statistics.negativeHit();
+            return null;
+        }
+
+        loading.statistics.miss();
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = loading.inflight.putIfAbsent(key, future);
+        if (existing != null) {
+            loading.statistics.coalesced();
+            return join(existing);
+        }
+
+        try {
+            // another thread may have finished loading between our get and putIfAbsent
+            value = c.get(key);
+            if (value == null)
+                value = load(c, loading, key, callable);
+            future.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // Errors too, otherwise coalesced callers would wait forever.
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.inflight.remove(key, future);
         }
-        return value;
     }
 
     public boolean remove(K key) {
         Cache<K,V> c = getCache();
+        getLoading().forget(key);
         return c.remove(key);
     }
 
     public void put(K key, V value) {
-        getCache().put(key, value);
+        Cache<K,V> c = getCache();
+        getLoading().loaded(key, configuration);
+        c.put(key, value);
+    }
+
+    public CacheStatistics getStatistics() {
+        return getLoading().statistics;
+    }
+
+    public static synchronized Executor getRefreshExecutor() {
+        if (refreshExecutor == null)
+            refreshExecutor = ThreadPool.cachedThreadPool("cache-refresh");
+        return refreshExecutor;
+    }
+
+    public static synchronized void setRefreshExecutor(Executor executor) {
+        refreshExecutor = executor;
+    }
+
+    @SuppressWarnings("squid:S2139")
+    private V load(Cache<K,V> c, Loading loading, K key, Callable<V> callable) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            V value = callable.call();
+            failed = false;
+            if (value != null) {
+                loading.loaded(key, configuration);
+                c.put(key, value);
+            } else {
+                loading.negative(key, configuration);
+            }
+            return value;
+        } catch (Exception e) {
+            throw new SystemException(e);
+        } finally {
+            loading.statistics.loaded(System.nanoTime() - start, failed);
+        }
+    }
+
+    private void refresh(Cache<K,V> c, Loading loading, K key, Callable<V> callable) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        if (loading.inflight.putIfAbsent(key, future) != null)
+            return;
+        loading.statistics.refresh();
+        try {
+            getRefreshExecutor().execute(() -> {
+                try {
+                    future.complete(load(c, loading, key, callable));
+                } catch (Throwable e) {
+                    logger.warn("Cannot refresh " + key + " in cache " + name, e);
+                    future.completeExceptionally(e);
+                } finally {
+                    loading.inflight.remove(key, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loading.inflight.remove(key, future);
+            future.complete(null);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V join(CompletableFuture<Object> future) {
+        try {
+            return (V) future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new SystemException(e.getCause());
+        }
+    }
+
+    private Loading getLoading() {
+        return loadings.computeIfAbsent(name, Loading::new);
     }
 
     protected synchronized Cache<K,V> getCache() {
@@ -143,4 +261,72 @@ public abstract class CacheFacade<K, V> {
         cache = configuration.getCache(name, keyClass, valueClass);
         return cache;
     }
+
+    /*
+     * Load bookkeeping shared by all facades with the same cache name.  loadedAt is only kept when
+     * refresh-ahead is on; both side tables are purged of expired entries once they grow past a bound.
+     */
+    private static class Loading {
+        final CacheStatistics statistics = new CacheStatistics();
+        final Map<Object, CompletableFuture<Object>> inflight = new ConcurrentHashMap<>();
+        final Map<Object, Long> loadedAt = new ConcurrentHashMap<>();
+        final Map<Object, Long> negatives = new ConcurrentHashMap<>();
+
+        Loading(String name) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(statistics,
+                        new ObjectName("net.e6tech:type=Cache,name=" + ObjectName.quote(name)));
+            } catch (Exception e) {
+                logger.warn("Cannot register cache statistics for " + name, e);
+            }
+        }
+
+        boolean isStale(Object key, CacheConfiguration config) {
+            if (config.getRefreshAhead() <= 0)
+                return false;
+            Long time = loadedAt.get(key);
+            return time != null && System.currentTimeMillis() - time >= (long) (config.getExpiry() * config.getRefreshAhead());
+        }
+
+        boolean isNegative(Object key) {
+            Long deadline = negatives.get(key);
+            if (deadline == null)
+                return false;
+            if (deadline > System.currentTimeMillis())
+                return true;
+            negatives.remove(key, deadline);
+            return false;
+        }
+
+        void loaded(Object key, CacheConfiguration config) {
+            negatives.remove(key);
+            if (config.getRefreshAhead() <= 0)
+                return;
+            long now = System.currentTimeMillis();
+            loadedAt.put(key, now);
+            if (loadedAt.size() > bound(config)) {
+                long oldest = now - config.getExpiry();
+                loadedAt.values().removeIf(t -> t < oldest);
+            }
+        }
+
+        void negative(Object key, CacheConfiguration config) {
+            loadedAt.remove(key);
+            if (config.getNegativeExpiry() <= 0)
+                return;
+            long now = System.currentTimeMillis();
+            negatives.put(key, now + config.getNegativeExpiry());
+            if (negatives.size() > bound(config))
+                negatives.values().removeIf(t -> t <= now);
+        }
+
+        void forget(Object key) {
+            loadedAt.remove(key);
+            negatives.remove(key);
+        }
+
+        private static long bound(CacheConfiguration config) {
+            return Math.max(1024L, config.getMaxEntries() * 2);
+        }
+    }
 }
@@ -17,6 +17,8 @@
 package net.e6tech.elements.common.cache;
 
 import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
 
 /**
  * Created by futeh.
@@ -25,5 +27,12 @@ public interface CacheProvider {
 
     String getProviderClassName();
 
+    /**
+     * Creates the CacheManager for configurations that share this provider and disk path.
+     */
+    default CacheManager createCacheManager(CacheConfiguration configuration) {
+        return Caching.getCachingProvider(getProviderClassName()).getCacheManager();
+    }
+
     <K,V> Cache<K,V> createCache(CacheConfiguration cachePool, String poolName, Class<K> keyClass, Class<V> valueClass);
 }
@@ -20,69 +20,64 @@ import net.e6tech.elements.common.cache.CacheConfiguration;
 import net.e6tech.elements.common.cache.CacheProvider;
 import org.ehcache.config.builders.CacheConfigurationBuilder;
 import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.config.units.EntryUnit;
+import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.core.config.DefaultConfiguration;
 import org.ehcache.expiry.Duration;
 import org.ehcache.expiry.Expirations;
+import org.ehcache.impl.config.persistence.DefaultPersistenceConfiguration;
 import org.ehcache.jsr107.Eh107Configuration;
 import org.ehcache.jsr107.EhcacheCachingProvider;
 
 import javax.cache.Cache;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.io.File;
 import java.util.concurrent.TimeUnit;
 
 /**
+ * Builds Ehcache caches with heap, off-heap and disk tiers as described by CacheConfiguration.
+ * Expired entries are dropped lazily by Ehcache when they are read or evicted, so caches are
+ * returned as is rather than behind a proxy that sweeps them.
  * Created by futeh.
  */
 public class EhcacheProvider implements CacheProvider {
 
-    private static ExecutorService executorService = Executors.newSingleThreadExecutor(r -> new Thread(r, "EhcacheProviderCleaner"));
-
     @Override
     public String getProviderClassName() {
         return EhcacheCachingProvider.class.getName();
     }
 
-    public <K,V> Cache<K,V> createCache(CacheConfiguration cachePool, String poolName, Class<K> keyClass, Class<V> valueClass) {
-
-        ResourcePoolsBuilder builder = (cachePool.getMaxEntries() > 0)
-                ? ResourcePoolsBuilder.heap(cachePool.getMaxEntries())
-                : ResourcePoolsBuilder.newResourcePoolsBuilder();
-
-        org.ehcache.config.CacheConfiguration cacheConfiguration = CacheConfigurationBuilder
-                .newCacheConfigurationBuilder(keyClass, valueClass, builder)
-                .withExpiry(Expirations.timeToLiveExpiration(Duration.of(cachePool.getExpiry(), TimeUnit.MILLISECONDS)))
-                .build();
-
-        Cache<K, V> cache = cachePool.getCacheManager().createCache(poolName, Eh107Configuration.fromEhcacheCacheConfiguration(cacheConfiguration));
-        return (Cache<K, V>) Proxy.newProxyInstance(Cache.class.getClassLoader(), new Class[] { Cache.class}, new CacheInvocationHandler<K,V>(cache, cachePool));
+    @Override
+    public CacheManager createCacheManager(CacheConfiguration configuration) {
+        EhcacheCachingProvider cachingProvider = (EhcacheCachingProvider) Caching.getCachingProvider(getProviderClassName());
+        if (configuration.getDiskSize() <= 0)
+            return cachingProvider.getCacheManager();
+        File root = new File(configuration.getDiskPath());
+        return cachingProvider.getCacheManager(root.toURI(),
+                new DefaultConfiguration(cachingProvider.getDefaultClassLoader(), new DefaultPersistenceConfiguration(root)));
     }
 
-    private class CacheInvocationHandler<K, V> implements InvocationHandler {
-        Cache<K, V> cache;
-        long lastPut;
-        long expiry;
+    @SuppressWarnings("unchecked")
+    public <K,V> Cache<K,V> createCache(CacheConfiguration cachePool, String poolName, Class<K> keyClass, Class<V> valueClass) {
+        ResourcePoolsBuilder builder = ResourcePoolsBuilder.newResourcePoolsBuilder();
+        if (cachePool.getHeapSize() > 0)
+            builder = builder.heap(cachePool.getHeapSize(), MemoryUnit.B);
+        else if (cachePool.getMaxEntries() > 0)
+            builder = builder.heap(cachePool.getMaxEntries(), EntryUnit.ENTRIES);
+        if (cachePool.getOffHeapSize() > 0)
+            builder = builder.offheap(cachePool.getOffHeapSize(), MemoryUnit.B);
+        if (cachePool.getDiskSize() > 0)
+            builder = builder.disk(cachePool.getDiskSize(), MemoryUnit.B, cachePool.isDiskPersistent());
 
-        CacheInvocationHandler(Cache<K, V> cache, CacheConfiguration cachePool) {
-            this.cache = cache;
-            this.expiry = cachePool.getExpiry();
-            this.lastPut = System.currentTimeMillis();
-        }
+        CacheConfigurationBuilder<K, V> configBuilder = CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(keyClass, valueClass, builder)
+                .withExpiry(Expirations.timeToLiveExpiration(Duration.of(cachePool.getExpiry(), TimeUnit.MILLISECONDS)));
+        if (cachePool.getKeySerializer() != null)
+            configBuilder = configBuilder.withKeySerializer(cachePool.getKeySerializer());
+        if (cachePool.getValueSerializer() != null)
+            configBuilder = configBuilder.withValueSerializer(cachePool.getValueSerializer());
 
-        @Override
-        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-            if (method.getName().startsWith("put")
-                    && System.currentTimeMillis() - lastPut > expiry) {
-                executorService.submit(() ->
-                    cache.iterator().forEachRemaining(entry -> {
-                        // expire entries by accessing
-                    })
-                );
-                lastPut = System.currentTimeMillis();
-            }
-            return method.invoke(cache, args);
-        }
+        return cachePool.getCacheManager().createCache(poolName, Eh107Configuration.fromEhcacheCacheConfiguration(configBuilder.build()));
     }
 }
@@ -0,0 +1,26 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.inject.spi;
+
+/**
+ * Implemented by classes that InjectorGenerator creates for a target type.  Each injection point
+ * of the target type that can be reached without reflection is assigned an index and set
+ * writes the value straight into the field or calls the setter.
+ */
+public interface GeneratedInjector {
+    void set(Object target, int index, Object value);
+}
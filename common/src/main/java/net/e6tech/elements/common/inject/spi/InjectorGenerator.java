@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.inject.spi;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.field.FieldDescription;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.implementation.Implementation;
+import net.bytebuddy.implementation.bytecode.ByteCodeAppender;
+import net.bytebuddy.implementation.bytecode.Removal;
+import net.bytebuddy.implementation.bytecode.StackManipulation;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
+import net.bytebuddy.implementation.bytecode.assign.TypeCasting;
+import net.bytebuddy.implementation.bytecode.constant.IntegerConstant;
+import net.bytebuddy.implementation.bytecode.member.FieldAccess;
+import net.bytebuddy.implementation.bytecode.member.MethodInvocation;
+import net.bytebuddy.implementation.bytecode.member.MethodReturn;
+import net.bytebuddy.implementation.bytecode.member.MethodVariableAccess;
+import net.bytebuddy.jar.asm.Label;
+import net.bytebuddy.jar.asm.MethodVisitor;
+import net.bytebuddy.jar.asm.Opcodes;
+import net.bytebuddy.matcher.ElementMatchers;
+import net.e6tech.elements.common.logging.Logger;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates a GeneratedInjector class per target type.  The generated class is defined in the
+ * target's package and class loader so that public, protected and package private members can be
+ * written directly.  If the class cannot be injected into the target's class loader, only public members
+ * are generated and the class is loaded by a child class loader.  Injection points that cannot be
+ * generated, e.g. private or final fields, keep using MethodHandles.
+ *
+ * A class is generated at most once per target type and kept in a ClassValue, so it is reused when the
+ * injection points of the type are computed again and can be unloaded together with the type.
+ *
+ * Created by futeh.
+ */
+class InjectorGenerator {
+    private static final String SET_METHOD = "set";
+    private static final AtomicInteger counter = new AtomicInteger();
+    private static final ClassValue<Generated> injectors = new ClassValue<Generated>() {
+        @Override
+        protected Generated computeValue(Class<?> type) {
+            return new Generated();
+        }
+    };
+
+    private InjectorGenerator() {
+    }
+
+    static void generate(Class<?> targetClass, List<InjectorImpl.InjectionPoint> points) {
+        if (points.isEmpty() || targetClass.getClassLoader() == null)
+            return;
+
+        Generated generated = injectors.get(targetClass);
+        synchronized (generated) {
+            if (!generated.attempted) {
+                generated.attempted = true;
+                try {
+                    define(targetClass, points, true, generated);
+                } catch (RuntimeException | LinkageError e) {
+                    Logger.suppress(e);
+                    try {
+                        define(targetClass, points, false, generated);
+                    } catch (RuntimeException | LinkageError ex) {
+                        Logger.suppress(ex);
+                    }
+                }
+            }
+        }
+
+        if (generated.injector == null)
+            return;
+        for (InjectorImpl.InjectionPoint point : points) {
+            Integer index = generated.indices.get(point.getMember());
+            if (index != null)
+                point.generated(generated.injector, index);
+        }
+    }
+
+    private static void define(Class<?> targetClass, List<InjectorImpl.InjectionPoint> points, boolean packageAccess, Generated generated) {
+        List<InjectorImpl.InjectionPoint> eligible = new ArrayList<>();
+        for (InjectorImpl.InjectionPoint point : points) {
+            if (isAccessible(targetClass, point.getMember(), packageAccess))
+                eligible.add(point);
+        }
+        if (eligible.isEmpty())
+            return;
+
+        ClassLoadingStrategy<ClassLoader> strategy = packageAccess ? ClassLoadingStrategy.Default.INJECTION : ClassLoadingStrategy.Default.WRAPPER;
+        Class<? extends GeneratedInjector> injectorClass = new ByteBuddy()
+                .subclass(GeneratedInjector.class)
+                .name(targetClass.getName() + "$$Injector$" + counter.incrementAndGet())
+                .method(ElementMatchers.named(SET_METHOD))
+                .intercept(new Implementation.Simple(new SetAppender(eligible)))
+                .make()
+                .load(targetClass.getClassLoader(), strategy)
+                .getLoaded();
+
+        try {
+            generated.injector = injectorClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+        for (int i = 0; i < eligible.size(); i++)
+            generated.indices.put(eligible.get(i).getMember(), i);
+    }
+
+    @SuppressWarnings("squid:S1067")
+    private static boolean isAccessible(Class<?> targetClass, Member member, boolean packageAccess) {
+        int modifiers = member.getModifiers();
+        Class<?> owner = member.getDeclaringClass();
+        if (Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers) || owner.isInterface())
+            return false;
+        if (member instanceof Field && Modifier.isFinal(modifiers))
+            return false;
+        if (member instanceof Method && ((Method) member).getParameterCount() != 1)
+            return false;
+
+        boolean samePackage = packageAccess && isSamePackage(owner, targetClass);
+        if (!Modifier.isPublic(owner.getModifiers()) && !samePackage)
+            return false;
+        return Modifier.isPublic(modifiers) || samePackage;
+    }
+
+    private static boolean isSamePackage(Class<?> c1, Class<?> c2) {
+        return c1.getClassLoader() == c2.getClassLoader() && packageName(c1).equals(packageName(c2));
+    }
+
+    private static String packageName(Class<?> cls) {
+        String name = cls.getName();
+        int index = name.lastIndexOf('.');
+        return (index < 0) ? "" : name.substring(0, index);
+    }
+
+    // the generated injector of a type and the index of each member it writes.
+    private static class Generated {
+        private boolean attempted;
+        private GeneratedInjector injector;
+        private final Map<Member, Integer> indices = new HashMap<>();
+    }
+
+    /**
+     * Emits, for every injection point,
+     * <pre>
+     * if (index == i) { ((Owner) target).field = (FieldType) value; return; }
+     * </pre>
+     * or the equivalent setter call.
+     */
+    private static class SetAppender implements ByteCodeAppender {
+        private final List<InjectorImpl.InjectionPoint> points;
+
+        SetAppender(List<InjectorImpl.InjectionPoint> points) {
+            this.points = points;
+        }
+
+        @Override
+        public Size apply(MethodVisitor methodVisitor, Implementation.Context context, MethodDescription method) {
+            int maxStack = 2;
+            for (int i = 0; i < points.size(); i++) {
+                Member member = points.get(i).getMember();
+                Label next = new Label();
+                methodVisitor.visitVarInsn(Opcodes.ILOAD, 2);
+                IntegerConstant.forValue(i).apply(methodVisitor, context);
+                methodVisitor.visitJumpInsn(Opcodes.IF_ICMPNE, next);
+
+                StackManipulation assignment = new StackManipulation.Compound(
+                        MethodVariableAccess.REFERENCE.loadFrom(1),
+                        TypeCasting.to(new TypeDescription.ForLoadedType(member.getDeclaringClass())),
+                        MethodVariableAccess.REFERENCE.loadFrom(3),
+                        Assigner.DEFAULT.assign(TypeDescription.Generic.OBJECT,
+                                new TypeDescription.ForLoadedType(valueType(member)).asGenericType(),
+                                Assigner.Typing.DYNAMIC),
+                        write(member),
+                        MethodReturn.VOID);
+                maxStack = Math.max(maxStack, assignment.apply(methodVisitor, context).getMaximalSize());
+
+                methodVisitor.visitLabel(next);
+                methodVisitor.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
+            }
+            methodVisitor.visitInsn(Opcodes.RETURN);
+            return new Size(maxStack, method.getStackSize());
+        }
+
+        private static Class<?> valueType(Member member) {
+            if (member instanceof Field)
+                return ((Field) member).getType();
+            return ((Method) member).getParameterTypes()[0];
+        }
+
+        private static StackManipulation write(Member member) {
+            if (member instanceof Field)
+                return FieldAccess.forField(new FieldDescription.ForLoadedField((Field) member)).write();
+            Method method = (Method) member;
+            return new StackManipulation.Compound(
+                    MethodInvocation.invoke(new MethodDescription.ForLoadedMethod(method)),
+                    Removal.of(new TypeDescription.ForLoadedType(method.getReturnType())));
+        }
+    }
+}
@@ -33,18 +33,28 @@ import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.*;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 
 /**
+ * Bindings are resolved through a snapshot that flattens this injector and its parents.  The snapshot
+ * records the version of every module in the chain.  The first lookup after one of them changes builds
+ * a new snapshot that keeps the resolutions of every type that was not rebound or unbound.
+ * Injection points of a class are written by a class generated by InjectorGenerator when possible.
+ *
  * Created by futeh.
  */
 @SuppressWarnings("squid:S134")
 public class InjectorImpl implements Injector {
     private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    private static volatile boolean generatedInjectors = true;
 
     private static LoadingCache<Class<?>, List<InjectionPoint>> injectionPoints = CacheBuilder.newBuilder()
             .maximumSize(10000)
@@ -54,18 +64,34 @@ public class InjectorImpl implements Injector {
         public List<InjectionPoint> load(Class<?> instanceClass)  {
             List<InjectionPoint> points = injectionProperties(instanceClass);
             points.addAll(injectionFields(instanceClass));
+            if (generatedInjectors)
+                InjectorGenerator.generate(instanceClass, points);
             return points;
         }
     });
 
     private ModuleImpl module;
     private InjectorImpl parentInjector;
+    private volatile BindingSnapshot snapshot;
 
     InjectorImpl(ModuleImpl module, InjectorImpl parentInjector) {
         this.module = module;
         this.parentInjector = parentInjector;
     }
 
+    public static boolean isGeneratedInjectors() {
+        return generatedInjectors;
+    }
+
+    /**
+     * Turns generated injectors on or off.  Cached injection points are discarded so that
+     * the setting applies to classes injected afterwards.
+     */
+    public static void setGeneratedInjectors(boolean generated) {
+        generatedInjectors = generated;
+        injectionPoints.invalidateAll();
+    }
+
     @Override
     public <T> T getInstance(Class<T> cls) {
         return getNamedInstance(cls, null);
@@ -76,21 +102,24 @@ public class InjectorImpl implements Injector {
         return privateGetNamedInstance(boundClass, name).map(binding -> (T) binding.getValue()).orElse(null);
     }
 
-    @SuppressWarnings({"squid:MethodCyclomaticComplexity", "squid:S3776"})
     private Optional<Binding> privateGetNamedInstance(Type boundClass, String name) {
-        Type type = boundClass;
-        Binding binding = module.getBinding(type, name);
-        if (binding == null && type instanceof ParameterizedType) {
-            type = ((ParameterizedType) type).getRawType();
-            binding = module.getBinding(type, name);
-        }
+        Resolution resolution = snapshot().resolve(boundClass, name);
+        if (resolution.binding == null)
+            return Optional.empty();
+        // a class binding creates its instance using the injector that owns the binding.
+        return Optional.of(resolution.binding.getInstance(resolution.injector));
+    }
 
-        if (binding != null) {
-            binding = binding.getInstance(this);
-        } else if (parentInjector != null) {
-            binding = parentInjector.privateGetNamedInstance(boundClass, name).orElse(null);
+    private BindingSnapshot snapshot() {
+        BindingSnapshot current = snapshot;
+        if (current == null) {
+            current = new BindingSnapshot(this);
+            snapshot = current;
+        } else if (!current.isCurrent()) {
+            current = current.refresh();
+            snapshot = current;
         }
-        return Optional.ofNullable(binding);
+        return current;
     }
 
     @Override
@@ -113,16 +142,8 @@ public class InjectorImpl implements Injector {
     }
 
     protected boolean inject(InjectionPoint point, Object instance) {
-        InjectionAttempt attempt = point.inject(this, instance);
-        if (attempt == InjectionAttempt.INJECTED)
-            return true;
-
-        // if parent exist delegate to it
-        if (parentInjector != null)
-            return parentInjector.inject(point, instance);
-        else {
-            return attempt != InjectionAttempt.ERROR;
-        }
+        // bindings from parent injectors are already part of the snapshot
+        return point.inject(this, instance) != InjectionAttempt.ERROR;
     }
 
     @SuppressWarnings("squid:S3398")
@@ -196,7 +217,7 @@ public class InjectorImpl implements Injector {
         NOT_INJECTED
     }
 
-    private static class InjectionPoint {
+    static class InjectionPoint {
         protected String name;
         protected boolean optional;
         protected Class type = void.class;
@@ -206,6 +227,8 @@ public class InjectorImpl implements Injector {
         private MethodHandle setter;
         private Type setterType;
         private AccessibleObject accessible;
+        private GeneratedInjector generated;
+        private int generatedIndex;
 
         InjectionPoint(Method setter) {
             try {
@@ -246,7 +269,9 @@ public class InjectorImpl implements Injector {
                     if (property.length() > 0 && value != null) {
                         value = Reflection.getProperty(value, property);
                     }
-                    if (lambdaSetter != null)
+                    if (generated != null)
+                        generated.set(target, generatedIndex, value);
+                    else if (lambdaSetter != null)
                         lambdaSetter.accept(target, value);
                     else
                         setter.invoke(target, value);
@@ -265,8 +290,117 @@ public class InjectorImpl implements Injector {
             return (type != void.class && type != Void.class) ? type : setterType;
         }
 
+        Member getMember() {
+            return (Member) accessible;
+        }
+
+        boolean isGenerated() {
+            return generated != null;
+        }
+
+        GeneratedInjector getGenerated() {
+            return generated;
+        }
+
+        void generated(GeneratedInjector injector, int index) {
+            this.generated = injector;
+            this.generatedIndex = index;
+        }
+
         public String toString() {
             return accessible.toString();
         }
     }
+
+    private static class Resolution {
+        private final Binding binding;
+        private final InjectorImpl injector;
+
+        Resolution(Binding binding, InjectorImpl injector) {
+            this.binding = binding;
+            this.injector = injector;
+        }
+    }
+
+    /**
+     * Flattened view of the injector chain.  Lookups are resolved once, including misses, and
+     * remembered until the bindings of their type change in one of the modules in the chain.
+     */
+    private static class BindingSnapshot {
+        private static final String NULL_KEY = "";
+        private static final Resolution UNBOUND = new Resolution(null, null);
+
+        private final InjectorImpl[] chain;
+        private final long[] versions;
+        private final Map<Type, Map<String, Resolution>> resolutions = new ConcurrentHashMap<>();
+
+        BindingSnapshot(InjectorImpl injector) {
+            this(chain(injector));
+        }
+
+        private BindingSnapshot(InjectorImpl[] chain) {
+            this.chain = chain;
+            versions = new long[chain.length];
+            for (int i = 0; i < chain.length; i++)
+                versions[i] = chain[i].module.getVersion();
+        }
+
+        private static InjectorImpl[] chain(InjectorImpl injector) {
+            List<InjectorImpl> list = new ArrayList<>();
+            for (InjectorImpl i = injector; i != null; i = i.parentInjector)
+                list.add(i);
+            return list.toArray(new InjectorImpl[list.size()]);
+        }
+
+        /**
+         * @return a snapshot of the current versions holding the resolutions of types that have not changed since.
+         */
+        BindingSnapshot refresh() {
+            // versions are read before the changes so that a change made in between is caught by the next refresh.
+            BindingSnapshot next = new BindingSnapshot(chain);
+            Set<Type> stale = new HashSet<>();
+            for (int i = 0; i < chain.length; i++)
+                if (next.versions[i] != versions[i])
+                    chain[i].module.changedSince(versions[i], stale);
+            for (Map.Entry<Type, Map<String, Resolution>> entry : resolutions.entrySet()) {
+                Type type = entry.getKey();
+                if (stale.contains(type)
+                        || (type instanceof ParameterizedType && stale.contains(((ParameterizedType) type).getRawType())))
+                    continue;
+                next.resolutions.put(type, new ConcurrentHashMap<>(entry.getValue()));
+            }
+            return next;
+        }
+
+        boolean isCurrent() {
+            for (int i = 0; i < chain.length; i++)
+                if (chain[i].module.getVersion() != versions[i])
+                    return false;
+            return true;
+        }
+
+        Resolution resolve(Type type, String name) {
+            Map<String, Resolution> named = resolutions.get(type);
+            if (named == null)
+                named = resolutions.computeIfAbsent(type, t -> new ConcurrentHashMap<>());
+            String key = (name == null) ? NULL_KEY : name;
+            Resolution resolution = named.get(key);
+            if (resolution == null) {
+                resolution = lookup(type, name);
+                named.putIfAbsent(key, resolution);
+            }
+            return resolution;
+        }
+
+        private Resolution lookup(Type boundClass, String name) {
+            for (InjectorImpl injector : chain) {
+                Binding binding = injector.module.getBinding(boundClass, name);
+                if (binding == null && boundClass instanceof ParameterizedType)
+                    binding = injector.module.getBinding(((ParameterizedType) boundClass).getRawType(), name);
+                if (binding != null)
+                    return new Resolution(binding, injector);
+            }
+            return UNBOUND;
+        }
+    }
 }
@@ -28,14 +28,19 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Type;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by futeh.
  */
 public class ModuleImpl implements Module {
+    private static final long CHANGING = Long.MAX_VALUE;
     private ModuleFactory factory;
     private final Map<Type, BindingMap> directory = new ConcurrentHashMap<>();
     private final Set<Binding> singletons = Collections.synchronizedSet(new HashSet<>());
+    private final AtomicLong version = new AtomicLong();
+    // type -> version that last changed its bindings, CHANGING while a change is in progress.
+    private final Map<Type, Long> changes = new ConcurrentHashMap<>();
 
     public ModuleImpl(ModuleFactory factory) {
         this.factory = factory;
@@ -49,36 +54,82 @@ public class ModuleImpl implements Module {
         return bindingMap.get(name);
     }
 
+    /**
+     * Incremented after every change to the directory so that injectors can tell
+     * when their resolved bindings are stale.
+     */
+    long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Adds to types every type whose bindings changed after the given version, or are being changed.
+     */
+    void changedSince(long since, Set<Type> types) {
+        for (Map.Entry<Type, Long> entry : changes.entrySet())
+            if (entry.getValue() > since)
+                types.add(entry.getKey());
+    }
+
+    // a type is marked before its bindings are modified so that a reader never misses a change in progress.
+    private void changing(Type type, List<Type> touched) {
+        changes.put(type, CHANGING);
+        touched.add(type);
+    }
+
+    private BindingMap bindingMap(Type type, List<Type> touched) {
+        changing(type, touched);
+        return directory.compute(type, (t, map) -> (map == null) ? new BindingMap() : map.writable());
+    }
+
+    // like bindingMap but does not create one.
+    private BindingMap existingBindingMap(Type type, List<Type> touched) {
+        if (!directory.containsKey(type))
+            return null;
+        changing(type, touched);
+        return directory.computeIfPresent(type, (t, map) -> map.writable());
+    }
+
+    private void changed(List<Type> touched) {
+        long next = version.incrementAndGet();
+        for (Type type : touched)
+            changes.merge(type, next, (prev, v) -> prev == CHANGING ? v : Math.max(prev, v));
+    }
+
     @Override
     public ModuleFactory getFactory() {
         return factory;
     }
 
+    /**
+     * Adds the bindings of another module.  Bindings already present in this module are kept.
+     * Binding maps taken over are shared with the other module until either module binds or unbinds
+     * that type; the module making the change then copies the map first, so that neither module sees
+     * the other's later changes.
+     */
     @Override
     public synchronized void add(Module module) {
         ModuleImpl moduleImpl = (ModuleImpl) module;
-        ConcurrentHashMap<Type, BindingMap> dir;
-        dir = new ConcurrentHashMap<>(moduleImpl.directory);
 
-        // dir contains directory from module argument
         // we don't deal with singletons because the external module should've handle it.
-        for (Map.Entry<Type, BindingMap> entry: dir.entrySet()) {
-            BindingMap existing = directory.get(entry.getKey());
-            if (existing != null) {
-                existing.merge(entry.getValue());
-            } else {
-                directory.put(entry.getKey(), entry.getValue());
-            }
+        List<Type> touched = new ArrayList<>();
+        for (Map.Entry<Type, BindingMap> entry: moduleImpl.directory.entrySet()) {
+            changing(entry.getKey(), touched);
+            BindingMap other = entry.getValue();
+            directory.compute(entry.getKey(), (t, existing) -> (existing == null) ? other.share() : existing.merge(other));
         }
+        changed(touched);
     }
 
     @Override
     public void bindClass(Class cls, Class implementation) {
         Type[] types = getBindTypes(cls);
+        List<Type> touched = new ArrayList<>();
         for (Type type : types) {
-            BindingMap bindList = directory.computeIfAbsent(type, t -> new BindingMap());
+            BindingMap bindList = bindingMap(type, touched);
             bindList.bind(null, new Binding(implementation));
         }
+        changed(touched);
     }
 
     @Override
@@ -93,16 +144,18 @@ public class ModuleImpl implements Module {
         Object instance = newInstance(inst);
         Type[] types = getBindTypes(cls);
         Binding binding = new Binding(instance);
+        List<Type> touched = new ArrayList<>();
         for (Type type : types) {
-            BindingMap bindList = directory.computeIfAbsent(type, t -> new BindingMap());
+            BindingMap bindList = bindingMap(type, touched);
             bindList.bind(null, binding);
         }
         singletons.add(binding);
-        bindProperties(cls, null, inst);
+        bindProperties(cls, null, inst, touched);
+        changed(touched);
         return instance;
     }
 
-    private void bindProperties(Class cls, String name, Object inst) {
+    private void bindProperties(Class cls, String name, Object inst, List<Type> touched) {
         for (String propName : getBindProperties(cls)) {
             PropertyDescriptor desc = Reflection.getPropertyDescriptor(cls, propName);
             Object propertyValue = getProperty(cls, propName, inst);
@@ -113,7 +166,7 @@ public class ModuleImpl implements Module {
             Type[] propTypes = getBindTypes(propType);
             Binding binding = new Binding(propertyValue);
             for (Type type : propTypes) {
-                BindingMap bindList = directory.computeIfAbsent(type, t -> new BindingMap());
+                BindingMap bindList = bindingMap(type, touched);
                 bindList.bind(name, binding);
             }
             singletons.add(binding);
@@ -138,14 +191,16 @@ public class ModuleImpl implements Module {
         Object instance = newInstance(inst);
         Type[] types = getBindTypes(cls);
         Binding binding = new Binding(instance);
+        List<Type> touched = new ArrayList<>();
         synchronized (directory) {
             for (Type type : types) {
-                BindingMap bindList = directory.computeIfAbsent(type, t -> new BindingMap());
+                BindingMap bindList = bindingMap(type, touched);
                 bindList.bind(name, binding);
             }
             singletons.add(binding);
-            bindProperties(cls, name, inst);
+            bindProperties(cls, name, inst, touched);
         }
+        changed(touched);
         return instance;
     }
 
@@ -157,8 +212,9 @@ public class ModuleImpl implements Module {
     public Object unbindNamedInstance(Class cls, String name) {
         Type[] types = getBindTypes(cls);
         Object ret = null;
+        List<Type> touched = new ArrayList<>();
         for (Type type : types) {
-            BindingMap bindList = directory.get(type);
+            BindingMap bindList = existingBindingMap(type, touched);
             if (bindList == null)
                 continue;
 
@@ -174,13 +230,14 @@ public class ModuleImpl implements Module {
             }
             if (value != null) {
                 ret = value;
-                unbindProperties(cls, name, value);
+                unbindProperties(cls, name, value, touched);
             }
         }
+        changed(touched);
         return ret;
     }
 
-    private void unbindProperties(Class cls, String name, Object inst) {
+    private void unbindProperties(Class cls, String name, Object inst, List<Type> touched) {
         for (String propName : getBindProperties(cls)) {
             PropertyDescriptor desc = Reflection.getPropertyDescriptor(cls, propName);
             Object propertyValue = getProperty(cls, propName, inst);
@@ -189,7 +246,7 @@ public class ModuleImpl implements Module {
 
             Type[] propTypes = getBindTypes(desc.getPropertyType());
             for (Type type : propTypes) {
-                BindingMap bindingMap = directory.get(type);
+                BindingMap bindingMap = existingBindingMap(type, touched);
                 if (bindingMap == null)
                     continue;
 
@@ -273,6 +330,7 @@ public class ModuleImpl implements Module {
     private static class BindingMap {
         private static final String NULL_KEY = "";
         private Map<String, Binding> bindings = new ConcurrentHashMap<>();
+        private volatile boolean shared;
 
         Binding get(String name) {
             return bindings.get((name == null) ? NULL_KEY : name);
@@ -290,13 +348,31 @@ public class ModuleImpl implements Module {
             return bindings.size();
         }
 
-        void merge(BindingMap bindingMap) {
-            Map<String, Binding> copy = new ConcurrentHashMap<>(bindingMap.bindings);
-            for (Map.Entry<String, Binding> entry: copy.entrySet()) {
-                if (!bindings.containsKey(entry.getKey())) {
-                    bindings.put(entry.getKey(), copy.get(entry.getKey()));
+        // marks the map as referenced by more than one module.
+        BindingMap share() {
+            shared = true;
+            return this;
+        }
+
+        // the map itself, or a private copy of it if it is shared.
+        BindingMap writable() {
+            if (!shared)
+                return this;
+            BindingMap copy = new BindingMap();
+            copy.bindings.putAll(bindings);
+            return copy;
+        }
+
+        // adds the bindings this map does not have yet; returns the map that holds the result.
+        BindingMap merge(BindingMap bindingMap) {
+            BindingMap target = this;
+            for (Map.Entry<String, Binding> entry: bindingMap.bindings.entrySet()) {
+                if (!target.bindings.containsKey(entry.getKey())) {
+                    target = target.writable();
+                    target.bindings.put(entry.getKey(), entry.getValue());
                 }
             }
+            return target;
         }
     }
 }
@@ -16,35 +16,55 @@
 
 package net.e6tech.elements.common.interceptor;
 
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.implementation.MethodCall;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
+import net.bytebuddy.matcher.ElementMatchers;
+import net.e6tech.elements.common.logging.Logger;
 import net.e6tech.elements.common.util.SystemException;
 
 import java.lang.annotation.Annotation;
 import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Describes an intercepted call.  Proceeding to the target goes through an Invoker generated once
+ * per method, which casts the arguments and makes a plain virtual call, so invoke costs about the
+ * same as calling the target directly.  A frame holds no lambdas or bound handles and is not retained
+ * by the interceptor, so the JIT can scalar replace it when the handler is inlined.
+ */
 public class CallFrame {
-
+    private static final Logger logger = Logger.getLogger();
     private static final Object[] EMPTY_ARGS = new Object[0];
+    // kept per declaring class so that invokers, which are loaded in its class loader, do not keep the loader alive.
+    private static final ClassValue<Map<Method, Invoker>> invokers = new ClassValue<Map<Method, Invoker>>() {
+        @Override
+        protected Map<Method, Invoker> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+    private static final AtomicInteger stubCount = new AtomicInteger();
 
-    private Object target;
-    private MethodHandle handle;
-    private Object[] arguments;
-    private Method method;
-    private Invoke invoke;
+    private final Object target;
+    private final MethodHandle handle;
+    private final Object[] arguments;
+    private final Method method;
+    private final Invoker invoker;
 
     CallFrame(Object target, MethodHandle handle, Method method, Object[] arguments) {
         this.target = target;
         this.handle = handle;
         this.method = method;
         this.arguments = (arguments == null) ? EMPTY_ARGS : arguments;
-
-        if (Modifier.isPublic(getMethod().getModifiers())) {
-            invoke = t -> handle.bindTo(t).invokeWithArguments(arguments);
-        } else {
-            invoke = t -> getMethod().invoke(t, arguments);
-        }
+        this.invoker = invoker(method);
     }
 
     public Object[] getArguments() {
@@ -73,7 +93,7 @@ public class CallFrame {
 
     public Object invoke(Object anotherTarget) {
         try {
-            return invoke.apply(anotherTarget);
+            return invoker.invoke(anotherTarget, arguments);
         } catch (InvocationTargetException th) {
             throw new SystemException(th.getTargetException());
         } catch (Throwable th) {
@@ -81,9 +101,65 @@ public class CallFrame {
         }
     }
 
+    static Invoker invoker(Method method) {
+        Map<Method, Invoker> map = invokers.get(method.getDeclaringClass());
+        Invoker invoker = map.get(method);
+        if (invoker == null)
+            invoker = map.computeIfAbsent(method, CallFrame::createInvoker);
+        return invoker;
+    }
+
+    /*
+     * Generates a class in the declaring class's package and class loader so that protected and package private
+     * methods can be called directly.  Falls back to a spreading MethodHandle, or reflection, when that is not
+     * possible, e.g. for bootstrap classes.
+     */
+    @SuppressWarnings("squid:S1181")
+    private static Invoker createInvoker(Method method) {
+        Class declaring = method.getDeclaringClass();
+        if (!Modifier.isPrivate(method.getModifiers())
+                && declaring.getClassLoader() != null
+                && !declaring.getName().startsWith("java.")) {
+            try {
+                int count = method.getParameterCount();
+                MethodCall call = MethodCall.invoke(method).onArgument(0);
+                if (count > 0)
+                    call = call.withArgumentArrayElements(1, 0, count);
+                Class<? extends Invoker> stub = new ByteBuddy()
+                        .subclass(Invoker.class)
+                        .name(declaring.getName() + "$$Invoker$" + method.getName() + "$" + stubCount.incrementAndGet())
+                        .method(ElementMatchers.named("invoke"))
+                        .intercept(call.withAssigner(Assigner.DEFAULT, Assigner.Typing.DYNAMIC))
+                        .make()
+                        .load(declaring.getClassLoader(), ClassLoadingStrategy.Default.INJECTION)
+                        .getLoaded();
+                return stub.getDeclaredConstructor().newInstance();
+            } catch (Throwable th) {
+                logger.debug("Cannot generate invoker for " + method + ", using reflection", th);
+            }
+        }
+
+        if (Modifier.isPublic(method.getModifiers()) && Modifier.isPublic(declaring.getModifiers())) {
+            try {
+                MethodHandle spreader = MethodHandles.publicLookup().unreflect(method)
+                        .asSpreader(Object[].class, method.getParameterCount())
+                        .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+                return (t, args) -> spreader.invokeExact(t, args);
+            } catch (IllegalAccessException ex) {
+                // fall through to reflection
+            }
+        }
+
+        method.setAccessible(true);
+        return method::invoke;
+    }
+
+    /**
+     * Calls the intercepted method on a target.
+     */
     @SuppressWarnings("squid:S00112")
     @FunctionalInterface
-    interface Invoke {
-        Object apply(Object t) throws Throwable;
+    public interface Invoker {
+        Object invoke(Object target, Object[] arguments) throws Throwable;
     }
 }
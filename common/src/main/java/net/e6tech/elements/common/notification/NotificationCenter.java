@@ -16,73 +16,182 @@ limitations under the License.
 
 package net.e6tech.elements.common.notification;
 
+import net.e6tech.elements.common.logging.Logger;
 import net.e6tech.elements.common.subscribe.Broadcast;
 import net.e6tech.elements.common.subscribe.Subscriber;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
+ * Listeners are kept in copy-on-write arrays.  The listeners for a concrete notification class,
+ * i.e. those registered for the class or any of its superclasses, are resolved once and cached
+ * until a class listener is added or removed.
+ *
+ * When async is set, fireNotification and publish return immediately and delivery happens on
+ * a fixed set of lanes.  Notifications with the same source (or, without a source, the same class)
+ * and publishes to the same topic always use the same lane, so they are delivered in order.
+ * Each lane holds at most laneCapacity pending deliveries; when it is full the caller blocks.
+ *
  * Created by futeh on 1/21/16.
  */
-@SuppressWarnings({"squid:S1149"})
+@SuppressWarnings({"squid:S1149", "unchecked"})
 public class NotificationCenter implements Broadcast {
+    private static final Logger logger = Logger.getLogger();
+    private static final NotificationListener[] EMPTY = new NotificationListener[0];
 
-    private Map<Object, List<NotificationListener>> srcNotificationListeners = new Hashtable<>();
-    private Map<Class, List<NotificationListener>> notificationListeners = new Hashtable<>();
+    private ConcurrentMap<Object, NotificationListener[]> srcNotificationListeners = new ConcurrentHashMap<>();
+    private ConcurrentMap<Class, NotificationListener[]> notificationListeners = new ConcurrentHashMap<>();
+    private volatile ConcurrentMap<Class, NotificationListener[]> dispatchTable = new ConcurrentHashMap<>();
+
+    private boolean async = false;
+    private int lanes = Runtime.getRuntime().availableProcessors();
+    private int laneCapacity = 1024;
+    private NotificationLanes notificationLanes;
 
     // for broadcasting
     Map<Object, List<Subscriber>> subscribers = new Hashtable<>();
-    List<Broadcast> broadcasts = new Vector<>();
+    List<Broadcast> broadcasts = new CopyOnWriteArrayList<>();
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public int getLanes() {
+        return lanes;
+    }
+
+    public void setLanes(int lanes) {
+        this.lanes = lanes;
+    }
+
+    public int getLaneCapacity() {
+        return laneCapacity;
+    }
+
+    public void setLaneCapacity(int laneCapacity) {
+        this.laneCapacity = laneCapacity;
+    }
 
     public void addSourceNotificationListener(Object src, NotificationListener listener) {
-        List<NotificationListener> listeners = srcNotificationListeners.computeIfAbsent(src, n -> new Vector<>());
-        listeners.add(listener);
+        srcNotificationListeners.compute(src, (k, array) -> add(array, listener));
     }
 
     public void removeSourceNotificationListener(Object src, NotificationListener listener) {
-        List<NotificationListener> listeners = srcNotificationListeners.computeIfAbsent(src, n -> new Vector<>());
-        listeners.remove(listener);
+        srcNotificationListeners.computeIfPresent(src, (k, array) -> remove(array, listener));
     }
 
     public <T extends Notification> void addNotificationListener(Class<T> cls, NotificationListener<T> listener) {
-        List<NotificationListener> listeners = notificationListeners.computeIfAbsent(cls, n -> new Vector<>());
-        listeners.add(listener);
+        notificationListeners.compute(cls, (k, array) -> add(array, listener));
+        dispatchTable = new ConcurrentHashMap<>();
     }
 
     public <T extends Notification> void removeNotificationListener(Class<T> cls, NotificationListener<T> listener) {
-        List<NotificationListener> listeners = notificationListeners.computeIfAbsent(cls, n -> new Vector<>());
-        listeners.remove(listener);
+        notificationListeners.computeIfPresent(cls, (k, array) -> remove(array, listener));
+        dispatchTable = new ConcurrentHashMap<>();
     }
 
     public void fireNotification(Notification notification) {
-        if (notification.source() != null) {
-            List<NotificationListener> listeners = srcNotificationListeners.get(notification.source());
-            if (listeners != null)
-                listeners.forEach(listener -> listener.onEvent(notification));
-        }
+        NotificationListener[] srcListeners = (notification.source() != null) ? srcNotificationListeners.get(notification.source()) : null;
+        NotificationListener[] listeners = resolve(notification.getClass());
+        if (srcListeners == null && listeners.length == 0)
+            return;
 
-        Class cls = notification.getClass();
-        while (!cls.equals(Object.class)) {
-            List<NotificationListener> listeners = notificationListeners.get(cls);
-            if (listeners != null)
-                listeners.forEach(listener -> listener.onEvent(notification));
-            cls = cls.getSuperclass();
+        if (async) {
+            Object key = (notification.source() != null) ? notification.source() : notification.getClass();
+            getNotificationLanes().execute(key, () -> deliver(notification, srcListeners, listeners));
+        } else {
+            deliver(notification, srcListeners, listeners);
         }
     }
 
     public List<NotificationListener> getNotificationListeners(Notification notification) {
         List<NotificationListener> listeners = new ArrayList<>();
         if (notification.source() != null) {
-            List<NotificationListener> list = srcNotificationListeners.get(notification.source());
-            if (list != null)
-                listeners.addAll(list);
+            NotificationListener[] array = srcNotificationListeners.get(notification.source());
+            if (array != null)
+                listeners.addAll(Arrays.asList(array));
+        }
+        listeners.addAll(Arrays.asList(resolve(notification.getClass())));
+        return listeners;
+    }
+
+    /**
+     * Stops the async lanes after delivering what is already queued.
+     */
+    public synchronized void shutdown() {
+        if (notificationLanes != null) {
+            notificationLanes.shutdown();
+            notificationLanes = null;
+        }
+    }
+
+    private void deliver(Notification notification, NotificationListener[] srcListeners, NotificationListener[] listeners) {
+        if (srcListeners != null) {
+            for (NotificationListener listener : srcListeners)
+                onEvent(listener, notification);
+        }
+        for (NotificationListener listener : listeners)
+            onEvent(listener, notification);
+    }
+
+    private void onEvent(NotificationListener listener, Notification notification) {
+        if (!async) {
+            listener.onEvent(notification);
+            return;
         }
-        List<NotificationListener> list = notificationListeners.get(notification.getClass());
-        if (list != null)
-            listeners.addAll(list);
+        // there is no caller to report to
+        try {
+            listener.onEvent(notification);
+        } catch (Exception ex) {
+            logger.warn("Notification listener " + listener.getDescription() + " failed", ex);
+        }
+    }
+
+    private NotificationListener[] resolve(Class cls) {
+        ConcurrentMap<Class, NotificationListener[]> table = dispatchTable;
+        NotificationListener[] listeners = table.get(cls);
+        if (listeners != null)
+            return listeners;
 
-        return list;
+        List<NotificationListener> list = new ArrayList<>();
+        Class c = cls;
+        while (c != null && !c.equals(Object.class)) {
+            NotificationListener[] array = notificationListeners.get(c);
+            if (array != null)
+                list.addAll(Arrays.asList(array));
+            c = c.getSuperclass();
+        }
+        listeners = list.isEmpty() ? EMPTY : list.toArray(new NotificationListener[list.size()]);
+        table.put(cls, listeners);
+        return listeners;
+    }
+
+    private synchronized NotificationLanes getNotificationLanes() {
+        if (notificationLanes == null)
+            notificationLanes = new NotificationLanes(lanes, laneCapacity);
+        return notificationLanes;
+    }
+
+    private static NotificationListener[] add(NotificationListener[] array, NotificationListener listener) {
+        if (array == null)
+            return new NotificationListener[] { listener };
+        NotificationListener[] copy = Arrays.copyOf(array, array.length + 1);
+        copy[array.length] = listener;
+        return copy;
+    }
+
+    private static NotificationListener[] remove(NotificationListener[] array, NotificationListener listener) {
+        List<NotificationListener> list = new ArrayList<>(Arrays.asList(array));
+        list.remove(listener);
+        return list.isEmpty() ? null : list.toArray(new NotificationListener[list.size()]);
     }
 
     // ***************************************************************************************
@@ -122,15 +231,27 @@ public class NotificationCenter implements Broadcast {
 
     @Override
     public void publish(String topic, Serializable object) {
-        for (Broadcast broadcast: broadcasts) {
-            broadcast.publish(topic, object);
+        if (broadcasts.isEmpty())
+            return;
+        if (async) {
+            getNotificationLanes().execute(topic, () -> broadcasts.forEach(broadcast -> broadcast.publish(topic, object)));
+        } else {
+            for (Broadcast broadcast: broadcasts) {
+                broadcast.publish(topic, object);
+            }
         }
     }
 
     @Override
     public <T extends Serializable> void publish(Class<T> cls, T object) {
-        for (Broadcast broadcast: broadcasts) {
-            broadcast.publish(cls, object);
+        if (broadcasts.isEmpty())
+            return;
+        if (async) {
+            getNotificationLanes().execute(cls.getName(), () -> broadcasts.forEach(broadcast -> broadcast.publish(cls, object)));
+        } else {
+            for (Broadcast broadcast: broadcasts) {
+                broadcast.publish(cls, object);
+            }
         }
     }
 
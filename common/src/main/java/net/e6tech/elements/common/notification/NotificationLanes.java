@@ -0,0 +1,118 @@
+/*
+Copyright 2015 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.e6tech.elements.common.notification;
+
+import net.e6tech.elements.common.logging.Logger;
+import net.e6tech.elements.common.util.SystemException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed set of single-threaded lanes with bounded queues.  Work with the same key always runs on
+ * the same lane, in submission order.  execute blocks while the lane is full, except when called from a
+ * lane, e.g. by a listener that fires another notification: a lane waiting on a full lane, possibly
+ * itself, could wait forever, so the work runs inline on the calling lane instead.
+ */
+class NotificationLanes {
+    private static final Logger logger = Logger.getLogger();
+    private static final Runnable STOP = () -> {};
+
+    private final BlockingQueue<Runnable>[] queues;
+    private final Thread[] threads;
+
+    @SuppressWarnings("unchecked")
+    NotificationLanes(int lanes, int capacity) {
+        if (lanes <= 0 || capacity <= 0)
+            throw new IllegalArgumentException("lanes and capacity must be positive");
+        queues = new BlockingQueue[lanes];
+        threads = new Thread[lanes];
+        for (int i = 0; i < lanes; i++) {
+            BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(capacity);
+            queues[i] = queue;
+            threads[i] = new Lane(() -> run(queue), "notification-lane-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    void execute(Object key, Runnable runnable) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        BlockingQueue<Runnable> queue = queues[(h & 0x7fffffff) % queues.length];
+        try {
+            if (!(Thread.currentThread() instanceof Lane))
+                queue.put(runnable);
+            else if (!queue.offer(runnable))
+                runSafely(runnable);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SystemException(e);
+        }
+    }
+
+    @SuppressWarnings("squid:S1181")
+    private static void runSafely(Runnable runnable) {
+        try {
+            runnable.run();
+        } catch (Throwable th) {
+            logger.warn("Notification delivery failed", th);
+        }
+    }
+
+    void shutdown() {
+        for (BlockingQueue<Runnable> queue : queues) {
+            try {
+                queue.put(STOP);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @SuppressWarnings("squid:S1181")
+    private static void run(BlockingQueue<Runnable> queue) {
+        while (true) {
+            Runnable runnable;
+            try {
+                runnable = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (runnable == STOP)
+                return;
+            runSafely(runnable);
+        }
+    }
+
+    private static class Lane extends Thread {
+        Lane(Runnable runnable, String name) {
+            super(runnable, name);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2015 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.reflection;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.dynamic.scaffold.InstrumentedType;
+import net.bytebuddy.implementation.Implementation;
+import net.bytebuddy.implementation.bytecode.ByteCodeAppender;
+import net.bytebuddy.implementation.bytecode.Removal;
+import net.bytebuddy.implementation.bytecode.StackManipulation;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
+import net.bytebuddy.implementation.bytecode.assign.TypeCasting;
+import net.bytebuddy.implementation.bytecode.member.MethodInvocation;
+import net.bytebuddy.implementation.bytecode.member.MethodReturn;
+import net.bytebuddy.implementation.bytecode.member.MethodVariableAccess;
+import net.bytebuddy.jar.asm.MethodVisitor;
+import net.bytebuddy.matcher.ElementMatchers;
+import net.e6tech.elements.common.logging.Logger;
+import net.e6tech.elements.common.util.SystemException;
+import net.e6tech.elements.common.util.datastructure.Pair;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies bean properties from one class to another.  Properties whose values can be assigned as is, or through
+ * a primitive widening or boxing conversion, are copied by a class generated for the source/target pair that
+ * calls the getters and setters directly.  The remaining properties, e.g. collections, enums or nested beans,
+ * go through Replicator's conversions.  Properties are set in the same order as Replicator's reflective copy:
+ * each run of consecutive direct properties gets its own generated class, called in turn with the converted ones.
+ *
+ * Copiers are immutable, so they can be shared freely.  They are cached in a ClassValue of the source class so
+ * that a class loader, e.g. of a Groovy script or a plugin, can still be unloaded once its classes are unused.
+ */
+public class BeanCopier {
+    private static final Logger logger = Logger.getLogger();
+    private static final AtomicInteger copierCount = new AtomicInteger();
+    private static final Set<Pair<Class, Class>> wideningConversions = new HashSet<>();
+
+    static {
+        // char and float->double are left out because Replicator converts through strings, which gives different results
+        Class[][] widening = {
+                { byte.class, short.class, int.class, long.class, float.class, double.class },
+                { short.class, int.class, long.class, float.class, double.class },
+                { int.class, long.class, float.class, double.class },
+                { long.class, float.class, double.class }
+        };
+        for (Class[] row : widening)
+            for (int i = 1; i < row.length; i++)
+                wideningConversions.add(new Pair<>(row[0], row[i]));
+    }
+
+    // copiers by target class, per source class
+    private static final ClassValue<Map<Class, BeanCopier>> copiers = new ClassValue<Map<Class, BeanCopier>>() {
+        @Override
+        protected Map<Class, BeanCopier> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private final Class sourceClass;
+    private final Class targetClass;
+    private final boolean generated;
+    // step i either runs generatedSteps[i] or, if it is null, copies sourceProperties[i] to targetProperties[i]
+    private final Copier[] generatedSteps;
+    private final PropertyDescriptor[] sourceProperties;
+    private final PropertyDescriptor[] targetProperties;
+
+    public static BeanCopier of(Class sourceClass, Class targetClass) {
+        Map<Class, BeanCopier> map = copiers.get(sourceClass);
+        BeanCopier copier = map.get(targetClass);
+        if (copier == null)
+            copier = map.computeIfAbsent(targetClass, cls -> new BeanCopier(sourceClass, cls));
+        return copier;
+    }
+
+    BeanCopier(Class sourceClass, Class targetClass) {
+        this.sourceClass = sourceClass;
+        this.targetClass = targetClass;
+        Map<String, PropertyDescriptor> targets = new HashMap<>();
+        for (PropertyDescriptor prop : Reflection.getBeanInfo(targetClass).getPropertyDescriptors())
+            targets.put(prop.getName(), prop);
+
+        List<Copier> steps = new ArrayList<>();
+        List<PropertyDescriptor> stepSources = new ArrayList<>();
+        List<PropertyDescriptor> stepTargets = new ArrayList<>();
+        List<PropertyDescriptor[]> run = new ArrayList<>();
+        ClassLoader loader = classLoader(sourceClass, targetClass);
+        for (PropertyDescriptor prop : Reflection.getBeanInfo(sourceClass).getPropertyDescriptors()) {
+            Method getter = prop.getReadMethod();
+            PropertyDescriptor targetDesc = targets.get(prop.getName());
+            if (getter == null || targetDesc == null || targetDesc.getWriteMethod() == null || doNotCopy(prop))
+                continue;
+            Method setter = targetDesc.getWriteMethod();
+            if (loader != null && isDirect(getter.getReturnType(), setter.getParameterTypes()[0])
+                    && accessible(getter, loader) && accessible(setter, loader)) {
+                run.add(new PropertyDescriptor[] { prop, targetDesc });
+            } else {
+                addRun(run, loader, steps, stepSources, stepTargets);
+                steps.add(null);
+                stepSources.add(prop);
+                stepTargets.add(targetDesc);
+            }
+        }
+        addRun(run, loader, steps, stepSources, stepTargets);
+
+        boolean anyGenerated = false;
+        for (Copier step : steps)
+            anyGenerated |= (step != null);
+        this.generated = anyGenerated;
+        this.generatedSteps = steps.toArray(new Copier[0]);
+        this.sourceProperties = stepSources.toArray(new PropertyDescriptor[0]);
+        this.targetProperties = stepTargets.toArray(new PropertyDescriptor[0]);
+    }
+
+    // turns a run of direct properties into one generated step, or into converted steps if generation fails.
+    private void addRun(List<PropertyDescriptor[]> run, ClassLoader loader, List<Copier> steps,
+                        List<PropertyDescriptor> stepSources, List<PropertyDescriptor> stepTargets) {
+        if (run.isEmpty())
+            return;
+        Copier copier = generate(run, loader);
+        if (copier != null) {
+            steps.add(copier);
+            stepSources.add(null);
+            stepTargets.add(null);
+        } else {
+            for (PropertyDescriptor[] pair : run) {
+                steps.add(null);
+                stepSources.add(pair[0]);
+                stepTargets.add(pair[1]);
+            }
+        }
+        run.clear();
+    }
+
+    public Class getSourceClass() {
+        return sourceClass;
+    }
+
+    public Class getTargetClass() {
+        return targetClass;
+    }
+
+    /**
+     * Whether some of the properties are copied by generated code.
+     */
+    public boolean isGenerated() {
+        return generated;
+    }
+
+    public void copy(Object target, Object source) {
+        copy(target, source, new Reflection.Replicator(), new HashMap<>());
+    }
+
+    void copy(Object target, Object source, Reflection.Replicator replicator, Map<Integer, Object> seen) {
+        for (int i = 0; i < generatedSteps.length; i++) {
+            if (generatedSteps[i] == null) {
+                replicator.copyProperty(target, targetProperties[i], source, sourceProperties[i], seen, null);
+                continue;
+            }
+            try {
+                generatedSteps[i].copy(target, source);
+            } catch (RuntimeException ex) {
+                throw new SystemException(ex);
+            }
+        }
+    }
+
+    static boolean doNotCopy(PropertyDescriptor prop) {
+        if (prop.getReadMethod() != null && prop.getReadMethod().getAnnotation(DoNotCopy.class) != null)
+            return true;
+        return prop.getWriteMethod() != null && prop.getWriteMethod().getAnnotation(DoNotCopy.class) != null;
+    }
+
+    /*
+     * Mirrors Replicator.copy: values are set as is when assignable unless they may be collections, which are
+     * copied into new collections.  Primitive widening and boxing give the same values as Replicator's conversions.
+     */
+    private static boolean isDirect(Class from, Class to) {
+        if (from.isPrimitive()) {
+            if (from == to)
+                return true;
+            if (to.isPrimitive())
+                return wideningConversions.contains(new Pair<>(from, to));
+            return Primitives.getPrimitiveType(to) == from;
+        }
+        if (to.isPrimitive() || !to.isAssignableFrom(from))
+            return false;
+        return !from.isInterface() && from != Object.class && !Collection.class.isAssignableFrom(from);
+    }
+
+    private static boolean accessible(Method method, ClassLoader loader) {
+        Class declaring = method.getDeclaringClass();
+        if (!Modifier.isPublic(method.getModifiers()) || !Modifier.isPublic(declaring.getModifiers()))
+            return false;
+        return visible(declaring, loader);
+    }
+
+    private static boolean visible(Class cls, ClassLoader loader) {
+        try {
+            return Class.forName(cls.getName(), false, loader) == cls;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    // a loader that sees the Copier interface, used as the parent of the generated class
+    private static ClassLoader classLoader(Class sourceClass, Class targetClass) {
+        for (Class cls : new Class[] { targetClass, sourceClass }) {
+            ClassLoader loader = cls.getClassLoader();
+            if (loader != null && visible(Copier.class, loader))
+                return loader;
+        }
+        return BeanCopier.class.getClassLoader();
+    }
+
+    @SuppressWarnings("squid:S1181")
+    private Copier generate(List<PropertyDescriptor[]> direct, ClassLoader loader) {
+        try {
+            Class<? extends Copier> cls = new ByteBuddy()
+                    .subclass(Copier.class)
+                    .name(BeanCopier.class.getName() + "$$" + sourceClass.getSimpleName() + "$" + targetClass.getSimpleName() + "$" + copierCount.incrementAndGet())
+                    .method(ElementMatchers.named("copy"))
+                    .intercept(new CopyImplementation(direct))
+                    .make()
+                    .load(loader, ClassLoadingStrategy.Default.WRAPPER)
+                    .getLoaded();
+            return cls.getDeclaredConstructor().newInstance();
+        } catch (Throwable th) {
+            logger.warn("Cannot generate copier from " + sourceClass + " to " + targetClass, th);
+            return null;
+        }
+    }
+
+    /**
+     * Generated per run of direct properties of a source/target pair.
+     */
+    public interface Copier {
+        void copy(Object target, Object source);
+    }
+
+    private static class CopyImplementation implements Implementation, ByteCodeAppender {
+        private final List<PropertyDescriptor[]> properties;
+
+        CopyImplementation(List<PropertyDescriptor[]> properties) {
+            this.properties = properties;
+        }
+
+        @Override
+        public InstrumentedType prepare(InstrumentedType instrumentedType) {
+            return instrumentedType;
+        }
+
+        @Override
+        public ByteCodeAppender appender(Target implementationTarget) {
+            return this;
+        }
+
+        @Override
+        public Size apply(MethodVisitor methodVisitor, Context context, MethodDescription instrumentedMethod) {
+            List<StackManipulation> code = new ArrayList<>();
+            for (PropertyDescriptor[] property : properties) {
+                Method read = property[0].getReadMethod();
+                Method write = property[1].getWriteMethod();
+                MethodDescription getter = new MethodDescription.ForLoadedMethod(read);
+                MethodDescription setter = new MethodDescription.ForLoadedMethod(write);
+                code.add(MethodVariableAccess.REFERENCE.loadFrom(1));
+                code.add(TypeCasting.to(setter.getDeclaringType().asErasure()));
+                code.add(MethodVariableAccess.REFERENCE.loadFrom(2));
+                code.add(TypeCasting.to(getter.getDeclaringType().asErasure()));
+                code.add(MethodInvocation.invoke(getter));
+                code.add(Assigner.DEFAULT.assign(TypeDescription.ForLoadedType.of(read.getReturnType()).asGenericType(),
+                        TypeDescription.ForLoadedType.of(write.getParameterTypes()[0]).asGenericType(),
+                        Assigner.Typing.STATIC));
+                code.add(MethodInvocation.invoke(setter));
+                code.add(Removal.of(setter.getReturnType()));
+            }
+            code.add(MethodReturn.VOID);
+            StackManipulation.Size size = new StackManipulation.Compound(code).apply(methodVisitor, context);
+            return new Size(size.getMaximalSize(), instrumentedMethod.getStackSize());
+        }
+    }
+}
@@ -31,6 +31,8 @@ import java.lang.reflect.*;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -408,38 +410,59 @@ public class Reflection {
     }
 
     public static class Replicator {
-        private Map<Class, Map<String, PropertyDescriptor>> targetPropertiesDescriptor = new HashMap<>();
-        private Map<Class, PropertyDescriptor[]> propertyDescriptors = new HashMap<>();
-
-        private synchronized Map<String, PropertyDescriptor> getTargetProperties(Class cls) {
-            return targetPropertiesDescriptor.computeIfAbsent(cls, key -> {
-                HashMap<String, PropertyDescriptor> descriptors = new HashMap<>();
-                PropertyDescriptor[] props = getBeanInfo(key).getPropertyDescriptors();
-                for (PropertyDescriptor prop : props) {
-                    descriptors.put(prop.getName(), prop);
-                }
-                return descriptors;
-            });
+        private volatile Map<Class, Map<String, PropertyDescriptor>> targetPropertiesDescriptor = new ConcurrentHashMap<>();
+        private volatile Map<Class, PropertyDescriptor[]> propertyDescriptors = new ConcurrentHashMap<>();
+        private volatile boolean customDescriptors = false;
+
+        private Map<String, PropertyDescriptor> getTargetProperties(Class cls) {
+            Map<Class, Map<String, PropertyDescriptor>> map = targetPropertiesDescriptor;
+            if (map instanceof ConcurrentMap)
+                return map.computeIfAbsent(cls, this::loadTargetProperties);
+            synchronized (this) {
+                return map.computeIfAbsent(cls, this::loadTargetProperties);
+            }
         }
 
-        private synchronized PropertyDescriptor[] getPropertyDescriptors(Class cls) {
-            return propertyDescriptors.computeIfAbsent(cls, key -> getBeanInfo(key).getPropertyDescriptors());
+        private Map<String, PropertyDescriptor> loadTargetProperties(Class cls) {
+            HashMap<String, PropertyDescriptor> descriptors = new HashMap<>();
+            PropertyDescriptor[] props = getBeanInfo(cls).getPropertyDescriptors();
+            for (PropertyDescriptor prop : props) {
+                descriptors.put(prop.getName(), prop);
+            }
+            return descriptors;
         }
 
-        public synchronized Map<Class, Map<String, PropertyDescriptor>> getTargetPropertiesDescriptor() {
+        private PropertyDescriptor[] getPropertyDescriptors(Class cls) {
+            Map<Class, PropertyDescriptor[]> map = propertyDescriptors;
+            if (map instanceof ConcurrentMap)
+                return map.computeIfAbsent(cls, key -> getBeanInfo(key).getPropertyDescriptors());
+            synchronized (this) {
+                return map.computeIfAbsent(cls, key -> getBeanInfo(key).getPropertyDescriptors());
+            }
+        }
+
+        public Map<Class, Map<String, PropertyDescriptor>> getTargetPropertiesDescriptor() {
             return targetPropertiesDescriptor;
         }
 
-        public synchronized void setTargetPropertiesDescriptor(Map<Class, Map<String, PropertyDescriptor>> targetPropertiesDescriptor) {
+        /**
+         * The map is used as is, not copied.  Once descriptors are supplied, copy uses them instead of BeanCopier.
+         */
+        public void setTargetPropertiesDescriptor(Map<Class, Map<String, PropertyDescriptor>> targetPropertiesDescriptor) {
             this.targetPropertiesDescriptor = targetPropertiesDescriptor;
+            customDescriptors = true;
         }
 
-        public synchronized Map<Class, PropertyDescriptor[]> getPropertyDescriptors() {
+        public Map<Class, PropertyDescriptor[]> getPropertyDescriptors() {
             return propertyDescriptors;
         }
 
-        public synchronized void setPropertyDescriptors(Map<Class, PropertyDescriptor[]> propertyDescriptors) {
+        /**
+         * The map is used as is, not copied.  Once descriptors are supplied, copy uses them instead of BeanCopier.
+         */
+        public void setPropertyDescriptors(Map<Class, PropertyDescriptor[]> propertyDescriptors) {
             this.propertyDescriptors = propertyDescriptors;
+            customDescriptors = true;
         }
 
         public <T> T newInstance(Class<T> cls, Object object) {
@@ -545,18 +568,22 @@ public class Reflection {
             if (!convertibleTypes.contains(type))
                 return null;
 
+            Object converted = convertNumber(type, object);
+            if (converted != null)
+                return converted;
+
             if (type == Boolean.TYPE || type == Boolean.class)
-                return new Boolean(object.toString());
+                return (object instanceof Boolean) ? object : Boolean.valueOf(object.toString());
             else if (type == Double.TYPE || type == Double.class) {
-                return new Double(object.toString());
+                return Double.valueOf(object.toString());
             } else if (type == Float.TYPE || type == Float.class) {
-                return new Float(object.toString());
+                return Float.valueOf(object.toString());
             } else if (type == Integer.TYPE || type == Integer.class) {
-                return new Integer(object.toString());
+                return Integer.valueOf(object.toString());
             } else if (type == Long.TYPE || type == Long.class) {
-                return new Long(object.toString());
+                return Long.valueOf(object.toString());
             } else if (type == Short.TYPE || type == Short.class) {
-                return new Short(object.toString());
+                return Short.valueOf(object.toString());
             } else if (type == BigDecimal.class) {
                 return new BigDecimal(object.toString());
             } else if (type == BigInteger.class) {
@@ -565,6 +592,31 @@ public class Reflection {
             return null;
         }
 
+        /*
+         * Converts integral values without going through strings.  Returns null when the value is not integral or does
+         * not fit, in which case the string conversion applies (and reports the error).
+         */
+        private Object convertNumber(Class type, Object object) {
+            if (!(object instanceof Long || object instanceof Integer || object instanceof Short || object instanceof Byte))
+                return null;
+            long value = ((Number) object).longValue();
+            if (type == Long.TYPE || type == Long.class)
+                return value;
+            else if (type == Integer.TYPE || type == Integer.class)
+                return (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) ? (Object) (int) value : null;
+            else if (type == Short.TYPE || type == Short.class)
+                return (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) ? (Object) (short) value : null;
+            else if (type == Double.TYPE || type == Double.class)
+                return (double) value;
+            else if (type == Float.TYPE || type == Float.class)
+                return (float) value;
+            else if (type == BigDecimal.class)
+                return BigDecimal.valueOf(value);
+            else if (type == BigInteger.class)
+                return BigInteger.valueOf(value);
+            return null;
+        }
+
         public void copy(Object target, Object object, CopyListener copyListener) {
             copy(target, object, new HashMap<>(), copyListener);
         }
@@ -573,54 +625,52 @@ public class Reflection {
             copy(target, object, new HashMap<>(), null);
         }
 
-        @SuppressWarnings("squid:S135")
         private void copy(Object target, Object object, Map<Integer, Object> seen, CopyListener copyListener) {
             if (target == null || object == null)
                 return;
 
+            if (copyListener == null && !customDescriptors) {
+                BeanCopier.of(object.getClass(), target.getClass()).copy(target, object, this, seen);
+                return;
+            }
+
             for (PropertyDescriptor prop : getPropertyDescriptors(object.getClass())) {
                 if (prop.getReadMethod() != null) {
                     PropertyDescriptor targetDesc = getTargetProperties(target.getClass()).get(prop.getName());
-                    if (targetDesc == null)
+                    if (targetDesc == null || targetDesc.getWriteMethod() == null || BeanCopier.doNotCopy(prop))
                         continue;
+                    copyProperty(target, targetDesc, object, prop, seen, copyListener);
+                }
+            }
+        }
 
-                    Method setter = targetDesc.getWriteMethod();
-                    if (setter == null)
-                        continue;
-                    try {
-                        boolean annotated = (prop.getReadMethod().getAnnotation(DoNotCopy.class) != null);
-                        if (!annotated && prop.getWriteMethod() != null) {
-                            annotated = (prop.getWriteMethod().getAnnotation(DoNotCopy.class) != null);
-                        }
-                        if (!annotated) {
-                            try {
-                                boolean handled = false;
-                                if (copyListener != null) {
-                                    handled = copyListener.copy(target, targetDesc, object, prop);
-                                }
-                                if (!handled) {
-                                    Object value = prop.getReadMethod().invoke(object);
-
-                                    if (!(value instanceof Collection) &&
-                                            setter.getParameterTypes()[0].isAssignableFrom(prop.getReadMethod().getReturnType())) {
-                                        setter.invoke(target, value);
-                                    } else {
-                                        try {
-                                            Object converted = newInstance(setter.getGenericParameterTypes()[0], value, seen, copyListener);
-                                            setter.invoke(target, converted);
-                                        } catch (Exception ex) {
-                                            logger.warn("Error copying " + value + " to " + setter.getDeclaringClass() + "::" + setter.getName(), ex);
-                                        }
-                                    }
-                                }
-                            } catch (PropertyVetoException ex) {
-                                Logger.suppress(ex);
-                            }
+        void copyProperty(Object target, PropertyDescriptor targetDesc, Object object, PropertyDescriptor prop,
+                          Map<Integer, Object> seen, CopyListener copyListener) {
+            Method setter = targetDesc.getWriteMethod();
+            try {
+                boolean handled = false;
+                if (copyListener != null) {
+                    handled = copyListener.copy(target, targetDesc, object, prop);
+                }
+                if (!handled) {
+                    Object value = prop.getReadMethod().invoke(object);
+
+                    if (!(value instanceof Collection) &&
+                            setter.getParameterTypes()[0].isAssignableFrom(prop.getReadMethod().getReturnType())) {
+                        setter.invoke(target, value);
+                    } else {
+                        try {
+                            Object converted = newInstance(setter.getGenericParameterTypes()[0], value, seen, copyListener);
+                            setter.invoke(target, converted);
+                        } catch (Exception ex) {
+                            logger.warn("Error copying " + value + " to " + setter.getDeclaringClass() + "::" + setter.getName(), ex);
                         }
-                    } catch (Exception e) {
-                        throw new SystemException(e);
                     }
                 }
+            } catch (PropertyVetoException ex) {
+                Logger.suppress(ex);
+            } catch (Exception e) {
+                throw new SystemException(e);
             }
         }
 
@@ -410,20 +410,22 @@ public class Atom implements Map<String, Object> {
     }
 
     public void waitFor(String beanName, Consumer consumer) {
+        BootTimeline.Component waiter = BootTimeline.current();
         beanLifecycle.addBeanListener(beanName, new BeanListener() {
             @Override
             public void initialized(Object bean) {
-                consumer.accept(bean);
+                BootTimeline.resume(waiter, () -> consumer.accept(bean));
                 beanLifecycle.removeBeanListener(this);
             }
         });
     }
 
     public void waitFor(Class cls, Consumer consumer) {
+        BootTimeline.Component waiter = BootTimeline.current();
         beanLifecycle.addBeanListener(cls, new BeanListener() {
             @Override
             public void initialized(Object bean) {
-                consumer.accept(bean);
+                BootTimeline.resume(waiter, () -> consumer.accept(bean));
                 beanLifecycle.removeBeanListener(this);
             }
         });
@@ -37,23 +37,28 @@ public class BeanLifecycle {
     private Map<Class, List<BeanListener>> classBeanListeners = new Hashtable<>();
 
     public void addBeanListener(String name, BeanListener beanListener) {
-        if (initializedBeans.get(name) != null) {
-            beanListener.initialized(initializedBeans.get(name));
-            return;
+        Object bean;
+        synchronized (this) { // so that a bean initialized on another thread is either seen here or notifies the listener
+            bean = initializedBeans.get(name);
+            if (bean == null)
+                namedBeanListeners.computeIfAbsent(name, n -> new Vector<>()).add(beanListener);
         }
-        List<BeanListener> listeners = namedBeanListeners.computeIfAbsent(name, n -> new Vector<>());
-        listeners.add(beanListener);
+        if (bean != null)
+            beanListener.initialized(bean);
     }
 
     public void addBeanListener(Class cls, BeanListener beanListener) {
-        for (Object bean : initializedBeans.values()) {
+        List<Object> beans;
+        synchronized (this) {
+            beans = new ArrayList<>(initializedBeans.values());
+            classBeanListeners.computeIfAbsent(cls, n -> new Vector<>()).add(beanListener);
+        }
+
+        for (Object bean : beans) {
             if (cls.isAssignableFrom(bean.getClass())) {
                 beanListener.initialized(bean);
             }
         }
-
-        List<BeanListener> listeners = classBeanListeners.computeIfAbsent(cls, n -> new Vector<>());
-        listeners.add(beanListener);
     }
 
     public void removeBeanListener(BeanListener listener) {
@@ -64,8 +69,7 @@ public class BeanLifecycle {
     }
 
     public void fireBeanInitialized(String beanName, Object bean) {
-        fireBeanEvent(beanName, bean, BEAN_INITIALIZED);
-        initializedBeans.put(beanName, bean);
+        fireBeanEvent(beanName, bean, BEAN_INITIALIZED, initializedBeans);
     }
 
     public boolean isBeanInitialized(Object bean) {
@@ -73,8 +77,7 @@ public class BeanLifecycle {
     }
 
     public void fireBeanStarted(String beanName, Object bean) {
-        fireBeanEvent(beanName, bean, BEAN_STARTED);
-        startedBeans.put(beanName, bean);
+        fireBeanEvent(beanName, bean, BEAN_STARTED, startedBeans);
     }
 
     public boolean isBeanStarted(Object bean) {
@@ -82,8 +85,7 @@ public class BeanLifecycle {
     }
 
     public void fireBeanLaunched(String beanName, Object bean) {
-        fireBeanEvent(beanName, bean, BEAN_LAUNCHED);
-        launchedBeans.put(beanName, bean);
+        fireBeanEvent(beanName, bean, BEAN_LAUNCHED, launchedBeans);
     }
 
     public boolean isBeanLaunched(Object bean) {
@@ -107,26 +109,25 @@ public class BeanLifecycle {
         classBeanListeners.clear();
     }
 
-    private void fireBeanEvent(String beanName, Object bean, int eventType) {
-        List<BeanListener> list = null; // to avoid concurrent mod to listeners
-        if (beanName != null) {
-            list = new ArrayList<>();
-            List<BeanListener> listeners = namedBeanListeners.get(beanName);
-            if (listeners != null) {
-                list.addAll(listeners);
-            }
-        }
-        for (Map.Entry<Class, List<BeanListener>> entry : classBeanListeners.entrySet()) {
-            if (list == null)
-                list = new ArrayList<>();
-            if (entry.getKey().isAssignableFrom(bean.getClass())) {
-                List<BeanListener> listeners = entry.getValue();
-                if (listeners != null)
+    private void fireBeanEvent(String beanName, Object bean, int eventType, Map<String, Object> beans) {
+        List<BeanListener> list = new ArrayList<>(); // to avoid concurrent mod to listeners
+        synchronized (this) {
+            if (beanName != null) {
+                List<BeanListener> listeners = namedBeanListeners.get(beanName);
+                if (listeners != null) {
                     list.addAll(listeners);
+                }
+            }
+            for (Map.Entry<Class, List<BeanListener>> entry : classBeanListeners.entrySet()) {
+                if (entry.getKey().isAssignableFrom(bean.getClass())) {
+                    List<BeanListener> listeners = entry.getValue();
+                    if (listeners != null)
+                        list.addAll(listeners);
+                }
             }
+            beans.put(beanName, bean);
         }
-        if (list != null)
-            list.forEach(beanListener -> notifyBeanListener(beanListener, bean, eventType));
+        list.forEach(beanListener -> notifyBeanListener(beanListener, bean, eventType));
     }
 
     private void notifyBeanListener(BeanListener beanListener, Object bean, int eventType) {
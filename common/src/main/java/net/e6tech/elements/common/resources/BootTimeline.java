@@ -0,0 +1,242 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.resources;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records when each boot component ran, on which thread, and what it depended on.  Dependencies come from
+ * Bootstrap's dependsOn declarations and from Atom.waitFor callbacks observed while the components ran.
+ *
+ * The critical path is reconstructed from the recorded dependencies: starting from the component that finished
+ * last, each step goes back to the dependency of the current component that finished last, i.e. the one it waited
+ * for the longest.
+ */
+public class BootTimeline {
+    private static final ThreadLocal<Component> current = new ThreadLocal<>();
+    private final long origin = System.nanoTime();
+    private final Map<String, Component> components = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * @return the component being booted by the calling thread, or null.
+     */
+    public static Component current() {
+        return current.get();
+    }
+
+    /**
+     * Runs a waitFor callback on behalf of waiter.  If the waiter is still running on another thread, the callback
+     * is deferred until the waiter finishes so that it never runs concurrently with the waiter's own script.
+     */
+    static void resume(Component waiter, Runnable callback) {
+        if (waiter == null) {
+            callback.run();
+            return;
+        }
+        Component provider = current();
+        waiter.waitedFor(provider);
+        if (provider == waiter || !waiter.defer(callback))
+            callback.run();
+    }
+
+    public Component start(String phase, String name, Collection<String> dependencies) {
+        Component component = new Component(phase, name, dependencies);
+        components.put(name, component);
+        component.previous = current.get();
+        current.set(component);
+        component.start = System.nanoTime();
+        return component;
+    }
+
+    public void finish(Component component) {
+        try {
+            component.drain();
+        } finally {
+            component.close();
+            component.end = System.nanoTime();
+            if (component.previous != null)
+                current.set(component.previous);
+            else
+                current.remove();
+        }
+    }
+
+    public List<Component> getComponents() {
+        synchronized (components) {
+            return new ArrayList<>(components.values());
+        }
+    }
+
+    public Component getComponent(String name) {
+        return components.get(name);
+    }
+
+    public long getElapsed(TimeUnit unit) {
+        long end = origin;
+        for (Component component : getComponents())
+            end = Math.max(end, component.end);
+        return unit.convert(end - origin, TimeUnit.NANOSECONDS);
+    }
+
+    public List<Component> getCriticalPath() {
+        List<Component> finished = new ArrayList<>();
+        for (Component component : getComponents()) {
+            if (component.isFinished())
+                finished.add(component);
+        }
+
+        LinkedList<Component> path = new LinkedList<>();
+        Component last = null;
+        for (Component component : finished) {
+            if (last == null || component.end > last.end)
+                last = component;
+        }
+
+        Set<Component> visited = new HashSet<>();
+        while (last != null && visited.add(last)) {
+            path.addFirst(last);
+            Component predecessor = null;
+            for (String name : last.dependencies) {
+                Component dependency = components.get(name);
+                if (dependency != null && dependency.isFinished() && !visited.contains(dependency)
+                        && (predecessor == null || dependency.end > predecessor.end))
+                    predecessor = dependency;
+            }
+            last = predecessor;
+        }
+        return path;
+    }
+
+    public String report() {
+        List<Component> list = getComponents();
+        long total = 0;
+        for (Component component : list)
+            total += component.getDuration(TimeUnit.MILLISECONDS);
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Boot timeline: %d components, %d ms elapsed, %d ms total component time%n",
+                list.size(), getElapsed(TimeUnit.MILLISECONDS), total));
+        builder.append(String.format("    %-10s %-30s %10s %10s  %-20s %s%n", "phase", "component", "start(ms)", "time(ms)", "thread", "depends on"));
+        for (Component component : list) {
+            builder.append(String.format("    %-10s %-30s %10d %10d  %-20s %s%n",
+                    component.getPhase(),
+                    component.getName(),
+                    TimeUnit.NANOSECONDS.toMillis(component.start - origin),
+                    component.getDuration(TimeUnit.MILLISECONDS),
+                    component.getThread(),
+                    component.getDependencies().isEmpty() ? "" : String.join(", ", component.getDependencies())));
+        }
+
+        List<Component> path = getCriticalPath();
+        long critical = 0;
+        StringJoiner joiner = new StringJoiner(" -> ");
+        for (Component component : path) {
+            critical += component.getDuration(TimeUnit.MILLISECONDS);
+            joiner.add(component.getName());
+        }
+        builder.append(String.format("Critical path (%d ms): %s", critical, joiner.toString()));
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return report();
+    }
+
+    public static class Component {
+        private final String phase;
+        private final String name;
+        private final String thread;
+        private final Set<String> dependencies = ConcurrentHashMap.newKeySet();
+        private List<Runnable> deferred = new ArrayList<>();
+        private Component previous;
+        private volatile long start;
+        private volatile long end;
+
+        Component(String phase, String name, Collection<String> dependencies) {
+            this.phase = phase;
+            this.name = name;
+            this.thread = Thread.currentThread().getName();
+            if (dependencies != null)
+                this.dependencies.addAll(dependencies);
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        public Set<String> getDependencies() {
+            return Collections.unmodifiableSet(new TreeSet<>(dependencies));
+        }
+
+        public boolean isFinished() {
+            return end != 0L;
+        }
+
+        public long getDuration(TimeUnit unit) {
+            long stop = isFinished() ? end : System.nanoTime();
+            return unit.convert(stop - start, TimeUnit.NANOSECONDS);
+        }
+
+        void waitedFor(Component provider) {
+            if (provider != null && provider != this)
+                dependencies.add(provider.getName());
+        }
+
+        private synchronized boolean defer(Runnable callback) {
+            if (deferred == null)
+                return false;
+            deferred.add(callback);
+            return true;
+        }
+
+        private void drain() {
+            while (true) {
+                List<Runnable> list;
+                synchronized (this) {
+                    list = deferred;
+                    if (list.isEmpty()) {
+                        deferred = null;
+                        return;
+                    }
+                    deferred = new ArrayList<>();
+                }
+                list.forEach(Runnable::run);
+            }
+        }
+
+        // callbacks arriving after this point run on the provider's thread
+        private synchronized void close() {
+            deferred = null;
+        }
+
+        @Override
+        public String toString() {
+            return name + "(" + getDuration(TimeUnit.MILLISECONDS) + "ms)";
+        }
+    }
+}
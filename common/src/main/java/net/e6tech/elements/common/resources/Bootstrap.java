@@ -32,6 +32,8 @@ import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @SuppressWarnings("squid:S3776")
 public class Bootstrap extends GroovyObjectSupport {
@@ -41,6 +43,11 @@ public class Bootstrap extends GroovyObjectSupport {
     private static final String BOOT_ENV = "bootEnv";
     private static final String BOOT_AFTER = "bootAfter";
     private static final String BOOT_DISABLE_LIST = "bootDisableList";
+    private static final String BOOT_PARALLEL = "bootParallel";
+    private static final String BOOT_DEPENDS_ON = "bootDependsOn";
+    private static final String INIT = "init";
+    private static final String MAIN = "main";
+    private static final String AFTER = "after";
     private static final String PLUGIN_DIRECTORIES = "pluginDirectories";
     private static final String PROVISION_CLASS = "provisionClass";
     private static final String HOST_ENVIRONMENT_FILE = "hostEnvironmentFile";
@@ -60,7 +67,10 @@ public class Bootstrap extends GroovyObjectSupport {
     private ResourceManager resourceManager;
     private MyExpando expando = new MyExpando();
     private Set<String> disableList = new LinkedHashSet<>();
-    private Set bootComponents = new HashSet();
+    private Set bootComponents = ConcurrentHashMap.newKeySet();
+    private int parallel = 0;
+    private Map<String, List<String>> dependsOn = new LinkedHashMap<>();
+    private BootTimeline timeline = new BootTimeline();
     private boolean bootEnv = false;
     private boolean bootProvision = false;
     private boolean bootInit = false;
@@ -140,6 +150,52 @@ public class Bootstrap extends GroovyObjectSupport {
         after.keySet().forEach(key -> setComponent(key, false));
     }
 
+    public int getParallel() {
+        return parallel;
+    }
+
+    /**
+     * Number of threads used to boot main and after components.  When greater than one, components in the same
+     * phase are booted concurrently, subject to the dependencies declared with dependsOn.  Otherwise, components are
+     * booted one at a time in the order they are configured.
+     */
+    public void setParallel(int parallel) {
+        this.parallel = parallel;
+    }
+
+    public Map<String, List<String>> getDependsOn() {
+        return dependsOn;
+    }
+
+    public void setDependsOn(Map map) {
+        dependsOn.clear();
+        dependsOn(map);
+    }
+
+    /**
+     * Declares component dependencies, e.g. dependsOn(web: ['db', 'cache'], cache: 'db').  A component is
+     * not started by a parallel boot until all of its dependencies in the same phase are done.
+     */
+    public Bootstrap dependsOn(Map map) {
+        map.forEach((key, value) -> {
+            List<String> list = dependsOn.computeIfAbsent(key.toString(), k -> new ArrayList<>());
+            if (value instanceof Collection) {
+                for (Object item : (Collection) value)
+                    list.add(item.toString());
+            } else if (value instanceof Object[]) {
+                for (Object item : (Object[]) value)
+                    list.add(item.toString());
+            } else if (value != null) {
+                list.add(value.toString());
+            }
+        });
+        return this;
+    }
+
+    public BootTimeline getTimeline() {
+        return timeline;
+    }
+
     private void setComponent(Object key, boolean on) {
         if (key instanceof Closure) {
             Closure closure = (Closure) key;
@@ -217,8 +273,8 @@ public class Bootstrap extends GroovyObjectSupport {
             logger.warn("Components not configured.  Use main or after to configure components.");
         }
 
-        bootEnv();
-        bootProvision();
+        record("env", "environment", this::bootEnv);
+        record("provision", "provision", this::bootProvision);
         bootInitialContext();
 
         // configure boot after if arg in components is a Map
@@ -279,6 +335,8 @@ public class Bootstrap extends GroovyObjectSupport {
         }
 
         bootMessage("Booting completed");
+        if (logger.isInfoEnabled())
+            logger.info(timeline.report());
 
         // After this point, additional scripts are run by the launch script via exec ResourceManagerScript
 
@@ -364,6 +422,14 @@ public class Bootstrap extends GroovyObjectSupport {
             setupDisableList(p);
         }
 
+        if (getVar(BOOT_PARALLEL) != null) {
+            parallel = Integer.parseInt(getVar(BOOT_PARALLEL).toString());
+        }
+
+        if (getVar(BOOT_DEPENDS_ON) != null) {
+            dependsOn((Map) getVar(BOOT_DEPENDS_ON));
+        }
+
         if (getVar(BOOT_AFTER) != null) {
             Map p = (Map) getVar(BOOT_AFTER);
             p.forEach((key, value) -> {
@@ -479,26 +545,26 @@ public class Bootstrap extends GroovyObjectSupport {
         if (bootInit)
             return;
         bootMessage("Boot initialization");
-        initBoot.forEach(this::exec);
+        initBoot.forEach(item -> record(INIT, item.toString(), () -> exec(item)));
         logger.info("Done pre-booting ******************************************\n");
         bootInit = true;
     }
 
     private void bootMain() {
         bootMessage("Booting main");
-        main.forEach(this::runComponent);
+        runComponents(MAIN, main);
         logger.info("Done booting components **********************************\n");
     }
 
     private void preBoot() {
         bootMessage("Pre-booting");
-        preBoot.forEach(this::runComponent);
+        preBoot.forEach((key, value) -> runComponent(PRE_BOOT, key, value));
         logger.info("Done pre-booting ******************************************\n");
     }
 
     private void postBoot() {
         bootMessage("Post-booting");
-        postBoot.forEach(this::runComponent);
+        postBoot.forEach((key, value) -> runComponent(POST_BOOT, key, value));
         logger.info("Done post-booting ******************************************\n");
     }
 
@@ -518,7 +584,7 @@ public class Bootstrap extends GroovyObjectSupport {
 
     private void bootAfter() {
         bootMessage("Boot after");
-        after.forEach(this::runComponent);
+        runComponents(AFTER, after);
         logger.info("Done boot after ********************************************\n");
     }
 
@@ -530,14 +596,92 @@ public class Bootstrap extends GroovyObjectSupport {
         }
     }
 
-    private void runComponent(Object key, Object value) {
+    private void runComponents(String phase, Map components) {
+        if (parallel > 1 && components.size() > 1)
+            runParallel(phase, components);
+        else
+            components.forEach((key, value) -> runComponent(phase, key, value));
+    }
+
+    /*
+     * Each component becomes a future that runs once the futures of its dependencies in the same phase complete.
+     * If a component fails, its dependents are skipped and the first failure is rethrown after the remaining
+     * components are done.
+     */
+    private void runParallel(String phase, Map components) {
+        Map<String, Object> keys = new LinkedHashMap<>();
+        components.keySet().forEach(key -> keys.put(key.toString(), key));
+
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        Map<String, String> contextMap = ThreadContext.getImmutableContext();
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallel, runnable -> {
+            Thread thread = new Thread(runnable, phase + "-boot-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setContextClassLoader(classLoader);
+            return thread;
+        });
+
+        try {
+            for (String name : keys.keySet())
+                schedule(phase, name, components, keys, futures, new LinkedHashSet<>(), executor, contextMap);
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null)
+                cause = cause.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new SystemException(cause);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @SuppressWarnings("squid:S00107")
+    private CompletableFuture<Void> schedule(String phase, String name, Map components, Map<String, Object> keys,
+                                             Map<String, CompletableFuture<Void>> futures, Set<String> visiting,
+                                             Executor executor, Map<String, String> contextMap) {
+        CompletableFuture<Void> future = futures.get(name);
+        if (future != null)
+            return future;
+        if (!visiting.add(name))
+            throw new SystemException("Circular boot dependency: " + String.join(" -> ", visiting) + " -> " + name);
+
+        List<CompletableFuture<Void>> prerequisites = new ArrayList<>();
+        for (String dependency : dependsOn.getOrDefault(name, Collections.emptyList())) {
+            if (keys.containsKey(dependency)) {
+                prerequisites.add(schedule(phase, dependency, components, keys, futures, visiting, executor, contextMap));
+            } else if (!bootComponents.contains(dependency)) {
+                logger.warn("Component {} depends on {}, which is not booted before {}", name, dependency, phase);
+            }
+        }
+        visiting.remove(name);
+
+        Object key = keys.get(name);
+        Object value = components.get(key);
+        Runnable task = resourceManager.getScripting().isolated(() -> {
+            ThreadContext.putAll(contextMap);
+            try {
+                runComponent(phase, key, value);
+            } finally {
+                ThreadContext.clearMap();
+            }
+        });
+        future = CompletableFuture.allOf(prerequisites.toArray(new CompletableFuture[0])).thenRunAsync(task, executor);
+        futures.put(name, future);
+        return future;
+    }
+
+    private void runComponent(String phase, Object key, Object value) {
         if (key == null || bootComponents.contains(key.toString()))
             return;
         if (key instanceof Closure) {
             Closure closure = (Closure) key;
             runComponentMessage("    Running closure " + closure.toString());
             if (closure.isCase(EMPTY_OBJECT_ARRAY)) {
-                exec(value);
+                record(phase, closure.toString(), () -> exec(value));
             } else {
                 if (logger.isInfoEnabled())
                     logger.info("    !! Closure returns false, skipped running {}", value.toString());
@@ -549,7 +693,7 @@ public class Bootstrap extends GroovyObjectSupport {
             Object on = expando.getProperty(key.toString());
             if (Boolean.TRUE.equals(on)) {
                 runComponentMessage("    Booting *" + key + "*");
-                exec(value);
+                record(phase, key.toString(), () -> exec(value));
             }
             if (logger.isInfoEnabled()) {
                 logger.info("    Done booting *{}*", key);
@@ -559,6 +703,15 @@ public class Bootstrap extends GroovyObjectSupport {
         bootComponents.add(key.toString());
     }
 
+    private void record(String phase, String name, Runnable runnable) {
+        BootTimeline.Component component = timeline.start(phase, name, dependsOn.get(name));
+        try {
+            runnable.run();
+        } finally {
+            timeline.finish(component);
+        }
+    }
+
     private void exec(Object obj) {
         if (obj instanceof Collection) {
             Collection collection = (Collection) obj;
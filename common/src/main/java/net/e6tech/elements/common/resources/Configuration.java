@@ -20,6 +20,7 @@ import net.e6tech.elements.common.logging.Logger;
 import net.e6tech.elements.common.reflection.ObjectConverter;
 import net.e6tech.elements.common.reflection.Reflection;
 import net.e6tech.elements.common.util.SystemException;
+import net.e6tech.elements.common.util.Template;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.AbstractConstruct;
 import org.yaml.snakeyaml.constructor.Constructor;
@@ -52,11 +53,12 @@ public class Configuration extends LinkedHashMap<String, Object> {
     private static Logger logger = Logger.getLogger();
     private static final String NO_SUCH_PROPERTY = ": No such property ";
     private static final String BEGIN = "${";
-    private static final String END = "}";
     private static final YamlConstructor yamlConstructor = new YamlConstructor();
+    private static final ThreadLocal<Set<String>> resolving = ThreadLocal.withInitial(HashSet::new);
 
     private Properties properties = new Properties();
     private Map<String, List<Reference>> references = new HashMap<>();  // reformatMap() for description of usage
+    private Set<String> unresolved = new HashSet<>(); // keys whose values still contain ${} after substitution
 
     public Configuration() {
     }
@@ -112,10 +114,11 @@ public class Configuration extends LinkedHashMap<String, Object> {
         String text = configStr;
         Yaml yaml = newYaml();
         if (text.contains(BEGIN)) {
-            text = parse(text, true);
+            text = Template.compileNested(text).render(properties::getProperty);
         }
         Iterable<Object> iterable = yaml.loadAll(text);
         loadYaml(iterable);
+        unresolved.clear();
 
         references.clear();
         reformatMap("", this, references);
@@ -175,16 +178,30 @@ public class Configuration extends LinkedHashMap<String, Object> {
         return path;
     }
 
+    /**
+     * Returns the value for key.  A string value containing ${other} is resolved once against the other keys,
+     * converted by YAML and stored back, so later calls return the converted value directly.
+     */
     public <T> T get(String key) {
         Object object = super.get(key);
         if (object instanceof String) {
             String value = (String) object;
-            if (value.contains(BEGIN)) {
+            if (value.contains(BEGIN) && !unresolved.contains(key)) {
+                Set<String> keys = resolving.get();
+                if (!keys.add(key))
+                    return (T) object; // circular reference, leave it as is
+                try {
+                    value = Template.compileNested(value).render(this::lookup);
+                } finally {
+                    keys.remove(key);
+                }
                 Yaml yaml = newYaml();
-                value = parse(value, false);
                 Map<String, Object> map = (Map<String, Object>) yaml.load( key + ": " + value);
-                put(key, map.get(key));
-                return (T) map.get(key);
+                Object resolved = map.get(key);
+                put(key, resolved);
+                if (resolved instanceof String && ((String) resolved).contains(BEGIN))
+                    unresolved.add(key);
+                return (T) resolved;
             } else {
                 return (T) object;
             }
@@ -193,69 +210,10 @@ public class Configuration extends LinkedHashMap<String, Object> {
         }
     }
 
-    private String parse(String valueStr, boolean useProperties) {
-        String value = valueStr;
-        int start = value.indexOf(BEGIN);
-
-        if (start >= 0) {
-            boolean loop = true;
-            while (loop) {
-                int end = value.indexOf(END, start + BEGIN.length());
-                if (end < 0) { // no more END token, get out of the loop
-                    loop = false;
-                } else {
-                    int nested = value.indexOf(BEGIN, start + BEGIN.length());
-                    if (nested < end && nested >= 0) { // nested BEGIN token
-                        String substring = parse(value.substring(nested), useProperties);
-                        if (substring.startsWith(BEGIN)) {
-                            // need to skip
-                            int lineTerm = substring.indexOf('\n');
-                            String line = substring;
-                            if (lineTerm > 0)
-                                line = substring.substring(0, lineTerm);
-
-                            int begin = BEGIN.length();
-                            int count = 2;
-                            int matchingEnd = 0;
-                            while (count > 0) {
-                                int nextEnd = line.indexOf(END, begin);
-                                int nextBegin = line.indexOf(BEGIN, begin);
-                                if (nextEnd < 0) {
-                                    // done
-                                    matchingEnd = line.length();
-                                } else {
-                                    if (nextBegin > 0 && nextBegin < nextEnd) {
-                                        begin = nextBegin + BEGIN.length();
-                                        count ++;
-                                    } else {
-                                        count --;
-                                        matchingEnd = nextEnd;
-                                    }
-                                }
-                            }
-                            start += matchingEnd;
-                        }
-                        value = value.substring(0, nested) + substring;
-                        loop = true;
-                    } else {
-                        String substring = value.substring(start + BEGIN.length(), end);
-                        String remain = (end + END.length() == value.length()) ? "" : value.substring(end + END.length());
-                        value = value.substring(0, start) + resolve(substring, useProperties) + remain;
-                        start = value.indexOf(BEGIN, start + BEGIN.length());
-                        loop = start >= 0;
-                    }
-                }
-            }
-        }
-
-        return value;
-    }
-
-    private String resolve(String value, boolean useProperties) {
-        String obj = (useProperties) ? properties.getProperty(value.trim()) : super.get(value.trim()).toString();
-        if (obj == null)
-            return "${" + value + "}";
-        return obj;
+    private Object lookup(String key) {
+        if (!containsKey(key) || resolving.get().contains(key))
+            return null;
+        return get(key);
     }
 
     public void configure(Object object) {
@@ -52,18 +52,19 @@ public class ResourceManager extends AbstractScriptShell implements ResourcePool
     private static final String ALREADY_BOUND_MSG = "Class %s is already bound to %s";
 
     private String name;
-    private Injector injector;
+    private volatile Injector injector;
     private Module module = ModuleFactory.getInstance().create();
     private List<ResourceProvider> resourceProviders = new LinkedList<>();
     private AllocationMonitor allocation = new AllocationMonitor();
     private Map<String, ResourceManager> resourceManagers;
-    private Map<String, Atom> atoms = new LinkedHashMap<>();
+    private Map<String, Atom> atoms = Collections.synchronizedMap(new LinkedHashMap<>());
     private NotificationCenter notificationCenter = new NotificationCenter();
     private BeanLifecycle beanLifecycle = new BeanLifecycle();
     private PluginManager pluginManager = new PluginManager(this);
     private List<ResourceManagerListener> listeners = new LinkedList<>();
     private Map<Class, ClassInjectionInfo> injections = Collections.synchronizedMap(new HashMap<>()); // a cache to be used by Resources.
     private boolean silent = false;
+    private final Object bindLock = new Object(); // components may be booted concurrently, see Bootstrap.setParallel
 
     public ResourceManager() {
         this(new Properties());
@@ -339,27 +340,34 @@ public class ResourceManager extends AbstractScriptShell implements ResourcePool
     }
 
     public <T> T bind(Class<T> cls, T resource) {
-        Object o = module.getBoundInstance(cls);
-        if (o != null)
-            throw new AlreadyBoundException(String.format(ALREADY_BOUND_MSG, cls, o));
-        module.bindInstance(cls, resource);
-        injector = module.build();
+        synchronized (bindLock) {
+            Object o = module.getBoundInstance(cls);
+            if (o != null)
+                throw new AlreadyBoundException(String.format(ALREADY_BOUND_MSG, cls, o));
+            module.bindInstance(cls, resource);
+            injector = module.build();
+        }
         T instance = getInstance(cls);
         listeners.forEach(l -> l.bound(cls, instance));
         return instance;
     }
 
     public <T> T rebind(Class<T> cls, T resource) {
-        module.bindInstance(cls, resource);
-        injector = module.build();
+        synchronized (bindLock) {
+            module.bindInstance(cls, resource);
+            injector = module.build();
+        }
         T instance = getInstance(cls);
         listeners.forEach(l -> l.bound(cls, instance));
         return instance;
     }
 
     public <T> T unbind(Class<T> cls) {
-        T instance = (T) module.unbindInstance(cls);
-        injector = module.build();
+        T instance;
+        synchronized (bindLock) {
+            instance = (T) module.unbindInstance(cls);
+            injector = module.build();
+        }
         listeners.forEach(l -> l.unbound(cls, instance));
         return instance;
     }
@@ -373,15 +381,17 @@ public class ResourceManager extends AbstractScriptShell implements ResourcePool
     }
 
     public void bindClass(Class cls, Class service) {
-        Class c = module.getBoundClass(cls);
-        if (c != null)
-            throw new AlreadyBoundException(String.format(ALREADY_BOUND_MSG, cls, c));
-        if (service != null) {
-            module.bindClass(cls, service);
-        } else {
-            module.bindInstance(cls, null);
+        synchronized (bindLock) {
+            Class c = module.getBoundClass(cls);
+            if (c != null)
+                throw new AlreadyBoundException(String.format(ALREADY_BOUND_MSG, cls, c));
+            if (service != null) {
+                module.bindClass(cls, service);
+            } else {
+                module.bindInstance(cls, null);
+            }
+            injector = module.build();
         }
-        injector = module.build();
 
         if (service != null) {
             listeners.forEach(l -> l.classBound(cls, service));
@@ -391,20 +401,24 @@ public class ResourceManager extends AbstractScriptShell implements ResourcePool
     }
 
     public <T> T bindNamedInstance(Class<T> a, String name, T b) {
-        T instance = module.getBoundNamedInstance(a, name);
-        if (instance != null) {
-            throw new AlreadyBoundException("Instance named " + name + " is already bound to " + instance);
-        } else {
+        T instance;
+        synchronized (bindLock) {
+            instance = module.getBoundNamedInstance(a, name);
+            if (instance != null)
+                throw new AlreadyBoundException("Instance named " + name + " is already bound to " + instance);
             module.bindNamedInstance(a, name, b);
             injector = module.build();
-            listeners.forEach(l -> l.namedInstanceBound(name, a, b));
         }
+        listeners.forEach(l -> l.namedInstanceBound(name, a, b));
         return instance;
     }
 
     public <T> T rebindNamedInstance(Class<T> cls, String name, T resource) {
-        T instance = (T) module.bindNamedInstance(cls, name, resource);
-        injector = module.build();
+        T instance;
+        synchronized (bindLock) {
+            instance = (T) module.bindNamedInstance(cls, name, resource);
+            injector = module.build();
+        }
         listeners.forEach(l -> l.namedInstanceBound(name, cls, instance));
         return instance;
     }
@@ -685,6 +699,7 @@ public class ResourceManager extends AbstractScriptShell implements ResourcePool
             if (!silent)
                 logger.info(rp.getDescription() + " is down.");
         });
+        getNotificationCenter().shutdown();
     }
 
     Map<Class, ClassInjectionInfo> getInjections() {
@@ -35,7 +35,7 @@ public abstract class AbstractScriptShell {
     private Map<String, List<String>> knownEnvironments = new LinkedHashMap<>();
     private Scripting scripting;
     private Properties properties;
-    List<Runnable> cleanup = new LinkedList<>();
+    List<Runnable> cleanup = Collections.synchronizedList(new LinkedList<>());
     boolean loading = false;
 
     protected AbstractScriptShell() {
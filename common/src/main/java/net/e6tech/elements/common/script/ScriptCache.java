@@ -0,0 +1,435 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.script;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovySystem;
+import net.e6tech.elements.common.logging.Logger;
+import net.e6tech.elements.common.resources.Provision;
+import net.e6tech.elements.common.util.SystemException;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.tools.GroovyClass;
+
+import java.io.*;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.jar.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Caches compiled Groovy scripts by a hash of their content.  The hash covers the script text, the script name,
+ * the script base class, the Groovy version, the class path and the classes the script may use that are
+ * themselves Groovy sources on the class path or classes defined by scripts loaded earlier, so that changing a
+ * script or one of its dependencies causes a recompile.  The classes a script may use are those it imports,
+ * including static and star imports, and those of its own package that it mentions by simple name.
+ *
+ * Scripts are compiled against the class loader of the GroovyShell, and the classes they define are registered
+ * with its parent, which must be a ScriptCache.Loader, so that later scripts, cached or not, can use them just
+ * as if the shell had compiled them.
+ *
+ * There are three layers.  Classes already defined for this cache are reused directly.  Compiled bytes are kept in
+ * a memory layer shared by all caches, so that ResourceManagers loading the same scripts only compile them once.
+ * Finally, if a directory is configured, compiled bytes are stored as jar files so that they survive a restart.
+ *
+ * Created by futeh.
+ */
+public class ScriptCache {
+    public static final String CACHE = "script.cache";
+    public static final String CACHE_DIR = "script.cache.dir";
+    private static final String EXTENSION = ".jar";
+    private static final String CLASS_EXTENSION = ".class";
+    private static final String GROOVY_EXTENSION = ".groovy";
+    private static final Pattern IMPORT = Pattern.compile("^\\s*import\\s+(static\\s+)?([\\w.$]+?)(\\s*\\.\\s*\\*)?(\\s+as\\s+\\w+)?\\s*(;|$)", Pattern.MULTILINE);
+    private static final Pattern PACKAGE = Pattern.compile("^\\s*package\\s+([\\w.]+)", Pattern.MULTILINE);
+    private static final Pattern IDENTIFIER = Pattern.compile("\\b([A-Z][\\w$]*)");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static Cache<String, CompiledScript> compiledScripts = CacheBuilder.newBuilder()
+            .maximumSize(2000)
+            .initialCapacity(200)
+            .concurrencyLevel(Provision.cacheBuilderConcurrencyLevel)
+            .build();
+
+    private final GroovyClassLoader loader;
+    private final Loader shared;
+    private final CompilerConfiguration config;
+    private final File directory;
+    private final Map<String, Class> classes = new ConcurrentHashMap<>();
+    private final Map<String, String> definedBy = new ConcurrentHashMap<>(); // class name to the key of its script
+    private volatile String classPathUrls;
+    private volatile String classPath;
+    private final LongAdder compileCount = new LongAdder();
+    private final LongAdder diskHitCount = new LongAdder();
+
+    /**
+     * @param loader the class loader of the GroovyShell; it, or one of its ancestors, must be a ScriptCache.Loader.
+     */
+    public ScriptCache(GroovyClassLoader loader, CompilerConfiguration config, File directory) {
+        Loader found = null;
+        for (ClassLoader l = loader; l != null && found == null; l = l.getParent()) {
+            if (l instanceof Loader)
+                found = (Loader) l;
+        }
+        if (found == null)
+            throw new IllegalArgumentException("loader must be or descend from a ScriptCache.Loader");
+        this.loader = loader;
+        this.shared = found;
+        this.config = config;
+        this.directory = directory;
+        if (directory != null && !directory.exists() && !directory.mkdirs())
+            throw new SystemException("Cannot create script cache directory " + directory);
+    }
+
+    /**
+     * Discards the memory layer shared by all caches.
+     */
+    public static void invalidateAll() {
+        compiledScripts.invalidateAll();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return number of scripts actually compiled by this cache.
+     */
+    public long getCompileCount() {
+        return compileCount.sum();
+    }
+
+    /**
+     * @return number of scripts loaded from the cache directory by this cache.
+     */
+    public long getDiskHitCount() {
+        return diskHitCount.sum();
+    }
+
+    /**
+     * Returns the script class for the text, compiling it only if none of the layers has it.
+     *
+     * @param text script source
+     * @param name script file name, which determines the class name.
+     * @return the main class of the script
+     */
+    public Class getScriptClass(String text, String name) {
+        String key = key(text, name);
+        Class cls = classes.get(key);
+        if (cls != null)
+            return cls;
+
+        CompiledScript script;
+        try {
+            script = compiledScripts.get(key, () -> {
+                CompiledScript s = read(key);
+                if (s == null) {
+                    s = compile(text, name);
+                    write(key, s);
+                }
+                return s;
+            });
+        } catch (UncheckedExecutionException e) {
+            // compilation errors are runtime exceptions and should reach the caller untouched.
+            throw (RuntimeException) e.getCause();
+        } catch (ExecutionException e) {
+            throw new SystemException(e.getCause());
+        }
+
+        List<Class> defined = new ArrayList<>();
+        try {
+            ScriptClassLoader scriptLoader = new ScriptClassLoader(loader, script.classes);
+            cls = scriptLoader.loadClass(script.mainClass);
+            for (String className : script.classes.keySet())
+                defined.add(scriptLoader.loadClass(className));
+        } catch (ClassNotFoundException e) {
+            throw new SystemException(e);
+        }
+        Class existing = classes.putIfAbsent(key, cls);
+        if (existing != null)
+            return existing;
+        for (Class c : defined) {
+            shared.register(c);
+            definedBy.put(c.getName(), key);
+        }
+        return cls;
+    }
+
+    protected String key(String text, String name) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, GroovySystem.getVersion());
+            update(digest, String.valueOf(config.getScriptBaseClass()));
+            update(digest, classPath());
+            update(digest, name);
+            update(digest, text);
+            for (String dependency : dependencies(text, new HashSet<>()))
+                update(digest, dependency);
+            return hex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new SystemException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String str) {
+        digest.update(str.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    // the class path of the loader and its ancestors, with the size and time stamp of every file, so that the disk
+    // layer is not reused when a jar has changed.  Recomputed only when the urls change.
+    private String classPath() {
+        StringBuilder builder = new StringBuilder();
+        for (ClassLoader l = loader; l != null; l = l.getParent()) {
+            if (l instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) l).getURLs())
+                    builder.append(url).append(File.pathSeparatorChar);
+            }
+        }
+        builder.append(System.getProperty("java.class.path"));
+        String urls = builder.toString();
+        if (urls.equals(classPathUrls))
+            return classPath;
+
+        StringBuilder fingerprint = new StringBuilder();
+        for (String entry : urls.split(File.pathSeparator)) {
+            File file = entry.startsWith("file:") ? new File(entry.substring("file:".length())) : new File(entry);
+            fingerprint.append(entry).append('|').append(file.lastModified()).append('|').append(file.length()).append('\n');
+        }
+        classPath = fingerprint.toString();
+        classPathUrls = urls;
+        return classPath;
+    }
+
+    // names of the classes a script may use other than through a fully qualified name: its imports, and the
+    // classes of its own package and of star imports that it mentions by simple name.
+    private static Set<String> referencedClasses(String text) {
+        Set<String> names = new LinkedHashSet<>();
+        List<String> packages = new ArrayList<>();
+        Matcher pkg = PACKAGE.matcher(text);
+        packages.add(pkg.find() ? pkg.group(1) + "." : "");
+
+        Matcher matcher = IMPORT.matcher(text);
+        while (matcher.find()) {
+            boolean isStatic = matcher.group(1) != null;
+            boolean star = matcher.group(3) != null;
+            String name = matcher.group(2);
+            if (isStatic && !star) // import static a.B.member
+                names.add(name.substring(0, Math.max(0, name.lastIndexOf('.'))));
+            else if (isStatic || !star) // import static a.B.* or import a.B
+                names.add(name);
+            else // import a.*
+                packages.add(name + ".");
+        }
+
+        Set<String> identifiers = new LinkedHashSet<>();
+        Matcher identifier = IDENTIFIER.matcher(text);
+        while (identifier.find())
+            identifiers.add(identifier.group(1));
+        for (String packageName : packages) {
+            for (String simpleName : identifiers)
+                names.add(packageName + simpleName);
+        }
+        return names;
+    }
+
+    // returns the keys of earlier scripts defining classes the script uses and the content of the classes it uses
+    // that are Groovy sources on the script class path, including their own dependencies.
+    private List<String> dependencies(String text, Set<String> visited) {
+        List<String> list = new ArrayList<>();
+        for (String className : referencedClasses(text)) {
+            String script = definedBy.get(className);
+            if (script != null && visited.add(className)) {
+                list.add(className);
+                list.add(script);
+            }
+            String path = className.replace('.', '/') + GROOVY_EXTENSION;
+            if (!visited.add(path))
+                continue;
+            URL url = loader.getResource(path);
+            if (url == null)
+                continue;
+            try (InputStream in = url.openStream()) {
+                String source = read(in);
+                list.add(path);
+                list.add(source);
+                list.addAll(dependencies(source, visited));
+            } catch (IOException e) {
+                Logger.suppress(e);
+            }
+        }
+        return list;
+    }
+
+    String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) >= 0)
+            out.write(buffer, 0, n);
+        return new String(out.toByteArray(), config.getSourceEncoding());
+    }
+
+    private CompiledScript compile(String text, String name) {
+        CompilationUnit unit = new CompilationUnit(config, null, loader);
+        SourceUnit sourceUnit = unit.addSource(name, text);
+        unit.compile(Phases.CLASS_GENERATION);
+        Map<String, byte[]> bytes = new HashMap<>();
+        for (Object obj : unit.getClasses()) {
+            GroovyClass groovyClass = (GroovyClass) obj;
+            bytes.put(groovyClass.getName(), groovyClass.getBytes());
+        }
+        compileCount.increment();
+        // same rule as GroovyClassLoader: the main class is the first class of the module.
+        return new CompiledScript(sourceUnit.getAST().getClasses().get(0).getName(), bytes);
+    }
+
+    private CompiledScript read(String key) {
+        if (directory == null)
+            return null;
+        File file = new File(directory, key + EXTENSION);
+        if (!file.exists())
+            return null;
+
+        try (JarInputStream in = new JarInputStream(new FileInputStream(file))) {
+            String mainClass = in.getManifest().getMainAttributes().getValue(Attributes.Name.MAIN_CLASS);
+            Map<String, byte[]> bytes = new HashMap<>();
+            JarEntry entry;
+            while ((entry = in.getNextJarEntry()) != null) {
+                String entryName = entry.getName();
+                if (!entryName.endsWith(CLASS_EXTENSION))
+                    continue;
+                String className = entryName.substring(0, entryName.length() - CLASS_EXTENSION.length()).replace('/', '.');
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) >= 0)
+                    out.write(buffer, 0, n);
+                bytes.put(className, out.toByteArray());
+            }
+            diskHitCount.increment();
+            return new CompiledScript(mainClass, bytes);
+        } catch (IOException | RuntimeException e) {
+            // a corrupted entry is simply recompiled.
+            Logger.suppress(e);
+            return null;
+        }
+    }
+
+    private void write(String key, CompiledScript script) {
+        if (directory == null)
+            return;
+        File file = new File(directory, key + EXTENSION);
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(key, ".tmp", directory);
+            Manifest manifest = new Manifest();
+            manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+            manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, script.mainClass);
+            try (JarOutputStream out = new JarOutputStream(new FileOutputStream(tmp), manifest)) {
+                for (Map.Entry<String, byte[]> entry : script.classes.entrySet()) {
+                    out.putNextEntry(new JarEntry(entry.getKey().replace('.', '/') + CLASS_EXTENSION));
+                    out.write(entry.getValue());
+                    out.closeEntry();
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the disk layer is only an optimization
+            Logger.suppress(e);
+            if (tmp != null && tmp.exists() && !tmp.delete())
+                tmp.deleteOnExit();
+        }
+    }
+
+    private static class CompiledScript {
+        private final String mainClass;
+        private final Map<String, byte[]> classes;
+
+        CompiledScript(String mainClass, Map<String, byte[]> classes) {
+            this.mainClass = mainClass;
+            this.classes = Collections.unmodifiableMap(classes);
+        }
+    }
+
+    /**
+     * The parent of a GroovyShell's class loader when scripts are cached.  The classes of cached scripts are
+     * registered here, where the shell's loader finds them as it would find the classes of scripts it compiled.
+     */
+    public static class Loader extends GroovyClassLoader {
+        public Loader(ClassLoader parent, CompilerConfiguration config) {
+            super(parent, config);
+        }
+
+        void register(Class cls) {
+            setClassCacheEntry(cls);
+        }
+    }
+
+    /**
+     * Defines the classes of one script.  Its own classes are looked up first, otherwise the GroovyClassLoader
+     * would try to compile a source with the same name from the script class path.
+     */
+    private static class ScriptClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        ScriptClassLoader(ClassLoader parent, Map<String, byte[]> classes) {
+            super(parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> cls = findLoadedClass(name);
+                if (cls == null) {
+                    byte[] bytes = classes.get(name);
+                    if (bytes == null)
+                        return super.loadClass(name, resolve);
+                    cls = defineClass(name, bytes, 0, bytes.length);
+                }
+                if (resolve)
+                    resolveClass(cls);
+                return cls;
+            }
+        }
+    }
+}
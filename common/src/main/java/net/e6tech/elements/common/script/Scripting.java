@@ -21,6 +21,7 @@ import net.e6tech.elements.common.util.SystemException;
 import net.e6tech.elements.common.util.file.FileUtil;
 import org.codehaus.groovy.control.CompilerConfiguration;
 import org.codehaus.groovy.jsr223.GroovyScriptEngineImpl;
+import org.codehaus.groovy.runtime.InvokerHelper;
 
 import javax.script.Bindings;
 import javax.script.ScriptContext;
@@ -54,9 +55,9 @@ public class Scripting {
     }
 
     private GroovyEngine engine;
-    private List runAfterList = new LinkedList<>();
-    private List launchedList = new LinkedList<>();
-    private ScriptPath scriptPath;
+    private List runAfterList = Collections.synchronizedList(new LinkedList<>());
+    private List launchedList = Collections.synchronizedList(new LinkedList<>());
+    private ThreadLocal<ScriptPath> scriptPath = new ThreadLocal<>();
     private boolean silent = false;
 
     protected Scripting() {
@@ -109,6 +110,38 @@ public class Scripting {
         return engine.getProperties();
     }
 
+    /**
+     * @return the compiled script cache, or null if it is turned off via the script.cache property.
+     */
+    public ScriptCache getScriptCache() {
+        return engine.cache;
+    }
+
+    /**
+     * Wraps a task so that, when it runs on another thread, scripts executed by it get their own
+     * __dir, __file, __load_dir and __load_file, starting from the values the calling thread sees now.
+     * This allows scripts to be executed concurrently without trampling each other's paths.
+     *
+     * @param task task to be run on another thread
+     * @return wrapped task
+     */
+    public Runnable isolated(Runnable task) {
+        if (!(engine.binding instanceof ScriptBinding))
+            return task;
+        ScriptBinding binding = (ScriptBinding) engine.binding;
+        Map<String, Object> paths = binding.paths();
+        ScriptPath path = scriptPath.get();
+        return () -> {
+            ScriptPath prev = scriptPath.get();
+            scriptPath.set(path);
+            try {
+                binding.isolated(paths, task);
+            } finally {
+                scriptPath.set(prev);
+            }
+        };
+    }
+
     @SuppressWarnings("squid:S1067")
     private String normalizePath(String originalPath) {
         String dir = (String) get(Scripting.__DIR);
@@ -148,8 +181,9 @@ public class Scripting {
             prevRootFile = (String) get(__LOAD_FILE);
         }
 
-        ScriptPath prev = scriptPath;
-        scriptPath = new ScriptPath(normalizePath(script));
+        ScriptPath prev = scriptPath.get();
+        ScriptPath scriptPath = new ScriptPath(normalizePath(script));
+        this.scriptPath.set(scriptPath);
         Reader reader = null;
         try {
             String dir = scriptPath.getParent();
@@ -198,7 +232,7 @@ public class Scripting {
                 } catch (IOException e) {
                     logger.error(e.getMessage(), e);
                 }
-            scriptPath = prev;
+            this.scriptPath.set(prev);
             if (prev != null) {
                 privatePut(__DIR, prev.getParent());
                 privatePut(__FILE, prev.getFileName());
@@ -334,6 +368,10 @@ public class Scripting {
             throw new ScriptException(e);
         }
 
+        // scripts are independent of each other until they run, so compile them up front in parallel.
+        if (paths.length > 1)
+            engine.precompile(paths);
+
         Object ret = null;
         for (String p : paths) {
             if (!silent)
@@ -345,11 +383,69 @@ public class Scripting {
         return ret;
     }
 
+    // Variables are shared by all threads except for the script paths, which become thread local while
+    // a thread runs a task given to isolated.
+    private static class ScriptBinding extends Binding {
+        private static final String[] PATH_VARIABLES = {__DIR, __FILE, __LOAD_DIR, __LOAD_FILE};
+        private ThreadLocal<Map<String, Object>> local = new ThreadLocal<>();
+
+        ScriptBinding() {
+            super(Collections.synchronizedMap(new LinkedHashMap()));
+        }
+
+        Map<String, Object> paths() {
+            Map<String, Object> paths = new HashMap<>();
+            for (String name : PATH_VARIABLES)
+                paths.put(name, hasVariable(name) ? getVariable(name) : null);
+            return paths;
+        }
+
+        void isolated(Map<String, Object> paths, Runnable task) {
+            Map<String, Object> prev = local.get();
+            local.set(new HashMap<>(paths));
+            try {
+                task.run();
+            } finally {
+                if (prev == null)
+                    local.remove();
+                else
+                    local.set(prev);
+            }
+        }
+
+        @Override
+        public Object getVariable(String name) {
+            Map<String, Object> map = local.get();
+            if (map != null && map.containsKey(name))
+                return map.get(name);
+            return super.getVariable(name);
+        }
+
+        @Override
+        public void setVariable(String name, Object value) {
+            Map<String, Object> map = local.get();
+            if (map != null && map.containsKey(name))
+                map.put(name, value);
+            else
+                super.setVariable(name, value);
+        }
+
+        @Override
+        public boolean hasVariable(String name) {
+            Map<String, Object> map = local.get();
+            if (map != null && map.containsKey(name))
+                return true;
+            return super.hasVariable(name);
+        }
+    }
+
     // This class encapsulates the differences between GroovyShell and GroovyScriptEngineImpl.
     private static class GroovyEngine {
         GroovyShell shell;
+        Binding binding;
         GroovyScriptEngineImpl scriptEngine;
         ScriptContext scriptContext;
+        ScriptCache cache;
 
         public GroovyEngine(ClassLoader classLoader, Properties properties, boolean useGroovyShell) {
             ClassLoader ctxLoader = classLoader;
@@ -362,17 +458,22 @@ public class Scripting {
             String scriptBaseClass = properties.getProperty(SCRIPT_BASE_CLASS);
             if (scriptBaseClass != null)
                 compilerConfig.setScriptBaseClass(scriptBaseClass);
-            GroovyClassLoader loader = new GroovyClassLoader(ctxLoader, compilerConfig);
+            // a ScriptCache.Loader so that the classes of cached scripts can be shared with the shell.
+            GroovyClassLoader loader = new ScriptCache.Loader(ctxLoader, compilerConfig);
             if (properties.getProperty(PATH) != null) {
                 loader.addClasspath(properties.getProperty(PATH));
             }
 
             if (useGroovyShell) {
-                Binding binding = new Binding();
+                binding = new ScriptBinding();
                 for (Map.Entry entry : properties.entrySet()) {
                     binding.setVariable(entry.getKey().toString(), entry.getValue());
                 }
                 shell = new GroovyShell(loader, binding, compilerConfig);
+                if (!"false".equalsIgnoreCase(properties.getProperty(ScriptCache.CACHE))) {
+                    String cacheDir = properties.getProperty(ScriptCache.CACHE_DIR);
+                    cache = new ScriptCache(shell.getClassLoader(), compilerConfig, (cacheDir == null) ? null : new File(cacheDir));
+                }
             } else {
                 scriptEngine = new GroovyScriptEngineImpl(loader);
                 scriptContext = new SimpleScriptContext();
@@ -413,7 +514,7 @@ public class Scripting {
             if (shell != null) {
                 if ("binding".equals(key))
                     return shell.getContext();
-                return shell.getVariable(key);
+                return binding.hasVariable(key) ? binding.getVariable(key) : null;
             } else {
                 if ("binding".equals(key))
                     return scriptContext.getBindings(ScriptContext.ENGINE_SCOPE);
@@ -452,7 +553,9 @@ public class Scripting {
 
         public Object eval(File file) throws ScriptException {
             try {
-                if (shell != null) {
+                if (cache != null) {
+                    return run(cache.getScriptClass(read(file), file.getName()));
+                } else if (shell != null) {
                     return shell.evaluate(file);
                 } else {
                     try (Reader reader = new BufferedReader(new FileReader(file))) {
@@ -465,7 +568,13 @@ public class Scripting {
         }
 
         public Object eval(Reader reader, String fileName) throws ScriptException {
-            if (shell != null) {
+            if (cache != null) {
+                try {
+                    return run(cache.getScriptClass(read(reader), scriptName(fileName)));
+                } catch (IOException ex) {
+                    throw new ScriptException(ex);
+                }
+            } else if (shell != null) {
                 return shell.evaluate(reader, scriptName(fileName));
             } else {
                 return scriptEngine.eval(reader, scriptContext);
@@ -485,6 +594,41 @@ public class Scripting {
             }
         }
 
+        private Object run(Class scriptClass) {
+            return InvokerHelper.createScript(scriptClass, shell.getContext()).run();
+        }
+
+        private String read(File file) throws IOException {
+            try (InputStream in = new FileInputStream(file)) {
+                return cache.read(in);
+            }
+        }
+
+        private String read(Reader reader) throws IOException {
+            StringBuilder builder = new StringBuilder();
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = reader.read(buffer)) >= 0)
+                builder.append(buffer, 0, n);
+            return builder.toString();
+        }
+
+        void precompile(String[] paths) {
+            if (cache == null)
+                return;
+            Arrays.stream(paths).parallel()
+                    .filter(path -> !new ScriptPath(path).isClassPath())
+                    .forEach(path -> {
+                        try {
+                            File file = new File(path);
+                            cache.getScriptClass(read(file), file.getName());
+                        } catch (Exception e) {
+                            // reported when the script is evaluated
+                            Logger.suppress(e);
+                        }
+                    });
+        }
+
         private static String scriptName(String fileName) {
             Path path = Paths.get(fileName);
             Path file = path.getFileName();
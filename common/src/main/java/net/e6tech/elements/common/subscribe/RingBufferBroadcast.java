@@ -0,0 +1,298 @@
+/*
+ * Copyright 2015 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.subscribe;
+
+import net.e6tech.elements.common.logging.Logger;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Broadcast backed by a preallocated ring buffer.  Publishers claim a slot and return; a single
+ * dispatcher thread drains published slots in batches and delivers them to subscribers in
+ * publish order, so no task is created per publish or per subscriber.  When the ring is full,
+ * publishers wait for the dispatcher to catch up.
+ *
+ * Subscribers registered through subscribeLatest only receive the last notice per topic of each
+ * drained batch, which lets slow consumers of fast changing values (prices, statuses) keep up.
+ *
+ * Subscribers run on the dispatcher thread and should not block.  The Notice passed to a subscriber is
+ * a slot of the ring and is reused once the batch has been delivered; subscribers that keep notices
+ * must copy them.
+ */
+@SuppressWarnings("unchecked")
+public class RingBufferBroadcast implements Broadcast {
+    private static final Logger logger = Logger.getLogger();
+    private static final Subscriber[] EMPTY = new Subscriber[0];
+
+    public enum WaitStrategy {
+        /** lowest latency, burns a core while idle */
+        BUSY_SPIN,
+        YIELDING,
+        /** spins, then yields, then parks briefly */
+        SLEEPING,
+        /** parks until a publisher signals; lowest CPU use, highest wake up latency */
+        BLOCKING
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final Notice[] slots;
+    private final AtomicLongArray available;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private volatile long consumed = -1;
+    private final WaitStrategy waitStrategy;
+    private int batchSize = 256;
+
+    private final ConcurrentMap<String, Subscriber[]> subscribers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Subscriber[]> latestSubscribers = new ConcurrentHashMap<>();
+    private final Map<String, Notice> latest = new HashMap<>();
+
+    private volatile boolean running = true;
+    private volatile boolean dispatcherWaiting = false;
+    private final Thread dispatcher;
+
+    public RingBufferBroadcast() {
+        this(8192, WaitStrategy.SLEEPING);
+    }
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two.
+     */
+    public RingBufferBroadcast(int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+        slots = new Notice[size];
+        available = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Notice();
+            available.set(i, -1);
+        }
+        dispatcher = new Thread(this::dispatch, "broadcast-ring");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Maximum number of notices drained before the coalesced subscribers are served.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0)
+            throw new IllegalArgumentException("batchSize must be positive");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Number of published notices not yet delivered.
+     */
+    public long getBacklog() {
+        return Math.max(0, claimed.get() - consumed);
+    }
+
+    @Override
+    public void subscribe(String topic, Subscriber subscriber) {
+        subscribers.compute(topic, (k, array) -> add(array, subscriber));
+    }
+
+    @Override
+    public <T extends Serializable> void subscribe(Class<T> topic, Subscriber<T> subscriber) {
+        subscribe(topic.getName(), subscriber);
+    }
+
+    /**
+     * The subscriber receives only the most recent notice for the topic from each drained batch.
+     */
+    public void subscribeLatest(String topic, Subscriber subscriber) {
+        latestSubscribers.compute(topic, (k, array) -> add(array, subscriber));
+    }
+
+    public <T extends Serializable> void subscribeLatest(Class<T> topic, Subscriber<T> subscriber) {
+        subscribeLatest(topic.getName(), subscriber);
+    }
+
+    @Override
+    public void unsubscribe(String topic, Subscriber subscriber) {
+        subscribers.computeIfPresent(topic, (k, array) -> remove(array, subscriber));
+        latestSubscribers.computeIfPresent(topic, (k, array) -> remove(array, subscriber));
+    }
+
+    @Override
+    public void unsubscribe(Class topic, Subscriber subscriber) {
+        unsubscribe(topic.getName(), subscriber);
+    }
+
+    @Override
+    public void publish(String topic, Serializable object) {
+        if (!running)
+            throw new IllegalStateException("RingBufferBroadcast is shut down");
+        long sequence = claimed.incrementAndGet();
+        long wrapPoint = sequence - capacity;
+        int spins = 0;
+        while (wrapPoint > consumed) {
+            // ring is full, wait for the dispatcher
+            if (waitStrategy == WaitStrategy.BLOCKING && dispatcherWaiting)
+                LockSupport.unpark(dispatcher);
+            spins = backoff(spins);
+        }
+        int index = (int) (sequence & mask);
+        Notice slot = slots[index];
+        slot.setTopic(topic);
+        slot.setUserObject(object);
+        available.set(index, sequence);
+        if (waitStrategy == WaitStrategy.BLOCKING && dispatcherWaiting)
+            LockSupport.unpark(dispatcher);
+    }
+
+    @Override
+    public <T extends Serializable> void publish(Class<T> cls, T object) {
+        publish(cls.getName(), object);
+    }
+
+    /**
+     * Delivers what has already been published, then stops the dispatcher.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(dispatcher);
+        try {
+            dispatcher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatch() {
+        long next = 0;
+        int idle = 0;
+        while (true) {
+            long last = next - 1;
+            while (last + 1 - next < batchSize && available.get((int) ((last + 1) & mask)) == last + 1)
+                last++;
+
+            if (last < next) {
+                if (!running && claimed.get() < next)
+                    return;
+                idle = idle(idle, next);
+                continue;
+            }
+            idle = 0;
+
+            for (long sequence = next; sequence <= last; sequence++) {
+                Notice notice = slots[(int) (sequence & mask)];
+                deliver(subscribers.get(notice.getTopic()), notice);
+                if (latestSubscribers.containsKey(notice.getTopic()))
+                    latest.put(notice.getTopic(), notice);
+            }
+
+            if (!latest.isEmpty()) {
+                for (Notice notice : latest.values())
+                    deliver(latestSubscribers.get(notice.getTopic()), notice);
+                latest.clear();
+            }
+
+            // the slots may only be reused by publishers once nothing refers to them.
+            for (long sequence = next; sequence <= last; sequence++) {
+                Notice notice = slots[(int) (sequence & mask)];
+                notice.setTopic(null);
+                notice.setUserObject(null);
+            }
+            consumed = last;
+            next = last + 1;
+        }
+    }
+
+    @SuppressWarnings("squid:S1181")
+    private void deliver(Subscriber[] list, Notice notice) {
+        if (list == null)
+            return;
+        for (Subscriber subscriber : list) {
+            try {
+                subscriber.receive(notice);
+            } catch (Throwable th) {
+                logger.warn("Subscriber failed on topic " + notice.getTopic(), th);
+            }
+        }
+    }
+
+    private int idle(int counter, long next) {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                return counter;
+            case YIELDING:
+                Thread.yield();
+                return counter;
+            case BLOCKING:
+                dispatcherWaiting = true;
+                // re-check after announcing so that a concurrent publish is not missed
+                if (available.get((int) (next & mask)) != next && running)
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+                dispatcherWaiting = false;
+                return counter;
+            default:
+                return backoff(counter);
+        }
+    }
+
+    private static int backoff(int counter) {
+        if (counter < 100) {
+            // spin
+        } else if (counter < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        return counter + 1;
+    }
+
+    private static Subscriber[] add(Subscriber[] array, Subscriber subscriber) {
+        if (array == null)
+            return new Subscriber[] { subscriber };
+        Subscriber[] copy = Arrays.copyOf(array, array.length + 1);
+        copy[array.length] = subscriber;
+        return copy;
+    }
+
+    private static Subscriber[] remove(Subscriber[] array, Subscriber subscriber) {
+        List<Subscriber> list = new ArrayList<>(Arrays.asList(array));
+        list.remove(subscriber);
+        return list.isEmpty() ? null : list.toArray(EMPTY);
+    }
+}
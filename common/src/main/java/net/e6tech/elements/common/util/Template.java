@@ -0,0 +1,427 @@
+/*
+Copyright 2015 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.e6tech.elements.common.util;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import net.e6tech.elements.common.logging.Logger;
+import net.e6tech.elements.common.reflection.Reflection;
+import net.e6tech.elements.common.resources.Provision;
+
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * A template parsed once into literal and placeholder segments.  Rendering walks the segments and appends
+ * to a StringBuilder or Writer in a single pass, so the cost no longer grows with the number of variables
+ * times the length of the template.
+ *
+ * There are two flavors.  compile(String) understands the TextSubstitution syntax, i.e.
+ * ${var}, ${var.path}, ${var:default}, ${var:+default} and ${var:-default}, and renders against a
+ * Map or a bean.  compileNested(String) allows placeholders inside placeholders, e.g. ${db.${env}.url},
+ * and renders against a lookup function; a placeholder the function cannot resolve is written out as is.
+ * Compiled templates are immutable and cached, so both factory methods can be called on hot paths.
+ */
+public class Template {
+    private static final String BEGIN = "${";
+    private static final char END = '}';
+
+    private static LoadingCache<String, Template> templates = CacheBuilder.newBuilder()
+            .maximumSize(10000)
+            .initialCapacity(100)
+            .concurrencyLevel(Provision.cacheBuilderConcurrencyLevel)
+            .build(new CacheLoader<String, Template>() {
+                @Override
+                public Template load(String text) {
+                    return new Template(text, false);
+                }
+            });
+
+    private static LoadingCache<String, Template> nestedTemplates = CacheBuilder.newBuilder()
+            .maximumSize(10000)
+            .initialCapacity(100)
+            .concurrencyLevel(Provision.cacheBuilderConcurrencyLevel)
+            .build(new CacheLoader<String, Template>() {
+                @Override
+                public Template load(String text) {
+                    return new Template(text, true);
+                }
+            });
+
+    private final String text;
+    private final Segment[] segments;
+    private final List<String> expressions;
+
+    private Template(String text, boolean nested) {
+        this.text = text;
+        List<Segment> list = new ArrayList<>();
+        if (nested)
+            parseNested(text, 0, list);
+        else
+            parse(text, list);
+        segments = list.toArray(new Segment[0]);
+
+        Set<String> set = new LinkedHashSet<>();
+        for (Segment segment : segments) {
+            if (segment.expression() != null)
+                set.add(segment.expression());
+        }
+        expressions = Collections.unmodifiableList(new ArrayList<>(set));
+    }
+
+    public static Template compile(String text) {
+        return get(templates, text);
+    }
+
+    public static Template compileNested(String text) {
+        return get(nestedTemplates, text);
+    }
+
+    private static Template get(LoadingCache<String, Template> cache, String text) {
+        if (text == null)
+            throw new NullPointerException("template is null");
+        try {
+            return cache.getUnchecked(text);
+        } catch (UncheckedExecutionException ex) {
+            throw new SystemException(ex.getCause());
+        }
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the distinct placeholder expressions, i.e. the text between ${ and }, in order of appearance.
+     */
+    public List<String> getExpressions() {
+        return expressions;
+    }
+
+    public boolean hasPlaceholders() {
+        return !expressions.isEmpty();
+    }
+
+    public String render(Object binding) {
+        if (!hasPlaceholders())
+            return text;
+        return render(binding, new StringBuilder(text.length() + 16 * segments.length)).toString();
+    }
+
+    public StringBuilder render(Object binding, StringBuilder builder) {
+        try {
+            for (Segment segment : segments)
+                segment.render(binding, builder);
+        } catch (IOException e) {
+            throw new SystemException(e); // StringBuilder does not throw IOException
+        }
+        return builder;
+    }
+
+    public <W extends Writer> W render(Object binding, W writer) throws IOException {
+        for (Segment segment : segments)
+            segment.render(binding, writer);
+        return writer;
+    }
+
+    public String render(Function<String, ?> lookup) {
+        if (!hasPlaceholders())
+            return text;
+        return render(lookup, new StringBuilder(text.length() + 16 * segments.length)).toString();
+    }
+
+    public StringBuilder render(Function<String, ?> lookup, StringBuilder builder) {
+        try {
+            for (Segment segment : segments)
+                segment.lookup(lookup, builder);
+        } catch (IOException e) {
+            throw new SystemException(e);
+        }
+        return builder;
+    }
+
+    public <W extends Writer> W render(Function<String, ?> lookup, W writer) throws IOException {
+        for (Segment segment : segments)
+            segment.lookup(lookup, writer);
+        return writer;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    // same scanning rules as the original TextSubstitution: the first '}' closes a placeholder and an unterminated
+    // ${ is kept as literal text.
+    private static void parse(String text, List<Segment> list) {
+        int pos = 0;
+        int max = text.length();
+        while (pos < max) {
+            int begin = text.indexOf(BEGIN, pos);
+            if (begin == -1)
+                break;
+            int end = text.indexOf(END, begin + BEGIN.length());
+            if (end == -1)
+                break;
+            if (begin > pos)
+                list.add(new Literal(text.substring(pos, begin)));
+            list.add(new Placeholder(text.substring(begin + BEGIN.length(), end)));
+            pos = end + 1;
+        }
+        if (pos < max)
+            list.add(new Literal(text.substring(pos)));
+    }
+
+    // parses until an unmatched '}' or the end of text.  Returns the position after the closing '}', or -1 when
+    // the text ends first.
+    private static int parseNested(String text, int start, List<Segment> list) {
+        int pos = start;
+        StringBuilder literal = new StringBuilder();
+        int max = text.length();
+        while (pos < max) {
+            char ch = text.charAt(pos);
+            if (ch == '$' && pos + 1 < max && text.charAt(pos + 1) == '{') {
+                List<Segment> inner = new ArrayList<>();
+                int end = parseNested(text, pos + BEGIN.length(), inner);
+                if (end < 0) { // unterminated, keep the rest as literal
+                    literal.append(text, pos, max);
+                    pos = max;
+                    break;
+                }
+                if (literal.length() > 0) {
+                    list.add(new Literal(literal.toString()));
+                    literal.setLength(0);
+                }
+                list.add(new NestedPlaceholder(text.substring(pos + BEGIN.length(), end - 1), inner.toArray(new Segment[0])));
+                pos = end;
+            } else if (ch == END && start > 0) {
+                if (literal.length() > 0)
+                    list.add(new Literal(literal.toString()));
+                return pos + 1;
+            } else {
+                literal.append(ch);
+                pos++;
+            }
+        }
+        if (literal.length() > 0)
+            list.add(new Literal(literal.toString()));
+        return start > 0 ? -1 : pos;
+    }
+
+    private abstract static class Segment {
+        String expression() {
+            return null;
+        }
+
+        abstract void render(Object binding, Appendable out) throws IOException;
+
+        abstract void lookup(Function<String, ?> lookup, Appendable out) throws IOException;
+    }
+
+    private static class Literal extends Segment {
+        private final String text;
+
+        Literal(String text) {
+            this.text = text;
+        }
+
+        @Override
+        void render(Object binding, Appendable out) throws IOException {
+            out.append(text);
+        }
+
+        @Override
+        void lookup(Function<String, ?> lookup, Appendable out) throws IOException {
+            out.append(text);
+        }
+    }
+
+    /*
+     *  ${var:default} expands to default if var not defined, to var if var is defined.
+     *  ${var:+default}  expands to "" if var is not defined, to default if var is defined.
+     *  ${var:-default} expands to default if var not defined, to "" if var is defined.
+     *  Leading and trailing white spaces are kept for ${ var } when var is defined.
+     */
+    private static class Placeholder extends Segment {
+        final String expression;
+        private String leading = "";
+        private String trailing = "";
+        private String defaultValue;
+        private String strategy;
+        private String[] path;
+
+        @SuppressWarnings("squid:S3776")
+        Placeholder(String expression) {
+            this.expression = expression;
+            String key = expression;
+            if (expression.contains(":+")) {
+                int index = expression.indexOf(":+");
+                key = expression.substring(0, index).trim();
+                defaultValue = expression.substring(index + 2);
+                strategy = ":+";
+            } else if (expression.contains(":-")) {
+                int index = expression.indexOf(":-");
+                key = expression.substring(0, index).trim();
+                defaultValue = expression.substring(index + 2);
+                strategy = ":-";
+            } else if (expression.contains(":")) {
+                int index = expression.indexOf(':');
+                key = expression.substring(0, index).trim();
+                defaultValue = expression.substring(index + 1);
+                strategy = ":";
+            }
+
+            // leading and trailing white spaces only matter for expressions without ':'
+            int index = 0;
+            for (int i = 0; i < key.length(); i++) {
+                if (!Character.isWhitespace(key.codePointAt(i))) {
+                    index = i;
+                    break;
+                }
+            }
+            leading = key.substring(0, index);
+
+            index = key.length();
+            for (int i = key.length() - 1; i >= 0; i--) {
+                if (!Character.isWhitespace(key.codePointAt(i))) {
+                    index = i + 1;
+                    break;
+                }
+            }
+            if (index < key.length())
+                trailing = key.substring(index);
+
+            path = key.split("\\.");
+            for (int i = 0; i < path.length; i++)
+                path[i] = path[i].trim();
+        }
+
+        @Override
+        String expression() {
+            return expression;
+        }
+
+        @Override
+        void render(Object binding, Appendable out) throws IOException {
+            Object result = resolve(binding);
+            if (result == null) {
+                // variable not defined
+                if ((":-".equals(strategy) || ":".equals(strategy)) && defaultValue != null)
+                    out.append(defaultValue);
+            } else {
+                // variable is defined
+                if (":+".equals(strategy)) {
+                    out.append(defaultValue);
+                } else if (":".equals(strategy)) {
+                    out.append(result.toString());
+                } else if (strategy == null) {
+                    out.append(leading).append(result.toString()).append(trailing);
+                }
+            }
+        }
+
+        @Override
+        void lookup(Function<String, ?> lookup, Appendable out) throws IOException {
+            Object value = lookup.apply(expression.trim());
+            if (value == null)
+                out.append(BEGIN).append(expression).append(END);
+            else
+                out.append(value.toString());
+        }
+
+        private Object resolve(Object binding) {
+            if (path.length == 0)
+                return null;
+            Object result = binding;
+            for (String comp : path) {
+                if (comp.isEmpty() || result == null)
+                    return null;
+                if (result instanceof Map) {
+                    result = ((Map) result).get(comp);
+                } else {
+                    result = getProperty(result, comp);
+                }
+            }
+            return result;
+        }
+
+        private static Object getProperty(Object object, String property) {
+            PropertyDescriptor desc;
+            try {
+                desc = Reflection.getPropertyDescriptor(object.getClass(), property);
+            } catch (RuntimeException ex) {
+                // no such property
+                Logger.suppress(ex);
+                return null;
+            }
+            if (desc == null || desc.getReadMethod() == null)
+                return null;
+            try {
+                return desc.getReadMethod().invoke(object);
+            } catch (Exception e) {
+                throw new SystemException(e);
+            }
+        }
+    }
+
+    private static class NestedPlaceholder extends Segment {
+        private final String expression;
+        private final Segment[] segments;
+        private final boolean simple;
+
+        NestedPlaceholder(String expression, Segment[] segments) {
+            this.expression = expression;
+            this.segments = segments;
+            boolean literal = true;
+            for (Segment segment : segments)
+                if (!(segment instanceof Literal))
+                    literal = false;
+            this.simple = literal;
+        }
+
+        @Override
+        String expression() {
+            return expression;
+        }
+
+        @Override
+        void render(Object binding, Appendable out) {
+            throw new UnsupportedOperationException("Nested template " + expression + " must be rendered with a lookup function");
+        }
+
+        @Override
+        void lookup(Function<String, ?> lookup, Appendable out) throws IOException {
+            String key = expression;
+            if (!simple) {
+                StringBuilder inner = new StringBuilder();
+                for (Segment segment : segments)
+                    segment.lookup(lookup, inner);
+                key = inner.toString();
+            }
+            Object value = lookup.apply(key.trim());
+            if (value == null)
+                out.append(BEGIN).append(key).append(END);
+            else
+                out.append(value.toString());
+        }
+    }
+}
@@ -17,15 +17,10 @@ limitations under the License.
 
 package net.e6tech.elements.common.util;
 
-import net.e6tech.elements.common.logging.Logger;
-
-import java.beans.IntrospectionException;
-import java.beans.PropertyDescriptor;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.Writer;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 
 import static java.util.Locale.ENGLISH;
@@ -39,15 +34,14 @@ import static java.util.Locale.ENGLISH;
  */
 public class TextSubstitution {
 
-    private Map<String, Var> variables = new LinkedHashMap<>();
-    private Map<String, Var> declared = new LinkedHashMap<>();
+    private Map<String, String> declared = new LinkedHashMap<>();
     private String template;
-
-    // NOTE.  If template ever gets modified, parseVariableNames needs to be called.
+    private Template compiled;
 
     public TextSubstitution(String template) {
         this.template = template;
-        parseVariableNames(template);
+        if (template != null)
+            compiled = Template.compile(template);
     }
 
     public TextSubstitution(Reader reader) throws IOException {
@@ -58,7 +52,7 @@ public class TextSubstitution {
             builder.append(buffer, 0, len);
         }
         this.template = builder.toString();
-        parseVariableNames(template);
+        compiled = Template.compile(template);
         reader.close();
     }
 
@@ -67,107 +61,26 @@ public class TextSubstitution {
     }
 
     public TextSubstitution declare(String var) {
-        declared.put(var, new Var(var));
+        declared.put(var, var);
         return this;
     }
 
     public String build(Object binding) {
-        if (template == null)
+        if (compiled == null)
             return "";
-        String text = template;
-        for (Map.Entry<String, Var> entry : variables.entrySet()) {
-            Var var = entry.getValue();
-            text = replaceVariable(entry.getKey(), var.build(binding), text);
-        }
-        return text;
+        return compiled.render(binding);
     }
 
-    private String replaceVariable(String key, String value, String text) {
-        return text.replace("${" + key + "}", value);
+    public StringBuilder build(Object binding, StringBuilder builder) {
+        if (compiled != null)
+            compiled.render(binding, builder);
+        return builder;
     }
 
-    @SuppressWarnings({"squid:MethodCyclomaticComplexity", "squid:S135", "squid:S3776"})
-    private void parseVariableNames(String text) {
-        variables.clear();
-        List<String> expressions = new LinkedList<>();
-        int pos = 0;
-        int max = text.length();
-        while (pos < max) {
-            pos = text.indexOf("${", pos);
-            if (pos == -1)
-                break;
-            int end = text.indexOf('}', pos + 2);
-            if (end == -1)
-                break;
-            String name = text.substring(pos + 2, end);
-            expressions.add(name);
-            pos = end + 1;
-        }
-
-        for (String expression : expressions) {
-            String key = expression;
-            String defVal = null;
-            String strategy = null;
-            if (expression.contains(":+")) {
-                int index = expression.indexOf(":+");
-                if (index >= 0) {
-                    key = expression.substring(0, index).trim();
-                    defVal = expression.substring(index + 2);
-                    strategy = ":+";
-                }
-            } else if (expression.contains(":-")) {
-                int index = expression.indexOf(":-");
-                if (index >= 0) {
-                    key = expression.substring(0, index).trim();
-                    defVal = expression.substring(index + 2);
-                    strategy = ":-";
-                }
-            } else if (expression.contains(":")) {
-                int index = expression.indexOf(':');
-                if (index >= 0) {
-                    key = expression.substring(0, index).trim();
-                    defVal = expression.substring(index + 1);
-                    strategy = ":";
-                }
-            }
-
-            // computing leading white spaces. only matter for expressions without ':' or ':+'
-            int index = 0;
-            for (int i = 0; i < key.length(); i++) {
-                if (!Character.isWhitespace(key.codePointAt(i))) {
-                    index = i;
-                    break;
-                }
-            }
-            String leadingSpaces = key.substring(0, index);
-
-            // computing trailing white spaces. only matter for expressions without ':' or ':+'
-            index = key.length();
-            for (int i = key.length() - 1; i >=0 ; i--) {
-                if (!Character.isWhitespace(key.codePointAt(i))) {
-                    index = i + 1;
-                    break;
-                }
-            }
-            String trailingSpaces = "";
-            if (index < key.length())
-                trailingSpaces = key.substring(index);
-
-            String[] tokens = key.split("\\.");
-            Var var = declared.get(tokens[0]);
-            if (var == null) {
-                var = new Var(expression);
-            } else {
-                var = new Var(var); // essentially clone var.
-            }
-
-            var.leading = leadingSpaces;
-            var.trailing = trailingSpaces;
-            var.defaultValue = defVal;
-            var.strategy = strategy;
-            var.path = tokens;
-            variables.put(expression, var);
-        }
+    public <W extends Writer> W build(Object binding, W writer) throws IOException {
+        if (compiled != null)
+            compiled.render(binding, writer);
+        return writer;
     }
 
     public static String capitalize(String name) {
@@ -176,95 +89,4 @@ public class TextSubstitution {
         }
         return name.substring(0, 1).toUpperCase(ENGLISH) + name.substring(1);
     }
-
-    private static class Var {
-        String name;
-        String leading;
-        String trailing;
-        String defaultValue;
-        String strategy;
-        String[] path;
-
-        Var(String name) {
-            this.name = name;
-        }
-
-        Var(Var var) {
-            this.name = var.name;
-            this.leading = var.leading;
-            this.trailing = var.trailing;
-            this.defaultValue = var.defaultValue;
-            this.strategy = var.strategy;
-            this.path = var.path;
-        }
-
-        public String getName() {
-            return name;
-        }
-
-        public void setName(String name) {
-            this.name = name;
-        }
-
-        public String getDefaultValue() {
-            return defaultValue;
-        }
-
-        public void setDefaultValue(String defaultValue) {
-            this.defaultValue = defaultValue;
-        }
-
-        @SuppressWarnings({"squid:MethodCyclomaticComplexity", "squid:S135", "squid:S1141", "squid:S134", "squid:S3776"})
-        public String build(Object object) {
-            Object result = object;
-            PropertyDescriptor desc;
-            for (String comp : path) {
-                comp = comp.trim();
-                if (comp.isEmpty()) {
-                    result = null;
-                    continue;
-                }
-                try {
-                    if (result == null)
-                        break;
-                    if (result instanceof Map) {
-                        result = ((Map) result).get(comp);
-                    } else {
-                        try {
-                            desc = new PropertyDescriptor(comp, result.getClass(), "is" + capitalize(comp), null);
-                            result = desc.getReadMethod().invoke(result);
-                        } catch (IntrospectionException ex) {
-                            Logger.suppress(ex);
-                            result = null;
-                        }
-                    }
-                } catch (Exception e) {
-                    Logger.suppress(e);
-                    throw new SystemException(e);
-                }
-            }
-
-            if (result == null) {
-                // variable not defined
-                if (":+".equals(strategy)) {
-                    return "";
-                } else if (":-".equals(strategy)) {
-                    return (defaultValue == null) ? "" : defaultValue;
-                } else if (":".equals(strategy)) {
-                    return (defaultValue == null) ? "" : defaultValue;
-                }
-                return "";
-            } else {
-                // variable is defined
-                if (":+".equals(strategy)) {
-                    return defaultValue;
-                } else if (":-".equals(strategy)) {
-                    return "";
-                } else if (":".equals(strategy)) {
-                    return result.toString();
-                }
-                return leading + result.toString() + trailing;
-            }
-        }
-    }
 }
@@ -0,0 +1,373 @@
+/*
+ * Copyright 2015 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.util.concurrent;
+
+import net.e6tech.elements.common.logging.Logger;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hierarchical timing wheel.  A single daemon thread advances the wheels once per tick.  Level 0 has
+ * wheelSize buckets of one tick each, level n has wheelSize buckets of wheelSize^n ticks each, and when a lower
+ * level wraps around, the current bucket of the level above is cascaded down.  Deadlines are therefore
+ * rounded up to the tick.
+ *
+ * Scheduling and cancelling are O(1) for the caller: new timeouts are handed to the wheel thread through a
+ * lock-free queue, and cancelled timeouts are unlinked from their bucket's doubly linked list on the next tick.
+ * Expired tasks are run by the executor, or by the wheel thread if there is none, in which case tasks must
+ * be short.
+ */
+@SuppressWarnings("squid:S2142")
+public class TimingWheel implements TimingWheelMXBean {
+
+    private static final Logger logger = Logger.getLogger();
+    private static final int LEVELS = 4;
+    private static final AtomicInteger counter = new AtomicInteger();
+    private static TimingWheel defaultInstance;
+
+    private final long tickNanos;
+    private final int wheelSize;
+    private final int shift;
+    private final int mask;
+    private final Bucket[][] wheels;
+    private final Executor executor;
+    private final Queue<Timeout> registrations = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancellations = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final Thread worker;
+    private final long startTime;
+    private volatile long tickLag;
+    private volatile long maxTickLag;
+    private volatile boolean stopped;
+
+    /**
+     * A wheel with 10ms ticks and 256 buckets per level.
+     */
+    public TimingWheel(Executor executor) {
+        this(10, TimeUnit.MILLISECONDS, 256, executor);
+    }
+
+    /**
+     * @param wheelSize rounded up to a power of two
+     * @param executor runs expired tasks; null to run them on the wheel thread
+     */
+    public TimingWheel(long tickDuration, TimeUnit unit, int wheelSize, Executor executor) {
+        if (tickDuration <= 0)
+            throw new IllegalArgumentException("tickDuration must be greater than 0");
+        if (wheelSize < 2 || wheelSize > (1 << 16))
+            throw new IllegalArgumentException("wheelSize must be between 2 and 65536");
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.shift = 32 - Integer.numberOfLeadingZeros(wheelSize - 1);
+        this.wheelSize = 1 << shift;
+        this.mask = this.wheelSize - 1;
+        this.executor = executor;
+        wheels = new Bucket[LEVELS][this.wheelSize];
+        for (Bucket[] wheel : wheels)
+            for (int i = 0; i < wheel.length; i++)
+                wheel[i] = new Bucket();
+
+        startTime = System.nanoTime();
+        worker = new Thread(this::run, "timing-wheel-" + counter.incrementAndGet());
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * The shared instance, registered with the platform MBeanServer as net.e6tech:type=TimingWheel,name=default.
+     * Expired tasks run in the "timing-wheel" cached ThreadPool.
+     */
+    public static synchronized TimingWheel getDefault() {
+        if (defaultInstance == null) {
+            defaultInstance = new TimingWheel(ThreadPool.cachedThreadPool("timing-wheel"));
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(defaultInstance, new ObjectName("net.e6tech:type=TimingWheel,name=default"));
+            } catch (Exception e) {
+                logger.warn("Cannot register TimingWheel MBean", e);
+            }
+        }
+        return defaultInstance;
+    }
+
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (stopped)
+            throw new IllegalStateException("TimingWheel is stopped");
+        long deadline = System.nanoTime() + unit.toNanos(Math.max(0, delay));
+        // round up so that a timeout never expires early
+        long ticks = (deadline - startTime + tickNanos - 1) / tickNanos;
+        Timeout timeout = new Timeout(this, task, deadline, ticks);
+        pending.incrementAndGet();
+        registrations.add(timeout);
+        return timeout;
+    }
+
+    public void stop() {
+        stopped = true;
+        worker.interrupt();
+    }
+
+    @Override
+    public long getPendingTimers() {
+        return pending.get();
+    }
+
+    @Override
+    public long getExpiredTimers() {
+        return expired.sum();
+    }
+
+    @Override
+    public long getCancelledTimers() {
+        return cancelled.sum();
+    }
+
+    @Override
+    public long getTickDuration() {
+        return TimeUnit.NANOSECONDS.toMillis(tickNanos);
+    }
+
+    @Override
+    public int getWheelSize() {
+        return wheelSize;
+    }
+
+    @Override
+    public long getTickLag() {
+        return TimeUnit.NANOSECONDS.toMillis(tickLag);
+    }
+
+    @Override
+    public long getMaxTickLag() {
+        return TimeUnit.NANOSECONDS.toMillis(maxTickLag);
+    }
+
+    @Override
+    public void resetMaxTickLag() {
+        maxTickLag = 0;
+    }
+
+    private void run() {
+        long tick = 0;
+        while (!stopped) {
+            long next = startTime + (tick + 1) * tickNanos;
+            long now = System.nanoTime();
+            while (now < next && !stopped) {
+                LockSupport.parkNanos(this, next - now);
+                now = System.nanoTime();
+            }
+            if (stopped)
+                break;
+            tick++;
+            long lag = now - next;
+            tickLag = lag;
+            if (lag > maxTickLag)
+                maxTickLag = lag;
+            processCancellations();
+            processRegistrations(tick);
+            cascade(tick);
+            expire(tick);
+        }
+    }
+
+    private void processCancellations() {
+        Timeout timeout;
+        while ((timeout = cancellations.poll()) != null) {
+            if (timeout.bucket != null)
+                timeout.bucket.remove(timeout);
+        }
+    }
+
+    private void processRegistrations(long tick) {
+        Timeout timeout;
+        while ((timeout = registrations.poll()) != null) {
+            if (timeout.state.get() == Timeout.INIT)
+                place(timeout, tick);
+        }
+    }
+
+    private void place(Timeout timeout, long tick) {
+        long delta = timeout.deadlineTick - tick;
+        if (delta <= 0) {
+            wheels[0][(int) (tick & mask)].add(timeout);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < (1L << (shift * (level + 1)))) {
+                wheels[level][(int) ((timeout.deadlineTick >>> (shift * level)) & mask)].add(timeout);
+                return;
+            }
+        }
+        // beyond the top level: park it in the top level bucket furthest away, it is placed again when cascaded.
+        int top = LEVELS - 1;
+        wheels[top][(int) (((tick >>> (shift * top)) + mask) & mask)].add(timeout);
+    }
+
+    private void cascade(long tick) {
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((tick & ((1L << (shift * level)) - 1)) != 0)
+                continue;
+            Bucket bucket = wheels[level][(int) ((tick >>> (shift * level)) & mask)];
+            Timeout timeout = bucket.clear();
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                timeout.next = null;
+                timeout.prev = null;
+                place(timeout, tick);
+                timeout = next;
+            }
+        }
+    }
+
+    private void expire(long tick) {
+        Bucket bucket = wheels[0][(int) (tick & mask)];
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.deadlineTick <= tick) {
+                bucket.remove(timeout);
+                if (timeout.state.compareAndSet(Timeout.INIT, Timeout.EXPIRED)) {
+                    pending.decrementAndGet();
+                    expired.increment();
+                    fire(timeout);
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    private void fire(Timeout timeout) {
+        try {
+            if (executor != null)
+                executor.execute(timeout.task);
+            else
+                timeout.task.run();
+        } catch (Exception ex) {
+            logger.warn("Timeout task failed", ex);
+        }
+    }
+
+    private void cancelled(Timeout timeout) {
+        pending.decrementAndGet();
+        cancelled.increment();
+        cancellations.add(timeout);
+    }
+
+    private static class Bucket {
+        Timeout head;
+        Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (tail == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.bucket != this)
+                return;
+            if (timeout.prev != null)
+                timeout.prev.next = timeout.next;
+            else
+                head = timeout.next;
+            if (timeout.next != null)
+                timeout.next.prev = timeout.prev;
+            else
+                tail = timeout.prev;
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        // detaches and returns the list
+        Timeout clear() {
+            Timeout first = head;
+            for (Timeout t = head; t != null; t = t.next)
+                t.bucket = null;
+            head = tail = null;
+            return first;
+        }
+    }
+
+    /**
+     * Handle to a scheduled task.  Only state is shared with the caller; the links are owned by the wheel thread.
+     */
+    public static class Timeout {
+        static final int INIT = 0;
+        static final int CANCELLED = 1;
+        static final int EXPIRED = 2;
+
+        private final TimingWheel wheel;
+        private final Runnable task;
+        private final long deadline;
+        private final long deadlineTick;
+        private final AtomicInteger state = new AtomicInteger(INIT);
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        Timeout(TimingWheel wheel, Runnable task, long deadline, long deadlineTick) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * @return false if the task has already expired or been cancelled.
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(INIT, CANCELLED))
+                return false;
+            wheel.cancelled(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        /**
+         * Remaining delay in the given unit, negative if the deadline has passed.
+         */
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        public Runnable getTask() {
+            return task;
+        }
+    }
+}
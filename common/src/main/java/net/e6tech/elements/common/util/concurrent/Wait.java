@@ -15,26 +15,92 @@ limitations under the License.
 */
 package net.e6tech.elements.common.util.concurrent;
 
-import java.util.Hashtable;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import net.e6tech.elements.common.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
+ * Correlates a key with a value that arrives later, e.g. a response to a request.  Entries live in
+ * a ConcurrentHashMap and are expired by the shared TimingWheel, so neither access nor cleanup
+ * contends on a single lock or scans the table.  Waiters can either block in poll or attach to
+ * the entry's future; the future completes with a TimeoutException when the entry expires.
+ * Call register to expose the statistics over JMX.
+ *
  * Created by futeh.
  */
-@SuppressWarnings({"squid:S2276","squid:S134", "squid:S1188", "squid:S1066", "squid:S2864", "squid:S1149"})
-public class Wait<K, V> {
-    Hashtable<K, Entry<V>> table = new Hashtable<>();
-    Thread thread;
+public class Wait<K, V> implements WaitMXBean {
+    private static final Logger logger = Logger.getLogger();
+    private final ConcurrentHashMap<K, Entry<V>> table = new ConcurrentHashMap<>();
+    private TimingWheel timingWheel;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder waitTime = new LongAdder();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+    private ObjectName objectName;
+
+    public Wait() {
+        this(TimingWheel.getDefault());
+    }
+
+    public Wait(TimingWheel timingWheel) {
+        this.timingWheel = timingWheel;
+    }
+
+    public TimingWheel getTimingWheel() {
+        return timingWheel;
+    }
+
+    public void setTimingWheel(TimingWheel timingWheel) {
+        this.timingWheel = timingWheel;
+    }
+
+    /**
+     * Registers the statistics with the platform MBeanServer as net.e6tech:type=Wait,name=<i>name</i>.
+     */
+    public synchronized Wait<K, V> register(String name) {
+        unregister();
+        try {
+            ObjectName on = new ObjectName("net.e6tech:type=Wait,name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(on))
+                server.unregisterMBean(on);
+            server.registerMBean(this, on);
+            objectName = on;
+        } catch (Exception e) {
+            logger.warn("Cannot register Wait MBean " + name, e);
+        }
+        return this;
+    }
+
+    public synchronized void unregister() {
+        if (objectName == null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            Logger.suppress(e);
+        }
+        objectName = null;
+    }
 
-    @SuppressWarnings("squid:S899")
     public void offer(K key, V value) {
         Entry<V> entry = table.get(key);
-        if (entry != null) {
-            entry.queue.offer(value);
+        // statistics are updated before the future completes so that a waiter woken up by it sees them.
+        if (entry != null && entry.settle()) {
+            hits.increment();
+            long elapsed = System.currentTimeMillis() - entry.start;
+            waitTime.add(elapsed);
+            maxWaitTime.accumulateAndGet(elapsed, Math::max);
+            entry.future.complete(value);
+        } else {
+            misses.increment();
         }
     }
 
@@ -49,78 +115,37 @@ public class Wait<K, V> {
         }
     }
 
-    @SuppressWarnings("squid:S3776")
-    public void newEntry(K key, Object userData, long expired) {
-        Entry<V> entry = new Entry<>();
-        entry.userData = userData;
-        entry.expired = expired;
-        synchronized (table) {
-            table.put(key, entry);
-            table.notifyAll();
+    /**
+     * @param expired milliseconds from now after which the entry is discarded.  An entry already waiting for
+     *                the key is replaced and its future completes exceptionally with a CancellationException.
+     */
+    public CompletableFuture<V> newEntry(K key, Object userData, long expired) {
+        Entry<V> entry = new Entry<>(userData, expired);
+        Entry<V> previous = table.put(key, entry);
+        if (previous != null) {
+            previous.cancel();
+            if (previous.settle())
+                previous.future.completeExceptionally(new CancellationException("Entry for " + key + " was replaced"));
         }
+        entry.schedule(key, expired);
+        return entry.future;
+    }
 
-        synchronized (table) {
-            if (thread == null) {
-                // start cleanup thread
-                thread = new Thread(()->{
-                    List<K> list = new LinkedList<>();
-                    while (true) {
-                        long waitTime = 0;
-                        list.clear();
-                        synchronized (table) {
-                            for (K k : table.keySet()) {
-                                Entry<V> e = table.get(k);
-                                if (e != null) { // can be checkout by a different thread
-                                    if (e.start + e.expired < System.currentTimeMillis()) {
-                                        list.add(k);
-                                    } else {
-                                        long exp = e.start + e.expired - System.currentTimeMillis();
-                                        if (exp > 0) {
-                                            if (waitTime == 0 || waitTime > exp) waitTime = exp;
-                                        }
-                                    }
-                                }
-                            }
-                        }
-
-                        for (K k : list) {
-                            Entry<V> e = table.get(k);
-                            // we check for e != null because some other thread can remove it.
-                            if (e != null && e.start + e.expired < System.currentTimeMillis()) {
-                                table.remove(k);
-                            }
-                        }
-
-                        if (waitTime > 0) {
-                            try {
-                                Thread.sleep(waitTime);
-                            } catch (InterruptedException e) {
-                                Thread.currentThread().interrupt();
-                            }
-                        }
-                        synchronized (table) {
-                            while (table.size() == 0) {
-                                try {
-                                    table.wait();
-                                } catch (InterruptedException e) {
-                                    Thread.currentThread().interrupt();
-                                }
-                            }
-                        }
-                    }
-                });
-                thread.setDaemon(true);
-                thread.start();
-            }
-        }
+    /**
+     * Returns the future for the key's value, or null if the key is not waiting.  The future
+     * completes exceptionally with a TimeoutException when the entry expires.
+     */
+    public CompletableFuture<V> future(K key) {
+        Entry<V> entry = table.get(key);
+        return entry == null ? null : entry.future;
     }
 
     public V remove(K key) {
-        Entry<V> entry = table.get(key);
+        Entry<V> entry = table.remove(key);
         if (entry == null)
             return null;
-        table.remove(key);
-        return entry.queue.peek();
+        entry.cancel();
+        return entry.value();
     }
 
     public V poll(K key, long timeout) {
@@ -128,10 +153,15 @@ public class Wait<K, V> {
         if (entry == null)
             return null;
         try {
-            return  entry.queue.poll(timeout, TimeUnit.MILLISECONDS);
+            return entry.future.get(timeout, TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             return null;
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            return null;
+        } catch (ExecutionException | CancellationException e) {
+            return null;
         } finally {
             remove(key);
         }
@@ -141,7 +171,7 @@ public class Wait<K, V> {
         Entry<V> entry = table.get(key);
         if (entry == null)
             return null;
-        return entry.queue.peek();
+        return entry.value();
     }
 
     public <T> T peekUserData(K key) {
@@ -151,12 +181,89 @@ public class Wait<K, V> {
         return (T) entry.userData;
     }
 
-    private static class Entry<V> {
-        long start = System.currentTimeMillis();
-        long expired;
-        BlockingQueue<V> queue = new LinkedBlockingQueue<>(1);
-        Object userData;
+    @Override
+    public int getEntries() {
+        return table.size();
     }
 
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public double getAverageWaitTime() {
+        long count = hits.sum();
+        return count == 0 ? 0 : (double) waitTime.sum() / count;
+    }
 
+    @Override
+    public long getMaxWaitTime() {
+        return maxWaitTime.get();
+    }
+
+    @Override
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        timeouts.reset();
+        waitTime.reset();
+        maxWaitTime.set(0);
+    }
+
+    private class Entry<T> implements Runnable {
+        final long start = System.currentTimeMillis();
+        volatile long expired;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final Object userData;
+        K key;
+        volatile TimingWheel.Timeout timeout;
+        final AtomicBoolean settled = new AtomicBoolean();
+
+        Entry(Object userData, long expired) {
+            this.userData = userData;
+            this.expired = expired;
+        }
+
+        void schedule(K key, long delay) {
+            this.key = key;
+            timeout = timingWheel.schedule(this, delay, TimeUnit.MILLISECONDS);
+        }
+
+        void cancel() {
+            if (timeout != null)
+                timeout.cancel();
+        }
+
+        // only one of offer and expiry may complete the future.
+        boolean settle() {
+            return settled.compareAndSet(false, true);
+        }
+
+        T value() {
+            return future.getNow(null);
+        }
+
+        // runs when the deadline passes; reschedules if extendExpiration moved it.
+        @Override
+        public void run() {
+            long remaining = start + expired - System.currentTimeMillis();
+            if (remaining > 0) {
+                schedule(key, remaining);
+            } else if (table.remove(key, this) && settle()) {
+                timeouts.increment();
+                future.completeExceptionally(new TimeoutException("Wait expired for " + key));
+            }
+        }
+    }
 }
@@ -16,13 +16,18 @@
 package net.e6tech.elements.common.util.monitor;
 
 import net.e6tech.elements.common.inject.Inject;
+import net.e6tech.elements.common.util.concurrent.TimingWheel;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Monitors listeners on a shared TimingWheel instead of a thread per listener.  When a listener's deadline
+ * arrives, its timeout is read again since it may have changed; if it has been extended the check is
+ * rescheduled, otherwise onTimeout is called if the listener is still open.
+ *
  * Created by futeh.
  */
-@SuppressWarnings({"squid:S134", "squid:S135", "squid:S3776"})
 public class TimeoutMonitor {
 
     long timeout = -1; // means disable, 0 means use default
@@ -30,6 +35,8 @@ public class TimeoutMonitor {
     @Inject(optional = true)
     ExecutorService threadPool;
 
+    private TimingWheel timingWheel;
+
     public long getTimeout() {
         return timeout;
     }
@@ -42,25 +49,38 @@ public class TimeoutMonitor {
         return threadPool;
     }
 
+    /**
+     * If set, onTimeout is called from this pool instead of the timing wheel's executor.
+     */
     public void setThreadPool(ExecutorService threadPool) {
         this.threadPool = threadPool;
     }
 
-    public void monitor(TimeoutListener listener) {
+    public TimingWheel getTimingWheel() {
+        if (timingWheel == null)
+            timingWheel = TimingWheel.getDefault();
+        return timingWheel;
+    }
+
+    public void setTimingWheel(TimingWheel timingWheel) {
+        this.timingWheel = timingWheel;
+    }
+
+    /**
+     * @return a handle that stops monitoring the listener, including checks rescheduled after its timeout was
+     * extended, or null if the listener is not monitored.
+     */
+    public Monitor monitor(TimeoutListener listener) {
         if (listener.getTimeout() < 0)
-            return;
+            return null;
 
         long initialTimeout = (listener.getTimeout() == 0) ? timeout : listener.getTimeout();
         if (initialTimeout > 0) {
-            Monitor monitor = new Monitor(listener);
-            if (threadPool != null)
-                threadPool.execute(monitor);
-            else {
-                Thread thread = new Thread(monitor);
-                thread.setDaemon(true);
-                thread.start();
-            }
+            Monitor monitor = new Monitor(listener, System.currentTimeMillis());
+            monitor.schedule(initialTimeout);
+            return monitor;
         }
+        return null;
     }
 
     protected boolean rollback(TimeoutListener listener) {
@@ -71,41 +91,49 @@ public class TimeoutMonitor {
         return false;
     }
 
-    class Monitor implements Runnable {
+    public class Monitor implements Runnable {
         TimeoutListener listener;
+        long start;
+        private volatile TimingWheel.Timeout scheduled;
+        private volatile boolean cancelled;
 
-        Monitor(TimeoutListener listener) {
+        Monitor(TimeoutListener listener, long start) {
             this.listener = listener;
+            this.start = start;
+        }
+
+        void schedule(long delay) {
+            scheduled = getTimingWheel().schedule(this, delay, TimeUnit.MILLISECONDS);
+            if (cancelled) // cancelled while rescheduling
+                scheduled.cancel();
+        }
+
+        /**
+         * Cancels whichever check is currently scheduled; onTimeout will not be called afterwards.
+         */
+        public void cancel() {
+            cancelled = true;
+            TimingWheel.Timeout timeout = scheduled;
+            if (timeout != null)
+                timeout.cancel();
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
         }
 
         public void run() {
-            long start = System.currentTimeMillis();
-            long sleep = 100;
-            while (sleep >= 0) {
-                long t = (listener.getTimeout() == 0) ? timeout : listener.getTimeout();
-                if (!listener.isOpen())
-                    break;
-                if (System.currentTimeMillis() - start > t) {
-                    if (rollback(listener))
-                        break;
-                } else {
-                    if (t - (System.currentTimeMillis() - start) < 100)
-                        sleep = t - (System.currentTimeMillis() - start);
-                    if (sleep < 100) {
-                        sleep = t - (System.currentTimeMillis() - start) - 10;
-                        if (sleep < 10) {
-                            sleep = t - (System.currentTimeMillis() - start) - 1;
-                        }
-                    }
-                    try {
-                        if (sleep >= 0)
-                            Thread.sleep(sleep);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                    }
-                }
+            if (cancelled || !listener.isOpen())
+                return;
+            long t = (listener.getTimeout() == 0) ? timeout : listener.getTimeout();
+            long remaining = t - (System.currentTimeMillis() - start);
+            if (t > 0 && remaining > 0) {
+                schedule(remaining);
+            } else if (threadPool != null) {
+                threadPool.execute(() -> rollback(listener));
+            } else {
+                rollback(listener);
             }
-            rollback(listener);
         }
     }
 }
@@ -22,15 +22,19 @@ import org.ehcache.config.builders.CacheManagerBuilder;
 import org.ehcache.config.builders.ResourcePoolsBuilder;
 import org.ehcache.expiry.Duration;
 import org.ehcache.expiry.Expirations;
+import org.ehcache.impl.serialization.StringSerializer;
+import net.e6tech.elements.common.util.SystemException;
 import org.junit.jupiter.api.Test;
 
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.junit.jupiter.api.Assertions.assertNotNull;
-import static org.junit.jupiter.api.Assertions.assertNull;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Tests for ehcache and CacheFacade.
@@ -108,4 +112,118 @@ public class CacheFacadeTest {
         v = cache2.get("a");
         assertTrue(v == null);
     }
+
+    @Test
+    void singleFlight() throws Exception {
+        CacheFacade<String, String> facade = new CacheFacade<String, String>("singleFlight") {}.initPool(pool -> pool.setExpiry(60000L));
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> facade.get("hot", () -> {
+                    loads.incrementAndGet();
+                    release.await();
+                    return "value";
+                })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<String> f : futures)
+                assertEquals("value", f.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, facade.getStatistics().getLoads());
+        assertEquals(16, facade.getStatistics().getMisses() + facade.getStatistics().getHits());
+    }
+
+    @Test
+    void refreshAhead() throws Exception {
+        CacheFacade<String, Integer> facade = new CacheFacade<String, Integer>("refreshAhead") {}.initPool(pool -> {
+            pool.setExpiry(400L);
+            pool.setRefreshAhead(0.25);
+        });
+        AtomicInteger version = new AtomicInteger();
+        assertEquals(1, (int) facade.get("key", version::incrementAndGet));
+        Thread.sleep(150);
+        // stale but not expired: served from cache while reloading in the background
+        assertEquals(1, (int) facade.get("key", version::incrementAndGet));
+        for (int i = 0; i < 50 && facade.get("key") != 2; i++)
+            Thread.sleep(10);
+        assertEquals(2, (int) facade.get("key"));
+        assertEquals(1, facade.getStatistics().getRefreshes());
+    }
+
+    @Test
+    void negative() throws Exception {
+        CacheFacade<String, String> facade = new CacheFacade<String, String>("negative") {}.initPool(pool -> pool.setNegativeExpiry(100L));
+        AtomicInteger loads = new AtomicInteger();
+        Callable<String> missing = () -> { loads.incrementAndGet(); return null; };
+        assertNull(facade.get("missing", missing));
+        assertNull(facade.get("missing", missing));
+        assertEquals(1, loads.get());
+        assertEquals(1, facade.getStatistics().getNegativeHits());
+        Thread.sleep(120);
+        assertNull(facade.get("missing", missing));
+        assertEquals(2, loads.get());
+        facade.put("missing", "found");
+        assertEquals("found", facade.get("missing", missing));
+    }
+
+    @Test
+    void loadFailure() {
+        CacheFacade<String, String> facade = new CacheFacade<String, String>("loadFailure") {};
+        SystemException ex = assertThrows(SystemException.class, () -> facade.get("key", () -> { throw new IllegalStateException(); }));
+        assertTrue(ex.getCause() instanceof IllegalStateException);
+        assertEquals(1, facade.getStatistics().getLoadFailures());
+        assertEquals("ok", facade.get("key", () -> "ok"));
+    }
+
+    @Test
+    void loadError() throws Exception {
+        CacheFacade<String, String> facade = new CacheFacade<String, String>("loadError") {};
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> loader = executor.submit(() -> facade.get("key", () -> {
+                loading.countDown();
+                release.await();
+                throw new AssertionError("boom");
+            }));
+            loading.await();
+            Future<String> waiter = executor.submit(() -> facade.get("key", () -> "unused"));
+            Thread.sleep(100);
+            release.countDown();
+            ExecutionException ex = assertThrows(ExecutionException.class, () -> loader.get(5, TimeUnit.SECONDS));
+            assertTrue(ex.getCause() instanceof AssertionError);
+            ex = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+            assertTrue(ex.getCause() instanceof AssertionError);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void tiered() throws Exception {
+        String dir = Files.createTempDirectory("cache").toString();
+        CacheFacade<String, String> facade = new CacheFacade<String, String>("tiered") {}.initPool(pool -> {
+            pool.setMaxEntries(10);
+            pool.setOffHeapSize(1024 * 1024L);
+            pool.setDiskSize(8 * 1024 * 1024L);
+            pool.setDiskPath(dir);
+            pool.setValueSerializer(StringSerializer.class);
+        });
+        char[] chars = new char[1024];
+        java.util.Arrays.fill(chars, 'x');
+        String payload = new String(chars);
+        for (int i = 0; i < 2000; i++)
+            facade.put(Integer.toString(i), payload + i);
+        // far more than the heap tier holds, the rest spilled to off-heap and disk
+        for (int i = 0; i < 2000; i++)
+            assertEquals(payload + i, facade.get(Integer.toString(i)));
+    }
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.inject.spi;
+
+import net.e6tech.elements.common.inject.Inject;
+import net.e6tech.elements.common.inject.Injector;
+import net.e6tech.elements.common.inject.ModuleFactory;
+import net.e6tech.elements.common.inject.Named;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InjectorImplTest {
+
+    @Test
+    void generatedInjector() throws Exception {
+        List<InjectorImpl.InjectionPoint> points = new ArrayList<>();
+        points.add(new InjectorImpl.InjectionPoint(Target.class.getField("publicField")));
+        points.add(new InjectorImpl.InjectionPoint(Target.class.getDeclaredField("packageField")));
+        points.add(new InjectorImpl.InjectionPoint(Target.class.getDeclaredField("privateField")));
+        points.add(new InjectorImpl.InjectionPoint(Target.class.getMethod("setCount", int.class)));
+        InjectorGenerator.generate(Target.class, points);
+
+        assertTrue(points.get(0).isGenerated());
+        assertTrue(points.get(1).isGenerated());
+        assertFalse(points.get(2).isGenerated());
+        assertTrue(points.get(3).isGenerated());
+    }
+
+    // injection points are computed again when the cache evicts a type; the generated class is reused.
+    @Test
+    void generatedOncePerType() throws Exception {
+        List<InjectorImpl.InjectionPoint> first = points();
+        List<InjectorImpl.InjectionPoint> second = points();
+        InjectorGenerator.generate(Target.class, first);
+        InjectorGenerator.generate(Target.class, second);
+        assertNotNull(first.get(0).getGenerated());
+        for (int i = 0; i < first.size(); i++)
+            assertSame(first.get(i).getGenerated(), second.get(i).getGenerated());
+    }
+
+    private static List<InjectorImpl.InjectionPoint> points() throws Exception {
+        return Arrays.asList(new InjectorImpl.InjectionPoint(Target.class.getField("publicField")),
+                new InjectorImpl.InjectionPoint(Target.class.getDeclaredField("packageField")),
+                new InjectorImpl.InjectionPoint(Target.class.getMethod("setCount", int.class)));
+    }
+
+    @Test
+    void inject() {
+        inject(true);
+        inject(false);
+    }
+
+    private void inject(boolean generated) {
+        boolean saved = InjectorImpl.isGeneratedInjectors();
+        InjectorImpl.setGeneratedInjectors(generated);
+        try {
+            ModuleImpl module = new ModuleImpl(ModuleFactory.getInstance());
+            module.bindInstance(String.class, "hello");
+            module.bindNamedInstance(String.class, "named", "world");
+            module.bindInstance(Integer.class, 3);
+            Target target = new Target();
+            module.build().inject(target, true);
+            assertEquals("hello", target.publicField);
+            assertEquals("hello", target.packageField);
+            assertEquals("world", target.getPrivateField());
+            assertEquals(3, target.count);
+        } finally {
+            InjectorImpl.setGeneratedInjectors(saved);
+        }
+    }
+
+    @Test
+    void snapshotFollowsModuleChanges() {
+        ModuleImpl parent = new ModuleImpl(ModuleFactory.getInstance());
+        ModuleImpl child = new ModuleImpl(ModuleFactory.getInstance());
+        parent.bindInstance(String.class, "parent");
+        Injector injector = child.build(parent);
+        assertEquals("parent", injector.getInstance(String.class));
+        assertNull(injector.getInstance(Integer.class));
+
+        child.bindInstance(String.class, "child");
+        child.bindInstance(Integer.class, 1);
+        assertEquals("child", injector.getInstance(String.class));
+        assertEquals(Integer.valueOf(1), injector.getInstance(Integer.class));
+
+        child.unbindInstance(String.class);
+        assertEquals("parent", injector.getInstance(String.class));
+
+        parent.bindInstance(String.class, "parent2");
+        assertEquals("parent2", injector.getInstance(String.class));
+    }
+
+    @Test
+    void onlyChangedTypesAreStale() {
+        ModuleImpl module = new ModuleImpl(ModuleFactory.getInstance());
+        module.bindInstance(String.class, "hello");
+        Injector injector = module.build();
+        assertEquals("hello", injector.getInstance(String.class));
+        assertNull(injector.getInstance(Integer.class));
+
+        long version = module.getVersion();
+        module.bindInstance(Integer.class, 1);
+        Set<Type> stale = new HashSet<>();
+        module.changedSince(version, stale);
+        assertTrue(stale.contains(Integer.class));
+        assertFalse(stale.contains(String.class));
+
+        // the cached miss for Integer is dropped, the resolution of String is carried over.
+        assertEquals(Integer.valueOf(1), injector.getInstance(Integer.class));
+        assertEquals("hello", injector.getInstance(String.class));
+
+        version = module.getVersion();
+        module.unbindInstance(Integer.class);
+        stale.clear();
+        module.changedSince(version, stale);
+        assertTrue(stale.contains(Integer.class));
+        assertNull(injector.getInstance(Integer.class));
+    }
+
+    @Test
+    void addDoesNotShareBindings() {
+        ModuleImpl source = new ModuleImpl(ModuleFactory.getInstance());
+        source.bindInstance(String.class, "source");
+        ModuleImpl module = new ModuleImpl(ModuleFactory.getInstance());
+        module.add(source);
+        module.bindNamedInstance(String.class, "x", "added");
+
+        assertEquals("source", module.getBoundInstance(String.class));
+        assertEquals("added", module.getBoundNamedInstance(String.class, "x"));
+        assertNull(source.getBoundNamedInstance(String.class, "x"));
+
+        // the other direction, and unbinding
+        source.bindNamedInstance(String.class, "y", "later");
+        assertNull(module.getBoundNamedInstance(String.class, "y"));
+        module.add(source);
+        assertEquals("later", module.getBoundNamedInstance(String.class, "y"));
+        source.unbindNamedInstance(String.class, "y");
+        assertEquals("later", module.getBoundNamedInstance(String.class, "y"));
+
+        // a type only the source has is shared until one of them changes it
+        source.bindInstance(Integer.class, 1);
+        module.add(source);
+        module.unbindInstance(Integer.class);
+        assertEquals(Integer.valueOf(1), source.getBoundInstance(Integer.class));
+        assertNull(module.getBoundInstance(Integer.class));
+    }
+
+    public static class Target {
+        @Inject
+        public String publicField;
+
+        @Inject
+        String packageField;
+
+        @Inject
+        @Named("named")
+        private String privateField;
+
+        private int count;
+
+        public String getPrivateField() {
+            return privateField;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        @Inject(type = Integer.class)
+        public void setCount(int count) {
+            this.count = count;
+        }
+    }
+}
@@ -30,8 +30,7 @@ import java.util.Random;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
-import static org.junit.jupiter.api.Assertions.assertFalse;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 
 /**
@@ -155,6 +154,25 @@ public class InterceptorTest {
         proxy.protectedMethod("calling protected method");
     }
 
+    @Test
+    void directInvoker() throws Exception {
+        Interceptor interceptor = new Interceptor();
+        TestClass proxy = interceptor.newInstance(TestClass.class, CallFrame::invoke);
+        proxy.setValue(42);
+        assertEquals(42, proxy.getValue());
+        assertEquals("x", proxy.methodC("x", 1));
+        proxy.protectedMethod("direct");
+
+        // generated stubs, not reflection, for public and protected methods
+        assertTrue(CallFrame.invoker(TestClass.class.getMethod("setValue", int.class)).getClass().getName().contains("$$Invoker$"));
+        assertTrue(CallFrame.invoker(TestClass.class.getDeclaredMethod("protectedMethod", String.class)).getClass().getName().contains("$$Invoker$"));
+
+        // exceptions from the target surface as before
+        List<String> list = interceptor.newInstance(ArrayList.class, CallFrame::invoke);
+        Exception ex = assertThrows(Exception.class, () -> list.get(5));
+        assertTrue(ex.getCause() instanceof IndexOutOfBoundsException);
+    }
+
     @Test
     void testBootstrapClass() throws Exception {
         ZonedDateTime zonedDateTime = ZonedDateTime.ofInstant(Instant.now(), ZoneId.systemDefault());
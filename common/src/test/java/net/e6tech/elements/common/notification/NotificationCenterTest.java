@@ -0,0 +1,164 @@
+/*
+Copyright 2015 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.e6tech.elements.common.notification;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NotificationCenterTest {
+
+    @Test
+    void hierarchy() {
+        NotificationCenter center = new NotificationCenter();
+        List<String> received = new ArrayList<>();
+        NotificationListener<Base> base = n -> received.add("base");
+        center.addNotificationListener(Base.class, base);
+        center.fireNotification(new Derived(null));
+        assertEquals(Collections.singletonList("base"), received);
+
+        // registering after the table for Derived was built must invalidate it
+        received.clear();
+        center.addNotificationListener(Derived.class, n -> received.add("derived"));
+        center.fireNotification(new Derived(null));
+        assertEquals(2, received.size());
+        assertEquals(2, center.getNotificationListeners(new Derived(null)).size());
+
+        received.clear();
+        center.removeNotificationListener(Base.class, base);
+        center.fireNotification(new Derived(null));
+        assertEquals(Collections.singletonList("derived"), received);
+        assertTrue(center.getNotificationListeners(new Base(null)).isEmpty());
+    }
+
+    @Test
+    void asyncOrderedPerSource() throws Exception {
+        NotificationCenter center = new NotificationCenter();
+        center.setAsync(true);
+        center.setLanes(4);
+        int count = 10000;
+        List<Integer> a = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> b = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(2 * count);
+        center.addNotificationListener(Derived.class, n -> {
+            ("a".equals(n.source()) ? a : b).add(n.sequence);
+            latch.countDown();
+        });
+        try {
+            for (int i = 0; i < count; i++) {
+                center.fireNotification(new Derived("a", i));
+                center.fireNotification(new Derived("b", i));
+            }
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            center.shutdown();
+        }
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, (int) a.get(i));
+            assertEquals(i, (int) b.get(i));
+        }
+    }
+
+    @Test
+    void backpressure() throws Exception {
+        NotificationCenter center = new NotificationCenter();
+        center.setAsync(true);
+        center.setLanes(1);
+        center.setLaneCapacity(1);
+        CountDownLatch release = new CountDownLatch(1);
+        center.addNotificationListener(Base.class, n -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        AtomicBoolean returned = new AtomicBoolean();
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 3; i++)
+                center.fireNotification(new Base(null));
+            returned.set(true);
+        });
+        producer.start();
+        // one in progress, one queued, the third must wait for room
+        producer.join(200);
+        assertFalse(returned.get());
+        release.countDown();
+        producer.join(5000);
+        assertTrue(returned.get());
+        center.shutdown();
+    }
+
+    // a listener firing notifications onto its own full lane must not wait for itself.
+    @Test
+    void refireFromLane() throws Exception {
+        NotificationCenter center = new NotificationCenter();
+        center.setAsync(true);
+        center.setLanes(1);
+        center.setLaneCapacity(1);
+        int count = 10;
+        CountDownLatch latch = new CountDownLatch(count);
+        center.addNotificationListener(Derived.class, n -> {
+            if (n.sequence == 0)
+                for (int i = 1; i < count; i++)
+                    center.fireNotification(new Derived(null, i));
+            latch.countDown();
+        });
+        try {
+            center.fireNotification(new Derived(null, 0));
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } finally {
+            center.shutdown();
+        }
+    }
+
+    static class Base implements Notification {
+        Object source;
+        int sequence;
+
+        Base(Object source) {
+            this(source, 0);
+        }
+
+        Base(Object source, int sequence) {
+            this.source = source;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public Object source() {
+            return source;
+        }
+    }
+
+    static class Derived extends Base {
+        Derived(Object source) {
+            super(source);
+        }
+
+        Derived(Object source, int sequence) {
+            super(source, sequence);
+        }
+    }
+}
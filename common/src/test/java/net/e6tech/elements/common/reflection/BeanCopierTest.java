@@ -0,0 +1,272 @@
+/*
+ * Copyright 2015 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.reflection;
+
+import org.junit.jupiter.api.Test;
+
+import java.beans.PropertyDescriptor;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BeanCopierTest {
+
+    @Test
+    void generated() {
+        Source source = new Source();
+        Target target = Reflection.copyInstance(new Target(), source);
+        assertTrue(BeanCopier.of(Source.class, Target.class).isGenerated());
+
+        assertEquals("name", target.getName());
+        assertEquals(7, target.getCount());
+        assertEquals(7L, target.getWidened());
+        assertEquals(Integer.valueOf(3), target.getBoxed());
+        assertEquals(2.5d, target.getAmount(), 0.0001d);
+        assertEquals(new BigDecimal("12"), target.getDecimal());
+        assertNull(target.getSecret());
+
+        // collections are copied into new collections, not shared
+        assertEquals(source.getItems(), target.getItems());
+        assertNotSame(source.getItems(), target.getItems());
+    }
+
+    @Test
+    void sameAsListenerPath() {
+        Source source = new Source();
+        Target fast = Reflection.copyInstance(new Target(), source);
+        Target slow = Reflection.copyInstance(new Target(), source, (t, td, o, od) -> false);
+        assertEquals(slow.getName(), fast.getName());
+        assertEquals(slow.getCount(), fast.getCount());
+        assertEquals(slow.getWidened(), fast.getWidened());
+        assertEquals(slow.getBoxed(), fast.getBoxed());
+        assertEquals(slow.getAmount(), fast.getAmount(), 0.0001d);
+        assertEquals(slow.getDecimal(), fast.getDecimal());
+        assertEquals(slow.getItems(), fast.getItems());
+        assertEquals(slow.getSecret(), fast.getSecret());
+    }
+
+    @Test
+    void narrowing() {
+        Target target = new Target();
+        target.setWidened(Long.MAX_VALUE);
+        Source source = Reflection.copyInstance(new Source(), target);
+        // does not fit into an int, so it is left alone as before
+        assertEquals(7, source.getWidened());
+        target.setWidened(42);
+        Reflection.copyInstance(source, target);
+        assertEquals(42, source.getWidened());
+    }
+
+    @Test
+    void setterOrder() {
+        Ordered source = new Ordered();
+        source.setAlpha(1);
+        source.setBeta(new ArrayList<>());
+        source.setGamma("g");
+        Ordered fast = new Ordered();
+        Reflection.copyInstance(fast, source);
+        Ordered slow = new Ordered();
+        Reflection.copyInstance(slow, source, (t, td, o, od) -> false);
+        assertTrue(BeanCopier.of(Ordered.class, Ordered.class).isGenerated());
+        assertEquals(slow.calls, fast.calls);
+    }
+
+    @Test
+    void suppliedDescriptors() {
+        Reflection.Replicator replicator = new Reflection.Replicator();
+        Map<Class, PropertyDescriptor[]> descriptors = new HashMap<>();
+        replicator.setPropertyDescriptors(descriptors);
+        assertSame(descriptors, replicator.getPropertyDescriptors());
+        Target target = new Target();
+        replicator.copy(target, new Source());
+        assertEquals("name", target.getName());
+        assertTrue(descriptors.containsKey(Source.class));
+    }
+
+    public static class Ordered {
+        transient List<String> calls = new ArrayList<>();
+        private int alpha;
+        private List<String> beta;
+        private String gamma;
+
+        public int getAlpha() {
+            return alpha;
+        }
+
+        public void setAlpha(int alpha) {
+            calls.add("alpha");
+            this.alpha = alpha;
+        }
+
+        public List<String> getBeta() {
+            return beta;
+        }
+
+        public void setBeta(List<String> beta) {
+            calls.add("beta");
+            this.beta = beta;
+        }
+
+        public String getGamma() {
+            return gamma;
+        }
+
+        public void setGamma(String gamma) {
+            calls.add("gamma");
+            this.gamma = gamma;
+        }
+    }
+
+    public static class Source {
+        private String name = "name";
+        private int count = 7;
+        private int widened = 7;
+        private int boxed = 3;
+        private float amount = 2.5f;
+        private long decimal = 12;
+        private String secret = "secret";
+        private List<String> items = new ArrayList<>();
+
+        public Source() {
+            items.add("a");
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public int getWidened() {
+            return widened;
+        }
+
+        public void setWidened(int widened) {
+            this.widened = widened;
+        }
+
+        public int getBoxed() {
+            return boxed;
+        }
+
+        public float getAmount() {
+            return amount;
+        }
+
+        public long getDecimal() {
+            return decimal;
+        }
+
+        @DoNotCopy
+        public String getSecret() {
+            return secret;
+        }
+
+        public List<String> getItems() {
+            return items;
+        }
+    }
+
+    public static class Target {
+        private String name;
+        private int count;
+        private long widened;
+        private Integer boxed;
+        private double amount;
+        private BigDecimal decimal;
+        private String secret;
+        private List<String> items;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public long getWidened() {
+            return widened;
+        }
+
+        public void setWidened(long widened) {
+            this.widened = widened;
+        }
+
+        public Integer getBoxed() {
+            return boxed;
+        }
+
+        public void setBoxed(Integer boxed) {
+            this.boxed = boxed;
+        }
+
+        public double getAmount() {
+            return amount;
+        }
+
+        public void setAmount(double amount) {
+            this.amount = amount;
+        }
+
+        public BigDecimal getDecimal() {
+            return decimal;
+        }
+
+        public void setDecimal(BigDecimal decimal) {
+            this.decimal = decimal;
+        }
+
+        public String getSecret() {
+            return secret;
+        }
+
+        public void setSecret(String secret) {
+            this.secret = secret;
+        }
+
+        public List<String> getItems() {
+            return items;
+        }
+
+        public void setItems(List<String> items) {
+            this.items = items;
+        }
+    }
+}
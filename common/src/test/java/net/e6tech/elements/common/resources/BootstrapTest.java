@@ -0,0 +1,175 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.resources;
+
+import groovy.lang.Closure;
+import net.e6tech.elements.common.script.Scripting;
+import net.e6tech.elements.common.util.SystemException;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BootstrapTest {
+
+    private static Closure closure(Consumer<Bootstrap> consumer) {
+        return new Closure(null) {
+            public Object doCall(Object bootstrap) {
+                consumer.accept((Bootstrap) bootstrap);
+                return null;
+            }
+        };
+    }
+
+    private static Closure sleep(long millis) {
+        return closure(b -> {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    @Test
+    void parallel() {
+        Bootstrap bootstrap = new Bootstrap(new ResourceManager());
+        Map<String, Object> main = new LinkedHashMap<>();
+        main.put("a", sleep(300));
+        main.put("b", sleep(300));
+        main.put("c", sleep(100));
+        bootstrap.setMain(main);
+        Map<String, Object> deps = new HashMap<>();
+        deps.put("c", Arrays.asList("a", "b"));
+        bootstrap.dependsOn(deps);
+        bootstrap.setParallel(3);
+        bootstrap.boot(null, "a", "b", "c");
+
+        BootTimeline timeline = bootstrap.getTimeline();
+        BootTimeline.Component a = timeline.getComponent("a");
+        BootTimeline.Component b = timeline.getComponent("b");
+        BootTimeline.Component c = timeline.getComponent("c");
+        assertNotEquals(a.getThread(), b.getThread());
+        assertEquals(new TreeSet<>(Arrays.asList("a", "b")), c.getDependencies());
+
+        // c waits for a and b, which run side by side
+        long mainTime = a.getDuration(TimeUnit.MILLISECONDS) + b.getDuration(TimeUnit.MILLISECONDS) + c.getDuration(TimeUnit.MILLISECONDS);
+        List<BootTimeline.Component> path = timeline.getCriticalPath();
+        assertSame(c, path.get(path.size() - 1));
+        assertTrue(path.get(path.size() - 2) == a || path.get(path.size() - 2) == b);
+        long pathTime = 0;
+        for (BootTimeline.Component component : path)
+            pathTime += component.getDuration(TimeUnit.MILLISECONDS);
+        assertTrue(pathTime < mainTime, timeline.report());
+        assertTrue(timeline.report().contains("Critical path"));
+    }
+
+    @Test
+    void criticalPathFollowsDependencies() throws Exception {
+        BootTimeline timeline = new BootTimeline();
+        timeline.finish(timeline.start("main", "a", null));
+        Thread.sleep(5);
+        // finishes after a and before c starts, but c does not depend on it
+        timeline.finish(timeline.start("main", "unrelated", null));
+        Thread.sleep(5);
+        timeline.finish(timeline.start("main", "c", Collections.singletonList("a")));
+
+        List<String> names = new ArrayList<>();
+        for (BootTimeline.Component component : timeline.getCriticalPath())
+            names.add(component.getName());
+        assertEquals(Arrays.asList("a", "c"), names);
+    }
+
+    @Test
+    void circular() {
+        Bootstrap bootstrap = new Bootstrap(new ResourceManager());
+        Map<String, Object> main = new LinkedHashMap<>();
+        main.put("a", sleep(0));
+        main.put("b", sleep(0));
+        bootstrap.setMain(main);
+        Map<String, Object> deps = new HashMap<>();
+        deps.put("a", "b");
+        deps.put("b", "a");
+        bootstrap.dependsOn(deps);
+        bootstrap.setParallel(2);
+        assertThrows(SystemException.class, () -> bootstrap.boot(null, "a", "b"));
+    }
+
+    @Test
+    void failureSkipsDependents() {
+        Bootstrap bootstrap = new Bootstrap(new ResourceManager());
+        List<String> ran = Collections.synchronizedList(new ArrayList<>());
+        Map<String, Object> main = new LinkedHashMap<>();
+        main.put("a", closure(b -> { throw new IllegalStateException("a failed"); }));
+        main.put("b", closure(b -> ran.add("b")));
+        main.put("c", closure(b -> ran.add("c")));
+        bootstrap.setMain(main);
+        bootstrap.dependsOn(Collections.singletonMap("c", "a"));
+        bootstrap.setParallel(2);
+        IllegalStateException ex = assertThrows(IllegalStateException.class, () -> bootstrap.boot(null, "a", "b", "c"));
+        assertEquals("a failed", ex.getMessage());
+        assertEquals(Collections.singletonList("b"), ran);
+    }
+
+    @Test
+    void waitForEdges() {
+        ResourceManager resourceManager = new ResourceManager();
+        Bootstrap bootstrap = new Bootstrap(resourceManager);
+        List<Object> received = new ArrayList<>();
+        Map<String, Object> main = new LinkedHashMap<>();
+        main.put("consumer", closure(b -> resourceManager.createAtom("consumer",
+                atom -> atom.waitFor("x", received::add), null, false)));
+        main.put("producer", closure(b -> resourceManager.createAtom("producer",
+                atom -> atom.put("x", new StringBuilder("x")), null, false)));
+        bootstrap.setMain(main);
+        bootstrap.boot(null, "consumer", "producer");
+
+        assertEquals(1, received.size());
+        assertEquals(Collections.singleton("producer"), bootstrap.getTimeline().getComponent("consumer").getDependencies());
+    }
+
+    @Test
+    void isolatedScriptPaths() throws Exception {
+        ResourceManager resourceManager = new ResourceManager();
+        Bootstrap bootstrap = new Bootstrap(resourceManager);
+        Map<String, Object> dirs = Collections.synchronizedMap(new HashMap<>());
+        resourceManager.getScripting().put("dirs", dirs);
+
+        Map<String, Object> main = new LinkedHashMap<>();
+        for (String name : Arrays.asList("one", "two", "three")) {
+            Path dir = Files.createTempDirectory("boot");
+            File script = new File(dir.toFile(), name + ".groovy");
+            script.deleteOnExit();
+            dir.toFile().deleteOnExit();
+            Files.write(script.toPath(), ("sleep(100)\ndirs['" + name + "'] = " + Scripting.__DIR + "\n").getBytes(StandardCharsets.UTF_8));
+            main.put(name, script.getCanonicalPath());
+        }
+        bootstrap.setMain(main);
+        bootstrap.setParallel(3);
+        bootstrap.boot(null, "one", "two", "three");
+
+        for (Map.Entry<String, Object> entry : main.entrySet())
+            assertEquals(new File(entry.getValue().toString()).getParent(), dirs.get(entry.getKey()));
+    }
+}
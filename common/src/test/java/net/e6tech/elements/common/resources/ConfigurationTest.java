@@ -23,8 +23,7 @@ import java.util.Map;
 import java.util.Properties;
 
 import org.junit.jupiter.api.Test;
-import static org.junit.jupiter.api.Assertions.assertFalse;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Created by futeh.
@@ -187,6 +186,22 @@ public class ConfigurationTest {
         }
     }
 
+    @Test
+    public void references() {
+        Configuration config = new Configuration();
+        config.load("port: 8080\n"
+                + "url: http://localhost:${port}/${path}\n"
+                + "count: ${port}\n"
+                + "a: ${b}\n"
+                + "b: ${a}\n");
+        assertEquals("http://localhost:8080/${path}", config.get("url"));
+        assertEquals(Long.valueOf(8080L), config.<Long>get("count"));
+        assertSame(config.get("url"), config.get("url"));
+
+        // circular references are left alone
+        assertTrue(config.get("a").toString().contains("${"));
+    }
+
     private static String test1 = "---\n" +
             "Time: 2001-11-23 15:01:42 -5\n" +
             "User: ed\n" +
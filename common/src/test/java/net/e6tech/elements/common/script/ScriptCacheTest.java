@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.script;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScriptCacheTest {
+
+    private Path dir;
+
+    @BeforeEach
+    void setup() throws IOException {
+        ScriptCache.invalidateAll();
+        dir = Files.createTempDirectory("scripts");
+    }
+
+    private File write(String name, String text) throws IOException {
+        File file = dir.resolve(name).toFile();
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private Scripting scripting(Properties properties) {
+        return Scripting.newInstance(null, properties);
+    }
+
+    @Test
+    void memory() throws Exception {
+        File file = write("counter.groovy", "count = (binding.hasVariable('count') ? count : 0) + 1\n" +
+                "this.class.name + ':' + count");
+        Scripting scripting = scripting(new Properties());
+        assertEquals("counter:1", scripting.exec(file.getPath()));
+        assertEquals("counter:2", scripting.exec(file.getPath()));
+        assertEquals(1, scripting.getScriptCache().getCompileCount());
+
+        Scripting another = scripting(new Properties());
+        assertEquals("counter:1", another.exec(file.getPath()));
+        assertEquals(0, another.getScriptCache().getCompileCount());
+
+        write("counter.groovy", "'changed'");
+        assertEquals("changed", another.exec(file.getPath()));
+        assertEquals(1, another.getScriptCache().getCompileCount());
+    }
+
+    @Test
+    void closures() throws Exception {
+        File file = write("closures.groovy", "[1, 2, 3].collect { it * 2 }.sum()");
+        assertEquals(12, scripting(new Properties()).exec(file.getPath()));
+        assertEquals(12, scripting(new Properties()).exec(file.getPath()));
+    }
+
+    @Test
+    void disk() throws Exception {
+        File file = write("disk.groovy", "[1, 2, 3].collect { it + 1 }");
+        Properties properties = new Properties();
+        properties.setProperty(ScriptCache.CACHE_DIR, dir.resolve("cache").toString());
+        Scripting scripting = scripting(properties);
+        assertEquals(java.util.Arrays.asList(2, 3, 4), scripting.exec(file.getPath()));
+        assertEquals(1, scripting.getScriptCache().getCompileCount());
+
+        ScriptCache.invalidateAll();
+        Scripting restarted = scripting(properties);
+        assertEquals(java.util.Arrays.asList(2, 3, 4), restarted.exec(file.getPath()));
+        assertEquals(0, restarted.getScriptCache().getCompileCount());
+        assertEquals(1, restarted.getScriptCache().getDiskHitCount());
+    }
+
+    @Test
+    void imports() throws Exception {
+        write("lib/Helper.groovy", "package lib\nclass Helper { static String greet() { 'hello' } }");
+        File file = write("imports.groovy", "import lib.Helper\nHelper.greet()");
+        Properties properties = new Properties();
+        properties.setProperty(Scripting.PATH, dir.toString());
+        Scripting scripting = scripting(properties);
+        assertEquals("hello", scripting.exec(file.getPath()));
+        assertEquals(1, scripting.getScriptCache().getCompileCount());
+
+        Scripting unchanged = scripting(properties);
+        assertEquals("hello", unchanged.exec(file.getPath()));
+        assertEquals(0, unchanged.getScriptCache().getCompileCount());
+
+        write("lib/Helper.groovy", "package lib\nclass Helper { static String greet() { 'bye' } }");
+        Scripting changed = scripting(properties);
+        assertEquals("bye", changed.exec(file.getPath()));
+        assertEquals(1, changed.getScriptCache().getCompileCount());
+    }
+
+    @Test
+    void classesOfEarlierScripts() throws Exception {
+        File first = write("first.groovy", "class Foo { String hi() { 'hi' } }\nnew Foo().hi()");
+        File second = write("second.groovy", "new Foo().hi() + '!'");
+        Scripting scripting = scripting(new Properties());
+        assertEquals("hi", scripting.exec(first.getPath()));
+        assertEquals("hi!", scripting.exec(second.getPath()));
+        // scripts the shell evaluates itself see them too
+        assertEquals("hi?", scripting.eval("new Foo().hi() + '?'"));
+
+        // a script using Foo is recompiled when the script defining it changes
+        Scripting another = scripting(new Properties());
+        write("first.groovy", "class Foo { String hi() { 'hello' } }\nnew Foo().hi()");
+        assertEquals("hello", another.exec(first.getPath()));
+        assertEquals("hello!", another.exec(second.getPath()));
+        assertEquals(2, another.getScriptCache().getCompileCount());
+    }
+
+    @Test
+    void starStaticAndPackageImports() throws Exception {
+        write("lib/Star.groovy", "package lib\nclass Star { static String name() { 'star' } }");
+        write("lib/Util.groovy", "package lib\nclass Util { static String upper(String s) { s.toUpperCase() } }");
+        write("app/Local.groovy", "package app\nclass Local { static String name() { 'local' } }");
+        File file = write("app/main.groovy", "package app\nimport lib.*\nimport static lib.Util.upper\n" +
+                "upper(Star.name() + Local.name())");
+        Properties properties = new Properties();
+        properties.setProperty(Scripting.PATH, dir.toString());
+        assertEquals("STARLOCAL", scripting(properties).exec(file.getPath()));
+
+        for (String[] change : new String[][] {
+                {"lib/Star.groovy", "package lib\nclass Star { static String name() { 'x' } }", "XLOCAL"},
+                {"lib/Util.groovy", "package lib\nclass Util { static String upper(String s) { s } }", "xlocal"},
+                {"app/Local.groovy", "package app\nclass Local { static String name() { 'y' } }", "xy"}}) {
+            write(change[0], change[1]);
+            Scripting scripting = scripting(properties);
+            assertEquals(change[2], scripting.exec(file.getPath()));
+            assertEquals(1, scripting.getScriptCache().getCompileCount());
+        }
+    }
+
+    @Test
+    void directory() throws Exception {
+        for (int i = 0; i < 8; i++)
+            write("dir/script" + i + ".groovy", "order = (binding.hasVariable('order') ? order : '') + '" + i + "'");
+        Scripting scripting = scripting(new Properties());
+        scripting.exec(dir.resolve("dir").toString() + "/*");
+        assertEquals(8, scripting.getScriptCache().getCompileCount());
+        String order = (String) scripting.get("order");
+        assertEquals(8, order.length());
+    }
+
+    @Test
+    void disabled() throws Exception {
+        File file = write("disabled.groovy", "1 + 1");
+        Properties properties = new Properties();
+        properties.setProperty(ScriptCache.CACHE, "false");
+        Scripting scripting = scripting(properties);
+        assertNull(scripting.getScriptCache());
+        assertEquals(2, scripting.exec(file.getPath()));
+    }
+}
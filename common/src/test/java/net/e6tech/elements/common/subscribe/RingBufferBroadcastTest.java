@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.subscribe;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RingBufferBroadcastTest {
+
+    @Test
+    void orderedDelivery() throws Exception {
+        for (RingBufferBroadcast.WaitStrategy strategy : RingBufferBroadcast.WaitStrategy.values()) {
+            RingBufferBroadcast broadcast = new RingBufferBroadcast(1000, strategy);
+            assertEquals(1024, broadcast.getCapacity());
+            int producers = 4;
+            int count = 50000;
+            int[] last = new int[producers];
+            AtomicInteger outOfOrder = new AtomicInteger();
+            CountDownLatch latch = new CountDownLatch(producers * count);
+            broadcast.subscribe("price", notice -> {
+                int[] value = (int[]) notice.getUserObject();
+                if (value[1] != last[value[0]] + 1)
+                    outOfOrder.incrementAndGet();
+                last[value[0]] = value[1];
+                latch.countDown();
+            });
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                Thread thread = new Thread(() -> {
+                    for (int i = 1; i <= count; i++)
+                        broadcast.publish("price", new int[] { producer, i });
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            assertTrue(latch.await(30, TimeUnit.SECONDS), strategy.toString());
+            assertEquals(0, outOfOrder.get(), strategy.toString());
+            broadcast.shutdown();
+        }
+    }
+
+    @Test
+    void latestOnly() throws Exception {
+        RingBufferBroadcast broadcast = new RingBufferBroadcast(1024, RingBufferBroadcast.WaitStrategy.BLOCKING);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        broadcast.subscribe("gate", notice -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        List<Integer> received = new ArrayList<>();
+        AtomicInteger all = new AtomicInteger();
+        broadcast.subscribeLatest("status", notice -> received.add((Integer) notice.getUserObject()));
+        broadcast.subscribe("status", notice -> all.incrementAndGet());
+
+        // hold the dispatcher so that the status updates pile up into one batch
+        broadcast.publish("gate", "x");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++)
+            broadcast.publish("status", i);
+        release.countDown();
+        broadcast.shutdown();
+
+        assertEquals(100, all.get());
+        assertEquals(1, received.size());
+        assertEquals(99, (int) received.get(0));
+    }
+}
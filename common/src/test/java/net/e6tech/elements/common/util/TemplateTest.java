@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TemplateTest {
+
+    @Test
+    void compile() {
+        Template template = Template.compile("Dear ${name}, your ${item.name} ships ${date:soon}.${note:+ Note: }${note}");
+        assertSame(template, Template.compile(template.getText()));
+        assertEquals(Arrays.asList("name", "item.name", "date:soon", "note:+ Note: ", "note"), template.getExpressions());
+
+        Map<String, Object> item = new HashMap<>();
+        item.put("name", "book");
+        Map<String, Object> map = new HashMap<>();
+        map.put("name", "Joe");
+        map.put("item", item);
+        assertEquals("Dear Joe, your book ships soon.", template.render(map));
+
+        map.put("note", "fragile");
+        map.put("date", "today");
+        assertEquals("Dear Joe, your book ships today. Note: fragile", template.render(map));
+    }
+
+    @Test
+    void singlePass() throws Exception {
+        Template template = Template.compile("${a}-${b}");
+        Map<String, Object> map = new HashMap<>();
+        map.put("a", "${b}");
+        map.put("b", "B");
+        // substituted values are not expanded again
+        assertEquals("${b}-B", template.render(map));
+
+        StringWriter writer = template.render(map, new StringWriter());
+        assertEquals("${b}-B", writer.toString());
+        assertEquals("x:${b}-B", template.render(map, new StringBuilder("x:")).toString());
+    }
+
+    @Test
+    void nested() {
+        Map<String, String> map = new HashMap<>();
+        map.put("env", "dev");
+        map.put("db.dev.url", "jdbc:h2:mem");
+        Template template = Template.compileNested("url=${db.${env}.url} user=${user} ${ open");
+        assertEquals("url=jdbc:h2:mem user=${user} ${ open", template.render(map::get));
+
+        map.remove("env");
+        assertEquals("url=${db.${env}.url} user=${user} ${ open", template.render(map::get));
+        assertEquals("no placeholders }", Template.compileNested("no placeholders }").render(map::get));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.util.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SuppressWarnings("all")
+public class TimingWheelTest {
+
+    @Test
+    void expireAndCancel() throws Exception {
+        TimingWheel wheel = new TimingWheel(null);
+        try {
+            CountDownLatch latch = new CountDownLatch(1);
+            long start = System.nanoTime();
+            AtomicInteger cancelledRuns = new AtomicInteger();
+            TimingWheel.Timeout cancelled = wheel.schedule(cancelledRuns::incrementAndGet, 50, TimeUnit.MILLISECONDS);
+            TimingWheel.Timeout timeout = wheel.schedule(latch::countDown, 50, TimeUnit.MILLISECONDS);
+            assertTrue(cancelled.cancel());
+            assertFalse(cancelled.cancel());
+            assertTrue(latch.await(2, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+            assertTrue(timeout.isExpired());
+            assertFalse(timeout.cancel());
+            Thread.sleep(50);
+            assertEquals(0, cancelledRuns.get());
+            assertEquals(0, wheel.getPendingTimers());
+            assertEquals(1, wheel.getCancelledTimers());
+            assertEquals(1, wheel.getExpiredTimers());
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    // a tiny wheel so that timeouts cascade through every level and past the top one.
+    @Test
+    void cascade() throws Exception {
+        TimingWheel wheel = new TimingWheel(1, TimeUnit.MILLISECONDS, 4, null);
+        try {
+            int count = 60;
+            CountDownLatch latch = new CountDownLatch(count);
+            List<String> early = new CopyOnWriteArrayList<>();
+            for (int i = 0; i < count; i++) {
+                long delay = i * 7L;
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+                wheel.schedule(() -> {
+                    if (System.nanoTime() < deadline)
+                        early.add("" + delay);
+                    latch.countDown();
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertTrue(early.isEmpty(), "fired early: " + early);
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    void stress() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        TimingWheel wheel = new TimingWheel(executor);
+        try {
+            int perThread = 25000;
+            int threads = 4;
+            AtomicInteger fired = new AtomicInteger();
+            AtomicInteger cancelledFired = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(threads * perThread / 2);
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.currentTimeMillis();
+            for (int t = 0; t < threads; t++) {
+                futures.add(ForkJoinPool.commonPool().submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < perThread; i++) {
+                        if (i % 2 == 0) {
+                            wheel.schedule(() -> {
+                                fired.incrementAndGet();
+                                done.countDown();
+                            }, random.nextInt(100, 1000), TimeUnit.MILLISECONDS);
+                        } else {
+                            TimingWheel.Timeout timeout = wheel.schedule(cancelledFired::incrementAndGet, random.nextInt(100, 1000), TimeUnit.MILLISECONDS);
+                            timeout.cancel();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+            long scheduling = System.currentTimeMillis() - start;
+            assertTrue(wheel.getPendingTimers() > 0);
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            Thread.sleep(50);
+            assertEquals(threads * perThread / 2, fired.get());
+            assertEquals(0, cancelledFired.get());
+            assertEquals(0, wheel.getPendingTimers());
+            assertEquals(threads * perThread / 2, wheel.getCancelledTimers());
+            System.out.println("scheduled 100k timeouts in " + scheduling + "ms, max tick lag " + wheel.getMaxTickLag() + "ms");
+        } finally {
+            wheel.stop();
+            executor.shutdownNow();
+        }
+    }
+}
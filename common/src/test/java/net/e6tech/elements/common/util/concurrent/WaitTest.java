@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.util.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SuppressWarnings("all")
+public class WaitTest {
+
+    @Test
+    void offerAndPoll() {
+        Wait<String, String> wait = new Wait<>();
+        wait.newEntry("a", "user", 1000);
+        assertEquals("user", wait.peekUserData("a"));
+        CompletableFuture.runAsync(() -> wait.offer("a", "reply"));
+        assertEquals("reply", wait.poll("a", 1000));
+        assertNull(wait.peek("a"));
+        wait.offer("a", "late");
+        assertEquals(1, wait.getHits());
+        assertEquals(1, wait.getMisses());
+        assertEquals(0, wait.getEntries());
+    }
+
+    @Test
+    void register() throws Exception {
+        Wait<String, String> wait = new Wait<String, String>().register("test");
+        ObjectName name = new ObjectName("net.e6tech:type=Wait,name=\"test\"");
+        wait.newEntry("a", 1000);
+        wait.offer("a", "reply");
+        assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Hits"));
+        wait.unregister();
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    @Test
+    void replace() throws Exception {
+        Wait<String, String> wait = new Wait<>();
+        CompletableFuture<String> first = wait.newEntry("a", null, 1000);
+        CompletableFuture<String> second = wait.newEntry("a", null, 1000);
+        assertThrows(CancellationException.class, () -> first.get(1, TimeUnit.SECONDS));
+        wait.offer("a", "reply");
+        assertEquals("reply", second.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void expire() throws Exception {
+        Wait<String, String> wait = new Wait<>(new TimingWheel(1, TimeUnit.MILLISECONDS, 64, null));
+        CompletableFuture<String> future = wait.newEntry("a", null, 30);
+        wait.newEntry("b", null, 30);
+        wait.extendExpiration("b", 200);
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+        assertTrue(ex.getCause() instanceof TimeoutException);
+        assertNull(wait.future("a"));
+        assertNotNull(wait.future("b"));
+        wait.offer("b", "reply");
+        assertEquals("reply", wait.future("b").get());
+        assertEquals(1, wait.getTimeouts());
+    }
+
+    @Test
+    void manyKeys() throws Exception {
+        Wait<Integer, Integer> wait = new Wait<>();
+        int count = 50000;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < count; i++)
+                wait.newEntry(i, null, 60000);
+            for (int i = 0; i < count; i++) {
+                int key = i;
+                executor.execute(() -> wait.offer(key, key));
+            }
+            for (int i = 0; i < count; i++)
+                assertEquals(i, (int) wait.future(i).get(5, TimeUnit.SECONDS));
+            for (int i = 0; i < count; i++)
+                assertEquals(i, (int) wait.remove(i));
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(count, wait.getHits());
+        assertEquals(0, wait.getEntries());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.common.util.monitor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SuppressWarnings("all")
+public class TimeoutMonitorTest {
+
+    static class Listener implements TimeoutListener {
+        volatile long timeout;
+        volatile boolean open = true;
+        volatile long timedOutAt;
+        CountDownLatch latch = new CountDownLatch(1);
+
+        Listener(long timeout) {
+            this.timeout = timeout;
+        }
+
+        @Override
+        public long getTimeout() {
+            return timeout;
+        }
+
+        @Override
+        public long setTimeout(long timeout) {
+            long old = this.timeout;
+            this.timeout = timeout;
+            return old;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void onTimeout() {
+            timedOutAt = System.currentTimeMillis();
+            latch.countDown();
+        }
+    }
+
+    @Test
+    void timeout() throws Exception {
+        TimeoutMonitor monitor = new TimeoutMonitor();
+        Listener listener = new Listener(50);
+        long start = System.currentTimeMillis();
+        assertNotNull(monitor.monitor(listener));
+        assertTrue(listener.latch.await(2, TimeUnit.SECONDS));
+        assertTrue(listener.timedOutAt - start >= 50);
+    }
+
+    @Test
+    void extended() throws Exception {
+        TimeoutMonitor monitor = new TimeoutMonitor();
+        Listener listener = new Listener(50);
+        long start = System.currentTimeMillis();
+        monitor.monitor(listener);
+        listener.setTimeout(200);
+        assertTrue(listener.latch.await(2, TimeUnit.SECONDS));
+        assertTrue(listener.timedOutAt - start >= 200);
+    }
+
+    @Test
+    void cancelAfterExtension() throws Exception {
+        TimeoutMonitor monitor = new TimeoutMonitor();
+        Listener listener = new Listener(30);
+        TimeoutMonitor.Monitor handle = monitor.monitor(listener);
+        listener.setTimeout(150);
+        Thread.sleep(80); // the first check has run and rescheduled itself
+        handle.cancel();
+        assertTrue(handle.isCancelled());
+        assertFalse(listener.latch.await(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void closed() throws Exception {
+        TimeoutMonitor monitor = new TimeoutMonitor();
+        monitor.setTimeout(30);
+        Listener listener = new Listener(0); // uses the monitor's timeout
+        monitor.monitor(listener);
+        listener.open = false;
+        assertFalse(listener.latch.await(200, TimeUnit.MILLISECONDS));
+
+        assertNull(monitor.monitor(new Listener(-1)));
+    }
+}
@@ -0,0 +1,240 @@
+/*
+Copyright 2015 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.e6tech.elements.jmx.stat;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free, log-linear bucketed histogram in the spirit of HdrHistogram.  Each power of two
+ * between 2^MIN_EXPONENT and 2^MAX_EXPONENT is divided into 2^subBucketBits linear sub-buckets so that
+ * the relative error of a recorded value is bounded by 2^-subBucketBits regardless of its magnitude.
+ * Values at or below 2^MIN_EXPONENT, including zero and negative values, fall into bucket 0.
+ *
+ * Counts are striped: every sample is counted in the AtomicLongArray of the stripe picked by a hash of the
+ * recording thread's id, so threads on different stripes never write the same array.  There are about
+ * twice as many stripes as processors, each allocated when a thread first records into it.  The running
+ * totals are kept in LongAdder/DoubleAdder.  Recording never takes a monitor; snapshots add up all stripes.
+ */
+@SuppressWarnings("squid:S00116")
+public class Histogram {
+    static final int MIN_EXPONENT = -10;
+    static final int MAX_EXPONENT = 40;
+    static final int DEFAULT_SUB_BUCKET_BITS = 5;
+    private static final double MIN_VALUE = Math.scalb(1.0, MIN_EXPONENT);
+    private static final long MANTISSA_MASK = 0x000FFFFFFFFFFFFFL;
+    private static final long EMPTY_MAX = Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY);
+    private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+    private final int subBucketBits;
+    private final int bucketCount;
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+    private final DoubleAdder sum_x_2 = new DoubleAdder();
+    private final AtomicLong max = new AtomicLong(EMPTY_MAX);
+
+    public Histogram() {
+        this(DEFAULT_SUB_BUCKET_BITS);
+    }
+
+    public Histogram(int subBucketBits) {
+        if (subBucketBits < 1 || subBucketBits > 10)
+            throw new IllegalArgumentException("subBucketBits must be between 1 and 10");
+        this.subBucketBits = subBucketBits;
+        bucketCount = bucketCount(subBucketBits);
+    }
+
+    // a power of two at least twice the number of processors, as with LongAdder's cells.
+    static int stripes(int processors) {
+        int n = 2;
+        while (n < processors * 2 && n < 64)
+            n <<= 1;
+        return n;
+    }
+
+    static int bucketCount(int subBucketBits) {
+        return 1 + ((MAX_EXPONENT - MIN_EXPONENT + 1) << subBucketBits);
+    }
+
+    public int getSubBucketBits() {
+        return subBucketBits;
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    public void record(double value) {
+        stripe().incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+        sum_x_2.add(value * value);
+        updateMax(value);
+    }
+
+    private AtomicLongArray stripe() {
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        int i = (int) (id >>> 32) & (STRIPES - 1);
+        AtomicLongArray stripe = stripes.get(i);
+        if (stripe == null) {
+            stripes.compareAndSet(i, null, new AtomicLongArray(bucketCount));
+            stripe = stripes.get(i);
+        }
+        return stripe;
+    }
+
+    public void fail() {
+        failures.increment();
+    }
+
+    private void updateMax(double value) {
+        long current = max.get();
+        while (value > Double.longBitsToDouble(current)) {
+            if (max.compareAndSet(current, Double.doubleToRawLongBits(value)))
+                return;
+            current = max.get();
+        }
+    }
+
+    int bucketIndex(double value) {
+        if (!(value > MIN_VALUE)) // also catches NaN
+            return 0;
+        int exponent = Math.getExponent(value);
+        if (exponent > MAX_EXPONENT)
+            return bucketCount - 1;
+        int sub = (int) ((Double.doubleToRawLongBits(value) & MANTISSA_MASK) >>> (52 - subBucketBits));
+        return 1 + ((exponent - MIN_EXPONENT) << subBucketBits) + sub;
+    }
+
+    /**
+     * @param index bucket index
+     * @return the midpoint of the bucket, i.e. the value reported for samples that fall into it.
+     */
+    static double bucketValue(int index, int subBucketBits) {
+        if (index <= 0)
+            return 0.0;
+        int i = index - 1;
+        int exponent = (i >>> subBucketBits) + MIN_EXPONENT;
+        int sub = i & ((1 << subBucketBits) - 1);
+        double subBucketCount = 1 << subBucketBits;
+        return Math.scalb(1.0 + (sub + 0.5) / subBucketCount, exponent);
+    }
+
+    /**
+     * Adds the content of this histogram into the snapshot.  The snapshot must be created with the
+     * same number of sub-bucket bits.
+     */
+    void addTo(Snapshot snapshot) {
+        if (snapshot.subBucketBits != subBucketBits)
+            throw new IllegalArgumentException("Mismatched subBucketBits");
+        long[] snapshotCounts = snapshot.counts;
+        for (int j = 0; j < STRIPES; j++) {
+            AtomicLongArray stripe = stripes.get(j);
+            if (stripe != null)
+                for (int i = 0; i < snapshotCounts.length; i++)
+                    snapshotCounts[i] += stripe.get(i);
+        }
+        snapshot.count += count.sum();
+        snapshot.failures += failures.sum();
+        snapshot.sum += sum.sum();
+        snapshot.sum_x_2 += sum_x_2.sum();
+        double m = Double.longBitsToDouble(max.get());
+        if (m > snapshot.max)
+            snapshot.max = m;
+    }
+
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot(subBucketBits);
+        addTo(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * A point in time, immutable once built, view of one or more histograms.
+     */
+    public static class Snapshot {
+        private final int subBucketBits;
+        private long[] counts;
+        private long count;
+        private long failures;
+        private double sum;
+        private double sum_x_2;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        Snapshot(int subBucketBits) {
+            this.subBucketBits = subBucketBits;
+            counts = new long[bucketCount(subBucketBits)];
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getFailureCount() {
+            return failures;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        public double getAverage() {
+            return count == 0 ? 0.0 : sum / count;
+        }
+
+        /* Sample standard deviation */
+        public double getStdDev() {
+            if (count <= 1)
+                return 0.0;
+            double average = sum / count;
+            double var = (sum_x_2 - count * average * average) / (double) (count - 1);
+            return var > 0 ? Math.sqrt(var) : 0.0;
+        }
+
+        public double getMax() {
+            return count == 0 ? 0.0 : max;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the value at the given percentile, bounded by the maximum recorded value.
+         */
+        public double getPercentile(double percentile) {
+            if (count == 0)
+                return 0.0;
+            long total = 0;
+            for (long c : counts)
+                total += c;
+            if (total == 0)
+                return 0.0;
+            long rank = (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * total);
+            if (rank < 1)
+                rank = 1;
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank)
+                    return Math.min(bucketValue(i, subBucketBits), getMax());
+            }
+            return getMax();
+        }
+    }
+}
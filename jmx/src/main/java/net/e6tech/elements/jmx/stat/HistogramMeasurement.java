@@ -0,0 +1,197 @@
+/*
+Copyright 2015 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.e6tech.elements.jmx.stat;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Measurement backed by a lock-free RollingHistogram instead of sorted lists.  Recording a value
+ * is O(1) and never blocks.  Median and percentiles are approximated to within the histogram's
+ * bucket precision (about 1.5% by default) while count, sum, average and standard deviation are exact
+ * for the window.
+ */
+public class HistogramMeasurement implements Serializable, HistogramMeasurementMXBean {
+
+    private static final long serialVersionUID = 2286131906409002539L;
+    private String name;
+    private String unit;
+    private volatile boolean enabled = true;
+    private transient LongAdder total = new LongAdder();
+    private transient volatile RollingHistogram histogram = new RollingHistogram(300000L);  // default is 5 minutes
+
+    public HistogramMeasurement() {}
+
+    public HistogramMeasurement(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public HistogramMeasurement(String name, String unit, boolean enabled) {
+        this.name = name;
+        this.unit = unit;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getUnit() {
+        return unit;
+    }
+
+    public void setUnit(String unit) {
+        this.unit = unit;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getWindowWidth() {
+        return histogram.getWindowWidth();
+    }
+
+    /**
+     * Changing the window width discards the data points collected so far.
+     * @param windowWidth in milliseconds
+     */
+    public void setWindowWidth(long windowWidth) {
+        histogram = new RollingHistogram(windowWidth);
+    }
+
+    @Override
+    public long getTotal() {
+        return total.sum();
+    }
+
+    @Override
+    public void add(double value) {
+        if (!enabled)
+            return;
+        total.increment();
+        histogram.record(value);
+    }
+
+    public HistogramMeasurement append(double value) {
+        add(value);
+        return this;
+    }
+
+    @Override
+    public void fail() {
+        if (!enabled)
+            return;
+        histogram.fail();
+    }
+
+    @Override
+    public void reset() {
+        histogram = new RollingHistogram(histogram.getWindowWidth());
+    }
+
+    public Histogram.Snapshot snapshot() {
+        return histogram.snapshot();
+    }
+
+    @Override
+    public long getCount() {
+        return snapshot().getCount();
+    }
+
+    @Override
+    public double getAverage() {
+        return snapshot().getAverage();
+    }
+
+    @Override
+    public double getMedian() {
+        return snapshot().getPercentile(50.0);
+    }
+
+    @Override
+    public double getSum() {
+        return snapshot().getSum();
+    }
+
+    @Override
+    public double getStdDev() {
+        return snapshot().getStdDev();
+    }
+
+    @Override
+    public long getFailureCount() {
+        return snapshot().getFailureCount();
+    }
+
+    @Override
+    public double getP50() {
+        return snapshot().getPercentile(50.0);
+    }
+
+    @Override
+    public double getP90() {
+        return snapshot().getPercentile(90.0);
+    }
+
+    @Override
+    public double getP99() {
+        return snapshot().getPercentile(99.0);
+    }
+
+    @Override
+    public double getP999() {
+        return snapshot().getPercentile(99.9);
+    }
+
+    @Override
+    public double getMax() {
+        return snapshot().getMax();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        total = new LongAdder();
+        histogram = new RollingHistogram(300000L);
+    }
+
+    public String toString() {
+        Histogram.Snapshot snapshot = snapshot();
+        StringBuilder builder = new StringBuilder();
+        builder.append("count=" + snapshot.getCount() + " ");
+        builder.append("average=" + snapshot.getAverage() + " ");
+        builder.append("stddev=" + snapshot.getStdDev() + " ");
+        builder.append("p50=" + snapshot.getPercentile(50.0) + " ");
+        builder.append("p99=" + snapshot.getPercentile(99.0) + " ");
+        builder.append("max=" + snapshot.getMax() + " ");
+        builder.append("failureCount=" + snapshot.getFailureCount() + " ");
+        builder.append("windowWidth=" + getWindowWidth() + " ");
+        return builder.toString();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+Copyright 2015 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.e6tech.elements.jmx.stat;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A time windowed histogram.  The window is divided into a ring of intervals, each backed by its own
+ * Histogram.  Recording goes into the interval that covers the current time; a slot whose interval
+ * has expired is replaced, via compare-and-set, by a fresh interval so that concurrent writers never
+ * see a histogram being cleared.  Reading merges the intervals that still fall within the window.
+ * Therefore, the effective window width is between windowWidth * (intervals - 1) / intervals and windowWidth.
+ */
+public class RollingHistogram {
+    public static final int DEFAULT_INTERVALS = 5;
+
+    private final long windowWidth;
+    private final long intervalWidth;
+    private final int subBucketBits;
+    private final AtomicReferenceArray<Interval> intervals;
+
+    public RollingHistogram(long windowWidth) {
+        this(windowWidth, DEFAULT_INTERVALS, Histogram.DEFAULT_SUB_BUCKET_BITS);
+    }
+
+    public RollingHistogram(long windowWidth, int intervalCount, int subBucketBits) {
+        if (windowWidth <= 0)
+            throw new IllegalArgumentException("windowWidth must be positive");
+        if (intervalCount < 1)
+            throw new IllegalArgumentException("intervalCount must be positive");
+        this.windowWidth = windowWidth;
+        this.intervalWidth = Math.max(1L, windowWidth / intervalCount);
+        this.subBucketBits = subBucketBits;
+        intervals = new AtomicReferenceArray<>(intervalCount);
+    }
+
+    public long getWindowWidth() {
+        return windowWidth;
+    }
+
+    public void record(double value) {
+        current().histogram.record(value);
+    }
+
+    public void fail() {
+        current().histogram.fail();
+    }
+
+    private Interval current() {
+        long epoch = System.currentTimeMillis() / intervalWidth;
+        int slot = (int) (epoch % intervals.length());
+        Interval interval = intervals.get(slot);
+        while (interval == null || interval.epoch < epoch) {
+            Interval fresh = new Interval(epoch, subBucketBits);
+            if (intervals.compareAndSet(slot, interval, fresh))
+                return fresh;
+            interval = intervals.get(slot);
+        }
+        // if interval.epoch > epoch, the clock went backward.  Just record into the newer interval.
+        return interval;
+    }
+
+    public Histogram.Snapshot snapshot() {
+        long epoch = System.currentTimeMillis() / intervalWidth;
+        Histogram.Snapshot snapshot = new Histogram.Snapshot(subBucketBits);
+        for (int i = 0; i < intervals.length(); i++) {
+            Interval interval = intervals.get(i);
+            if (interval != null && epoch - interval.epoch < intervals.length())
+                interval.histogram.addTo(snapshot);
+        }
+        return snapshot;
+    }
+
+    private static class Interval {
+        final long epoch;
+        final Histogram histogram;
+
+        Interval(long epoch, int subBucketBits) {
+            this.epoch = epoch;
+            histogram = new Histogram(subBucketBits);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+Copyright 2015 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.e6tech.elements.jmx.stat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HistogramMeasurementTest {
+
+    private static void assertClose(double expected, double actual) {
+        assertTrue(Math.abs(expected - actual) <= expected * 0.02, "expected " + expected + " but was " + actual);
+    }
+
+    @Test
+    public void percentiles() {
+        HistogramMeasurement m = new HistogramMeasurement("A", "ms", true);
+        for (int i = 1; i <= 10000; i++)
+            m.add(i);
+
+        assertEquals(10000, m.getCount());
+        assertEquals(10000, m.getTotal());
+        assertEquals(5000.5, m.getAverage(), 0.0001);
+        assertClose(5000, m.getMedian());
+        assertClose(5000, m.getP50());
+        assertClose(9000, m.getP90());
+        assertClose(9900, m.getP99());
+        assertClose(9990, m.getP999());
+        assertEquals(10000.0, m.getMax());
+        System.out.println(m);
+    }
+
+    @Test
+    public void stdDev() {
+        HistogramMeasurement m = new HistogramMeasurement();
+        m.append(3.0).append(3.0).append(4.0).append(4.0).append(5.0).append(5.5).append(6.0);
+        double average = (3.0 + 3.0 + 4.0 + 4.0 + 5.0 + 5.5 + 6.0) / 7;
+        double var = 0;
+        for (double v : new double[] {3.0, 3.0, 4.0, 4.0, 5.0, 5.5, 6.0})
+            var += (v - average) * (v - average);
+        assertEquals(average, m.getAverage(), 0.0001);
+        assertEquals(Math.sqrt(var / 6), m.getStdDev(), 0.0001);
+    }
+
+    @Test
+    public void smallAndNegative() {
+        HistogramMeasurement m = new HistogramMeasurement();
+        m.append(0).append(-1.0).append(0.0001);
+        assertEquals(3, m.getCount());
+        assertEquals(0.0, m.getMedian(), 0.001);
+        assertEquals(0.0001, m.getMax());
+    }
+
+    @Test
+    public void disabled() {
+        HistogramMeasurement m = new HistogramMeasurement(false);
+        m.add(10);
+        m.fail();
+        assertEquals(0, m.getCount());
+        assertEquals(0, m.getFailureCount());
+    }
+
+    @Test
+    @SuppressWarnings("squid:S2925")
+    public void rollingWindow() throws InterruptedException {
+        HistogramMeasurement m = new HistogramMeasurement("A", "ms", true);
+        m.setWindowWidth(100);
+        m.add(5);
+        m.fail();
+        assertEquals(1, m.getCount());
+        assertEquals(1, m.getFailureCount());
+        Thread.sleep(250);
+        assertEquals(0, m.getCount());
+        assertEquals(0, m.getFailureCount());
+        assertEquals(1, m.getTotal());
+        m.add(7);
+        assertEquals(1, m.getCount());
+        assertEquals(7.0, m.getMax());
+    }
+
+    @Test
+    public void concurrent() throws InterruptedException {
+        HistogramMeasurement m = new HistogramMeasurement("A", "ms", true);
+        m.setWindowWidth(60000);
+        int threads = 8;
+        int perThread = 100000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < perThread; i++)
+                    m.add(i % 100 + 1.0);
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        assertEquals((long) threads * perThread, m.getCount());
+        assertEquals(50.5, m.getAverage(), 0.0001);
+        assertClose(99, m.getP99());
+        assertEquals(100.0, m.getMax());
+    }
+
+    @Test
+    public void stripes() {
+        assertEquals(2, Histogram.stripes(1));
+        assertEquals(16, Histogram.stripes(8));
+        assertEquals(64, Histogram.stripes(100));
+    }
+
+    @Test
+    public void stripedCounts() throws InterruptedException {
+        Histogram histogram = new Histogram();
+        int threads = 8;
+        int perThread = 100000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < perThread; i++)
+                    histogram.record(i % 100 + 1.0);
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        // every sample is counted once, whichever stripe it landed in.
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals((long) threads * perThread, snapshot.getCount());
+        assertClose(50, snapshot.getPercentile(50));
+        assertClose(99, snapshot.getPercentile(99));
+    }
+}
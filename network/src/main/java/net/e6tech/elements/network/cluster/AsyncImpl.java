@@ -22,6 +22,8 @@ import net.e6tech.elements.common.util.concurrent.Async;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CompletionStage;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -37,6 +39,7 @@ public class AsyncImpl<U> implements Async<U> {
     long timeout = 5000L;
     CompletionStage completionStage;
     U proxy;
+    Map<Method, String> paths = new ConcurrentHashMap<>();
 
     public AsyncImpl(Registry registry, String qualifier, Class<U> interfaceClass, long timeout) {
         this.registry = registry;
@@ -85,7 +88,8 @@ public class AsyncImpl<U> implements Async<U> {
                 return AsyncImpl.this.toString();
             }
 
-            Function<Object[], CompletionStage> function = registry.route(qualifier, interfaceClass, method, timeout);
+            String path = paths.computeIfAbsent(method, m -> registry.fullyQualify(qualifier, interfaceClass, m));
+            Function<Object[], CompletionStage> function = registry.route(path, timeout);
             completionStage = function.apply(args);
             return Primitives.defaultValue(method.getReturnType());
 
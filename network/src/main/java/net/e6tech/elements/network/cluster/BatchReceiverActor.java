@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.network.cluster;
+
+import akka.actor.AbstractActor;
+
+/**
+ * The sender of the batches a Registry sends to remote entries.  Entries reply to it with the results of a
+ * batch, possibly in several messages, which it hands to the registry.
+ */
+class BatchReceiverActor extends AbstractActor {
+    private final Registry registry;
+
+    BatchReceiverActor(Registry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Events.BatchResponse.class, registry::onBatchResponse)
+                .build();
+    }
+}
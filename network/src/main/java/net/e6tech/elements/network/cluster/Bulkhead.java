@@ -0,0 +1,218 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.network.cluster;
+
+import net.e6tech.elements.jmx.stat.Histogram;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A bounded executor for the invocations of a registry path, or of all the methods of a service, so that a slow
+ * service cannot take threads away from the other services of the node.  At most concurrency invocations run at
+ * the same time and at most queueSize more wait for a thread; anything beyond that is rejected immediately with a
+ * RejectedExecutionException that is sent back to the caller.  An invocation that waited longer than the
+ * registration's timeout, or the bulkhead's timeout when the registration has none, is failed with a
+ * TimeoutException instead of being run.
+ *
+ * Queue wait and execution time, in milliseconds, are recorded in histograms.
+ */
+public class Bulkhead {
+    private static final double NANOS_PER_MILLI = 1000_000d;
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    private final String path;
+    private final ThreadPoolExecutor executor;
+    private volatile int concurrency;
+    private volatile int queueSize;
+    private volatile long timeout;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final Histogram queueWait = new Histogram();
+    private final Histogram executionTime = new Histogram();
+
+    public Bulkhead(String path, int concurrency, int queueSize) {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        if (queueSize < 0)
+            throw new IllegalArgumentException("queueSize cannot be negative");
+        this.path = path;
+        this.concurrency = concurrency;
+        this.queueSize = queueSize;
+        AtomicInteger count = new AtomicInteger();
+        // admission is controlled by inFlight, so the executor's own queue never fills up.
+        executor = new ThreadPoolExecutor(concurrency, concurrency, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "Cluster-Registry-" + path + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Maximum time, in milliseconds, an invocation submitted without a timeout of its own may wait for a thread;
+     * 0, the default, waits indefinitely.
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Changes the limits.  Invocations already accepted are not affected.
+     */
+    public synchronized void resize(int concurrency, int queueSize) {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        if (queueSize < 0)
+            throw new IllegalArgumentException("queueSize cannot be negative");
+        if (concurrency > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(concurrency);
+            executor.setCorePoolSize(concurrency);
+        } else {
+            executor.setCorePoolSize(concurrency);
+            executor.setMaximumPoolSize(concurrency);
+        }
+        this.concurrency = concurrency;
+        this.queueSize = queueSize;
+    }
+
+    public int getRunning() {
+        return running.get();
+    }
+
+    public int getQueued() {
+        return Math.max(0, inFlight.get() - running.get());
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    public double getAverageQueueWait() {
+        return queueWait.snapshot().getAverage();
+    }
+
+    public double get99thPercentileQueueWait() {
+        return queueWait.snapshot().getPercentile(99);
+    }
+
+    public double getMaxQueueWait() {
+        return queueWait.snapshot().getMax();
+    }
+
+    public double getAverageExecutionTime() {
+        return executionTime.snapshot().getAverage();
+    }
+
+    public double get99thPercentileExecutionTime() {
+        return executionTime.snapshot().getPercentile(99);
+    }
+
+    public double getMaxExecutionTime() {
+        return executionTime.snapshot().getMax();
+    }
+
+    public Histogram.Snapshot queueWait() {
+        return queueWait.snapshot();
+    }
+
+    public Histogram.Snapshot executionTime() {
+        return executionTime.snapshot();
+    }
+
+    /**
+     * Runs task unless the bulkhead is full, in which case RejectedExecutionException is thrown.
+     *
+     * @param timeout maximum time, in milliseconds, the task may wait for a thread; 0 or less uses getTimeout().
+     * @param onTimeout called instead of the task if it waited too long.
+     */
+    public void execute(Runnable task, long timeout, Consumer<Throwable> onTimeout) {
+        if (inFlight.incrementAndGet() > concurrency + queueSize) {
+            inFlight.decrementAndGet();
+            rejected.increment();
+            throw new RejectedExecutionException("Bulkhead for " + path + " is full: concurrency=" + concurrency + ", queueSize=" + queueSize);
+        }
+        long submitted = System.nanoTime();
+        long limit = (timeout > 0) ? timeout : this.timeout;
+        try {
+            executor.execute(() -> run(task, submitted, limit, onTimeout));
+        } catch (RejectedExecutionException ex) { // shut down
+            inFlight.decrementAndGet();
+            rejected.increment();
+            throw ex;
+        }
+    }
+
+    private void run(Runnable task, long submitted, long timeout, Consumer<Throwable> onTimeout) {
+        running.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            double waited = (start - submitted) / NANOS_PER_MILLI;
+            queueWait.record(waited);
+            if (timeout > 0 && waited > timeout) {
+                timedOut.increment();
+                onTimeout.accept(new TimeoutException("Invocation of " + path + " waited " + (long) waited + "ms for a thread, timeout is " + timeout + "ms"));
+                return;
+            }
+            task.run();
+            executionTime.record((System.nanoTime() - start) / NANOS_PER_MILLI);
+        } finally {
+            completed.increment();
+            running.decrementAndGet();
+            inFlight.decrementAndGet();
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s concurrency=%d queueSize=%d running=%d queued=%d rejected=%d timedOut=%d",
+                path, concurrency, queueSize, getRunning(), getQueued(), getRejected(), getTimedOut());
+    }
+}
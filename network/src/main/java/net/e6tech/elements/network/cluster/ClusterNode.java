@@ -47,6 +47,8 @@ public class ClusterNode implements Initializable {
     private List<MemberListener> memberListeners = new ArrayList<>();
     private boolean started = false;
     private long timeout = 5000L;
+    private int batchSize = 0;
+    private long batchWindow = 10L;
 
     public long getTimeout() {
         return timeout;
@@ -60,6 +62,26 @@ public class ClusterNode implements Initializable {
             registry .setTimeout(timeout);
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Number of messages per topic that the broadcast coalesces before publishing.  0 or 1 disables batching.
+     * Must be set before the node is started.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getBatchWindow() {
+        return batchWindow;
+    }
+
+    public void setBatchWindow(long batchWindow) {
+        this.batchWindow = batchWindow;
+    }
+
     public String getName() {
         return name;
     }
@@ -89,6 +111,10 @@ public class ClusterNode implements Initializable {
         return broadcast;
     }
 
+    public MessagingStatistics getBroadcastStatistics() {
+        return broadcast == null ? null : broadcast.getStatistics();
+    }
+
     public Registry getRegistry() {
         return registry;
     }
@@ -125,12 +151,13 @@ public class ClusterNode implements Initializable {
         if (broadcast == null) {
             broadcast = new Messaging();
             broadcast.setTimeout(timeout);
+            broadcast.setBatchSize(batchSize);
+            broadcast.setBatchWindow(batchWindow);
         }
         if (registry == null) {
             registry = new Registry();
             registry.setTimeout(timeout);
         }
-        registry.setWorkerPool(genesis.getWorkerPool());
         broadcast.start(genesis.getSystem());
         registry.start(genesis.getSystem());
         started = true;
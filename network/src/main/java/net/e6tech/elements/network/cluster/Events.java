@@ -71,6 +71,7 @@ public class Events {
     public static class Publish {
         String topic;
         Object message;
+        transient long timestamp = System.nanoTime(); // local only, used for publish latency
 
         public Publish(String topic, Object message) {
             this.topic = topic;
@@ -78,6 +79,26 @@ public class Events {
         }
     }
 
+    public static class PublishBatch {
+        String topic;
+        Object[] messages;
+
+        public PublishBatch(String topic, Object[] messages) {
+            this.topic = topic;
+            this.messages = messages;
+        }
+    }
+
+    static class Flush {
+        String topic;
+        Object batch;
+
+        Flush(String topic, Object batch) {
+            this.topic = topic;
+            this.batch = batch;
+        }
+    }
+
     public static class Send {
         String destination;
         Object message;
@@ -104,25 +125,41 @@ public class Events {
     public static class Announcement implements Serializable {
         private static final long serialVersionUID = 6910153191195648915L;
         private RegisterReference reference;
+        private RoutingPolicy policy;
 
         public Announcement(Registration register) {
             reference = register.reference;
+            policy = register.policy;
         }
 
         public String path() {
             return reference.path();
         }
+
+        public RoutingPolicy policy() {
+            return policy;
+        }
     }
 
     public static class Registration {
         private RegisterReference reference;
         private Function<Object[], Object> function;
         private long timeout;
+        private RoutingPolicy policy;
 
         public Registration(String path, Function<Object[], Object> function, long timeout) {
+            this(path, function, timeout, null);
+        }
+
+        public Registration(String path, Function<Object[], Object> function, long timeout, RoutingPolicy policy) {
             this.reference = new RegisterReference(path);
             this.function = function;
             this.timeout = timeout;
+            this.policy = policy;
+        }
+
+        public String path() {
+            return reference.path();
         }
 
         public Function<Object[], Object> function() {
@@ -132,6 +169,10 @@ public class Events {
         public long timeout() {
             return timeout;
         }
+
+        public RoutingPolicy policy() {
+            return policy;
+        }
     }
 
     public static class Invocation implements Serializable {
@@ -153,8 +194,89 @@ public class Events {
         }
     }
 
+    public static class BatchInvocation implements Serializable {
+        private static final long serialVersionUID = 2150718497405283644L;
+        private long id;
+        private RegisterReference reference;
+        private Object[][] arguments;
+        private boolean sequential;
+
+        public BatchInvocation(long id, String path, Object[][] arguments, boolean sequential) {
+            this.id = id;
+            this.reference = new RegisterReference(path);
+            this.arguments = arguments;
+            this.sequential = sequential;
+        }
+
+        public long id() {
+            return id;
+        }
+
+        public String path() {
+            return reference.path();
+        }
+
+        public Object[][] arguments() {
+            return arguments;
+        }
+
+        public boolean sequential() {
+            return sequential;
+        }
+    }
+
+    /**
+     * Results of some of the invocations of a batch.  For each index, either the value or the failure is set.
+     */
+    public static class BatchResponse implements Serializable {
+        private static final long serialVersionUID = -5393436420962402751L;
+        private long id;
+        private int[] indices;
+        private Object[] values;
+        private Throwable[] failures;
+        private int pending;
+        private double serviceTime;
+
+        public BatchResponse(long id, int[] indices, Object[] values, Throwable[] failures, int pending, double serviceTime) {
+            this.id = id;
+            this.indices = indices;
+            this.values = values;
+            this.failures = failures;
+            this.pending = pending;
+            this.serviceTime = serviceTime;
+        }
+
+        public long id() {
+            return id;
+        }
+
+        public int[] indices() {
+            return indices;
+        }
+
+        public Object[] values() {
+            return values;
+        }
+
+        public Throwable[] failures() {
+            return failures;
+        }
+
+        public int getPending() {
+            return pending;
+        }
+
+        public double getServiceTime() {
+            return serviceTime;
+        }
+    }
+
     public static class Response implements Serializable {
+        // the value computed for the class before pending and serviceTime were added, so that older nodes can read it.
+        private static final long serialVersionUID = -7768192071730605078L;
         private Object value;
+        private int pending;        // invocations pending at the entry when the response was sent
+        private double serviceTime; // the entry's average service time in milliseconds
 
         public Response() {
         }
@@ -163,6 +285,20 @@ public class Events {
             this.value = value;
         }
 
+        public Response(Object value, int pending, double serviceTime) {
+            this.value = value;
+            this.pending = pending;
+            this.serviceTime = serviceTime;
+        }
+
+        public int getPending() {
+            return pending;
+        }
+
+        public double getServiceTime() {
+            return serviceTime;
+        }
+
         public Object getValue() {
             return value;
         }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.network.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Invocations of one path that are sent to a routee in a single message.  The routee runs them in parallel in
+ * its bulkhead or, when sequential, one after another in the order they were added.  The stage returned by add
+ * completes as soon as the result of that invocation arrives; results are not held back for the whole batch.
+ *
+ * Created by Registry.batch.  A batch is sent once; it is not thread safe until then.
+ */
+public class InvocationBatch {
+    private final Registry registry;
+    private final String path;
+    private final long timeout;
+    private boolean sequential;
+    private final List<Object[]> arguments = new ArrayList<>();
+    private final List<CompletableFuture<Object>> futures = new ArrayList<>();
+    private boolean sent;
+
+    InvocationBatch(Registry registry, String path, long timeout) {
+        this.registry = registry;
+        this.path = path;
+        this.timeout = timeout;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public boolean isSequential() {
+        return sequential;
+    }
+
+    /**
+     * When true, the invocations run one at a time in the order they were added, occupying a single thread of the
+     * routee's bulkhead.  The default is to run them in parallel.
+     */
+    public InvocationBatch sequential(boolean sequential) {
+        this.sequential = sequential;
+        return this;
+    }
+
+    public int size() {
+        return arguments.size();
+    }
+
+    public CompletionStage<Object> add(Object... args) {
+        if (sent)
+            throw new IllegalStateException("Batch for " + path + " has already been sent");
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        arguments.add(args);
+        futures.add(future);
+        return future;
+    }
+
+    /**
+     * Sends the batch.
+     * @return a stage that completes when every invocation has completed, successfully or not.
+     */
+    public CompletionStage<Void> send() {
+        if (sent)
+            throw new IllegalStateException("Batch for " + path + " has already been sent");
+        sent = true;
+        CompletableFuture<Object>[] array = futures.toArray(new CompletableFuture[0]);
+        if (array.length > 0)
+            registry.send(path, timeout, sequential, arguments.toArray(new Object[0][]), array);
+        return CompletableFuture.allOf(array).handle((v, e) -> null);
+    }
+}
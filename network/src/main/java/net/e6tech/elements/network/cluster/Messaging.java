@@ -20,13 +20,25 @@ import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.PoisonPill;
 import akka.actor.Props;
+import akka.cluster.Cluster;
 import akka.pattern.Patterns;
+import akka.pattern.PatternsCS;
 import net.e6tech.elements.common.subscribe.Broadcast;
 import net.e6tech.elements.common.subscribe.Subscriber;
+import net.e6tech.elements.jmx.JMXService;
+
+import javax.management.ObjectName;
 
 import java.io.Serializable;
+import java.util.concurrent.CompletionStage;
 
 /**
+ * Publish, subscribe and unsubscribe are fire-and-forget; use publishAsync when the caller needs to know
+ * that a message has been handed to the mediator.  When batchSize is greater than 1, messages are
+ * coalesced per topic and published together once batchSize messages are pending or batchWindow
+ * milliseconds have passed.  Batching settings must be set before start.  The statistics are registered
+ * as net.e6tech:type=Messaging,name=&lt;address/name&gt; while the broadcast is started.
+ *
  * Created by futeh.
  */
 class Messaging implements Broadcast {
@@ -34,6 +46,10 @@ class Messaging implements Broadcast {
     private ActorRef messagingRef;
     private String name = "messaging";
     private long timeout = 5000L;
+    private int batchSize = 0;
+    private long batchWindow = 10L;
+    private MessagingStatistics statistics = new MessagingStatistics();
+    private String objectName;
 
     public String getName() {
         return name;
@@ -51,19 +67,48 @@ class Messaging implements Broadcast {
         this.timeout = timeout;
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getBatchWindow() {
+        return batchWindow;
+    }
+
+    public void setBatchWindow(long batchWindow) {
+        this.batchWindow = batchWindow;
+    }
+
+    public MessagingStatistics getStatistics() {
+        return statistics;
+    }
+
     public void start(ActorSystem system) {
-        messagingRef = system.actorOf(Props.create(MessagingActor.class, MessagingActor::new), name);
+        int size = batchSize;
+        long window = batchWindow;
+        MessagingStatistics stats = statistics;
+        messagingRef = system.actorOf(Props.create(MessagingActor.class, () -> new MessagingActor(size, window, stats)), name);
+        objectName = "net.e6tech:type=Messaging,name=" + ObjectName.quote(Cluster.get(system).selfAddress() + "/" + name);
+        JMXService.registerMBean(statistics, objectName);
     }
 
     public void shutdown() {
         if (messagingRef != null) {
             Patterns.ask(messagingRef, PoisonPill.getInstance(), timeout);
         }
+        if (objectName != null) {
+            JMXService.unregisterMBean(objectName);
+            objectName = null;
+        }
     }
 
     @Override
     public void subscribe(String topic, Subscriber subscriber) {
-        Patterns.ask(messagingRef, new Events.Subscribe(topic, subscriber), timeout);
+        messagingRef.tell(new Events.Subscribe(topic, subscriber), ActorRef.noSender());
     }
 
     @Override
@@ -73,7 +118,7 @@ class Messaging implements Broadcast {
 
     @Override
     public void unsubscribe(String topic, Subscriber subscriber) {
-        Patterns.ask(messagingRef, new Events.Unsubscribe(topic, subscriber), timeout);
+        messagingRef.tell(new Events.Unsubscribe(topic, subscriber), ActorRef.noSender());
     }
 
     @Override
@@ -83,7 +128,21 @@ class Messaging implements Broadcast {
 
     @Override
     public void publish(String topic, Serializable object) {
-        Patterns.ask(messagingRef, new Events.Publish(topic, object), timeout);
+        statistics.enqueue();
+        messagingRef.tell(new Events.Publish(topic, object), ActorRef.noSender());
+    }
+
+    /**
+     * Publishes a message and completes the returned stage once the message, or the batch containing it,
+     * has been handed to the mediator.  The stage fails if that does not happen within timeout.
+     */
+    public CompletionStage<Void> publishAsync(String topic, Serializable object) {
+        statistics.enqueue();
+        return PatternsCS.ask(messagingRef, new Events.Publish(topic, object), timeout).thenApply(ack -> null);
+    }
+
+    public <T extends Serializable> CompletionStage<Void> publishAsync(Class<T> cls, T object) {
+        return publishAsync(cls.getName(), object);
     }
 
     @Override
@@ -96,7 +155,7 @@ class Messaging implements Broadcast {
     }
 
     public void send(String destination, Serializable object) {
-         Patterns.ask(messagingRef, new Events.Send(destination, object), timeout);
+        messagingRef.tell(new Events.Send(destination, object), ActorRef.noSender());
     }
 
 }
@@ -22,8 +22,13 @@ import akka.cluster.pubsub.DistributedPubSubMediator;
 import net.e6tech.elements.common.resources.NotAvailableException;
 import net.e6tech.elements.common.subscribe.Subscriber;
 
+import scala.concurrent.duration.Duration;
+
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by futeh.
@@ -37,9 +42,30 @@ class MessagingActor extends AbstractActor {
     ActorRef mediator = DistributedPubSub.get(getContext().system()).mediator();
     Map<String, Map<Subscriber, ActorRef>> subscribers = new HashMap<>();
     Map<String, ActorRef> destinations = new HashMap<>();
+    Map<String, Batch> batches = new HashMap<>();
+    private int batchSize;
+    private long batchWindow;
+    private MessagingStatistics statistics;
+
+    MessagingActor() {
+        this(0, 0, new MessagingStatistics());
+    }
+
+    /**
+     * @param batchSize when greater than 1, publications are coalesced per topic until batchSize messages are
+     *                  pending or batchWindow milliseconds have passed since the first pending message.
+     */
+    MessagingActor(int batchSize, long batchWindow, MessagingStatistics statistics) {
+        this.batchSize = batchSize;
+        this.batchWindow = batchWindow;
+        this.statistics = statistics;
+    }
 
     @Override
     public void postStop() {
+        for (String topic : new ArrayList<>(batches.keySet()))
+            flush(topic);
+
         for (Map<Subscriber, ActorRef> map : subscribers.values()) {
             for (ActorRef ref : map.values()) {
                 ref.tell(PoisonPill.getInstance(), getSender());
@@ -89,8 +115,12 @@ class MessagingActor extends AbstractActor {
                         destinations.remove("/user/" + getSelf().path().name() + "/" + DESTINATION_PREFIX + event.destination);
                     }
                 })
-                .match(Events.Publish.class, publish -> mediator.tell(new DistributedPubSubMediator.Publish(publish.topic, publish), getSelf())
-                )
+                .match(Events.Publish.class, this::publish)
+                .match(Events.Flush.class, event -> {
+                    Batch batch = batches.get(event.topic);
+                    if (batch != null && batch == event.batch)
+                        flush(event.topic);
+                })
                 .match(Events.Send.class, send ->
                     mediator.tell(new DistributedPubSubMediator.Send("/user/" + getSelf().path().name() + "/" + DESTINATION_PREFIX + send.destination,
                             send, true), getSender())
@@ -98,4 +128,61 @@ class MessagingActor extends AbstractActor {
                 .build();
     }
 
+    private void publish(Events.Publish publish) {
+        if (batchSize <= 1) {
+            mediator.tell(new DistributedPubSubMediator.Publish(publish.topic, publish), getSelf());
+            statistics.published(publish, System.nanoTime());
+            acknowledge(getSender(), publish.topic);
+            return;
+        }
+
+        Batch batch = batches.get(publish.topic);
+        if (batch == null) {
+            batch = new Batch();
+            batches.put(publish.topic, batch);
+            batch.timer = getContext().system().scheduler().scheduleOnce(Duration.create(batchWindow, TimeUnit.MILLISECONDS),
+                    getSelf(), new Events.Flush(publish.topic, batch), getContext().dispatcher(), getSelf());
+        }
+        batch.add(publish, getSender());
+        if (batch.messages.size() >= batchSize)
+            flush(publish.topic);
+    }
+
+    private void flush(String topic) {
+        Batch batch = batches.remove(topic);
+        if (batch == null)
+            return;
+        if (batch.timer != null)
+            batch.timer.cancel();
+
+        Object[] messages = new Object[batch.messages.size()];
+        for (int i = 0; i < messages.length; i++)
+            messages[i] = batch.messages.get(i).message;
+        mediator.tell(new DistributedPubSubMediator.Publish(topic, new Events.PublishBatch(topic, messages)), getSelf());
+        statistics.batch();
+
+        long now = System.nanoTime();
+        for (Events.Publish publish : batch.messages)
+            statistics.published(publish, now);
+        for (ActorRef sender : batch.senders)
+            acknowledge(sender, topic);
+    }
+
+    private void acknowledge(ActorRef sender, String topic) {
+        // fire-and-forget publications are sent without a sender.
+        if (sender != null && !sender.equals(getContext().system().deadLetters()))
+            sender.tell(new Status.Success(topic), getSelf());
+    }
+
+    static class Batch {
+        List<Events.Publish> messages = new ArrayList<>();
+        List<ActorRef> senders = new ArrayList<>();
+        Cancellable timer;
+
+        void add(Events.Publish publish, ActorRef sender) {
+            messages.add(publish);
+            if (sender != null)
+                senders.add(sender);
+        }
+    }
 }
\ No newline at end of file
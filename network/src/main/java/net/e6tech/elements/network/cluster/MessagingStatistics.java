@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.network.cluster;
+
+import net.e6tech.elements.jmx.stat.Histogram;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publishing metrics for Messaging.  The queue depth counts messages that have been published but not yet
+ * handed to the mediator, i.e. messages sitting in the messaging actor's mailbox or in a pending batch.
+ * Latencies, in milliseconds, are measured from the publish call to the hand-off to the mediator.
+ */
+public class MessagingStatistics implements MessagingStatisticsMXBean {
+    private static final double NANOS_PER_MILLI = 1000_000d;
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final Histogram latency = new Histogram();
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    @Override
+    public long getPublished() {
+        return published.sum();
+    }
+
+    @Override
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    @Override
+    public double getAverageLatency() {
+        return latency.snapshot().getAverage();
+    }
+
+    @Override
+    public double getMaxLatency() {
+        return latency.snapshot().getMax();
+    }
+
+    @Override
+    public double get99thPercentileLatency() {
+        return latency.snapshot().getPercentile(99);
+    }
+
+    public Histogram.Snapshot getLatency() {
+        return latency.snapshot();
+    }
+
+    void enqueue() {
+        queueDepth.incrementAndGet();
+    }
+
+    void published(Events.Publish publish, long now) {
+        queueDepth.decrementAndGet();
+        published.increment();
+        latency.record((now - publish.timestamp) / NANOS_PER_MILLI);
+    }
+
+    void batch() {
+        batches.increment();
+    }
+}
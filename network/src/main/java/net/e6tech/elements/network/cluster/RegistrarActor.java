@@ -18,29 +18,43 @@ package net.e6tech.elements.network.cluster;
 
 import akka.actor.*;
 import akka.cluster.Cluster;
+import akka.cluster.ClusterEvent;
+import akka.cluster.Member;
+import akka.routing.ActorRefRoutee;
 import akka.routing.RoundRobinRoutingLogic;
+import akka.routing.Routee;
 import akka.routing.Router;
 import net.e6tech.elements.common.actor.Genesis;
 import net.e6tech.elements.common.resources.NotAvailableException;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 /**
  * Created by futeh.
+ *
+ * Besides routing invocations that arrive before a caller has a snapshot of the routees, the registrar publishes
+ * the reachable routees of a path to Registry whenever they change so that callers can route on their own.
  */
 class RegistrarActor extends AbstractActor {
     private Cluster cluster = Cluster.get(getContext().system());
     private Map<String, Router> routes = new HashMap<>();
     private Map<ActorRef, List<String>> actors = new HashMap<>();
+    private Map<String, RoutingPolicy> policies = new HashMap<>();
+    private Set<Address> unreachable = new HashSet<>();
     private Registry registry;
-    private ActorRef workerPool;
 
-    public RegistrarActor(Registry registry, ActorRef workerPool) {
+    public RegistrarActor(Registry registry) {
         this.registry = registry;
-        this.workerPool = workerPool;
+    }
+
+    @Override
+    public void preStart() {
+        cluster.subscribe(getSelf(), ClusterEvent.UnreachableMember.class, ClusterEvent.ReachableMember.class, ClusterEvent.MemberRemoved.class);
+    }
+
+    @Override
+    public void postStop() {
+        cluster.unsubscribe(getSelf());
     }
 
     @Override
@@ -53,7 +67,8 @@ class RegistrarActor extends AbstractActor {
                     } else {
                         dispatcher = Genesis.WORKER_POOL_DISPATCHER;
                     }
-                    Props props = Props.create(RegistryEntryActor.class, () -> new RegistryEntryActor(message, workerPool))
+                    Bulkhead bulkhead = registry.bulkhead(message.path());
+                    Props props = Props.create(RegistryEntryActor.class, () -> new RegistryEntryActor(message, bulkhead))
                             .withDispatcher(dispatcher);
                     getContext().actorOf(props); // create the actor
                 })
@@ -64,6 +79,9 @@ class RegistrarActor extends AbstractActor {
                     routes.put(message.path(), router);
                     List<String> paths = actors.computeIfAbsent(getSender(), ref -> new ArrayList<>());
                     paths.add(message.path());
+                    if (message.policy() != null)
+                        policies.put(message.path(), message.policy());
+                    publish(message.path());
                     registry.onAnnouncement(message.path());
                 })
                 .match(Terminated.class, terminated -> { // from getContext().watch(getSender()) in handling Announcement event.
@@ -77,6 +95,23 @@ class RegistrarActor extends AbstractActor {
                         actors.remove(actor);
                     }
                 })
+                .match(ClusterEvent.CurrentClusterState.class, state -> {
+                    for (Member member : state.getUnreachable())
+                        unreachable.add(member.address());
+                    publishAll();
+                })
+                .match(ClusterEvent.UnreachableMember.class, event -> {
+                    unreachable.add(event.member().address());
+                    publishAll();
+                })
+                .match(ClusterEvent.ReachableMember.class, event -> {
+                    unreachable.remove(event.member().address());
+                    publishAll();
+                })
+                .match(ClusterEvent.MemberRemoved.class, event -> {
+                    unreachable.remove(event.member().address());
+                    publishAll();
+                })
                 .match(Events.Invocation.class, invocation -> { // from Registry.route().apply(r)
                     Router router = routes.get(invocation.path());
                     if (router == null || router.routees().length() == 0) {
@@ -93,10 +128,39 @@ class RegistrarActor extends AbstractActor {
             return;
 
         registry.onTerminated(path, actor);
-        Router newRouter = router.removeRoutee(getSender());
+        Router newRouter = router.removeRoutee(actor);
         routes.put(path, newRouter);
+        publish(path);
         if (newRouter.routees().length() == 0) {
             registry.onRouteRemoved(path);
         }
     }
+
+    private void publishAll() {
+        for (String path : routes.keySet())
+            publish(path);
+    }
+
+    // a routee on an unreachable member stays in the router but is left out of the callers' snapshot.
+    private void publish(String path) {
+        List<ActorRef> list = new ArrayList<>();
+        Router router = routes.get(path);
+        if (router != null) {
+            scala.collection.Iterator<Routee> iterator = router.routees().iterator();
+            while (iterator.hasNext()) {
+                Routee routee = iterator.next();
+                if (routee instanceof ActorRefRoutee) {
+                    ActorRef ref = ((ActorRefRoutee) routee).ref();
+                    if (!unreachable.contains(addressOf(ref)) && !list.contains(ref))
+                        list.add(ref);
+                }
+            }
+        }
+        registry.updateRoutees(path, list, policies.get(path));
+    }
+
+    private Address addressOf(ActorRef ref) {
+        Address address = ref.path().address();
+        return address.hasLocalScope() ? cluster.selfAddress() : address;
+    }
 }
@@ -16,29 +16,53 @@
 
 package net.e6tech.elements.network.cluster;
 
-import akka.actor.ActorRef;
-import akka.actor.ActorSystem;
-import akka.actor.PoisonPill;
-import akka.actor.Props;
+import akka.actor.*;
+import akka.cluster.Cluster;
+import akka.pattern.AskTimeoutException;
 import akka.pattern.Patterns;
-import net.e6tech.elements.common.actor.pool.WorkerPool;
 import net.e6tech.elements.common.logging.Logger;
 import net.e6tech.elements.common.util.SystemException;
 import net.e6tech.elements.common.util.concurrent.Async;
 import net.e6tech.elements.common.util.concurrent.ThreadPool;
+import net.e6tech.elements.common.util.concurrent.TimingWheel;
+import net.e6tech.elements.jmx.JMXService;
 import scala.compat.java8.FutureConverters;
 import scala.concurrent.Future;
 
+import javax.management.ObjectName;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.CompletionStage;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 
 /**
  * A registry that contains cluster wide services.
  *
+ * Callers keep their own copy of the routees for each path.  RegistrarActor publishes a new copy whenever an entry
+ * is announced or terminated, or when a member becomes unreachable, reachable or removed, so route() can pick a
+ * routee and ask it directly instead of going through the registrar.  When the picked routee is an entry in this
+ * JVM, the function is invoked directly without an actor hop or serialization; arguments and return values are then
+ * passed by reference.
+ *
+ * The routee is chosen by the RoutingPolicy given at registration, or the registry's default policy, from the
+ * statistics the caller keeps for each routee.  The statistics are available from getStatistics() and over JMX.
+ *
+ * On the provider side, every path has a Bulkhead, a bounded executor that runs its invocations, so that a slow
+ * service cannot exhaust the threads of the node.  The methods of a service registered with
+ * register(qualifier, interfaceClass, implementation, timeout) share a single bulkhead.  The limits default to
+ * getConcurrency() and getQueueSize() and can be set per service or per path with setBulkhead.  Invocations
+ * registered without a timeout wait at most getTimeout() for a thread.
+ *
+ * batch() groups invocations of a path into a single message to one routee; each invocation still completes its
+ * own stage as its result arrives.  When batchSize is greater than 1, route() does the same transparently:
+ * concurrent calls to a path are held for up to batchWindow milliseconds, or until batchSize calls are pending, and
+ * then sent together.
+ *
  * Created by futeh.
  */
 public class Registry {
@@ -47,12 +71,29 @@ public class Registry {
     public static final String REGISTRY_DISPATCHER = "registry-dispatcher";
 
     private static ThreadPool threadPool = ThreadPool.cachedThreadPool("Cluster-Registry");
+    private static Map<String, RegistryEntry> localEntries = new ConcurrentHashMap<>(); // entries in this JVM, keyed by actor path with address
 
     ActorSystem system;
     ActorRef registrar;
     ActorRef workerPool;
     long timeout = 5000L;
-    List<RouteListener> listeners = new ArrayList<>();
+    List<RouteListener> listeners = new CopyOnWriteArrayList<>();
+    Map<String, Routees> routees = new ConcurrentHashMap<>();
+    Address selfAddress;
+    boolean localInvocation = true;
+    RoutingPolicy routingPolicy = RoutingPolicy.ROUND_ROBIN;
+    RegistryStatistics statistics = new RegistryStatistics(this);
+    Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>(); // by path; the methods of a service map to the same one
+    int concurrency = 64;
+    int queueSize = 1024;
+    int batchSize = 0;
+    long batchWindow = 10L;
+    Map<String, MicroBatcher> microBatchers = new ConcurrentHashMap<>();
+    Map<Long, Dispatch> dispatches = new ConcurrentHashMap<>(); // batches sent to remote entries, by id
+    AtomicLong batchIds = new AtomicLong();
+    ActorRef batchReceiver;
+    Bulkhead callbacks; // completes the stages of batched invocations
+    String objectName;
 
     public static ThreadPool getThreadPool() {
         return threadPool;
@@ -70,8 +111,151 @@ public class Registry {
         return timeout;
     }
 
+    /**
+     * Also the longest an invocation registered without a timeout may wait for a thread in its bulkhead.
+     */
     public void setTimeout(long timeout) {
         this.timeout = timeout;
+        for (Bulkhead bulkhead : getBulkheads())
+            bulkhead.setTimeout(timeout);
+    }
+
+    public boolean isLocalInvocation() {
+        return localInvocation;
+    }
+
+    /**
+     * When true, the default, calls routed to an entry in the same JVM invoke the function directly.
+     */
+    public void setLocalInvocation(boolean localInvocation) {
+        this.localInvocation = localInvocation;
+    }
+
+    public RoutingPolicy getRoutingPolicy() {
+        return routingPolicy;
+    }
+
+    /**
+     * The policy for paths registered without one.  It applies to routees announced after the call.
+     */
+    public void setRoutingPolicy(RoutingPolicy routingPolicy) {
+        this.routingPolicy = routingPolicy == null ? RoutingPolicy.ROUND_ROBIN : routingPolicy;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Default number of threads per service, or per path registered on its own, for bulkheads created afterwards.
+     */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Default number of invocations per service, or per path registered on its own, that may wait for a thread,
+     * for bulkheads created afterwards.
+     */
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * When greater than 1, calls made through route() are micro-batched: calls to the same path are sent together
+     * once batchSize of them are pending or batchWindow milliseconds have passed since the first one.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getBatchWindow() {
+        return batchWindow;
+    }
+
+    public void setBatchWindow(long batchWindow) {
+        this.batchWindow = batchWindow;
+    }
+
+    private Bulkhead newBulkhead(String name) {
+        Bulkhead bulkhead = new Bulkhead(name, concurrency, queueSize);
+        bulkhead.setTimeout(timeout);
+        return bulkhead;
+    }
+
+    Bulkhead bulkhead(String path) {
+        return bulkheads.computeIfAbsent(path, this::newBulkhead);
+    }
+
+    /*
+     * Returns the bulkhead shared by the methods of a service, mapping to it the paths of the methods that do
+     * not have one yet, or every method when replace is true.
+     */
+    private Bulkhead bulkhead(String qualifier, Class interfaceClass, boolean replace) {
+        Bulkhead shared = bulkheads.computeIfAbsent(qualify(qualifier, interfaceClass), this::newBulkhead);
+        for (Method method : interfaceClass.getMethods()) {
+            if (isObjectMethod(method))
+                continue;
+            String methodPath = fullyQualify(qualifier, interfaceClass, method);
+            if (replace)
+                bulkheads.put(methodPath, shared);
+            else
+                bulkheads.putIfAbsent(methodPath, shared);
+        }
+        return shared;
+    }
+
+    public Bulkhead getBulkhead(String path) {
+        return bulkheads.get(path);
+    }
+
+    /**
+     * @return the bulkhead shared by the methods of a service, or null if there is none.
+     */
+    public Bulkhead getBulkhead(String qualifier, Class interfaceClass) {
+        return bulkheads.get(qualify(qualifier, interfaceClass));
+    }
+
+    /**
+     * @return the distinct bulkheads; a bulkhead shared by the methods of a service is listed once.
+     */
+    public Collection<Bulkhead> getBulkheads() {
+        Set<Bulkhead> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(bulkheads.values());
+        return Collections.unmodifiableCollection(set);
+    }
+
+    /**
+     * Sets the limits of a path, before or after it is registered.  If the path is a method of a service sharing a
+     * bulkhead, the limits of the whole service change.
+     */
+    public Bulkhead setBulkhead(String path, int concurrency, int queueSize) {
+        Bulkhead bulkhead = bulkhead(path);
+        bulkhead.resize(concurrency, queueSize);
+        return bulkhead;
+    }
+
+    /**
+     * Sets the limits of the bulkhead shared by every method of a service registered with
+     * register(qualifier, interfaceClass, implementation, timeout).  Methods that had a bulkhead of their own
+     * are moved to the shared one; those already registered keep running in the old one until registered again.
+     */
+    public Bulkhead setBulkhead(String qualifier, Class interfaceClass, int concurrency, int queueSize) {
+        Bulkhead bulkhead = bulkhead(qualifier, interfaceClass, true);
+        bulkhead.resize(concurrency, queueSize);
+        return bulkhead;
+    }
+
+    public RegistryStatistics getStatistics() {
+        return statistics;
     }
 
     public void addRouteListener(RouteListener listener) {
@@ -100,23 +284,94 @@ public class Registry {
         });
     }
 
+    /**
+     * @deprecated invocations run in per path bulkheads, the worker pool is no longer used.
+     */
+    @Deprecated
     public ActorRef getWorkerPool() {
         return workerPool;
     }
 
+    /**
+     * @deprecated invocations run in per path bulkheads, the worker pool is no longer used.
+     */
+    @Deprecated
     public void setWorkerPool(ActorRef workerPool) {
         this.workerPool = workerPool;
     }
 
     public void start(ActorSystem system) {
         this.system = system;
-        if (workerPool == null)
-            workerPool = system.actorOf(Props.create(WorkerPool.class));
-        registrar = system.actorOf(Props.create(RegistrarActor.class, () -> new RegistrarActor(this, workerPool)), getPath());
+        this.selfAddress = Cluster.get(system).selfAddress();
+        registrar = system.actorOf(Props.create(RegistrarActor.class, () -> new RegistrarActor(this)), getPath());
+        batchReceiver = system.actorOf(Props.create(BatchReceiverActor.class, () -> new BatchReceiverActor(this)), getPath() + "-batches");
+        callbacks = new Bulkhead(getPath() + "-callbacks", concurrency, queueSize);
+        objectName = "net.e6tech:type=Registry,name=" + ObjectName.quote(selfAddress.toString());
+        JMXService.registerMBean(statistics, objectName);
     }
 
     public void shutdown() {
         Patterns.ask(registrar, PoisonPill.getInstance(), timeout);
+        if (batchReceiver != null)
+            batchReceiver.tell(PoisonPill.getInstance(), ActorRef.noSender());
+        for (MicroBatcher batcher : microBatchers.values())
+            batcher.flush();
+        microBatchers.clear();
+        routees.clear();
+        for (Bulkhead bulkhead : getBulkheads())
+            bulkhead.shutdown();
+        bulkheads.clear();
+        if (callbacks != null)
+            callbacks.shutdown();
+        if (objectName != null) {
+            JMXService.unregisterMBean(objectName);
+            objectName = null;
+        }
+    }
+
+    static String entryKey(ActorRef actor, Address address) {
+        return actor.path().toSerializationFormatWithAddress(address);
+    }
+
+    static void addLocalEntry(String key, RegistryEntry entry) {
+        localEntries.put(key, entry);
+    }
+
+    static void removeLocalEntry(String key) {
+        localEntries.remove(key);
+    }
+
+    // called by RegistrarActor with the reachable routees of path.  Statistics of routees that remain are kept.
+    void updateRoutees(String path, List<ActorRef> actors, RoutingPolicy policy) {
+        if (actors.isEmpty()) {
+            routees.remove(path);
+            removeBatchers(path);
+            return;
+        }
+        Routees previous = routees.get(path);
+        ActorRef[] refs = actors.toArray(new ActorRef[0]);
+        RegistryEntry[] locals = new RegistryEntry[refs.length];
+        RouteeStatistics[] stats = new RouteeStatistics[refs.length];
+        for (int i = 0; i < refs.length; i++) {
+            locals[i] = localEntries.get(entryKey(refs[i], selfAddress));
+            stats[i] = (previous == null) ? null : previous.statistics(refs[i]);
+            if (stats[i] == null)
+                stats[i] = new RouteeStatistics(path, entryKey(refs[i], selfAddress));
+        }
+        routees.put(path, new Routees(policy == null ? routingPolicy : policy, refs, locals, stats));
+    }
+
+    // drops the micro batchers of a path that no longer has routees after sending what they hold.
+    private void removeBatchers(String path) {
+        String prefix = path + "#";
+        Iterator<Map.Entry<String, MicroBatcher>> iterator = microBatchers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, MicroBatcher> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                iterator.remove();
+                entry.getValue().flush();
+            }
+        }
     }
 
     public <R> void register(String path, Function<Object[], R> function) {
@@ -124,7 +379,14 @@ public class Registry {
     }
 
     public <R> void register(String path, Function<Object[], R> function, long timeout) {
-        Patterns.ask(registrar, new Events.Registration(path, (Function<Object[], Object>) function, timeout), this.timeout);
+        register(path, function, timeout, null);
+    }
+
+    /**
+     * @param policy how callers choose among the providers of path; null to use each caller's default policy.
+     */
+    public <R> void register(String path, Function<Object[], R> function, long timeout, RoutingPolicy policy) {
+        Patterns.ask(registrar, new Events.Registration(path, (Function<Object[], Object>) function, timeout, policy), this.timeout);
     }
 
     /**
@@ -136,16 +398,22 @@ public class Registry {
      * @param <T> type of implementation
      * @param timeout timout period
      */
-    @SuppressWarnings({"squid:S1067", "squid:S3776"})
     public <T> void register(String qualifier, Class<T> interfaceClass, T implementation, long timeout) {
+        register(qualifier, interfaceClass, implementation, timeout, null);
+    }
+
+    /**
+     * Same as register(qualifier, interfaceClass, implementation, timeout) with a routing policy for all methods.
+     */
+    @SuppressWarnings({"squid:S1067", "squid:S3776"})
+    public <T> void register(String qualifier, Class<T> interfaceClass, T implementation, long timeout, RoutingPolicy policy) {
         if (!interfaceClass.isInterface())
             throw new IllegalArgumentException("interfaceClass needs to be an interface");
 
+        bulkhead(qualifier, interfaceClass, false);
+
         for (Method method : interfaceClass.getMethods()) {
-            String methodName = method.getName();
-            if ("hashCode".equals(methodName) && method.getParameterCount() == 0
-                    || "equals".equals(methodName) && method.getParameterCount() == 1
-                    || "toString".equals(methodName) && method.getParameterCount() == 0) {
+            if (isObjectMethod(method)) {
                 // ignored
             } else {
                 register(fullyQualify(qualifier, interfaceClass, method),
@@ -158,19 +426,29 @@ public class Registry {
                                 Logger.suppress(e);
                                 throw new SystemException(e.getCause());
                             }
-                        }, timeout);
+                        }, timeout, policy);
             }
         }
     }
 
+    private static boolean isObjectMethod(Method method) {
+        String methodName = method.getName();
+        return "hashCode".equals(methodName) && method.getParameterCount() == 0
+                || "equals".equals(methodName) && method.getParameterCount() == 1
+                || "toString".equals(methodName) && method.getParameterCount() == 0;
+    }
+
+    // the prefix of the paths of a service's methods.
+    String qualify(String qualifier, Class interfaceClass) {
+        String normalizedQualifier = (qualifier == null) ? "" : qualifier.trim();
+        if (normalizedQualifier.length() > 0)
+            return normalizedQualifier + "@" + interfaceClass.getName();
+        return interfaceClass.getName();
+    }
+
     String fullyQualify(String qualifier, Class interfaceClass, Method method) {
         StringBuilder builder = new StringBuilder();
-        String normalizedQualifier = (qualifier == null) ? "" : qualifier.trim();
-        if (normalizedQualifier.length() > 0) {
-            builder.append(normalizedQualifier);
-            builder.append("@");
-        }
-        builder.append(interfaceClass.getName());
+        builder.append(qualify(qualifier, interfaceClass));
         builder.append("::");
         builder.append(method.getName());
         builder.append("(");
@@ -194,12 +472,119 @@ public class Registry {
 
     public Function<Object[], CompletionStage> route(String path, long timeout) {
         return (Function<Object[], CompletionStage>) arguments -> {
-            Future future = Patterns.ask(registrar, new Events.Invocation(path, arguments), timeout);
-            return FutureConverters.toJava(future).thenApplyAsync(ret -> {
-                Events.Response response = (Events.Response) ret;
-                return response.getValue();
+            Routees r = routees.get(path);
+            if (r == null) // not announced yet, let the registrar decide.
+                return ask(registrar, path, arguments, timeout);
+            if (batchSize > 1)
+                return microBatchers.computeIfAbsent(path + "#" + timeout, key -> new MicroBatcher(path, timeout)).add(arguments);
+            int index = r.select();
+            RouteeStatistics stats = r.statistics[index];
+            long start = stats.begin();
+            BiConsumer<Object, Throwable> completion = (value, error) -> stats.end(start, error != null);
+            RegistryEntry local = r.locals[index];
+            if (local != null && localInvocation)
+                return invokeLocal(path, local, stats, arguments, timeout).whenComplete(completion);
+            return ask(r.actors[index], path, stats, arguments, timeout).whenComplete(completion);
+        };
+    }
+
+    private CompletionStage ask(ActorRef actor, String path, Object[] arguments, long timeout) {
+        return ask(actor, path, null, arguments, timeout);
+    }
+
+    private CompletionStage ask(ActorRef actor, String path, RouteeStatistics stats, Object[] arguments, long timeout) {
+        Future future = Patterns.ask(actor, new Events.Invocation(path, arguments), timeout);
+        return FutureConverters.toJava(future).thenApplyAsync(ret -> {
+            Events.Response response = (Events.Response) ret;
+            if (stats != null)
+                stats.reported(response.getPending(), response.getServiceTime());
+            return response.getValue();
+        });
+    }
+
+    private CompletionStage invokeLocal(String path, RegistryEntry entry, RouteeStatistics stats, Object[] arguments, long timeout) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        TimingWheel.Timeout expiry = TimingWheel.getDefault().schedule(() ->
+                future.completeExceptionally(new AskTimeoutException("Local invocation of " + path + " timed out after " + timeout + " ms")),
+                timeout, TimeUnit.MILLISECONDS);
+        entry.execute(arguments, (value, error) -> {
+            stats.reported(entry.getPending(), entry.getServiceTime());
+            expiry.cancel();
+            if (error == null)
+                future.complete(value);
+            else
+                future.completeExceptionally(error);
+        });
+        return future;
+    }
+
+    public InvocationBatch batch(String qualifier, Class interfaceClass, Method method, long timeout) {
+        return batch(fullyQualify(qualifier, interfaceClass, method), timeout);
+    }
+
+    public InvocationBatch batch(String path, long timeout) {
+        return new InvocationBatch(this, path, timeout);
+    }
+
+    // called by InvocationBatch.send.  All invocations go to the same routee.
+    void send(String path, long timeout, boolean sequential, Object[][] arguments, CompletableFuture<Object>[] futures) {
+        Routees r = routees.get(path);
+        if (r == null) { // not announced yet, let the registrar decide each invocation.
+            for (int i = 0; i < arguments.length; i++) {
+                CompletableFuture<Object> future = futures[i];
+                ask(registrar, path, arguments[i], timeout).whenComplete((value, error) -> {
+                    if (error == null)
+                        future.complete(value);
+                    else
+                        future.completeExceptionally((Throwable) error);
+                });
+            }
+            return;
+        }
+
+        int index = r.select();
+        Dispatch dispatch = new Dispatch(r.statistics[index], futures);
+        RegistryEntry local = r.locals[index];
+        String message = "Batch of " + arguments.length + " invocations of " + path + " timed out after " + timeout + " ms";
+        if (local != null && localInvocation) {
+            dispatch.expiry = TimingWheel.getDefault().schedule(() -> dispatch.fail(new AskTimeoutException(message)),
+                    timeout, TimeUnit.MILLISECONDS);
+            local.execute(arguments, sequential, (i, value, error) -> {
+                dispatch.statistics.reported(local.getPending(), local.getServiceTime());
+                dispatch.complete(i, value, error);
             });
+            return;
+        }
+
+        long id = batchIds.incrementAndGet();
+        dispatch.onDone = () -> dispatches.remove(id);
+        dispatches.put(id, dispatch);
+        dispatch.expiry = TimingWheel.getDefault().schedule(() -> {
+            dispatches.remove(id);
+            dispatch.fail(new AskTimeoutException(message));
+        }, timeout, TimeUnit.MILLISECONDS);
+        r.actors[index].tell(new Events.BatchInvocation(id, path, arguments, sequential), batchReceiver);
+    }
+
+    // called by BatchReceiverActor.  Callbacks of the stages run in the callbacks bulkhead, not in the actor, unless
+    // it is full, in which case the actor runs them itself and so stops taking responses until it catches up.
+    void onBatchResponse(Events.BatchResponse response) {
+        Dispatch dispatch = dispatches.get(response.id());
+        if (dispatch == null) // timed out
+            return;
+        dispatch.statistics.reported(response.getPending(), response.getServiceTime());
+        Runnable task = () -> {
+            int[] indices = response.indices();
+            Throwable[] failures = response.failures();
+            for (int i = 0; i < indices.length; i++)
+                dispatch.complete(indices[i], response.values()[i], failures == null ? null : failures[i]);
         };
+        try {
+            callbacks.execute(task, 0, Logger::suppress);
+        } catch (RejectedExecutionException ex) {
+            Logger.suppress(ex);
+            task.run();
+        }
     }
 
     public <T> Async<T> async(String qualifier, Class<T> interfaceClass) {
@@ -209,4 +594,125 @@ public class Registry {
     public <T> Async<T> async(String qualifier, Class<T> interfaceClass, long timeout) {
         return new AsyncImpl<>(this, qualifier, interfaceClass, timeout);
     }
+
+    // the invocations of a batch that have not completed yet.
+    static class Dispatch {
+        final RouteeStatistics statistics;
+        final CompletableFuture<Object>[] futures;
+        final long start;
+        final AtomicInteger remaining;
+        final AtomicIntegerArray claimed;
+        volatile TimingWheel.Timeout expiry;
+        volatile Runnable onDone;
+
+        Dispatch(RouteeStatistics statistics, CompletableFuture<Object>[] futures) {
+            this.statistics = statistics;
+            this.futures = futures;
+            this.remaining = new AtomicInteger(futures.length);
+            this.claimed = new AtomicIntegerArray(futures.length);
+            this.start = statistics.begin(futures.length);
+        }
+
+        // the dispatch is cleaned up before the last future completes, so whoever waits on it sees it gone.
+        void complete(int index, Object value, Throwable error) {
+            if (!claimed.compareAndSet(index, 0, 1)) // already timed out
+                return;
+            statistics.end(start, error != null);
+            if (remaining.decrementAndGet() == 0) {
+                if (expiry != null)
+                    expiry.cancel();
+                Runnable done = onDone;
+                if (done != null)
+                    done.run();
+            }
+            if (error == null)
+                futures[index].complete(value);
+            else
+                futures[index].completeExceptionally(error);
+        }
+
+        void fail(Throwable error) {
+            for (int i = 0; i < futures.length; i++)
+                complete(i, null, error);
+        }
+    }
+
+    // collects the calls route() makes to a path with the same timeout until the batch is full or the window ends.
+    class MicroBatcher {
+        private final String path;
+        private final long timeout;
+        private InvocationBatch current;
+
+        MicroBatcher(String path, long timeout) {
+            this.path = path;
+            this.timeout = timeout;
+        }
+
+        CompletionStage add(Object[] arguments) {
+            InvocationBatch full = null;
+            CompletionStage stage;
+            synchronized (this) {
+                if (current == null) {
+                    InvocationBatch batch = new InvocationBatch(Registry.this, path, timeout);
+                    current = batch;
+                    TimingWheel.getDefault().schedule(() -> flush(batch), batchWindow, TimeUnit.MILLISECONDS);
+                }
+                stage = current.add(arguments);
+                if (current.size() >= batchSize) {
+                    full = current;
+                    current = null;
+                }
+            }
+            if (full != null)
+                full.send();
+            return stage;
+        }
+
+        void flush() {
+            InvocationBatch batch;
+            synchronized (this) {
+                batch = current;
+                current = null;
+            }
+            if (batch != null)
+                batch.send();
+        }
+
+        // called when the window of batch ends; it may have been sent already because it became full.
+        private void flush(InvocationBatch batch) {
+            synchronized (this) {
+                if (current != batch)
+                    return;
+                current = null;
+            }
+            batch.send();
+        }
+    }
+
+    // an immutable snapshot of the routees of a path, replaced as a whole by updateRoutees.
+    static class Routees {
+        final RoutingPolicy policy;
+        final ActorRef[] actors;
+        final RegistryEntry[] locals;
+        final RouteeStatistics[] statistics;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        Routees(RoutingPolicy policy, ActorRef[] actors, RegistryEntry[] locals, RouteeStatistics[] statistics) {
+            this.policy = policy;
+            this.actors = actors;
+            this.locals = locals;
+            this.statistics = statistics;
+        }
+
+        int select() {
+            return policy.select(statistics, counter.getAndIncrement());
+        }
+
+        RouteeStatistics statistics(ActorRef actor) {
+            for (int i = 0; i < actors.length; i++)
+                if (actors[i].equals(actor))
+                    return statistics[i];
+            return null;
+        }
+    }
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.network.cluster;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * The provider side of a registration.  Invocations run in the bulkhead of the path.  The entry counts the
+ * invocations that have been accepted but not yet finished and keeps a moving average of the time spent in the
+ * function; both are sent back to callers with every response so that they can route around busy or slow entries.
+ */
+class RegistryEntry {
+    private static final double NANOS_PER_MILLI = 1000_000d;
+    private final Events.Registration registration;
+    private final Bulkhead bulkhead;
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile double serviceTime;
+
+    RegistryEntry(Events.Registration registration, Bulkhead bulkhead) {
+        this.registration = registration;
+        this.bulkhead = bulkhead;
+    }
+
+    Events.Registration getRegistration() {
+        return registration;
+    }
+
+    Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    int getPending() {
+        return pending.get();
+    }
+
+    double getServiceTime() {
+        return serviceTime;
+    }
+
+    /**
+     * Runs the function in the bulkhead.  The callback receives either the return value or the failure, which is
+     * a RejectedExecutionException when the bulkhead is full and a TimeoutException when the invocation waited
+     * longer than the registration's timeout.
+     */
+    void execute(Object[] arguments, BiConsumer<Object, Throwable> callback) {
+        pending.incrementAndGet();
+        try {
+            bulkhead.execute(() -> {
+                Object value;
+                try {
+                    value = invoke(arguments);
+                } catch (RuntimeException ex) {
+                    callback.accept(null, cause(ex));
+                    return;
+                }
+                callback.accept(value, null);
+            }, registration.timeout(), error -> {
+                pending.decrementAndGet();
+                callback.accept(null, error);
+            });
+        } catch (RejectedExecutionException ex) {
+            pending.decrementAndGet();
+            callback.accept(null, ex);
+        }
+    }
+
+    /**
+     * Runs the invocations of a batch.  In parallel mode each invocation is submitted to the bulkhead on its own;
+     * in sequential mode they run one after another in a single slot of the bulkhead.  The callback is called once
+     * per invocation, as soon as it completes.
+     */
+    void execute(Object[][] arguments, boolean sequential, BatchCallback callback) {
+        if (!sequential) {
+            for (int i = 0; i < arguments.length; i++) {
+                final int index = i;
+                execute(arguments[i], (value, error) -> callback.accept(index, value, error));
+            }
+            return;
+        }
+
+        pending.addAndGet(arguments.length);
+        try {
+            bulkhead.execute(() -> {
+                for (int i = 0; i < arguments.length; i++) {
+                    Object value;
+                    try {
+                        value = invoke(arguments[i]);
+                    } catch (RuntimeException ex) {
+                        callback.accept(i, null, cause(ex));
+                        continue;
+                    }
+                    callback.accept(i, value, null);
+                }
+            }, registration.timeout(), error -> fail(arguments.length, error, callback));
+        } catch (RejectedExecutionException ex) {
+            fail(arguments.length, ex, callback);
+        }
+    }
+
+    private void fail(int count, Throwable error, BatchCallback callback) {
+        pending.addAndGet(-count);
+        for (int i = 0; i < count; i++)
+            callback.accept(i, null, error);
+    }
+
+    private Object invoke(Object[] arguments) {
+        long start = System.nanoTime();
+        try {
+            return registration.function().apply(arguments);
+        } finally {
+            serviceTime = RouteeStatistics.ewma(serviceTime, (System.nanoTime() - start) / NANOS_PER_MILLI);
+            pending.decrementAndGet();
+        }
+    }
+
+    private static Throwable cause(RuntimeException ex) {
+        Throwable throwable = ex.getCause();
+        return throwable == null ? ex : throwable;
+    }
+
+    Events.Response response(Object value) {
+        return new Events.Response(value, pending.get(), serviceTime);
+    }
+
+    @FunctionalInterface
+    interface BatchCallback {
+        void accept(int index, Object value, Throwable error);
+    }
+}
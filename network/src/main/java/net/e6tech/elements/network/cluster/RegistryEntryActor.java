@@ -25,7 +25,12 @@ import akka.cluster.Member;
 import akka.cluster.MemberStatus;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
-import akka.pattern.Patterns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by futeh.
@@ -43,16 +48,20 @@ class RegistryEntryActor extends AbstractActor {
     LoggingAdapter log = Logging.getLogger(getContext().system(), this);
     Cluster cluster = Cluster.get(getContext().system());
     Events.Registration registration;
-    ActorRef workPool;
+    RegistryEntry entry;
+    String localKey;
 
-    public RegistryEntryActor(Events.Registration registration, ActorRef workPool) {
+    public RegistryEntryActor(Events.Registration registration, Bulkhead bulkhead) {
         this.registration = registration;
-        this.workPool = workPool;
+        this.entry = new RegistryEntry(registration, bulkhead);
     }
 
     //subscribe to cluster changes
     @Override
     public void preStart() {
+        // let callers in this JVM invoke the function directly, must happen before the announcement.
+        localKey = Registry.entryKey(getSelf(), cluster.selfAddress());
+        Registry.addLocalEntry(localKey, entry);
         cluster.subscribe(getSelf(), ClusterEvent.MemberEvent.class, ClusterEvent.UnreachableMember.class);
         // register within its own cluster.
         getContext().actorSelection(getSelf().path().root().address() + "/user/" + Registry.getPath())
@@ -62,6 +71,7 @@ class RegistryEntryActor extends AbstractActor {
     //re-subscribe when restart
     @Override
     public void postStop() {
+        Registry.removeLocalEntry(localKey);
         cluster.unsubscribe(getSelf());
     }
 
@@ -79,26 +89,68 @@ class RegistryEntryActor extends AbstractActor {
                 .match(Events.Invocation.class, message -> {
                     final ActorRef sender = getSender();
                     final ActorRef self = getSelf();
-                    try {
-                        if (workPool != null && registration.timeout() > 0) {
-                            Patterns.ask(workPool, (Runnable) () -> {
-                                Object ret = registration.function().apply(message.arguments());
-                                sender.tell(new Events.Response(ret), self);
-                            }, registration.timeout());
-                        } else {
-                            Registry.getThreadPool().execute(() -> {
-                                Object ret = registration.function().apply(message.arguments());
-                                sender.tell(new Events.Response(ret), self);
-                            });
-                        }
-                    } catch (RuntimeException ex) {
-                        Throwable throwable = ex.getCause();
-                        if (throwable == null) throwable = ex;
-                        sender.tell(new Status.Failure(throwable), self);
-                    }
+                    entry.execute(message.arguments(), (value, error) -> {
+                        if (error == null)
+                            sender.tell(entry.response(value), self);
+                        else
+                            sender.tell(new Status.Failure(error), self);
+                    });
+        }).match(Events.BatchInvocation.class, message -> {
+                    BatchReplier replier = new BatchReplier(message.id(), getSender(), getSelf());
+                    entry.execute(message.arguments(), message.sequential(), replier::accept);
         }).build();
     }
 
+    /*
+     * Sends the results of a batch back as they complete.  Whichever thread finds no send in progress sends
+     * everything collected so far, so results that complete together share a message.
+     */
+    private class BatchReplier {
+        private final long id;
+        private final ActorRef sender;
+        private final ActorRef self;
+        private final Queue<Object[]> results = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        BatchReplier(long id, ActorRef sender, ActorRef self) {
+            this.id = id;
+            this.sender = sender;
+            this.self = self;
+        }
+
+        void accept(int index, Object value, Throwable error) {
+            results.add(new Object[] {index, value, error});
+            while (!results.isEmpty() && sending.compareAndSet(false, true)) {
+                try {
+                    send();
+                } finally {
+                    sending.set(false);
+                }
+            }
+        }
+
+        private void send() {
+            List<Object[]> list = new ArrayList<>();
+            Object[] result;
+            while ((result = results.poll()) != null)
+                list.add(result);
+            int[] indices = new int[list.size()];
+            Object[] values = new Object[list.size()];
+            Throwable[] failures = null;
+            for (int i = 0; i < indices.length; i++) {
+                result = list.get(i);
+                indices[i] = (Integer) result[0];
+                values[i] = result[1];
+                if (result[2] != null) {
+                    if (failures == null)
+                        failures = new Throwable[indices.length];
+                    failures[i] = (Throwable) result[2];
+                }
+            }
+            sender.tell(new Events.BatchResponse(id, indices, values, failures, entry.getPending(), entry.getServiceTime()), self);
+        }
+    }
+
     void register(Member member) {
         getContext().actorSelection(member.address() + "/user/" + Registry.getPath())
                 .tell(new Events.Announcement(registration), getSelf());
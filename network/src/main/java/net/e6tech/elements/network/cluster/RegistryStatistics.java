@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.network.cluster;
+
+import java.util.*;
+
+/**
+ * Routing metrics of a Registry, registered as net.e6tech:type=Registry,name=&lt;cluster address&gt; when the
+ * registry starts.  Routing policies are listed by path and the routees of every path with the statistics
+ * that drive the policies.  Bulkheads list the limits, queue wait and execution time of the paths provided by
+ * this node.
+ */
+public class RegistryStatistics implements RegistryStatisticsMXBean {
+    private final Registry registry;
+
+    RegistryStatistics(Registry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public String getDefaultRoutingPolicy() {
+        return registry.getRoutingPolicy().name();
+    }
+
+    @Override
+    public Map<String, String> getRoutingPolicies() {
+        Map<String, String> map = new TreeMap<>();
+        for (Map.Entry<String, Registry.Routees> entry : registry.routees.entrySet())
+            map.put(entry.getKey(), entry.getValue().policy.name());
+        return map;
+    }
+
+    @Override
+    public List<RouteeStatistics> getRoutees() {
+        List<RouteeStatistics> list = new ArrayList<>();
+        for (Registry.Routees routees : registry.routees.values())
+            list.addAll(Arrays.asList(routees.statistics));
+        list.sort(Comparator.comparing(RouteeStatistics::getPath).thenComparing(RouteeStatistics::getRoutee));
+        return list;
+    }
+
+    @Override
+    public List<Bulkhead> getBulkheads() {
+        List<Bulkhead> list = new ArrayList<>(registry.getBulkheads());
+        list.sort(Comparator.comparing(Bulkhead::getPath));
+        return list;
+    }
+
+    public List<RouteeStatistics> getRoutees(String path) {
+        Registry.Routees routees = registry.routees.get(path);
+        return routees == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(routees.statistics));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.network.cluster;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What a caller knows about one routee of a path.  Outstanding requests and latencies, in milliseconds, are
+ * measured by the caller from the call to its completion.  Pending and service time are reported by the
+ * routee's RegistryEntryActor with every response.
+ */
+public class RouteeStatistics {
+    static final double ALPHA = 0.2d; // weight of a new sample in the moving averages
+    private static final double NANOS_PER_MILLI = 1000_000d;
+
+    private final String path;
+    private final String routee;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong latency = new AtomicLong(Double.doubleToRawLongBits(0d));
+    private final AtomicLong failureRate = new AtomicLong(Double.doubleToRawLongBits(0d));
+    private volatile int pending;
+    private volatile double serviceTime;
+
+    public RouteeStatistics(String path, String routee) {
+        this.path = path;
+        this.routee = routee;
+    }
+
+    static double ewma(double average, double sample) {
+        return average == 0d ? sample : average + ALPHA * (sample - average);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getRoutee() {
+        return routee;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    public long getInvocations() {
+        return invocations.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return exponentially weighted moving average of the round trip latency in milliseconds, 0 if not measured.
+     */
+    public double getAverageLatency() {
+        return Double.longBitsToDouble(latency.get());
+    }
+
+    /**
+     * @return exponentially weighted moving average of the fraction of invocations that failed or timed out.
+     */
+    public double getFailureRate() {
+        return Double.longBitsToDouble(failureRate.get());
+    }
+
+    /**
+     * @return number of invocations queued or running at the routee as of its last response.
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * @return the routee's moving average of the time, in milliseconds, spent running the function.
+     */
+    public double getServiceTime() {
+        return serviceTime;
+    }
+
+    public int getLoad() {
+        return Math.max(outstanding.get(), pending);
+    }
+
+    long begin() {
+        return begin(1);
+    }
+
+    // starts count invocations sent together; each one is ended on its own.
+    long begin(int count) {
+        outstanding.addAndGet(count);
+        return System.nanoTime();
+    }
+
+    void end(long start, boolean failed) {
+        outstanding.decrementAndGet();
+        invocations.increment();
+        if (failed)
+            failures.increment();
+        double sample = (System.nanoTime() - start) / NANOS_PER_MILLI;
+        long prev;
+        long next;
+        do {
+            prev = latency.get();
+            double average = Double.longBitsToDouble(prev);
+            // a fast failure, e.g. a rejection, must not make the routee look fast.
+            if (failed && sample < average)
+                break;
+            next = Double.doubleToRawLongBits(ewma(average, sample));
+        } while (!latency.compareAndSet(prev, next));
+        do {
+            prev = failureRate.get();
+            double rate = Double.longBitsToDouble(prev);
+            next = Double.doubleToRawLongBits(rate + ALPHA * ((failed ? 1d : 0d) - rate));
+        } while (!failureRate.compareAndSet(prev, next));
+    }
+
+    void reported(int pending, double serviceTime) {
+        this.pending = pending;
+        this.serviceTime = serviceTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s outstanding=%d pending=%d latency=%.3fms service=%.3fms invocations=%d failures=%d failureRate=%.2f",
+                routee, getOutstanding(), pending, getAverageLatency(), serviceTime, getInvocations(), getFailures(), getFailureRate());
+    }
+}
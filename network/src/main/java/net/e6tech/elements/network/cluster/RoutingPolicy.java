@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.network.cluster;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How a caller picks one of the routees of a path.  The policy is chosen by the provider when it registers the
+ * path and travels with the announcement, so every caller applies the same policy.
+ *
+ * The load of a routee is the larger of the caller's own outstanding requests and the queue depth the routee
+ * reported in its last response; the latter accounts for calls made by other nodes.  The cost of a routee is its
+ * EWMA latency multiplied by its load plus one, so that a routee that has just become busy is penalized before
+ * its latency catches up.  The cost is further multiplied by 1 + FAILURE_PENALTY times the routee's EWMA failure
+ * rate, so that a routee that fails fast, e.g. because its bulkhead rejects calls, does not attract more traffic.
+ */
+public enum RoutingPolicy {
+    ROUND_ROBIN {
+        @Override
+        int select(RouteeStatistics[] routees, int counter) {
+            return index(counter, routees.length);
+        }
+    },
+
+    LEAST_OUTSTANDING {
+        @Override
+        int select(RouteeStatistics[] routees, int counter) {
+            int start = index(counter, routees.length); // rotate so that ties are spread out
+            int selected = start;
+            int min = Integer.MAX_VALUE;
+            for (int i = 0; i < routees.length; i++) {
+                int index = (start + i) % routees.length;
+                int load = routees[index].getLoad();
+                if (load < min) {
+                    min = load;
+                    selected = index;
+                }
+            }
+            return selected;
+        }
+    },
+
+    /**
+     * Picks at random with a probability inversely proportional to the cost of each routee.
+     */
+    EWMA_LATENCY {
+        @Override
+        int select(RouteeStatistics[] routees, int counter) {
+            double floor = latencyFloor(routees);
+            double[] weights = new double[routees.length];
+            double total = 0;
+            for (int i = 0; i < routees.length; i++) {
+                weights[i] = 1d / cost(routees[i], floor);
+                total += weights[i];
+            }
+            double pick = ThreadLocalRandom.current().nextDouble(total);
+            for (int i = 0; i < routees.length; i++) {
+                pick -= weights[i];
+                if (pick < 0)
+                    return i;
+            }
+            return routees.length - 1;
+        }
+    },
+
+    /**
+     * Picks two routees at random and takes the cheaper one.
+     */
+    POWER_OF_TWO_CHOICES {
+        @Override
+        int select(RouteeStatistics[] routees, int counter) {
+            if (routees.length == 1)
+                return 0;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(routees.length);
+            int second = random.nextInt(routees.length - 1);
+            if (second >= first)
+                second++;
+            double floor = latencyFloor(routees);
+            return cost(routees[first], floor) <= cost(routees[second], floor) ? first : second;
+        }
+    };
+
+    static final double FAILURE_PENALTY = 10d;
+
+    abstract int select(RouteeStatistics[] routees, int counter);
+
+    static int index(int counter, int length) {
+        return (counter & Integer.MAX_VALUE) % length;
+    }
+
+    // routees without a measurement are assumed to be as fast as the fastest measured one so that they get tried.
+    static double latencyFloor(RouteeStatistics[] routees) {
+        double floor = Double.MAX_VALUE;
+        for (RouteeStatistics routee : routees) {
+            double latency = routee.getAverageLatency();
+            if (latency > 0 && latency < floor)
+                floor = latency;
+        }
+        return floor == Double.MAX_VALUE ? 1d : floor;
+    }
+
+    static double cost(RouteeStatistics routee, double floor) {
+        double latency = routee.getAverageLatency();
+        if (latency <= 0)
+            latency = floor;
+        return latency * (routee.getLoad() + 1) * (1d + FAILURE_PENALTY * routee.getFailureRate());
+    }
+}
@@ -44,6 +44,10 @@ class SubscriberActor extends AbstractActor {
     public AbstractActor.Receive createReceive() {
         return receiveBuilder()
                 .match(Events.Publish.class, publish -> getContext().dispatcher().execute(() -> subscriber.receive(new Notice(publish.topic, (Serializable) publish.message))))
+                .match(Events.PublishBatch.class, batch -> getContext().dispatcher().execute(() -> {
+                    for (Object message : batch.messages)
+                        subscriber.receive(new Notice(batch.topic, (Serializable) message));
+                }))
                 .match(DistributedPubSubMediator.SubscribeAck.class, msg ->
                         log.info("subscribing"))
                 .build();
@@ -0,0 +1,732 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.network.cluster.codec;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import net.e6tech.elements.common.serialization.ObjectMapperFactory;
+import net.e6tech.elements.common.util.SystemException;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compact, self-describing binary encoding.  Every value starts with a one byte tag.  Integral numbers are
+ * zig-zag varints, strings are UTF-8 with a varint length, and collections, maps and arrays carry their size
+ * followed by their elements.  Lists decode to ArrayList, sets to LinkedHashSet and maps to LinkedHashMap.
+ *
+ * Any other object is treated as a bean: Jackson, using fields rather than accessors, turns it into a stream of
+ * tokens that is written in the same binary form, so nothing is rendered as text.  As with JSON, properties are
+ * typed by their declared types, so a property declared as Object, an interface or an abstract class would come
+ * back as a map or not at all.  Serializable classes with such properties, anywhere in their object graph, and
+ * classes that Jackson cannot instantiate, i.e. ones without a no-arg or JsonCreator constructor, fall back to
+ * Java serialization.
+ *
+ * Class and property names are written once per message and referred to by index afterwards.
+ */
+@SuppressWarnings({"squid:S1192", "squid:S3776", "unchecked"})
+public class BinaryCodec implements RegistryCodec {
+    static final int NULL = 0;
+    static final int TRUE = 1;
+    static final int FALSE = 2;
+    static final int INT = 3;
+    static final int LONG = 4;
+    static final int SHORT = 5;
+    static final int BYTE = 6;
+    static final int CHAR = 7;
+    static final int FLOAT = 8;
+    static final int DOUBLE = 9;
+    static final int STRING = 10;
+    static final int BYTES = 11;
+    static final int BIG_INTEGER = 12;
+    static final int BIG_DECIMAL = 13;
+    static final int DATE = 14;
+    static final int UUID_VALUE = 15;
+    static final int ENUM = 16;
+    static final int LIST = 17;
+    static final int SET = 18;
+    static final int MAP = 19;
+    static final int OBJECT_ARRAY = 20;
+    static final int INT_ARRAY = 21;
+    static final int LONG_ARRAY = 22;
+    static final int DOUBLE_ARRAY = 23;
+    static final int BEAN = 24;
+    static final int SERIALIZED = 25;
+
+    // tokens of a bean
+    static final int T_END = 0;
+    static final int T_START_OBJECT = 1;
+    static final int T_END_OBJECT = 2;
+    static final int T_START_ARRAY = 3;
+    static final int T_END_ARRAY = 4;
+    static final int T_FIELD = 5;
+    static final int T_STRING = 6;
+    static final int T_LONG = 7;
+    static final int T_BIG_INTEGER = 8;
+    static final int T_DOUBLE = 9;
+    static final int T_BIG_DECIMAL = 10;
+    static final int T_TRUE = 11;
+    static final int T_FALSE = 12;
+    static final int T_NULL = 13;
+    static final int T_EMBEDDED = 14;
+
+    private final ClassLoader classLoader;
+    private final ObjectMapper mapper;
+    private final Map<Class, Boolean> beans = new ConcurrentHashMap<>(); // false means Java serialization
+    private final Map<String, Class> classes = new ConcurrentHashMap<>();
+
+    public BinaryCodec() {
+        this(BinaryCodec.class.getClassLoader());
+    }
+
+    public BinaryCodec(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        mapper = ObjectMapperFactory.newInstance();
+        mapper.disable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+        mapper.setSerializationInclusion(JsonInclude.Include.ALWAYS);
+        mapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE);
+        mapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        mapper.setVisibility(PropertyAccessor.CREATOR, JsonAutoDetect.Visibility.ANY);
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        Output out = new Output();
+        try {
+            write(out, value);
+        } catch (IOException e) {
+            throw new SystemException(e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] bytes) {
+        Input in = new Input(bytes);
+        try {
+            return read(in);
+        } catch (IOException e) {
+            throw new SystemException(e);
+        }
+    }
+
+    void write(Output out, Object value) throws IOException {
+        if (value == null) {
+            out.write(NULL);
+        } else if (value instanceof String) {
+            out.write(STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Integer) {
+            out.write(INT);
+            out.writeVarLong((Integer) value);
+        } else if (value instanceof Long) {
+            out.write(LONG);
+            out.writeVarLong((Long) value);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Double) {
+            out.write(DOUBLE);
+            out.writeFixedLong(Double.doubleToRawLongBits((Double) value));
+        } else if (value instanceof Collection) {
+            writeCollection(out, (Collection) value);
+        } else if (value instanceof Map) {
+            out.write(MAP);
+            Map<?, ?> map = (Map) value;
+            out.writeVarInt(map.size());
+            for (Map.Entry entry : map.entrySet()) {
+                write(out, entry.getKey());
+                write(out, entry.getValue());
+            }
+        } else if (value.getClass().isArray()) {
+            writeArray(out, value);
+        } else if (!writeScalar(out, value)) {
+            writeObject(out, value);
+        }
+    }
+
+    private boolean writeScalar(Output out, Object value) throws IOException {
+        if (value instanceof Short) {
+            out.write(SHORT);
+            out.writeVarLong((Short) value);
+        } else if (value instanceof Byte) {
+            out.write(BYTE);
+            out.write((Byte) value);
+        } else if (value instanceof Character) {
+            out.write(CHAR);
+            out.writeVarInt((Character) value);
+        } else if (value instanceof Float) {
+            out.write(FLOAT);
+            out.writeFixedInt(Float.floatToRawIntBits((Float) value));
+        } else if (value instanceof BigInteger) {
+            out.write(BIG_INTEGER);
+            out.writeBytes(((BigInteger) value).toByteArray());
+        } else if (value instanceof BigDecimal) {
+            out.write(BIG_DECIMAL);
+            BigDecimal decimal = (BigDecimal) value;
+            out.writeVarLong(decimal.scale());
+            out.writeBytes(decimal.unscaledValue().toByteArray());
+        } else if (value.getClass() == Date.class) {
+            out.write(DATE);
+            out.writeVarLong(((Date) value).getTime());
+        } else if (value instanceof UUID) {
+            out.write(UUID_VALUE);
+            out.writeFixedLong(((UUID) value).getMostSignificantBits());
+            out.writeFixedLong(((UUID) value).getLeastSignificantBits());
+        } else if (value instanceof Enum) {
+            out.write(ENUM);
+            out.writeClass(((Enum) value).getDeclaringClass());
+            out.writeString(((Enum) value).name());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private void writeCollection(Output out, Collection collection) throws IOException {
+        out.write(collection instanceof Set ? SET : LIST);
+        out.writeVarInt(collection.size());
+        if (collection instanceof RandomAccess && collection instanceof List) {
+            List list = (List) collection;
+            for (int i = 0; i < list.size(); i++)
+                write(out, list.get(i));
+        } else {
+            for (Object element : collection)
+                write(out, element);
+        }
+    }
+
+    private void writeArray(Output out, Object value) throws IOException {
+        if (value instanceof byte[]) {
+            out.write(BYTES);
+            out.writeBytes((byte[]) value);
+        } else if (value instanceof int[]) {
+            out.write(INT_ARRAY);
+            int[] array = (int[]) value;
+            out.writeVarInt(array.length);
+            for (int element : array)
+                out.writeVarLong(element);
+        } else if (value instanceof long[]) {
+            out.write(LONG_ARRAY);
+            long[] array = (long[]) value;
+            out.writeVarInt(array.length);
+            for (long element : array)
+                out.writeVarLong(element);
+        } else if (value instanceof double[]) {
+            out.write(DOUBLE_ARRAY);
+            double[] array = (double[]) value;
+            out.writeVarInt(array.length);
+            for (double element : array)
+                out.writeFixedLong(Double.doubleToRawLongBits(element));
+        } else if (value instanceof Object[]) {
+            out.write(OBJECT_ARRAY);
+            Object[] array = (Object[]) value;
+            out.writeClass(array.getClass().getComponentType());
+            out.writeVarInt(array.length);
+            for (Object element : array)
+                write(out, element);
+        } else {
+            writeSerialized(out, value); // other primitive arrays
+        }
+    }
+
+    private void writeObject(Output out, Object value) throws IOException {
+        Class cls = value.getClass();
+        if (!isBean(cls)) {
+            writeSerialized(out, value);
+            return;
+        }
+        out.write(BEAN);
+        out.writeClass(cls);
+        TokenBuffer buffer = new TokenBuffer(mapper, false);
+        mapper.writeValue(buffer, value);
+        try (JsonParser parser = buffer.asParser()) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null)
+                writeToken(out, parser, token);
+        }
+        out.write(T_END);
+    }
+
+    private void writeToken(Output out, JsonParser parser, JsonToken token) throws IOException {
+        switch (token) {
+            case START_OBJECT: out.write(T_START_OBJECT); break;
+            case END_OBJECT: out.write(T_END_OBJECT); break;
+            case START_ARRAY: out.write(T_START_ARRAY); break;
+            case END_ARRAY: out.write(T_END_ARRAY); break;
+            case FIELD_NAME:
+                out.write(T_FIELD);
+                out.writeName(parser.getCurrentName());
+                break;
+            case VALUE_STRING:
+                out.write(T_STRING);
+                out.writeString(parser.getText());
+                break;
+            case VALUE_NUMBER_INT:
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                    out.write(T_BIG_INTEGER);
+                    out.writeBytes(parser.getBigIntegerValue().toByteArray());
+                } else {
+                    out.write(T_LONG);
+                    out.writeVarLong(parser.getLongValue());
+                }
+                break;
+            case VALUE_NUMBER_FLOAT:
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_DECIMAL) {
+                    out.write(T_BIG_DECIMAL);
+                    BigDecimal decimal = parser.getDecimalValue();
+                    out.writeVarLong(decimal.scale());
+                    out.writeBytes(decimal.unscaledValue().toByteArray());
+                } else {
+                    out.write(T_DOUBLE);
+                    out.writeFixedLong(Double.doubleToRawLongBits(parser.getDoubleValue()));
+                }
+                break;
+            case VALUE_TRUE: out.write(T_TRUE); break;
+            case VALUE_FALSE: out.write(T_FALSE); break;
+            case VALUE_NULL: out.write(T_NULL); break;
+            case VALUE_EMBEDDED_OBJECT:
+                out.write(T_EMBEDDED);
+                write(out, parser.getEmbeddedObject());
+                break;
+            default:
+                throw new SystemException("Unexpected token " + token);
+        }
+    }
+
+    private void writeSerialized(Output out, Object value) throws IOException {
+        if (!(value instanceof Serializable))
+            throw new NotSerializableException(value.getClass().getName());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream stream = new ObjectOutputStream(bytes)) {
+            stream.writeObject(value);
+        }
+        out.write(SERIALIZED);
+        out.writeBytes(bytes.toByteArray());
+    }
+
+    // Jackson needs a no-arg constructor or a JsonCreator, and cannot create non-static inner classes.
+    // Exceptions would lose their cause and stack trace as beans.
+    boolean isBean(Class cls) {
+        Boolean bean = beans.get(cls);
+        if (bean == null) {
+            // not computeIfAbsent: checking the properties looks at other classes
+            bean = checkBean(cls);
+            beans.put(cls, bean);
+        }
+        return bean;
+    }
+
+    private boolean checkBean(Class c) {
+        boolean serializable = Serializable.class.isAssignableFrom(c);
+        if (Throwable.class.isAssignableFrom(c))
+            return false;
+        if (c.isMemberClass() && !Modifier.isStatic(c.getModifiers()))
+            return !serializable;
+        for (Constructor constructor : c.getDeclaredConstructors()) {
+            if (constructor.getParameterCount() == 0 || constructor.getAnnotation(JsonCreator.class) != null)
+                return !serializable || !polymorphic(c, new HashSet<>());
+        }
+        return !serializable;
+    }
+
+    /*
+     * True if a value of the type cannot be rebuilt from its declared type alone, e.g. Object, an interface,
+     * an abstract class, a raw collection or a bean that has a property of such a type.
+     */
+    private static boolean polymorphic(Type type, Set<Class> visited) {
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterized = (ParameterizedType) type;
+            Class raw = (Class) parameterized.getRawType();
+            if (!Collection.class.isAssignableFrom(raw) && !Map.class.isAssignableFrom(raw) && polymorphic(raw, visited))
+                return true;
+            for (Type argument : parameterized.getActualTypeArguments())
+                if (polymorphic(argument, visited))
+                    return true;
+            return false;
+        } else if (type instanceof GenericArrayType) {
+            return polymorphic(((GenericArrayType) type).getGenericComponentType(), visited);
+        } else if (!(type instanceof Class)) {
+            return true; // type variables and wildcards
+        }
+
+        Class cls = (Class) type;
+        if (cls.isArray())
+            return polymorphic(cls.getComponentType(), visited);
+        if (cls.isPrimitive() || cls.isEnum())
+            return false;
+        if (cls == Object.class || cls.isInterface() || Modifier.isAbstract(cls.getModifiers())
+                || Collection.class.isAssignableFrom(cls) || Map.class.isAssignableFrom(cls))
+            return true;
+        if (cls.getName().startsWith("java.") || !visited.add(cls))
+            return false;
+        for (Class c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()
+                        && polymorphic(field.getGenericType(), visited))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    Object read(Input in) throws IOException {
+        int tag = in.read();
+        switch (tag) {
+            case NULL: return null;
+            case TRUE: return Boolean.TRUE;
+            case FALSE: return Boolean.FALSE;
+            case INT: return (int) in.readVarLong();
+            case LONG: return in.readVarLong();
+            case SHORT: return (short) in.readVarLong();
+            case BYTE: return (byte) in.read();
+            case CHAR: return (char) in.readVarInt();
+            case FLOAT: return Float.intBitsToFloat(in.readFixedInt());
+            case DOUBLE: return Double.longBitsToDouble(in.readFixedLong());
+            case STRING: return in.readString();
+            case BYTES: return in.readBytes();
+            case BIG_INTEGER: return new BigInteger(in.readBytes());
+            case BIG_DECIMAL: {
+                int scale = (int) in.readVarLong();
+                return new BigDecimal(new BigInteger(in.readBytes()), scale);
+            }
+            case DATE: return new Date(in.readVarLong());
+            case UUID_VALUE: return new UUID(in.readFixedLong(), in.readFixedLong());
+            case ENUM: {
+                Class cls = in.readClass();
+                return Enum.valueOf(cls, in.readString());
+            }
+            case LIST:
+            case SET: {
+                int size = in.readVarInt();
+                Collection collection = (tag == LIST) ? new ArrayList<>(size) : new LinkedHashSet<>(capacity(size));
+                for (int i = 0; i < size; i++)
+                    collection.add(read(in));
+                return collection;
+            }
+            case MAP: {
+                int size = in.readVarInt();
+                Map map = new LinkedHashMap<>(capacity(size));
+                for (int i = 0; i < size; i++)
+                    map.put(read(in), read(in));
+                return map;
+            }
+            default:
+                return readOther(in, tag);
+        }
+    }
+
+    private Object readOther(Input in, int tag) throws IOException {
+        switch (tag) {
+            case OBJECT_ARRAY: {
+                Class component = in.readClass();
+                Object[] array = (Object[]) java.lang.reflect.Array.newInstance(component, in.readVarInt());
+                for (int i = 0; i < array.length; i++)
+                    array[i] = read(in);
+                return array;
+            }
+            case INT_ARRAY: {
+                int[] array = new int[in.readVarInt()];
+                for (int i = 0; i < array.length; i++)
+                    array[i] = (int) in.readVarLong();
+                return array;
+            }
+            case LONG_ARRAY: {
+                long[] array = new long[in.readVarInt()];
+                for (int i = 0; i < array.length; i++)
+                    array[i] = in.readVarLong();
+                return array;
+            }
+            case DOUBLE_ARRAY: {
+                double[] array = new double[in.readVarInt()];
+                for (int i = 0; i < array.length; i++)
+                    array[i] = Double.longBitsToDouble(in.readFixedLong());
+                return array;
+            }
+            case BEAN: return readBean(in);
+            case SERIALIZED: {
+                byte[] bytes = in.readBytes();
+                try (ObjectInputStream stream = new JavaSerializationCodec.ClassLoaderObjectInputStream(new ByteArrayInputStream(bytes), classLoader)) {
+                    return stream.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new SystemException(e);
+                }
+            }
+            default:
+                throw new StreamCorruptedException("Unknown tag " + tag);
+        }
+    }
+
+    private Object readBean(Input in) throws IOException {
+        Class cls = in.readClass();
+        TokenBuffer buffer = new TokenBuffer(mapper, false);
+        int token;
+        while ((token = in.read()) != T_END) {
+            switch (token) {
+                case T_START_OBJECT: buffer.writeStartObject(); break;
+                case T_END_OBJECT: buffer.writeEndObject(); break;
+                case T_START_ARRAY: buffer.writeStartArray(); break;
+                case T_END_ARRAY: buffer.writeEndArray(); break;
+                case T_FIELD: buffer.writeFieldName(in.readName()); break;
+                case T_STRING: buffer.writeString(in.readString()); break;
+                case T_LONG: buffer.writeNumber(in.readVarLong()); break;
+                case T_BIG_INTEGER: buffer.writeNumber(new BigInteger(in.readBytes())); break;
+                case T_DOUBLE: buffer.writeNumber(Double.longBitsToDouble(in.readFixedLong())); break;
+                case T_BIG_DECIMAL: {
+                    int scale = (int) in.readVarLong();
+                    buffer.writeNumber(new BigDecimal(new BigInteger(in.readBytes()), scale));
+                    break;
+                }
+                case T_TRUE: buffer.writeBoolean(true); break;
+                case T_FALSE: buffer.writeBoolean(false); break;
+                case T_NULL: buffer.writeNull(); break;
+                case T_EMBEDDED: buffer.writeEmbeddedObject(read(in)); break;
+                default: throw new StreamCorruptedException("Unknown token " + token);
+            }
+        }
+        try (JsonParser parser = buffer.asParser()) {
+            return mapper.readValue(parser, cls);
+        }
+    }
+
+    private static int capacity(int size) {
+        return size < 3 ? size + 1 : (int) (size / 0.75f + 1.0f);
+    }
+
+    Class loadClass(String name) {
+        return classes.computeIfAbsent(name, n -> {
+            try {
+                return Class.forName(n, false, classLoader);
+            } catch (ClassNotFoundException e) {
+                throw new SystemException(e);
+            }
+        });
+    }
+
+    /**
+     * A growable buffer.  Names of classes and bean properties are written in full the first time and as an index
+     * afterwards.
+     */
+    static class Output {
+        private byte[] buf = new byte[128];
+        private int count;
+        private Map<Object, Integer> names;
+
+        void write(int b) {
+            ensure(1);
+            buf[count++] = (byte) b;
+        }
+
+        void writeVarInt(int value) {
+            ensure(5);
+            int v = value;
+            while ((v & ~0x7F) != 0) {
+                buf[count++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[count++] = (byte) v;
+        }
+
+        // zig-zag so that small negative numbers stay small
+        void writeVarLong(long value) {
+            ensure(10);
+            long v = (value << 1) ^ (value >> 63);
+            while ((v & ~0x7FL) != 0) {
+                buf[count++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[count++] = (byte) v;
+        }
+
+        void writeFixedInt(int v) {
+            ensure(4);
+            buf[count++] = (byte) (v >>> 24);
+            buf[count++] = (byte) (v >>> 16);
+            buf[count++] = (byte) (v >>> 8);
+            buf[count++] = (byte) v;
+        }
+
+        void writeFixedLong(long v) {
+            writeFixedInt((int) (v >>> 32));
+            writeFixedInt((int) v);
+        }
+
+        void writeBytes(byte[] bytes) {
+            writeVarInt(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, count, bytes.length);
+            count += bytes.length;
+        }
+
+        void writeString(String str) {
+            int length = str.length();
+            ensure(length + 5);
+            int start = count;
+            writeVarInt(length);
+            for (int i = 0; i < length; i++) {
+                char ch = str.charAt(i);
+                if (ch >= 0x80) { // not ASCII, start over
+                    count = start;
+                    writeBytes(str.getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                buf[count++] = (byte) ch;
+            }
+        }
+
+        void writeName(String name) {
+            if (!writeReference(name))
+                writeString(name);
+        }
+
+        void writeClass(Class cls) {
+            if (!writeReference(cls))
+                writeString(cls.getName());
+        }
+
+        private boolean writeReference(Object key) {
+            if (names == null)
+                names = new HashMap<>();
+            Integer index = names.get(key);
+            if (index != null) {
+                writeVarInt(index + 1);
+                return true;
+            }
+            names.put(key, names.size());
+            writeVarInt(0);
+            return false;
+        }
+
+        private void ensure(int length) {
+            if (count + length > buf.length)
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + length));
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+    }
+
+    class Input {
+        private final byte[] buf;
+        private int pos;
+        private List<Object> names;
+
+        Input(byte[] buf) {
+            this.buf = buf;
+        }
+
+        int read() throws EOFException {
+            if (pos >= buf.length)
+                throw new EOFException();
+            return buf[pos++] & 0xFF;
+        }
+
+        int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = read();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new StreamCorruptedException("Malformed varint");
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return (value >>> 1) ^ -(value & 1);
+            }
+            throw new StreamCorruptedException("Malformed varlong");
+        }
+
+        int readFixedInt() throws IOException {
+            return (read() << 24) | (read() << 16) | (read() << 8) | read();
+        }
+
+        long readFixedLong() throws IOException {
+            return ((long) readFixedInt() << 32) | (readFixedInt() & 0xFFFFFFFFL);
+        }
+
+        private int readLength() throws IOException {
+            int length = readVarInt();
+            if (length < 0 || length > buf.length - pos)
+                throw new EOFException();
+            return length;
+        }
+
+        byte[] readBytes() throws IOException {
+            int length = readLength();
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + length);
+            pos += length;
+            return bytes;
+        }
+
+        String readString() throws IOException {
+            int length = readLength();
+            String str = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return str;
+        }
+
+        String readName() throws IOException {
+            int index = readVarInt();
+            if (index > 0)
+                return (String) reference(index);
+            String name = readString();
+            remember(name);
+            return name;
+        }
+
+        Class readClass() throws IOException {
+            int index = readVarInt();
+            if (index > 0)
+                return (Class) reference(index);
+            Class cls = loadClass(readString());
+            remember(cls);
+            return cls;
+        }
+
+        private Object reference(int index) throws IOException {
+            if (names == null || index > names.size())
+                throw new StreamCorruptedException("Unknown name reference " + index);
+            return names.get(index - 1);
+        }
+
+        private void remember(Object name) {
+            if (names == null)
+                names = new ArrayList<>();
+            names.add(name);
+        }
+    }
+}
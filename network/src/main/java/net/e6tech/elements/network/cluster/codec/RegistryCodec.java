@@ -0,0 +1,29 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.network.cluster.codec;
+
+/**
+ * Converts the payload of registry invocations and responses to bytes and back.  Implementations must be
+ * thread safe.  RegistrySerializer instantiates the class named by elements.cluster.registry-codec, using a
+ * constructor that takes a ClassLoader if there is one.
+ */
+public interface RegistryCodec {
+
+    byte[] encode(Object value);
+
+    Object decode(byte[] bytes);
+}
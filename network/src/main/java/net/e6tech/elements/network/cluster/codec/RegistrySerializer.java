@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.network.cluster.codec;
+
+import akka.actor.ExtendedActorSystem;
+import akka.serialization.JSerializer;
+import net.e6tech.elements.common.util.SystemException;
+import net.e6tech.elements.network.cluster.Events;
+
+import java.io.NotSerializableException;
+
+/**
+ * Akka serializer for Events.Invocation, Events.Response, Events.BatchInvocation and Events.BatchResponse, the
+ * messages Registry exchanges with remote entries.  The payload is converted by the RegistryCodec named by
+ * elements.cluster.registry-codec, BinaryCodec by default.
+ *
+ * The serializer is not bound by default; these messages keep whatever serializer the application binds, Java
+ * serialization unless configured otherwise.  To use it, add the following to application.conf:
+ * <pre>
+ * elements.cluster.registry-codec = "net.e6tech.elements.network.cluster.codec.BinaryCodec"
+ * akka.actor {
+ *   serializers {
+ *     elements-registry = "net.e6tech.elements.network.cluster.codec.RegistrySerializer"
+ *   }
+ *   serialization-bindings {
+ *     "net.e6tech.elements.network.cluster.Events$Invocation" = elements-registry
+ *     "net.e6tech.elements.network.cluster.Events$Response" = elements-registry
+ *     "net.e6tech.elements.network.cluster.Events$BatchInvocation" = elements-registry
+ *     "net.e6tech.elements.network.cluster.Events$BatchResponse" = elements-registry
+ *   }
+ * }
+ * </pre>
+ * BinaryCodec types bean properties by their declared types, see its notes on polymorphic fields.  All nodes of a
+ * cluster must use the same serializer and codec, so every node has to be configured before any of them switches.
+ */
+public class RegistrySerializer extends JSerializer {
+    public static final String CODEC = "elements.cluster.registry-codec";
+    private static final int IDENTIFIER = 20170601;
+    private static final Integer INVOCATION = 1;
+    private static final Integer RESPONSE = 2;
+    private static final Integer BATCH_INVOCATION = 3;
+    private static final Integer BATCH_RESPONSE = 4;
+
+    private final RegistryCodec codec;
+
+    public RegistrySerializer(ExtendedActorSystem system) {
+        this(createCodec(system));
+    }
+
+    public RegistrySerializer(RegistryCodec codec) {
+        this.codec = codec;
+    }
+
+    private static RegistryCodec createCodec(ExtendedActorSystem system) {
+        ClassLoader classLoader = system.dynamicAccess().classLoader();
+        String className = system.settings().config().hasPath(CODEC) ?
+                system.settings().config().getString(CODEC) : BinaryCodec.class.getName();
+        try {
+            Class<?> cls = Class.forName(className, true, classLoader);
+            try {
+                return (RegistryCodec) cls.getConstructor(ClassLoader.class).newInstance(classLoader);
+            } catch (NoSuchMethodException ex) {
+                return (RegistryCodec) cls.getDeclaredConstructor().newInstance();
+            }
+        } catch (Exception e) {
+            throw new SystemException("Cannot create registry codec " + className, e);
+        }
+    }
+
+    public RegistryCodec getCodec() {
+        return codec;
+    }
+
+    @Override
+    public int identifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    public boolean includeManifest() {
+        return false;
+    }
+
+    @Override
+    public byte[] toBinary(Object o) {
+        if (o instanceof Events.Invocation) {
+            Events.Invocation invocation = (Events.Invocation) o;
+            return codec.encode(new Object[] {INVOCATION, invocation.path(), invocation.arguments()});
+        } else if (o instanceof Events.Response) {
+            Events.Response response = (Events.Response) o;
+            return codec.encode(new Object[] {RESPONSE, response.getValue(), response.getPending(), response.getServiceTime()});
+        } else if (o instanceof Events.BatchInvocation) {
+            Events.BatchInvocation batch = (Events.BatchInvocation) o;
+            return codec.encode(new Object[] {BATCH_INVOCATION, batch.id(), batch.path(), batch.arguments(), batch.sequential()});
+        } else if (o instanceof Events.BatchResponse) {
+            Events.BatchResponse batch = (Events.BatchResponse) o;
+            return codec.encode(new Object[] {BATCH_RESPONSE, batch.id(), batch.indices(), batch.values(), batch.failures(),
+                    batch.getPending(), batch.getServiceTime()});
+        }
+        throw new SystemException(new NotSerializableException(o.getClass().getName()));
+    }
+
+    @Override
+    public Object fromBinaryJava(byte[] bytes, Class<?> manifest) {
+        Object[] message = (Object[]) codec.decode(bytes);
+        if (INVOCATION.equals(message[0]))
+            return new Events.Invocation((String) message[1], (Object[]) message[2]);
+        else if (RESPONSE.equals(message[0]))
+            return new Events.Response(message[1], (Integer) message[2], (Double) message[3]);
+        else if (BATCH_INVOCATION.equals(message[0]))
+            return new Events.BatchInvocation((Long) message[1], (String) message[2], (Object[][]) message[3], (Boolean) message[4]);
+        else if (BATCH_RESPONSE.equals(message[0]))
+            return new Events.BatchResponse((Long) message[1], (int[]) message[2], (Object[]) message[3], (Throwable[]) message[4],
+                    (Integer) message[5], (Double) message[6]);
+        throw new SystemException("Unknown registry message type " + message[0]);
+    }
+}
@@ -0,0 +1,301 @@
+/*
+Copyright 2015 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.e6tech.elements.network.proxy;
+
+import net.e6tech.elements.common.logging.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+
+/**
+ * Selector based proxy used by SocketProxyServer when nonBlocking is set.  A single thread accepts, connects
+ * and copies for all connections.  Each direction of a connection has its own direct buffer.  When the buffer
+ * is full the proxy stops reading from that side until the other side has drained it, so a slow reader
+ * throttles the writer through TCP flow control instead of growing memory.  When one side finishes sending,
+ * its pending data is flushed and the output to the other side is shut down, while the opposite direction
+ * keeps flowing until it finishes as well.
+ */
+@SuppressWarnings("squid:S1141")
+class NioProxy implements Runnable {
+    private static Logger logger = Logger.getLogger();
+
+    private final ServerSocketChannel serverChannel;
+    private final InetSocketAddress remoteAddress;
+    private final int bufferSize;
+    private final int maxConnections;
+    private final ProxyStatistics statistics;
+    private final Selector selector;
+    private final Deque<ByteBuffer> bufferPool = new ArrayDeque<>();
+    private final Set<Connection> connections = new HashSet<>();
+    private volatile boolean stopped = false;
+
+    NioProxy(ServerSocketChannel serverChannel, InetSocketAddress remoteAddress,
+             int bufferSize, int maxConnections, ProxyStatistics statistics) throws IOException {
+        this.serverChannel = serverChannel;
+        this.remoteAddress = remoteAddress;
+        this.bufferSize = bufferSize;
+        this.maxConnections = maxConnections;
+        this.statistics = statistics;
+        this.selector = Selector.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    void stop() {
+        stopped = true;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!stopped) {
+                selector.select();
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable())
+                        accept();
+                    else
+                        ((Connection) key.attachment()).handle(key);
+                }
+            }
+        } catch (IOException e) {
+            if (!stopped)
+                throw logger.systemException(e);
+        } finally {
+            for (Connection connection : new ArrayList<>(connections))
+                connection.close();
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept() {
+        SocketChannel client;
+        while ((client = acceptNext()) != null) {
+            if (!statistics.connect(maxConnections)) {
+                closeQuietly(client);
+                continue;
+            }
+
+            Connection connection = new Connection(client);
+            try {
+                connection.open();
+            } catch (IOException e) {
+                logger.warn("Cannot connect to " + remoteAddress, e);
+                connection.close();
+            }
+        }
+    }
+
+    private SocketChannel acceptNext() {
+        try {
+            return serverChannel.accept();
+        } catch (IOException e) {
+            // e.g. running out of file descriptors; keep serving existing connections.
+            logger.warn(e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private ByteBuffer borrow() {
+        ByteBuffer buffer = bufferPool.poll();
+        return (buffer != null) ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    private void release(ByteBuffer buffer) {
+        // keep enough buffers around for the current number of connections; they are expensive to allocate.
+        if (bufferPool.size() < 2 * Math.max(connections.size(), 16)) {
+            buffer.clear();
+            bufferPool.push(buffer);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Logger.suppress(e);
+        }
+    }
+
+    private class Connection {
+        private final SocketChannel client;
+        private SocketChannel remote;
+        private SelectionKey clientKey;
+        private SelectionKey remoteKey;
+        private Pipe upstream;
+        private Pipe downstream;
+        private boolean connected = false;
+        private boolean closed = false;
+
+        Connection(SocketChannel client) {
+            this.client = client;
+        }
+
+        void open() throws IOException {
+            connections.add(this);
+            client.configureBlocking(false);
+            client.socket().setTcpNoDelay(true);
+            remote = SocketChannel.open();
+            remote.configureBlocking(false);
+            remote.socket().setTcpNoDelay(true);
+            upstream = new Pipe(client, remote, true);
+            downstream = new Pipe(remote, client, false);
+            clientKey = client.register(selector, 0, this);
+            remoteKey = remote.register(selector, 0, this);
+            if (remote.connect(remoteAddress))
+                connected();
+            else
+                remoteKey.interestOps(SelectionKey.OP_CONNECT);
+        }
+
+        private void connected() {
+            connected = true;
+            updateInterest();
+        }
+
+        void handle(SelectionKey key) {
+            try {
+                if (key.isConnectable()) {
+                    if (remote.finishConnect())
+                        connected();
+                    return;
+                }
+
+                if (key.isReadable()) {
+                    if (key == clientKey)
+                        upstream.read();
+                    else
+                        downstream.read();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    if (key == clientKey)
+                        downstream.write();
+                    else
+                        upstream.write();
+                }
+
+                if (upstream.isDone() && downstream.isDone())
+                    close();
+                else
+                    updateInterest();
+            } catch (IOException e) {
+                if (!connected)
+                    logger.warn("Cannot connect to " + remoteAddress, e);
+                else
+                    Logger.suppress(e);
+                close();
+            }
+        }
+
+        private void updateInterest() {
+            clientKey.interestOps((upstream.wantsRead() ? SelectionKey.OP_READ : 0)
+                    | (downstream.wantsWrite() ? SelectionKey.OP_WRITE : 0));
+            remoteKey.interestOps((downstream.wantsRead() ? SelectionKey.OP_READ : 0)
+                    | (upstream.wantsWrite() ? SelectionKey.OP_WRITE : 0));
+        }
+
+        void close() {
+            if (closed)
+                return;
+            closed = true;
+            connections.remove(this);
+            if (clientKey != null)
+                clientKey.cancel();
+            if (remoteKey != null)
+                remoteKey.cancel();
+            closeQuietly(client);
+            if (remote != null)
+                closeQuietly(remote);
+            if (upstream != null)
+                upstream.release();
+            if (downstream != null)
+                downstream.release();
+            statistics.disconnect();
+        }
+    }
+
+    /**
+     * One direction of a connection.  The buffer is always left in fill mode.
+     */
+    private class Pipe {
+        private final SocketChannel source;
+        private final SocketChannel sink;
+        private final boolean toRemote;
+        private ByteBuffer buffer;
+        private boolean eof = false;
+        private boolean shutdown = false;
+
+        Pipe(SocketChannel source, SocketChannel sink, boolean toRemote) {
+            this.source = source;
+            this.sink = sink;
+            this.toRemote = toRemote;
+            this.buffer = borrow();
+        }
+
+        void read() throws IOException {
+            if (source.read(buffer) < 0)
+                eof = true;
+            write();
+        }
+
+        void write() throws IOException {
+            if (buffer.position() > 0) {
+                buffer.flip();
+                int written = sink.write(buffer);
+                buffer.compact();
+                if (toRemote)
+                    statistics.toRemote(written);
+                else
+                    statistics.toClient(written);
+            }
+
+            // half close: the other direction keeps going.
+            if (eof && !shutdown && buffer.position() == 0) {
+                sink.shutdownOutput();
+                shutdown = true;
+            }
+        }
+
+        boolean wantsRead() {
+            return !eof && buffer.hasRemaining();
+        }
+
+        boolean wantsWrite() {
+            return buffer.position() > 0;
+        }
+
+        boolean isDone() {
+            return shutdown;
+        }
+
+        void release() {
+            if (buffer != null) {
+                NioProxy.this.release(buffer);
+                buffer = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+Copyright 2015 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.e6tech.elements.network.proxy;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters shared by the blocking and the non-blocking proxy.  Bytes are counted when they have been
+ * written to the other side.
+ */
+public class ProxyStatistics implements ProxyStatisticsMXBean {
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final LongAdder totalConnections = new LongAdder();
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final LongAdder bytesToRemote = new LongAdder();
+    private final LongAdder bytesToClient = new LongAdder();
+
+    @Override
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    @Override
+    public long getTotalConnections() {
+        return totalConnections.sum();
+    }
+
+    @Override
+    public long getRejectedConnections() {
+        return rejectedConnections.sum();
+    }
+
+    @Override
+    public long getBytesToRemote() {
+        return bytesToRemote.sum();
+    }
+
+    @Override
+    public long getBytesToClient() {
+        return bytesToClient.sum();
+    }
+
+    /**
+     * Reserves a connection slot.
+     * @param maxConnections zero or negative for no limit
+     * @return false if the limit has been reached, in which case the connection is counted as rejected.
+     */
+    boolean connect(int maxConnections) {
+        while (true) {
+            int active = activeConnections.get();
+            if (maxConnections > 0 && active >= maxConnections) {
+                rejectedConnections.increment();
+                return false;
+            }
+            if (activeConnections.compareAndSet(active, active + 1)) {
+                totalConnections.increment();
+                return true;
+            }
+        }
+    }
+
+    void disconnect() {
+        activeConnections.decrementAndGet();
+    }
+
+    void toRemote(int bytes) {
+        bytesToRemote.add(bytes);
+    }
+
+    void toClient(int bytes) {
+        bytesToClient.add(bytes);
+    }
+}
@@ -15,14 +15,27 @@ limitations under the License.
 */
 package net.e6tech.elements.network.proxy;
 
-
 import net.e6tech.elements.common.logging.Logger;
 import net.e6tech.elements.common.resources.Startable;
+import net.e6tech.elements.jmx.JMXService;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.concurrent.*;
 
+/**
+ * Forwards connections accepted on localPort to remoteHost:remotePort.
+ *
+ * By default every connection is served by two threads copying through byte arrays.  Setting nonBlocking
+ * serves all connections from a single selector thread with direct buffers, see NioProxy.  In both modes
+ * bufferSize is the buffer per direction of a connection and maxConnections, when positive, limits the number
+ * of concurrent connections; connections beyond the limit are closed right after being accepted.
+ *
+ * If localPort is 0, a free port is picked when the server starts and localPort is updated.
+ */
 public class SocketProxyServer implements Startable, Runnable {
 
     private static Logger logger = Logger.getLogger();
@@ -32,6 +45,15 @@ public class SocketProxyServer implements Startable, Runnable {
     private int localPort;
     private ExecutorService threadPool;
     private volatile boolean stopped = false;
+    private boolean nonBlocking = false;
+    private int bufferSize = 4096;
+    private int maxConnections = 0;
+    private int backlog = 50;
+    private long halfCloseTimeout = 0L;
+    private ProxyStatistics statistics = new ProxyStatistics();
+    private ServerSocket serverSocket;
+    private NioProxy nioProxy;
+    private String objectName;
 
     public String getRemoteHost() {
         return remoteHost;
@@ -65,6 +87,58 @@ public class SocketProxyServer implements Startable, Runnable {
         this.threadPool = threadPool;
     }
 
+    public boolean isNonBlocking() {
+        return nonBlocking;
+    }
+
+    public void setNonBlocking(boolean nonBlocking) {
+        this.nonBlocking = nonBlocking;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Length of the queue of connections not yet accepted.  Raise it when many clients connect at once.
+     */
+    public void setBacklog(int backlog) {
+        this.backlog = backlog;
+    }
+
+    public long getHalfCloseTimeout() {
+        return halfCloseTimeout;
+    }
+
+    /**
+     * Milliseconds a blocking transfer waits for the client to finish sending after the remote server has closed.
+     * 0, the default, closes the connection right away; each waiting connection holds two pool threads.
+     * The nonBlocking mode always half-closes and does not use this setting.
+     */
+    public void setHalfCloseTimeout(long halfCloseTimeout) {
+        this.halfCloseTimeout = halfCloseTimeout;
+    }
+
+    public ProxyStatistics getStatistics() {
+        return statistics;
+    }
+
     public void start() {
         if (threadPool == null) {
             ThreadGroup group = Thread.currentThread().getThreadGroup();
@@ -76,22 +150,71 @@ public class SocketProxyServer implements Startable, Runnable {
             });
         }
         stopped = false;
+        // bind before returning so that the port is ready and known to the caller.
+        bind();
+        objectName = "net.e6tech:type=SocketProxy,name=" + localPort;
+        JMXService.registerMBean(statistics, objectName);
         threadPool.execute(this);
     }
 
     public void stop() {
         stopped = true;
+        if (nioProxy != null)
+            nioProxy.stop();
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                Logger.suppress(e);
+            }
+        }
+        if (objectName != null) {
+            JMXService.unregisterMBean(objectName);
+            objectName = null;
+        }
+    }
+
+    private synchronized void bind() {
+        if (serverSocket != null && !serverSocket.isClosed())
+            return;
+        try {
+            if (nonBlocking) {
+                ServerSocketChannel channel = ServerSocketChannel.open();
+                channel.bind(new InetSocketAddress(localPort), backlog);
+                serverSocket = channel.socket();
+                nioProxy = new NioProxy(channel, new InetSocketAddress(remoteHost, remotePort), bufferSize, maxConnections, statistics);
+            } else {
+                serverSocket = new ServerSocket(localPort, backlog);
+                nioProxy = null;
+            }
+            localPort = serverSocket.getLocalPort();
+        } catch (IOException e) {
+            throw logger.systemException(e);
+        }
     }
 
     @SuppressWarnings("squid:S1141")
     public void run() {
-        try (ServerSocket serverSocket = new ServerSocket(localPort)){
+        bind();
+        if (nioProxy != null) {
+            nioProxy.run();
+            return;
+        }
+
+        try (ServerSocket socket = serverSocket) {
             while (!stopped) {
                 try {
-                    Transfer transfer = new Transfer(remoteHost, remotePort, serverSocket.accept(), threadPool);
+                    Socket client = socket.accept();
+                    if (!statistics.connect(maxConnections)) {
+                        client.close();
+                        continue;
+                    }
+                    Transfer transfer = new Transfer(remoteHost, remotePort, client, threadPool, bufferSize, statistics);
+                    transfer.setHalfCloseTimeout(halfCloseTimeout);
                     threadPool.execute(transfer);
                 } catch (IOException e) {
-                    logger.warn(e.getMessage(), e);
+                    if (!stopped)
+                        logger.warn(e.getMessage(), e);
                 }
             }
         } catch (Exception th) {
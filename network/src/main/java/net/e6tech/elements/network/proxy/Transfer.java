@@ -23,7 +23,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by futeh on 1/21/16.
@@ -36,6 +38,9 @@ public class Transfer implements Runnable {
     int port;
     Socket client;
     ExecutorService threadPool;
+    int bufferSize = 4096;
+    ProxyStatistics statistics;
+    long halfCloseTimeout = 0L;
 
     public Transfer(String host, int port, Socket client, ExecutorService threadPool) {
         this.host = host;
@@ -44,9 +49,30 @@ public class Transfer implements Runnable {
         this.threadPool = threadPool;
     }
 
+    public Transfer(String host, int port, Socket client, ExecutorService threadPool, int bufferSize, ProxyStatistics statistics) {
+        this(host, port, client, threadPool);
+        this.bufferSize = bufferSize;
+        this.statistics = statistics;
+    }
+
+    public long getHalfCloseTimeout() {
+        return halfCloseTimeout;
+    }
+
+    /**
+     * Milliseconds to keep forwarding the client's bytes after the remote server has closed its side.  Both
+     * sockets are closed when it expires, so a client that never closes cannot hold the connection forever.
+     * 0, the default, closes both sockets as soon as the remote server closes, releasing both pool threads.
+     */
+    public void setHalfCloseTimeout(long halfCloseTimeout) {
+        this.halfCloseTimeout = halfCloseTimeout;
+    }
+
+    @SuppressWarnings("squid:MethodCyclomaticComplexity")
     public void run() {
-        final byte[] request = new byte[4096];
-        byte[] response = new byte[4096];
+        final byte[] request = new byte[bufferSize];
+        byte[] response = new byte[bufferSize];
+        final CountDownLatch requestDone = new CountDownLatch(1);
         Socket remote = null;
         try {
             final InputStream clientInputStream = client.getInputStream();
@@ -60,6 +86,7 @@ public class Transfer implements Runnable {
                 return;
             }
 
+            final Socket remoteSocket = remote;
             final InputStream remoteInputStream = remote.getInputStream();
             final OutputStream remoteOutputStream = remote.getOutputStream();
 
@@ -70,17 +97,15 @@ public class Transfer implements Runnable {
                 try {
                     while ((read = clientInputStream.read(request)) != -1) {
                         remoteOutputStream.write(request, 0, read);
-                        remoteOutputStream.flush();
+                        if (statistics != null)
+                            statistics.toRemote(read);
                     }
+                    // done reading, half close so that the remote server can still respond.
+                    remoteSocket.shutdownOutput();
                 } catch (IOException e) {
                     Logger.suppress(e);
-                }
-
-                // done reading, close server output stream
-                try {
-                    remoteOutputStream.close();
-                } catch (IOException e) {
-                    Logger.suppress(e);
+                } finally {
+                    requestDone.countDown();
                 }
             });
 
@@ -90,16 +115,25 @@ public class Transfer implements Runnable {
             try {
                 while ((read = remoteInputStream.read(response)) != -1) {
                     clientOutputStream.write(response, 0, read);
-                    clientOutputStream.flush();
+                    if (statistics != null)
+                        statistics.toClient(read);
+                }
+                // the client may still be sending after the remote server is done.
+                if (halfCloseTimeout > 0) {
+                    client.shutdownOutput();
+                    if (!requestDone.await(halfCloseTimeout, TimeUnit.MILLISECONDS))
+                        logger.debug("Closing connection to " + host + ":" + port + ", client did not finish within " + halfCloseTimeout + "ms");
                 }
             } catch (IOException e) {
                 Logger.suppress(e);
             }
-
-            clientOutputStream.close();
         } catch (IOException e) {
             logger.error(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } finally {
+            if (statistics != null)
+                statistics.disconnect();
             try {
                 if (remote != null)
                     remote.close();
@@ -20,6 +20,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import net.e6tech.elements.common.serialization.ObjectMapperFactory;
 import net.e6tech.elements.common.util.ErrorResponse;
 
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Map;
@@ -47,6 +48,11 @@ public class JsonMarshaller implements Marshaller {
         return mapper.writeValueAsString(data);
     }
 
+    @Override
+    public void encodeRequest(Object data, OutputStream out) throws Exception {
+        mapper.writeValue(out, data);
+    }
+
     @Override
     public String prettyPrintResponse(String response) throws Exception {
         Object ret;
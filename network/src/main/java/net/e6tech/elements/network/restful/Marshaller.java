@@ -18,6 +18,9 @@ package net.e6tech.elements.network.restful;
 
 import net.e6tech.elements.common.util.ErrorResponse;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
 @SuppressWarnings("squid:S00112")
 public interface Marshaller {
 
@@ -29,6 +32,13 @@ public interface Marshaller {
 
     String encodeRequest(Object data) throws Exception;
 
+    /**
+     * Writes the request entity to the stream.  Override to avoid building the whole entity as a String.
+     */
+    default void encodeRequest(Object data, OutputStream out) throws Exception {
+        out.write(encodeRequest(data).getBytes(StandardCharsets.UTF_8));
+    }
+
     Object prettyPrintResponse(String response) throws Exception;
 
     ErrorResponse readErrorResponse(String errorResponse) throws Exception;
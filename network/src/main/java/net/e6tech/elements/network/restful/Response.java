@@ -16,11 +16,14 @@ limitations under the License.
 package net.e6tech.elements.network.restful;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +44,8 @@ public class Response implements Serializable {
     private int responseCode;
     private Map<String,List<String>> headerFields = new HashMap<>();
     private String result;
+    private byte[] body;
+    private String encoding = StandardCharsets.UTF_8.name();
 
     public int getResponseCode() {
         return responseCode;
@@ -50,12 +55,38 @@ public class Response implements Serializable {
         this.responseCode = responseCode;
     }
 
+    /**
+     * The body as a String.  It is decoded on first use; entities are read from the raw body
+     * without going through a String.
+     */
     public String getResult() {
+        if (result == null && body != null) {
+            try {
+                result = new String(body, encoding);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
         return result;
     }
 
     public void setResult(String result) {
         this.result = result;
+        this.body = null;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public void setBody(byte[] body, String encoding) {
+        this.body = body;
+        this.encoding = encoding;
+        this.result = null;
+    }
+
+    public boolean hasResult() {
+        return body != null || result != null;
     }
 
     public Map<String, List<String>> getHeaderFields() {
@@ -68,12 +99,20 @@ public class Response implements Serializable {
 
     public <T> T read(Class<T> cls) throws IOException {
         if (cls.isAssignableFrom(String.class))
-            return (T) result;
+            return (T) getResult();
+        if (body != null)
+            return mapper.readValue(body, cls);
         return mapper.readValue(result, cls);
     }
 
+    public <T> T read(JavaType type) throws IOException {
+        if (body != null)
+            return mapper.readValue(body, type);
+        return mapper.readValue(result, type);
+    }
+
     public String toString() {
-        return "responseCode=" + responseCode + " headers=" + headerFields + " result=" + result;
+        return "responseCode=" + responseCode + " headers=" + headerFields + " result=" + getResult();
     }
 
     public boolean isSuccess() {
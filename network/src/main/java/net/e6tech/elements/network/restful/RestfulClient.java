@@ -34,12 +34,7 @@ import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Properties;
-
-import static java.net.HttpURLConnection.HTTP_NO_CONTENT;
+import java.util.*;
 
 /**
  * Created by futeh.
@@ -51,7 +46,7 @@ public class RestfulClient {
     private static final X509Certificate[] EMPTY_CERTIFICATES = new X509Certificate[0];
 
     private ExceptionMapper exceptionMapper;
-    private String staticAddress;
+    private volatile String staticAddress;
     private String encoding = StandardCharsets.UTF_8.name();
     private String trustStore;
     private String trustStoreFormat = JavaKeyStore.DEFAULT_FORMAT;
@@ -65,6 +60,7 @@ public class RestfulClient {
     private String proxyHost;
     private int proxyPort = -1;
     private Marshaller marshaller = new JsonMarshaller();
+    private Transport transport = new URLConnectionTransport();
 
     public RestfulClient() {}
 
@@ -80,11 +76,11 @@ public class RestfulClient {
         this.exceptionMapper = exceptionMapper;
     }
 
-    public synchronized String getAddress() {
+    public String getAddress() {
         return staticAddress;
     }
 
-    public synchronized void setAddress(String path) {
+    public void setAddress(String path) {
         this.staticAddress = path;
     }
 
@@ -188,6 +184,14 @@ public class RestfulClient {
         this.marshaller = marshaller;
     }
 
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
     @SuppressWarnings("squid:S134")
     private Param[] toParams(Object object) {
         List<Param> params = new ArrayList<>();
@@ -294,163 +298,79 @@ public class RestfulClient {
         return fullPath ;
     }
 
-    HttpURLConnection open(String dest, String context, Param ... params) throws IOException {
+    protected Response submit(String context, String method, Properties requestProperties, Object data, Param ... params) throws Throwable {
+        return _submit(staticAddress, context, method, requestProperties, data, params);
+    }
+
+    @SuppressWarnings({"squid:MethodCyclomaticComplexity", "squid:S134", "squid:S1141", "squid:S00100", "squid:S00112", "squid:S2093"})
+    protected Response _submit(String dest, String context, String method, Properties requestProperties, Object data, Param ... params) throws Throwable {
         String fullPath = constructPath(dest, context, params);
-        URL url = null;
+        URL url;
         try {
             logger.debug(fullPath);
             url = new URL(fullPath);
-
-            HttpURLConnection conn = null;
-            if (proxyHost != null && proxyPort > 0) {
-                Proxy proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort));
-                conn = (HttpURLConnection) url.openConnection(proxy);
-            } else {
-                conn = (HttpURLConnection) url.openConnection();
-            }
-
-            if (connectionTimeout >= 0)
-                conn.setConnectTimeout(connectionTimeout);
-            if (readTimeout >= 0)
-                conn.setReadTimeout(readTimeout);
-            if (conn instanceof HttpsURLConnection) {
-                HttpsURLConnection https = (HttpsURLConnection) conn;
-                https.setSSLSocketFactory(getSSLSocketFactory());
-                if (skipHostnameCheck || skipCertCheck)
-                    https.setHostnameVerifier((hostname, session) -> true);
-            }
-            return conn;
         } catch (MalformedURLException e) {
             throw logger.systemException(e);
         }
-    }
-
-    protected Response submit(String context, String method, Properties requestProperties, Object data, Param ... params) throws Throwable {
-        return _submit(staticAddress, context, method, requestProperties, data, params);
-    }
 
-    @SuppressWarnings({"squid:MethodCyclomaticComplexity", "squid:S134", "squid:S1141", "squid:S00100", "squid:S00112", "squid:S2093"})
-    protected Response _submit(String dest, String context, String method, Properties requestProperties, Object data, Param ... params) throws Throwable {
-        Response response = null;
-        HttpURLConnection conn = null;
-        try {
-            conn = open(dest, context, params);
-            if (method.equals(Request.POST) || method.equals(Request.PUT)) {
-                conn.setDoOutput(true);
-                conn.setRequestProperty("Content-Type", marshaller.getContentType());
-            }
-            conn.setRequestMethod(method);
-            setConnectionProperties(conn);
-            loadRequestProperties(conn, requestProperties);
-
-            if (printer != null) {
-                printer.println("REQUEST ----------------------------");
-                printer.println(method + " " + constructPath(dest, context, params));
-                printHeaders((Map) requestProperties);
-                printHeaders(conn.getRequestProperties());
-                if (data != null) {
-                    printer.println(marshaller.prettyPrintRequest(data));
-                }
-                printer.println();
-            }
-
-            if (method.equals(Request.POST) || method.equals(Request.PUT)) {
-                OutputStream out = conn.getOutputStream();
-                if (data != null) {
-                    Writer writer = new OutputStreamWriter(new BufferedOutputStream(out), StandardCharsets.UTF_8);
-                    String posted = marshaller.encodeRequest(data);
-                    writer.write(posted);
-                    logger.debug(posted);
-                    writer.flush();
-                    writer.close();
-                }
-                out.close();
+        boolean output = method.equals(Request.POST) || method.equals(Request.PUT);
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Accept", marshaller.getAccept());
+        if (output)
+            headers.put("Content-Type", marshaller.getContentType());
+        for (String key : requestProperties.stringPropertyNames())
+            headers.put(key, requestProperties.getProperty(key));
+
+        if (printer != null) {
+            printer.println("REQUEST ----------------------------");
+            printer.println(method + " " + fullPath);
+            printHeaders(headers);
+            if (data != null) {
+                printer.println(marshaller.prettyPrintRequest(data));
             }
+            printer.println();
+        }
 
-            response = readResponse(conn);
-            if (printer != null) {
-                printer.println("RESPONSE ----------------------------");
-                List<String> statusList = response.getHeaderFields().get(null);
-                if (statusList != null  && !statusList.isEmpty())
-                    printer.println(statusList.get(0));
-                printer.println("Response Code=" + response.getResponseCode());
-                printHeaders(response.getHeaderFields());
-                String result = response.getResult();
-                if (result != null && result.length() > 0) {
-                    if (isPrintRawResponse()) {
-                        printer.println("===== RAW RESPONSE: START =====");
-                        printer.println(result);
-                        printer.println("===== RAW RESPONSE: END =======");
-                    }
-                   printer.println(marshaller.prettyPrintResponse(result));
-                }
-                printer.println();
-            }
-            try {
-                checkResponseCode(response.getResponseCode(), response.getResult());
-            } catch (ClientErrorException ex) {
-                Throwable mappedThrowable = null;
-                String result = ex.getMessage();
-                if (result != null && exceptionMapper != null) {
-                    try {
-                        ErrorResponse error = marshaller.readErrorResponse(result);
-                        if (error != null) {
-                            mappedThrowable = exceptionMapper.fromResponse(error);
-                        }
-                    } catch (Exception e) {
-                        Logger.suppress(e);
-                    }
+        Response response = transport.send(this, method, url, headers, output, data);
+        if (printer != null) {
+            printer.println("RESPONSE ----------------------------");
+            List<String> statusList = response.getHeaderFields().get(null);
+            if (statusList != null  && !statusList.isEmpty())
+                printer.println(statusList.get(0));
+            printer.println("Response Code=" + response.getResponseCode());
+            printHeaders(response.getHeaderFields());
+            String result = response.getResult();
+            if (result != null && result.length() > 0) {
+                if (isPrintRawResponse()) {
+                    printer.println("===== RAW RESPONSE: START =====");
+                    printer.println(result);
+                    printer.println("===== RAW RESPONSE: END =======");
                 }
-                if (mappedThrowable != null)
-                    throw mappedThrowable;
-                else throw ex;
+               printer.println(marshaller.prettyPrintResponse(result));
             }
-        } catch (MalformedURLException e) {
-            logger.systemException(e);
-        } finally {
-            if (conn != null)
-                conn.disconnect();
-        }
-
-        return response;
-    }
-
-    private Response readResponse(HttpURLConnection conn) throws IOException {
-        Response response = new Response();
-
-        response.setHeaderFields(conn.getHeaderFields());
-        response.setResponseCode(conn.getResponseCode());
-
-        if (conn.getResponseCode() == HTTP_NO_CONTENT)
-            return response;
-
-        InputStream in = null;
-        try {
-            in = conn.getInputStream();
-        } catch (IOException ex) {
-            Logger.suppress(ex);
-            in = conn.getErrorStream();
-            if (in == null)
-                checkResponseCode(conn.getResponseCode(), conn.getResponseMessage());
+            printer.println();
         }
 
         try {
-            BufferedInputStream bis = new BufferedInputStream(in);
-            ByteArrayOutputStream byteArray = new ByteArrayOutputStream();
-            int read = 0;
-            int bufSize = 4096;
-            byte[] buffer = new byte[bufSize];
-            while (true) {
-                read = bis.read(buffer);
-                if (read == -1) {
-                    break;
+            int code = response.getResponseCode();
+            // the body only needs to be decoded for the error message
+            checkResponseCode(code, (code >= 200 && code <= 206 && code != 203) ? null : response.getResult());
+        } catch (ClientErrorException ex) {
+            Throwable mappedThrowable = null;
+            String result = ex.getMessage();
+            if (result != null && exceptionMapper != null) {
+                try {
+                    ErrorResponse error = marshaller.readErrorResponse(result);
+                    if (error != null) {
+                        mappedThrowable = exceptionMapper.fromResponse(error);
+                    }
+                } catch (Exception e) {
+                    Logger.suppress(e);
                 }
-                byteArray.write(buffer, 0, read);
             }
-            String result = new String(byteArray.toByteArray(), encoding);
-            response.setResult(result);
-        } catch (IOException ex) {
-            throw new IllegalStateException(ex);
+            if (mappedThrowable != null)
+                throw mappedThrowable;
+            else throw ex;
         }
 
         return response;
@@ -516,20 +436,7 @@ public class RestfulClient {
         printer.flush();
     }
 
-    private void setConnectionProperties(HttpURLConnection conn)  {
-        conn.setDoInput(true);
-        conn.setUseCaches(false);
-        conn.setAllowUserInteraction(false);
-        conn.setRequestProperty("Accept", marshaller.getAccept());
-    }
-
-    private void loadRequestProperties(HttpURLConnection conn, Properties properties) {
-        for (String key : properties.stringPropertyNames()) {
-            conn.setRequestProperty(key, properties.getProperty(key));
-        }
-    }
-
-    private SSLSocketFactory getSSLSocketFactory() {
+    public SSLSocketFactory getSSLSocketFactory() {
         if (sslSocketFactory != null)
             return sslSocketFactory;
         TrustManager[] trustManagers = null;
@@ -356,7 +356,7 @@ public class RestfulProxy {
                         if (Collection.class.isAssignableFrom(encloseType)) {
                             Class elementType = (Class) parameterizedReturnType.getActualTypeArguments()[0];
                             CollectionType ctype = TypeFactory.defaultInstance().constructCollectionType(encloseType, elementType);
-                            return new Pair<>(response, Response.mapper.readValue(response.getResult(), ctype));
+                            return new Pair<>(response, response.read(ctype));
                         }
                     }
                 }
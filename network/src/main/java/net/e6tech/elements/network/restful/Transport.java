@@ -0,0 +1,37 @@
+/*
+Copyright 2015 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.e6tech.elements.network.restful;
+
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Carries out one HTTP exchange for a RestfulClient.  Connection, TLS and timeout settings are taken from the client.
+ */
+@SuppressWarnings("squid:S00112")
+public interface Transport {
+
+    /**
+     * @param client client issuing the request
+     * @param method HTTP method
+     * @param url full url including query parameters
+     * @param headers request headers
+     * @param output whether the request has a body, even if data is null
+     * @param data request entity, written with the client's marshaller
+     * @return response with its body fully read
+     */
+    Response send(RestfulClient client, String method, URL url, Map<String, String> headers, boolean output, Object data) throws Exception;
+}
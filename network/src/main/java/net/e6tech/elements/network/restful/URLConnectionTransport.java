@@ -0,0 +1,208 @@
+/*
+Copyright 2015 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package net.e6tech.elements.network.restful;
+
+import net.e6tech.elements.common.logging.Logger;
+
+import javax.net.ssl.HttpsURLConnection;
+import java.io.*;
+import java.net.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static java.net.HttpURLConnection.HTTP_NO_CONTENT;
+
+/**
+ * Default transport based on HttpURLConnection.  Connections are not disconnected after a call; instead the
+ * response is read to the end and the stream closed, which hands the socket back to the JDK keep-alive cache
+ * so that the next call to the same host reuses it.  Note that the JDK keeps at most http.maxConnections
+ * (default 5) idle connections per destination.
+ *
+ * maxConnections, when positive, bounds the number of connections in use at the same time; callers wait up to
+ * poolTimeout milliseconds for one to become available.
+ *
+ * Request entities are written by the marshaller directly into the connection.  By default HttpURLConnection
+ * buffers them to send a Content-Length.  Setting chunkedStreaming to true sends them with chunked transfer
+ * encoding instead, so that the whole body is never held in memory.  Only do so for servers and proxies that
+ * accept chunked requests, since HttpURLConnection cannot retry a streamed request for authentication or redirects.
+ *
+ * Response bodies are not streamed: a Response outlives its connection and its entity may be read more than
+ * once, e.g. through RestfulProxy.getLastResponse, so the body is read into a single byte array, sized from
+ * Content-Length when known, and entities are decoded by Jackson from those bytes without an intermediate String.
+ */
+public class URLConnectionTransport implements Transport {
+    private int maxConnections = 0;
+    private long poolTimeout = 30000L;
+    private boolean chunkedStreaming = false;
+    private volatile Semaphore permits;
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        permits = (maxConnections > 0) ? new Semaphore(maxConnections, true) : null;
+    }
+
+    public long getPoolTimeout() {
+        return poolTimeout;
+    }
+
+    public void setPoolTimeout(long poolTimeout) {
+        this.poolTimeout = poolTimeout;
+    }
+
+    public boolean isChunkedStreaming() {
+        return chunkedStreaming;
+    }
+
+    public void setChunkedStreaming(boolean chunkedStreaming) {
+        this.chunkedStreaming = chunkedStreaming;
+    }
+
+    /**
+     * @return number of connections that can still be used without waiting, or -1 if unbounded.
+     */
+    public int getAvailableConnections() {
+        Semaphore semaphore = permits;
+        return (semaphore == null) ? -1 : semaphore.availablePermits();
+    }
+
+    @Override
+    public Response send(RestfulClient client, String method, URL url, Map<String, String> headers, boolean output, Object data) throws Exception {
+        Semaphore semaphore = acquire(url);
+        HttpURLConnection conn = null;
+        boolean completed = false;
+        try {
+            conn = open(client, url);
+            conn.setRequestMethod(method);
+            conn.setDoInput(true);
+            conn.setUseCaches(false);
+            conn.setAllowUserInteraction(false);
+            for (Map.Entry<String, String> entry : headers.entrySet())
+                conn.setRequestProperty(entry.getKey(), entry.getValue());
+
+            if (output) {
+                conn.setDoOutput(true);
+                if (data != null && chunkedStreaming)
+                    conn.setChunkedStreamingMode(0);
+                try (OutputStream out = conn.getOutputStream()) {
+                    if (data != null)
+                        client.getMarshaller().encodeRequest(data, out);
+                }
+            }
+
+            Response response = readResponse(client, conn);
+            completed = true;
+            return response;
+        } finally {
+            // a connection in an unknown state cannot go back to the keep-alive cache
+            if (conn != null && !completed)
+                conn.disconnect();
+            if (semaphore != null)
+                semaphore.release();
+        }
+    }
+
+    private Semaphore acquire(URL url) throws IOException {
+        Semaphore semaphore = permits;
+        if (semaphore == null)
+            return null;
+        try {
+            if (!semaphore.tryAcquire(poolTimeout, TimeUnit.MILLISECONDS))
+                throw new IOException("Timed out waiting for a connection to " + url.getHost() + ":" + url.getPort());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+        return semaphore;
+    }
+
+    protected HttpURLConnection open(RestfulClient client, URL url) throws IOException {
+        HttpURLConnection conn;
+        if (client.getProxyHost() != null && client.getProxyPort() > 0) {
+            Proxy proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(client.getProxyHost(), client.getProxyPort()));
+            conn = (HttpURLConnection) url.openConnection(proxy);
+        } else {
+            conn = (HttpURLConnection) url.openConnection();
+        }
+
+        if (client.getConnectionTimeout() >= 0)
+            conn.setConnectTimeout(client.getConnectionTimeout());
+        if (client.getReadTimeout() >= 0)
+            conn.setReadTimeout(client.getReadTimeout());
+        if (conn instanceof HttpsURLConnection) {
+            HttpsURLConnection https = (HttpsURLConnection) conn;
+            https.setSSLSocketFactory(client.getSSLSocketFactory());
+            if (client.isSkipHostnameCheck() || client.isSkipCertCheck())
+                https.setHostnameVerifier((hostname, session) -> true);
+        }
+        return conn;
+    }
+
+    private Response readResponse(RestfulClient client, HttpURLConnection conn) throws IOException {
+        Response response = new Response();
+        response.setHeaderFields(conn.getHeaderFields());
+        response.setResponseCode(conn.getResponseCode());
+
+        InputStream in;
+        try {
+            in = conn.getInputStream();
+        } catch (IOException ex) {
+            Logger.suppress(ex);
+            in = conn.getErrorStream();
+            if (in == null)
+                client.checkResponseCode(conn.getResponseCode(), conn.getResponseMessage());
+        }
+
+        if (in == null)
+            return response;
+
+        try (InputStream stream = in) {
+            if (conn.getResponseCode() != HTTP_NO_CONTENT)
+                response.setBody(readFully(stream, conn.getContentLengthLong()), client.getEncoding());
+        }
+        return response;
+    }
+
+    // reads straight into an array of the right size when the length is known.
+    private static byte[] readFully(InputStream in, long contentLength) throws IOException {
+        if (contentLength >= 0 && contentLength < Integer.MAX_VALUE) {
+            byte[] body = new byte[(int) contentLength];
+            int offset = 0;
+            while (offset < body.length) {
+                int read = in.read(body, offset, body.length - offset);
+                if (read < 0)
+                    throw new EOFException("Expecting " + contentLength + " bytes but got " + offset);
+                offset += read;
+            }
+            return body;
+        }
+
+        byte[] body = new byte[8192];
+        int length = 0;
+        int read;
+        while ((read = in.read(body, length, body.length - length)) >= 0) {
+            length += read;
+            if (length == body.length)
+                body = Arrays.copyOf(body, body.length * 2);
+        }
+        return (length == body.length) ? body : Arrays.copyOf(body, length);
+    }
+}
@@ -81,7 +81,7 @@ public class WSResponseImpl extends javax.ws.rs.core.Response {
 
     @Override
     public boolean hasEntity() {
-        return response != null && response.getResult() != null;
+        return response != null && response.hasResult();
     }
 
     @Override
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.network.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BulkheadTest {
+
+    Runnable sleep(long millis, AtomicInteger running, AtomicInteger maxRunning) {
+        return () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+        };
+    }
+
+    @Test
+    void boundsConcurrencyAndQueue() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("slow", 2, 3);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        int rejected = 0;
+        for (int i = 0; i < 8; i++) {
+            try {
+                bulkhead.execute(sleep(100, running, maxRunning), 0, error -> fail(error));
+            } catch (RejectedExecutionException ex) {
+                rejected++;
+            }
+        }
+        assertEquals(3, rejected);
+        assertEquals(3, bulkhead.getRejected());
+
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (bulkhead.getRunning() < 2 && System.currentTimeMillis() < deadline)
+            Thread.sleep(5L);
+        assertEquals(3, bulkhead.getQueued());
+        while (bulkhead.getCompleted() < 5 && System.currentTimeMillis() < deadline)
+            Thread.sleep(20L);
+        assertEquals(5, bulkhead.getCompleted());
+        assertEquals(2, maxRunning.get());
+        assertEquals(0, bulkhead.getQueued());
+        assertEquals(5, bulkhead.executionTime().getCount());
+        assertTrue(bulkhead.getAverageExecutionTime() >= 90d, "" + bulkhead.getAverageExecutionTime());
+        assertTrue(bulkhead.getMaxQueueWait() >= 150d, "" + bulkhead.getMaxQueueWait());
+
+        // capacity is available again
+        bulkhead.execute(() -> {}, 0, error -> fail(error));
+        bulkhead.shutdown();
+    }
+
+    @Test
+    void queueTimeout() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("timeout", 1, 5);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        bulkhead.execute(sleep(200, running, maxRunning), 50, error -> fail(error));
+        CompletableFuture<Throwable> timedOut = new CompletableFuture<>();
+        bulkhead.execute(() -> timedOut.complete(null), 50, timedOut::complete);
+        assertTrue(timedOut.get(5, TimeUnit.SECONDS) instanceof TimeoutException);
+        assertEquals(1, bulkhead.getTimedOut());
+        bulkhead.shutdown();
+    }
+
+    @Test
+    void defaultTimeout() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("timeout", 1, 5);
+        bulkhead.setTimeout(50L);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        bulkhead.execute(sleep(200, running, maxRunning), 0, error -> fail(error));
+        CompletableFuture<Throwable> timedOut = new CompletableFuture<>();
+        bulkhead.execute(() -> timedOut.complete(null), 0, timedOut::complete);
+        assertTrue(timedOut.get(5, TimeUnit.SECONDS) instanceof TimeoutException);
+        bulkhead.shutdown();
+    }
+
+    @Test
+    void resize() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("resize", 1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        bulkhead.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 0, error -> fail(error));
+        assertThrows(RejectedExecutionException.class, () -> bulkhead.execute(() -> {}, 0, error -> fail(error)));
+
+        bulkhead.resize(2, 0);
+        CountDownLatch ran = new CountDownLatch(1);
+        bulkhead.execute(ran::countDown, 0, error -> fail(error));
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        bulkhead.shutdown();
+    }
+
+    @Test
+    void entryFailsFast() throws Exception {
+        Events.Registration registration = new Events.Registration("entry", args -> {
+            try {
+                Thread.sleep(200L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return args[0];
+        }, 0L);
+        RegistryEntry entry = new RegistryEntry(registration, new Bulkhead("entry", 1, 1));
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            entry.execute(new Object[] {i}, (value, error) -> {
+                if (error == null) future.complete(value);
+                else future.completeExceptionally(error);
+            });
+            futures.add(future);
+        }
+        // the third one is rejected right away
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> futures.get(2).get(10, TimeUnit.MILLISECONDS));
+        assertTrue(ex.getCause() instanceof RejectedExecutionException);
+        assertEquals(0, futures.get(0).get(5, TimeUnit.SECONDS));
+        assertEquals(1, futures.get(1).get(5, TimeUnit.SECONDS));
+        assertEquals(0, entry.getPending());
+        entry.getBulkhead().shutdown();
+    }
+
+    interface Service {
+        String first(String value);
+
+        String second(String value);
+    }
+
+    @Test
+    void sharedByService() {
+        Registry registry = new Registry();
+        registry.setTimeout(1000L);
+        Bulkhead bulkhead = registry.setBulkhead("q", Service.class, 4, 8);
+        assertSame(bulkhead, registry.getBulkhead("q", Service.class));
+        for (Method method : Service.class.getMethods())
+            assertSame(bulkhead, registry.getBulkhead(registry.fullyQualify("q", Service.class, method)));
+        assertEquals(1, registry.getBulkheads().size());
+        assertEquals(4, bulkhead.getConcurrency());
+        assertEquals(1000L, bulkhead.getTimeout());
+
+        // a path registered on its own keeps a bulkhead of its own
+        registry.setBulkhead("other", 2, 0);
+        assertEquals(2, registry.getBulkheads().size());
+        assertNotSame(bulkhead, registry.getBulkhead("other"));
+        for (Bulkhead b : registry.getBulkheads())
+            b.shutdown();
+    }
+}
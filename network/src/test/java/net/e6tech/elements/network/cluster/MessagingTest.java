@@ -17,12 +17,22 @@
 package net.e6tech.elements.network.cluster;
 
 import akka.actor.ActorSystem;
+import akka.cluster.Cluster;
+import akka.cluster.Member;
+import akka.cluster.MemberStatus;
 import akka.testkit.javadsl.TestKit;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import org.junit.jupiter.api.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Created by futeh.
@@ -69,6 +79,104 @@ public class MessagingTest {
 
     }
 
+    ActorSystem loopback() {
+        String userDir = System.getProperty("user.dir");
+        File file = new File(userDir + "/src/test/resources/akka.conf");
+        Config config = ConfigFactory.parseString("akka.remote.netty.tcp.port=0\n" +
+                "akka.cluster.seed-nodes=[]\n" +
+                "akka.cluster.pub-sub.gossip-interval=100ms")
+                .withFallback(ConfigFactory.parseFile(file));
+        return ActorSystem.create("ClusterSystem", config);
+    }
+
+    int upMembers(ActorSystem system) {
+        int count = 0;
+        for (Member member : Cluster.get(system).state().getMembers())
+            if (member.status() == MemberStatus.up())
+                count++;
+        return count;
+    }
+
+    // publishes from the first system to a subscriber on the second one.
+    void twoSystems(int batchSize, int messageCount) throws Exception {
+        ActorSystem system1 = loopback();
+        ActorSystem system2 = loopback();
+        try {
+            Cluster.get(system1).join(Cluster.get(system1).selfAddress());
+            Cluster.get(system2).join(Cluster.get(system1).selfAddress());
+            long deadline = System.currentTimeMillis() + 20000L;
+            while (upMembers(system1) < 2 && System.currentTimeMillis() < deadline)
+                Thread.sleep(100L);
+            assertEquals(2, upMembers(system1));
+
+            Messaging publisher = new Messaging();
+            publisher.setBatchSize(batchSize);
+            publisher.setBatchWindow(50L);
+            publisher.start(system1);
+
+            Messaging receiver = new Messaging();
+            receiver.start(system2);
+            Set<Object> received = ConcurrentHashMap.newKeySet();
+            receiver.subscribe("conversation", notice -> received.add(notice.getUserObject()));
+
+            // wait for the subscription to be gossiped to the first system.
+            while (!received.contains("probe") && System.currentTimeMillis() < deadline) {
+                publisher.publishAsync("conversation", "probe").toCompletableFuture().get(5, TimeUnit.SECONDS);
+                Thread.sleep(100L);
+            }
+            assertTrue(received.contains("probe"));
+
+            long batches = publisher.getStatistics().getBatches();
+            List<CompletableFuture<Void>> acks = new ArrayList<>();
+            for (int i = 0; i < messageCount; i++) {
+                if (i % 2 == 0)
+                    acks.add(publisher.publishAsync("conversation", "message-" + i).toCompletableFuture());
+                else
+                    publisher.publish("conversation", "message-" + i);
+            }
+            CompletableFuture.allOf(acks.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+            while (received.size() < messageCount + 1 && System.currentTimeMillis() < deadline)
+                Thread.sleep(20L);
+            for (int i = 0; i < messageCount; i++)
+                assertTrue(received.contains("message-" + i));
+
+            MessagingStatistics statistics = publisher.getStatistics();
+            assertEquals(0, statistics.getQueueDepth());
+            assertTrue(statistics.getPublished() >= messageCount + 1);
+            assertEquals(statistics.getPublished(), statistics.getLatency().getCount());
+            if (batchSize > 1) {
+                // a batch may be cut short by the window, but never exceeds batchSize.
+                long count = statistics.getBatches() - batches;
+                assertTrue(count >= (messageCount + batchSize - 1) / batchSize);
+                assertTrue(count < messageCount / 2);
+            } else
+                assertEquals(0, statistics.getBatches());
+
+            ObjectName name = new ObjectName("net.e6tech:type=Messaging,name="
+                    + ObjectName.quote(Cluster.get(system1).selfAddress() + "/messaging"));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(statistics.getPublished(), server.getAttribute(name, "Published"));
+
+            publisher.shutdown();
+            receiver.shutdown();
+            assertFalse(server.isRegistered(name));
+        } finally {
+            TestKit.shutdownActorSystem(system1);
+            TestKit.shutdownActorSystem(system2);
+        }
+    }
+
+    @Test
+    public void acknowledged() throws Exception {
+        twoSystems(0, 100);
+    }
+
+    @Test
+    public void batched() throws Exception {
+        twoSystems(10, 95);
+    }
+
     @Test
     public void simple2() throws Exception {
         String userDir = System.getProperty("user.dir");
@@ -16,19 +16,33 @@
 
 package net.e6tech.elements.network.cluster;
 
+import akka.cluster.Cluster;
+import akka.cluster.Member;
+import akka.cluster.MemberStatus;
+import akka.serialization.SerializationExtension;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import net.e6tech.elements.common.actor.Genesis;
 import net.e6tech.elements.common.util.concurrent.Async;
+import net.e6tech.elements.jmx.JMXService;
+import net.e6tech.elements.network.cluster.codec.RegistrySerializer;
 import org.junit.jupiter.api.Test;
 
+import javax.management.ObjectName;
 import java.io.File;
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
+import static org.junit.jupiter.api.Assertions.*;
+
 /**
  * Created by futeh.
  */
@@ -49,6 +63,309 @@ public class RegistryTest {
         return clusterNode;
     }
 
+    ClusterNode loopback() {
+        String userDir = System.getProperty("user.dir");
+        File file = new File(userDir + "/src/test/resources/akka.conf");
+        Config config = ConfigFactory.parseString("akka.remote.netty.tcp.port=0\n" +
+                "akka.cluster.seed-nodes=[]\n" +
+                // opts in to the registry serializer as described in RegistrySerializer
+                "akka.actor.serializers.elements-registry = \"net.e6tech.elements.network.cluster.codec.RegistrySerializer\"\n" +
+                "akka.actor.serialization-bindings {\n" +
+                "  \"net.e6tech.elements.network.cluster.Events$Invocation\" = elements-registry\n" +
+                "  \"net.e6tech.elements.network.cluster.Events$Response\" = elements-registry\n" +
+                "  \"net.e6tech.elements.network.cluster.Events$BatchInvocation\" = elements-registry\n" +
+                "  \"net.e6tech.elements.network.cluster.Events$BatchResponse\" = elements-registry\n" +
+                "}")
+                .withFallback(ConfigFactory.parseFile(file));
+        Genesis genesis = new Genesis();
+        genesis.setName("ClusterSystem");
+        genesis.initialize(config);
+        ClusterNode clusterNode = new ClusterNode();
+        clusterNode.initialize(genesis);
+        return clusterNode;
+    }
+
+    int upMembers(ClusterNode node) {
+        int count = 0;
+        for (Member member : Cluster.get(node.getGenesis().getSystem()).state().getMembers())
+            if (member.status() == MemberStatus.up())
+                count++;
+        return count;
+    }
+
+    long roundTrips(Registry registry, String path, int count) throws Exception {
+        Function<Object[], CompletionStage> function = registry.route(path, 5000L);
+        long start = System.nanoTime();
+        CompletableFuture[] futures = new CompletableFuture[count];
+        for (int i = 0; i < count; i++)
+            futures[i] = function.apply(new Object[] { i }).toCompletableFuture();
+        CompletableFuture.allOf(futures).get(30, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+        for (int i = 0; i < count; i++)
+            assertEquals(i * i, futures[i].get());
+        return elapsed;
+    }
+
+    void join(ClusterNode node1, ClusterNode node2) throws InterruptedException {
+        Cluster.get(node1.getGenesis().getSystem()).join(Cluster.get(node1.getGenesis().getSystem()).selfAddress());
+        Cluster.get(node2.getGenesis().getSystem()).join(Cluster.get(node1.getGenesis().getSystem()).selfAddress());
+        long deadline = System.currentTimeMillis() + 20000L;
+        while (upMembers(node1) < 2 && System.currentTimeMillis() < deadline)
+            Thread.sleep(100L);
+        assertEquals(2, upMembers(node1));
+    }
+
+    // the service lives on the second node; calls from the first one go either directly to the implementation,
+    // because both nodes share the JVM, or through the remote actor.
+    @Test
+    public void localShortCircuit() throws Exception {
+        ClusterNode node1 = loopback();
+        ClusterNode node2 = loopback();
+        try {
+            join(node1, node2);
+            long deadline = System.currentTimeMillis() + 20000L;
+
+            AtomicInteger invoked = new AtomicInteger();
+            node2.getRegistry().register("square", args -> {
+                invoked.incrementAndGet();
+                int x = (Integer) args[0];
+                return x * x;
+            }, 0L);
+
+            // remote calls go through the registry codec
+            assertTrue(SerializationExtension.get(node1.getGenesis().getSystem())
+                    .findSerializerFor(new Events.Invocation("square", new Object[] {1})) instanceof RegistrySerializer);
+
+            Registry registry = node1.getRegistry();
+            while (registry.routees.get("square") == null && System.currentTimeMillis() < deadline)
+                Thread.sleep(100L);
+            assertNotNull(registry.routees.get("square"));
+
+            int count = 2000;
+            registry.setLocalInvocation(false);
+            roundTrips(registry, "square", 200); // warm up
+            long remote = roundTrips(registry, "square", count);
+
+            registry.setLocalInvocation(true);
+            roundTrips(registry, "square", 200);
+            long local = roundTrips(registry, "square", count);
+
+            assertEquals(2 * (count + 200), invoked.get());
+            System.out.println(String.format("%d calls: actor %d ms (%d calls/s), direct %d ms (%d calls/s)",
+                    count,
+                    TimeUnit.NANOSECONDS.toMillis(remote), count * 1000_000_000L / remote,
+                    TimeUnit.NANOSECONDS.toMillis(local), count * 1000_000_000L / local));
+        } finally {
+            node1.shutdown();
+            node2.shutdown();
+        }
+    }
+
+    // both nodes provide the service but the second one is slow; calls from the first node should favor itself.
+    @Test
+    public void routingPolicy() throws Exception {
+        ClusterNode node1 = loopback();
+        ClusterNode node2 = loopback();
+        try {
+            join(node1, node2);
+            AtomicInteger fast = new AtomicInteger();
+            AtomicInteger slow = new AtomicInteger();
+            node1.getRegistry().register("work", args -> fast.incrementAndGet(), 0L, RoutingPolicy.EWMA_LATENCY);
+            node2.getRegistry().register("work", args -> {
+                try {
+                    Thread.sleep(20L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return slow.incrementAndGet();
+            }, 0L, RoutingPolicy.EWMA_LATENCY);
+
+            Registry registry = node1.getRegistry();
+            long deadline = System.currentTimeMillis() + 20000L;
+            while (registry.getStatistics().getRoutees("work").size() < 2 && System.currentTimeMillis() < deadline)
+                Thread.sleep(100L);
+            assertEquals(2, registry.getStatistics().getRoutees("work").size());
+            assertEquals("EWMA_LATENCY", registry.getStatistics().getRoutingPolicies().get("work"));
+
+            Function<Object[], CompletionStage> function = registry.route("work", 5000L);
+            for (int i = 0; i < 200; i++)
+                function.apply(new Object[0]).toCompletableFuture().get(5, TimeUnit.SECONDS);
+            assertEquals(200, fast.get() + slow.get());
+            assertTrue(slow.get() < 50, "slow routee got " + slow.get() + " calls");
+            registry.getStatistics().getRoutees("work").forEach(System.out::println);
+
+            Object routees = JMXService.find("net.e6tech:type=Registry,name=" + ObjectName.quote(registry.selfAddress.toString()))
+                    .map(instance -> {
+                        try {
+                            return ManagementFactory.getPlatformMBeanServer().getAttribute(instance.getObjectName(), "Routees");
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }).orElse(null);
+            assertEquals(2, ((Object[]) routees).length);
+        } finally {
+            node1.shutdown();
+            node2.shutdown();
+        }
+    }
+
+    // a saturated service rejects calls right away while another service on the same node keeps responding.
+    @Test
+    public void bulkhead() throws Exception {
+        ClusterNode node1 = loopback();
+        ClusterNode node2 = loopback();
+        try {
+            join(node1, node2);
+            CountDownLatch release = new CountDownLatch(1);
+            node2.getRegistry().setBulkhead("slow", 2, 0);
+            node2.getRegistry().register("slow", args -> {
+                try {
+                    return release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }, 0L);
+            node2.getRegistry().register("fast", args -> args[0], 0L);
+
+            Registry registry = node1.getRegistry();
+            registry.setLocalInvocation(false);
+            long deadline = System.currentTimeMillis() + 20000L;
+            while ((registry.routees.get("slow") == null || registry.routees.get("fast") == null) && System.currentTimeMillis() < deadline)
+                Thread.sleep(100L);
+
+            CompletableFuture[] slow = new CompletableFuture[4];
+            for (int i = 0; i < slow.length; i++)
+                slow[i] = registry.route("slow", 5000L).apply(new Object[0]).toCompletableFuture();
+            int rejected = 0;
+            for (int i = 0; i < slow.length; i++) {
+                try {
+                    slow[i].get(50, TimeUnit.MILLISECONDS);
+                } catch (ExecutionException ex) {
+                    assertTrue(ex.getCause() instanceof RejectedExecutionException, ex.getCause().toString());
+                    rejected++;
+                } catch (TimeoutException ex) {
+                    // still running
+                }
+            }
+            assertEquals(2, rejected);
+            assertEquals("ok", registry.route("fast", 5000L).apply(new Object[] {"ok"}).toCompletableFuture().get(1, TimeUnit.SECONDS));
+
+            release.countDown();
+            Bulkhead bulkhead = node2.getRegistry().getBulkhead("slow");
+            assertEquals(2, bulkhead.getRejected());
+            System.out.println(bulkhead);
+        } finally {
+            node1.shutdown();
+            node2.shutdown();
+        }
+    }
+
+    @Test
+    public void batch() throws Exception {
+        ClusterNode node1 = loopback();
+        ClusterNode node2 = loopback();
+        try {
+            join(node1, node2);
+            List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+            node2.getRegistry().register("square", args -> {
+                int x = (Integer) args[0];
+                if (x < 0)
+                    throw new IllegalArgumentException("negative " + x);
+                order.add(x);
+                return x * x;
+            }, 0L);
+
+            Registry registry = node1.getRegistry();
+            registry.setLocalInvocation(false);
+            long deadline = System.currentTimeMillis() + 20000L;
+            while (registry.routees.get("square") == null && System.currentTimeMillis() < deadline)
+                Thread.sleep(100L);
+
+            for (boolean sequential : new boolean[] {false, true}) {
+                order.clear();
+                InvocationBatch batch = registry.batch("square", 5000L).sequential(sequential);
+                List<CompletableFuture<Object>> results = new ArrayList<>();
+                for (int i = 0; i < 20; i++)
+                    results.add(batch.add(i == 7 ? -7 : i).toCompletableFuture());
+                batch.send().toCompletableFuture().get(5, TimeUnit.SECONDS);
+                for (int i = 0; i < 20; i++) {
+                    if (i == 7) {
+                        ExecutionException ex = assertThrows(ExecutionException.class, () -> results.get(7).get());
+                        assertTrue(ex.getCause() instanceof IllegalArgumentException, ex.getCause().toString());
+                    } else {
+                        assertEquals(i * i, results.get(i).get());
+                    }
+                }
+                if (sequential) {
+                    List<Integer> expected = new ArrayList<>();
+                    for (int i = 0; i < 20; i++)
+                        if (i != 7)
+                            expected.add(i);
+                    assertEquals(expected, order);
+                }
+            }
+            assertTrue(registry.dispatches.isEmpty());
+            assertEquals(40, registry.getStatistics().getRoutees("square").get(0).getInvocations());
+            assertEquals(0, registry.getStatistics().getRoutees("square").get(0).getOutstanding());
+        } finally {
+            node1.shutdown();
+            node2.shutdown();
+        }
+    }
+
+    @Test
+    public void microBatching() throws Exception {
+        ClusterNode node1 = loopback();
+        ClusterNode node2 = loopback();
+        try {
+            join(node1, node2);
+            // the unbatched calls below all arrive at once
+            node2.getRegistry().setBulkhead("echo", 64, 4096);
+            node2.getRegistry().register("echo", args -> args[0], 0L);
+
+            Registry registry = node1.getRegistry();
+            registry.setLocalInvocation(false);
+            long deadline = System.currentTimeMillis() + 20000L;
+            while (registry.routees.get("echo") == null && System.currentTimeMillis() < deadline)
+                Thread.sleep(100L);
+
+            Function<Object[], CompletionStage> echo = registry.route("echo", 10000L);
+            int count = 2000;
+            echo.apply(new Object[] {-1}).toCompletableFuture().get(5, TimeUnit.SECONDS); // warm up
+            long start = System.nanoTime();
+            CompletableFuture[] unbatched = new CompletableFuture[count];
+            for (int i = 0; i < count; i++)
+                unbatched[i] = echo.apply(new Object[] {i}).toCompletableFuture();
+            CompletableFuture.allOf(unbatched).get(30, TimeUnit.SECONDS);
+            long unbatchedTime = System.nanoTime() - start;
+
+            registry.setBatchSize(100);
+            registry.setBatchWindow(5L);
+            start = System.nanoTime();
+            CompletableFuture[] batched = new CompletableFuture[count];
+            for (int i = 0; i < count; i++)
+                batched[i] = echo.apply(new Object[] {i}).toCompletableFuture();
+            CompletableFuture.allOf(batched).get(30, TimeUnit.SECONDS);
+            long batchedTime = System.nanoTime() - start;
+            for (int i = 0; i < count; i++)
+                assertEquals(i, batched[i].get());
+
+            // a call that does not fill a batch is sent when the window ends.
+            assertEquals("alone", echo.apply(new Object[] {"alone"}).toCompletableFuture().get(5, TimeUnit.SECONDS));
+            System.out.println(String.format("%d calls: unbatched %.1f ms, micro-batched %.1f ms", count,
+                    unbatchedTime / 1000_000d, batchedTime / 1000_000d));
+
+            // the batcher goes away with the route
+            assertTrue(registry.microBatchers.containsKey("echo#10000"));
+            registry.updateRoutees("echo", Collections.emptyList(), null);
+            assertTrue(registry.microBatchers.isEmpty());
+        } finally {
+            node1.shutdown();
+            node2.shutdown();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void simple1() throws Exception {
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.network.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoutingPolicyTest {
+
+    RouteeStatistics[] routees(int count) {
+        RouteeStatistics[] routees = new RouteeStatistics[count];
+        for (int i = 0; i < count; i++)
+            routees[i] = new RouteeStatistics("path", "routee" + i);
+        return routees;
+    }
+
+    void latency(RouteeStatistics routee, long millis) {
+        routee.begin();
+        routee.end(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(millis), false);
+    }
+
+    int[] distribution(RoutingPolicy policy, RouteeStatistics[] routees, int calls) {
+        int[] counts = new int[routees.length];
+        for (int i = 0; i < calls; i++)
+            counts[policy.select(routees, i)]++;
+        return counts;
+    }
+
+    @Test
+    void roundRobin() {
+        assertArrayEquals(new int[] {100, 100, 100}, distribution(RoutingPolicy.ROUND_ROBIN, routees(3), 300));
+        assertEquals(1, RoutingPolicy.ROUND_ROBIN.select(routees(3), Integer.MIN_VALUE + 1));
+    }
+
+    @Test
+    void leastOutstanding() {
+        RouteeStatistics[] routees = routees(3);
+        routees[0].begin();
+        routees[0].begin();
+        routees[2].begin();
+        for (int i = 0; i < 10; i++)
+            assertEquals(1, RoutingPolicy.LEAST_OUTSTANDING.select(routees, i));
+
+        // load reported by the routee counts even without calls from this caller
+        routees[1].reported(5, 1d);
+        assertEquals(2, RoutingPolicy.LEAST_OUTSTANDING.select(routees, 0));
+
+        // ties are spread
+        RouteeStatistics[] idle = routees(3);
+        assertArrayEquals(new int[] {1, 1, 1}, distribution(RoutingPolicy.LEAST_OUTSTANDING, idle, 3));
+    }
+
+    @Test
+    void ewmaLatency() {
+        RouteeStatistics[] routees = routees(2);
+        latency(routees[0], 1);
+        latency(routees[1], 20);
+        assertEquals(20d, routees[1].getAverageLatency(), 1d);
+        int[] counts = distribution(RoutingPolicy.EWMA_LATENCY, routees, 10000);
+        assertTrue(counts[1] < 1000, "slow routee picked " + counts[1] + " times");
+        assertTrue(counts[1] > 0);
+
+        // the average moves towards new samples
+        for (int i = 0; i < 20; i++)
+            latency(routees[1], 1);
+        assertEquals(1d, routees[1].getAverageLatency(), 1d);
+    }
+
+    @Test
+    void powerOfTwoChoices() {
+        RouteeStatistics[] routees = routees(2);
+        latency(routees[0], 1);
+        latency(routees[1], 1);
+        routees[1].reported(10, 1d);
+        assertArrayEquals(new int[] {100, 0}, distribution(RoutingPolicy.POWER_OF_TWO_CHOICES, routees, 100));
+
+        // with many routees the busiest one is never picked
+        RouteeStatistics[] many = routees(5);
+        many[3].reported(10, 1d);
+        int[] counts = distribution(RoutingPolicy.POWER_OF_TWO_CHOICES, many, 1000);
+        assertEquals(0, counts[3]);
+        assertEquals(0, RoutingPolicy.POWER_OF_TWO_CHOICES.select(routees(1), 7));
+    }
+
+    @Test
+    void failuresAddCost() {
+        RouteeStatistics[] routees = routees(2);
+        latency(routees[0], 10);
+        latency(routees[1], 10);
+        // routee 1 rejects calls right away
+        for (int i = 0; i < 10; i++) {
+            routees[1].begin();
+            routees[1].end(System.nanoTime(), true);
+        }
+        assertEquals(10d, routees[1].getAverageLatency(), 1d);
+        assertTrue(routees[1].getFailureRate() > 0.5d);
+        assertArrayEquals(new int[] {100, 0}, distribution(RoutingPolicy.POWER_OF_TWO_CHOICES, routees, 100));
+        int[] counts = distribution(RoutingPolicy.EWMA_LATENCY, routees, 10000);
+        assertTrue(counts[1] < 1000, "failing routee picked " + counts[1] + " times");
+
+        // the penalty fades once calls succeed again
+        for (int i = 0; i < 30; i++)
+            latency(routees[1], 10);
+        assertTrue(routees[1].getFailureRate() < 0.01d);
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.network.cluster.codec;
+
+import net.e6tech.elements.network.cluster.Events;
+import org.junit.jupiter.api.Test;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SuppressWarnings("all")
+public class BinaryCodecTest {
+    BinaryCodec codec = new BinaryCodec();
+
+    Object roundTrip(Object value) {
+        return codec.decode(codec.encode(value));
+    }
+
+    @Test
+    void scalars() {
+        Object[] values = { null, true, false, 0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, 0L, Long.MIN_VALUE, Long.MAX_VALUE,
+                (short) -7, (byte) 0x80, 'x', '中', 1.5f, Math.PI, Double.NaN, "", "hello", "héllo 世界 😀",
+                new BigInteger("-123456789012345678901234567890"), new BigDecimal("-1234.5678900"),
+                new Date(), UUID.randomUUID(), TimeUnit.SECONDS, LocalDate.of(2017, 6, 1) };
+        for (Object value : values)
+            assertEquals(value, roundTrip(value), String.valueOf(value));
+        assertEquals(Integer.class, roundTrip(5).getClass());
+        assertEquals(Long.class, roundTrip(5L).getClass());
+        assertEquals(2, codec.encode(-1).length);
+    }
+
+    @Test
+    void collections() {
+        List<Object> list = new ArrayList<>(Arrays.asList(1, "two", 3.0, null, Arrays.asList("a", "b")));
+        assertEquals(list, roundTrip(list));
+        Set<String> set = new LinkedHashSet<>(Arrays.asList("x", "y", "z"));
+        assertEquals(set, roundTrip(set));
+        Map<Object, Object> map = new LinkedHashMap<>();
+        map.put("a", 1);
+        map.put(2, Collections.singletonMap("nested", new TreeSet<>(Arrays.asList(3, 1, 2))));
+        assertEquals(map, roundTrip(map));
+
+        assertArrayEquals(new byte[] {1, 2, 3}, (byte[]) roundTrip(new byte[] {1, 2, 3}));
+        assertArrayEquals(new int[] {-1, 0, 300}, (int[]) roundTrip(new int[] {-1, 0, 300}));
+        assertArrayEquals(new long[] {Long.MIN_VALUE, 7}, (long[]) roundTrip(new long[] {Long.MIN_VALUE, 7}));
+        assertArrayEquals(new double[] {0.5, -2}, (double[]) roundTrip(new double[] {0.5, -2}));
+        assertArrayEquals(new boolean[] {true, false}, (boolean[]) roundTrip(new boolean[] {true, false}));
+        String[] strings = {"a", null, "c"};
+        Object decoded = roundTrip(strings);
+        assertEquals(String[].class, decoded.getClass());
+        assertArrayEquals(strings, (String[]) decoded);
+    }
+
+    @Test
+    void beans() {
+        Order order = order();
+        Order decoded = (Order) roundTrip(order);
+        assertEquals(order, decoded);
+        assertNull(decoded.note);
+        assertEquals(Status.OPEN, decoded.status);
+
+        // class and property names are written once
+        List<Order> orders = Arrays.asList(order(), order(), order());
+        byte[] one = codec.encode(Collections.singletonList(order()));
+        byte[] three = codec.encode(orders);
+        assertTrue(three.length < 3 * one.length * 0.8, one.length + " vs " + three.length);
+        assertEquals(orders, roundTrip(orders));
+
+        // no default constructor but Serializable
+        Immutable immutable = new Immutable("x", 1);
+        assertEquals(immutable, roundTrip(immutable));
+    }
+
+    @Test
+    void polymorphicFields() {
+        Envelope envelope = new Envelope();
+        envelope.payload = order();
+        envelope.shape = new Circle(2.5);
+        envelope.shapes = new ArrayList<>(Arrays.asList(new Circle(1), new Circle(3)));
+        assertFalse(codec.isBean(Envelope.class));
+        assertTrue(codec.isBean(Order.class));
+
+        Envelope decoded = (Envelope) roundTrip(envelope);
+        assertEquals(order(), decoded.payload);
+        assertEquals(Circle.class, decoded.shape.getClass());
+        assertEquals(2.5, ((Circle) decoded.shape).radius);
+        assertEquals(Circle.class, decoded.shapes.get(1).getClass());
+        assertEquals(3.0, ((Circle) decoded.shapes.get(1)).radius);
+
+        // reached through a concrete property
+        Holder holder = new Holder();
+        holder.envelope = envelope;
+        assertFalse(codec.isBean(Holder.class));
+        assertEquals(Circle.class, ((Holder) roundTrip(holder)).envelope.shape.getClass());
+    }
+
+    @Test
+    void smallerThanJavaSerialization() {
+        Object[] arguments = { "customer-42", order() };
+        byte[] binary = codec.encode(arguments);
+        byte[] java = new JavaSerializationCodec().encode(arguments);
+        assertTrue(binary.length * 3 < java.length, binary.length + " vs " + java.length);
+        assertArrayEquals(arguments, (Object[]) codec.decode(binary));
+    }
+
+    @Test
+    void serializer() {
+        RegistrySerializer serializer = new RegistrySerializer(codec);
+        Events.Invocation invocation = new Events.Invocation("blah@X::request(Request)", new Object[] {order(), 7});
+        Events.Invocation decodedInvocation = (Events.Invocation) serializer.fromBinary(serializer.toBinary(invocation));
+        assertEquals(invocation.path(), decodedInvocation.path());
+        assertArrayEquals(invocation.arguments(), decodedInvocation.arguments());
+
+        Events.Invocation noArguments = (Events.Invocation) serializer.fromBinary(serializer.toBinary(new Events.Invocation("p", null)));
+        assertNull(noArguments.arguments());
+
+        Events.Response response = new Events.Response(Arrays.asList(order()), 3, 1.25);
+        Events.Response decodedResponse = (Events.Response) serializer.fromBinary(serializer.toBinary(response));
+        assertEquals(response.getValue(), decodedResponse.getValue());
+        assertEquals(3, decodedResponse.getPending());
+        assertEquals(1.25, decodedResponse.getServiceTime());
+    }
+
+    @Test
+    void batchSerializer() {
+        RegistrySerializer serializer = new RegistrySerializer(codec);
+        Object[][] arguments = { {order(), 1}, {}, {"x"} };
+        Events.BatchInvocation batch = new Events.BatchInvocation(42L, "blah", arguments, true);
+        Events.BatchInvocation decodedBatch = (Events.BatchInvocation) serializer.fromBinary(serializer.toBinary(batch));
+        assertEquals(42L, decodedBatch.id());
+        assertEquals("blah", decodedBatch.path());
+        assertTrue(decodedBatch.sequential());
+        assertEquals(3, decodedBatch.arguments().length);
+        for (int i = 0; i < arguments.length; i++)
+            assertArrayEquals(arguments[i], decodedBatch.arguments()[i]);
+
+        IllegalStateException failure = new IllegalStateException("bad", new IllegalArgumentException("cause"));
+        Events.BatchResponse response = new Events.BatchResponse(42L, new int[] {2, 0}, new Object[] {null, order()},
+                new Throwable[] {failure, null}, 5, 0.5);
+        Events.BatchResponse decodedResponse = (Events.BatchResponse) serializer.fromBinary(serializer.toBinary(response));
+        assertEquals(42L, decodedResponse.id());
+        assertArrayEquals(new int[] {2, 0}, decodedResponse.indices());
+        assertEquals(order(), decodedResponse.values()[1]);
+        assertEquals("bad", decodedResponse.failures()[0].getMessage());
+        assertEquals("cause", decodedResponse.failures()[0].getCause().getMessage());
+        assertNull(decodedResponse.failures()[1]);
+        assertEquals(5, decodedResponse.getPending());
+        assertEquals(0.5, decodedResponse.getServiceTime());
+
+        Events.BatchResponse noFailures = (Events.BatchResponse) serializer.fromBinary(serializer.toBinary(
+                new Events.BatchResponse(1L, new int[] {0}, new Object[] {"ok"}, null, 0, 0)));
+        assertNull(noFailures.failures());
+    }
+
+    static class Envelope implements Serializable {
+        private Object payload;
+        private Shape shape;
+        private List<Shape> shapes;
+    }
+
+    static class Holder implements Serializable {
+        private Envelope envelope;
+    }
+
+    abstract static class Shape implements Serializable {
+    }
+
+    static class Circle extends Shape {
+        private double radius;
+
+        Circle() {
+        }
+
+        Circle(double radius) {
+            this.radius = radius;
+        }
+    }
+
+    static Order order() {
+        Order order = new Order();
+        order.id = 1001L;
+        order.customer = "ACME";
+        order.amount = new BigDecimal("129.95");
+        order.status = Status.OPEN;
+        order.tags = new ArrayList<>(Arrays.asList("priority", "export"));
+        order.created = new Date(1496275200000L);
+        for (int i = 0; i < 3; i++) {
+            Line line = new Line();
+            line.sku = "SKU-" + i;
+            line.quantity = i + 1;
+            line.price = 9.99 * (i + 1);
+            order.lines.add(line);
+        }
+        order.attributes.put("channel", "web");
+        return order;
+    }
+
+    enum Status { OPEN, CLOSED }
+
+    static class Order implements Serializable {
+        private long id;
+        private String customer;
+        private BigDecimal amount;
+        private Status status;
+        private String note;
+        private Date created;
+        private List<String> tags;
+        private List<Line> lines = new ArrayList<>();
+        private Map<String, String> attributes = new HashMap<>();
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Order)) return false;
+            Order order = (Order) o;
+            return id == order.id && Objects.equals(customer, order.customer) && Objects.equals(amount, order.amount)
+                    && status == order.status && Objects.equals(note, order.note) && Objects.equals(created, order.created)
+                    && Objects.equals(tags, order.tags) && Objects.equals(lines, order.lines) && Objects.equals(attributes, order.attributes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, customer);
+        }
+    }
+
+    static class Line implements Serializable {
+        private String sku;
+        private int quantity;
+        private double price;
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Line)) return false;
+            Line line = (Line) o;
+            return quantity == line.quantity && Double.compare(line.price, price) == 0 && Objects.equals(sku, line.sku);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sku, quantity, price);
+        }
+    }
+
+    static class Immutable implements Serializable {
+        private final String name;
+        private final int value;
+
+        Immutable(String name, int value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Immutable && ((Immutable) o).name.equals(name) && ((Immutable) o).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, value);
+        }
+    }
+}
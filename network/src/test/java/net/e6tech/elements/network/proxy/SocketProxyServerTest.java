@@ -0,0 +1,256 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.network.proxy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SuppressWarnings("all")
+public class SocketProxyServerTest {
+
+    private ExecutorService executor;
+    private ServerSocket echoServer;
+
+    /**
+     * Echo server: copies everything back and, once the client half closes, finishes with "BYE" and closes.
+     */
+    @BeforeEach
+    public void setup() throws IOException {
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        echoServer = new ServerSocket(0, 1000);
+        executor.execute(() -> {
+            while (!echoServer.isClosed()) {
+                try {
+                    Socket socket = echoServer.accept();
+                    executor.execute(() -> echo(socket));
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        });
+    }
+
+    private void echo(Socket socket) {
+        try (Socket s = socket) {
+            InputStream in = s.getInputStream();
+            OutputStream out = s.getOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) >= 0)
+                out.write(buffer, 0, n);
+            out.write("BYE".getBytes());
+        } catch (IOException e) {
+            // client went away
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        echoServer.close();
+        executor.shutdownNow();
+    }
+
+    private SocketProxyServer proxy(boolean nonBlocking) {
+        SocketProxyServer proxy = new SocketProxyServer();
+        proxy.setRemoteHost("localhost");
+        proxy.setRemotePort(echoServer.getLocalPort());
+        proxy.setNonBlocking(nonBlocking);
+        proxy.setBufferSize(16 * 1024);
+        proxy.setBacklog(1000);
+        return proxy;
+    }
+
+    // writes the payload from another thread, half closes and reads everything back.
+    private byte[] roundTrip(int port, byte[] payload) throws Exception {
+        try (Socket socket = new Socket("localhost", port)) {
+            Future<?> writer = executor.submit(() -> {
+                OutputStream out = socket.getOutputStream();
+                out.write(payload);
+                socket.shutdownOutput();
+                return null;
+            });
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) >= 0)
+                received.write(buffer, 0, n);
+            writer.get();
+            return received.toByteArray();
+        }
+    }
+
+    private static byte[] expected(byte[] payload) {
+        byte[] expected = Arrays.copyOf(payload, payload.length + 3);
+        System.arraycopy("BYE".getBytes(), 0, expected, payload.length, 3);
+        return expected;
+    }
+
+    @Test
+    public void nonBlocking() throws Exception {
+        SocketProxyServer proxy = proxy(true);
+        proxy.start();
+        try {
+            byte[] payload = new byte[1024 * 1024];
+            new Random(1).nextBytes(payload);
+            // larger than the buffers so that backpressure kicks in, and the response after half close must arrive
+            assertArrayEquals(expected(payload), roundTrip(proxy.getLocalPort(), payload));
+            assertArrayEquals(expected(new byte[0]), roundTrip(proxy.getLocalPort(), new byte[0]));
+
+            ProxyStatistics statistics = proxy.getStatistics();
+            assertEquals(2, statistics.getTotalConnections());
+            assertEquals(payload.length, statistics.getBytesToRemote());
+            assertEquals(payload.length + 6, statistics.getBytesToClient());
+            waitFor(() -> statistics.getActiveConnections() == 0);
+        } finally {
+            proxy.stop();
+        }
+    }
+
+    @Test
+    public void maxConnections() throws Exception {
+        maxConnections(true);
+        maxConnections(false);
+    }
+
+    private void maxConnections(boolean nonBlocking) throws Exception {
+        SocketProxyServer proxy = proxy(nonBlocking);
+        proxy.setMaxConnections(1);
+        proxy.start();
+        try (Socket first = new Socket("localhost", proxy.getLocalPort())) {
+            waitFor(() -> proxy.getStatistics().getActiveConnections() == 1);
+            try (Socket second = new Socket("localhost", proxy.getLocalPort())) {
+                assertEquals(-1, second.getInputStream().read());
+            }
+            assertEquals(1, proxy.getStatistics().getRejectedConnections());
+        } finally {
+            proxy.stop();
+        }
+    }
+
+    // the remote server closes right away while the client keeps its side open.
+    @Test
+    public void halfCloseTimeout() throws Exception {
+        remoteClosesFirst(0L);
+        remoteClosesFirst(200L);
+    }
+
+    void remoteClosesFirst(long halfCloseTimeout) throws Exception {
+        try (ServerSocket closing = new ServerSocket(0)) {
+            executor.execute(() -> {
+                try (Socket socket = closing.accept()) {
+                    socket.getOutputStream().write("BYE".getBytes());
+                } catch (IOException e) {
+                    // test ended
+                }
+            });
+            SocketProxyServer proxy = proxy(false);
+            proxy.setRemotePort(closing.getLocalPort());
+            proxy.setHalfCloseTimeout(halfCloseTimeout);
+            proxy.start();
+            try (Socket socket = new Socket("localhost", proxy.getLocalPort())) {
+                // the client sees the response followed by end of stream while its own side is still open.
+                socket.setSoTimeout(5000);
+                ByteArrayOutputStream received = new ByteArrayOutputStream();
+                InputStream in = socket.getInputStream();
+                int b;
+                while ((b = in.read()) != -1)
+                    received.write(b);
+                assertEquals("BYE", received.toString());
+                waitFor(() -> proxy.getStatistics().getActiveConnections() == 0);
+            } finally {
+                proxy.stop();
+            }
+        }
+    }
+
+    @Test
+    public void unreachableRemote() throws Exception {
+        int port;
+        try (ServerSocket unused = new ServerSocket(0)) {
+            port = unused.getLocalPort();
+        }
+        SocketProxyServer proxy = proxy(true);
+        proxy.setRemotePort(port);
+        proxy.start();
+        try (Socket socket = new Socket("localhost", proxy.getLocalPort())) {
+            assertEquals(-1, socket.getInputStream().read());
+            waitFor(() -> proxy.getStatistics().getActiveConnections() == 0);
+        } finally {
+            proxy.stop();
+        }
+    }
+
+    /**
+     * Loopback load test comparing the two modes: many concurrent connections, each pushing a payload
+     * through the proxy to the echo server and back.
+     */
+    @Test
+    public void load() throws Exception {
+        int connections = 200;
+        byte[] payload = new byte[256 * 1024];
+        new Random(2).nextBytes(payload);
+        for (boolean nonBlocking : new boolean[] {false, true}) {
+            SocketProxyServer proxy = proxy(nonBlocking);
+            proxy.start();
+            try {
+                long start = System.nanoTime();
+                List<Future<byte[]>> futures = new ArrayList<>();
+                for (int i = 0; i < connections; i++)
+                    futures.add(executor.submit(() -> roundTrip(proxy.getLocalPort(), payload)));
+                byte[] expected = expected(payload);
+                for (Future<byte[]> future : futures)
+                    assertArrayEquals(expected, future.get(60, TimeUnit.SECONDS));
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                long bytes = proxy.getStatistics().getBytesToRemote() + proxy.getStatistics().getBytesToClient();
+                System.out.println((nonBlocking ? "non-blocking" : "thread per connection") + ": " + connections
+                        + " connections, " + elapsed + "ms, " + (bytes / 1024 / Math.max(elapsed, 1)) + " KB/ms");
+                assertEquals(connections, proxy.getStatistics().getTotalConnections());
+            } finally {
+                proxy.stop();
+            }
+        }
+    }
+
+    private static void waitFor(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.call()) {
+            if (System.currentTimeMillis() > deadline)
+                fail("condition not met");
+            Thread.sleep(10);
+        }
+    }
+}
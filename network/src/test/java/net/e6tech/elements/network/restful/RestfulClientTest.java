@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.network.restful;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.NotFoundException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SuppressWarnings("all")
+public class RestfulClientTest {
+
+    private HttpServer server;
+    private Set<Integer> remotePorts = ConcurrentHashMap.newKeySet();
+    private List<String> transferEncodings = new CopyOnWriteArrayList<>();
+    private CountDownLatch release = new CountDownLatch(0);
+    private RestfulClient client;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 100);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/echo", this::echo);
+        server.createContext("/slow", exchange -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            echo(exchange);
+        });
+        server.start();
+        client = new RestfulClient("http://localhost:" + server.getAddress().getPort());
+    }
+
+    private void echo(HttpExchange exchange) throws IOException {
+        remotePorts.add(exchange.getRemoteAddress().getPort());
+        String encoding = exchange.getRequestHeaders().getFirst("Transfer-encoding");
+        if (encoding != null)
+            transferEncodings.add(encoding);
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) >= 0)
+                out.write(buffer, 0, n);
+            body = out.toByteArray();
+        }
+        if (body.length == 0)
+            body = "{\"method\":\"GET\"}".getBytes();
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    public void keepAlive() throws Throwable {
+        for (int i = 0; i < 10; i++) {
+            Response response = client.get("echo");
+            assertEquals("GET", response.read(Map.class).get("method"));
+        }
+        assertEquals(1, remotePorts.size());
+    }
+
+    @Test
+    public void streaming() throws Throwable {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("name", "elements");
+        data.put("items", Arrays.asList(1, 2, 3));
+        // Content-Length by default
+        Response response = client.put("echo", data);
+        assertEquals(data, response.read(Map.class));
+        assertTrue(transferEncodings.isEmpty());
+
+        ((URLConnectionTransport) client.getTransport()).setChunkedStreaming(true);
+        response = client.post("echo", data);
+        assertEquals(data, response.read(Map.class));
+        assertTrue(transferEncodings.contains("chunked"));
+    }
+
+    @Test
+    public void notFound() throws Throwable {
+        assertThrows(NotFoundException.class, () -> client.get("missing"));
+        // the error body was drained so the connection is still reusable
+        client.get("echo");
+        client.get("echo");
+        assertEquals(1, remotePorts.size());
+    }
+
+    @Test
+    public void maxConnections() throws Throwable {
+        URLConnectionTransport transport = (URLConnectionTransport) client.getTransport();
+        transport.setMaxConnections(1);
+        transport.setPoolTimeout(100);
+        release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Response> slow = executor.submit(() -> {
+                try {
+                    return client.get("slow");
+                } catch (Throwable throwable) {
+                    throw new ExecutionException(throwable);
+                }
+            });
+            while (transport.getAvailableConnections() != 0)
+                Thread.sleep(5);
+            assertThrows(IOException.class, () -> client.get("echo"));
+            release.countDown();
+            assertEquals(200, slow.get(5, TimeUnit.SECONDS).getResponseCode());
+            assertEquals(1, transport.getAvailableConnections());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.persist.criteria;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compiles criteria against a Hibernate SessionFactory without a database; nothing is executed.
+ */
+@SuppressWarnings("all")
+public class QueryPlanCacheTest {
+
+    private static StandardServiceRegistry registry;
+    private static SessionFactory factory;
+    private EntityManager em;
+
+    @BeforeAll
+    public static void setupFactory() {
+        registry = new StandardServiceRegistryBuilder()
+                .applySetting("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+                .build();
+        factory = new MetadataSources(registry)
+                .addAnnotatedClass(Employee.class)
+                .addAnnotatedClass(Department.class)
+                .buildMetadata()
+                .buildSessionFactory();
+    }
+
+    @AfterAll
+    public static void closeFactory() {
+        factory.close();
+        StandardServiceRegistryBuilder.destroy(registry);
+    }
+
+    @BeforeEach
+    public void setup() {
+        em = factory.createEntityManager();
+        QueryPlanCache.getInstance().setEnabled(true);
+        QueryPlanCache.getInstance().clear();
+    }
+
+    Select<Employee> byName(String name, int age) {
+        return Select.create(em, Employee.class).where(e -> {
+            e.setName(name);
+            e.getDepartment().setName("dept");
+        }).where((select, e) -> {
+            select.greaterThan().setAge(age);
+            select.desc(e::getAge);
+        });
+    }
+
+    String jpql(Select select) {
+        Query query = select.createQuery();
+        return query.unwrap(org.hibernate.query.Query.class).getQueryString();
+    }
+
+    @Test
+    public void sameShape() {
+        QueryPlanCache cache = QueryPlanCache.getInstance();
+        long hits = cache.getHitCount();
+        long misses = cache.getMissCount();
+
+        Select<Employee> first = byName("alice", 30);
+        Select<Employee> second = byName("bob", 40);
+        QueryPlan plan = first.getQueryPlan();
+        assertSame(plan, second.getQueryPlan());
+        assertEquals(3, plan.getParameterCount());
+        assertEquals(misses + 1, cache.getMissCount());
+        assertEquals(hits + 1, cache.getHitCount());
+
+        Query query = second.createQuery();
+        assertTrue(query.getParameters().size() == 3);
+        assertTrue(query.getParameterValue("p0").equals("bob"));
+        assertTrue(query.getParameterValue("p2").equals(40));
+        String jpql = jpql(second);
+        assertFalse(jpql.contains("bob"));
+        assertFalse(jpql.contains("40"));
+        assertTrue(jpql.contains("order by"));
+    }
+
+    @Test
+    public void differentShapes() {
+        QueryPlan plan = byName("alice", 30).getQueryPlan();
+        Select<Employee> select = Select.create(em, Employee.class).where((s, e) -> s.lessThan().setAge(30));
+        assertNotSame(plan, select.getQueryPlan());
+
+        // null is rendered as a literal and is part of the shape
+        QueryPlan nullName = Select.create(em, Employee.class).where(e -> e.setName(null)).getQueryPlan();
+        assertEquals(0, nullName.getParameterCount());
+        assertNotSame(nullName, Select.create(em, Employee.class).where(e -> e.setName("x")).getQueryPlan());
+    }
+
+    @Test
+    public void in() {
+        Select<Employee> two = Select.create(em, Employee.class).where((s, e) -> s.in(Arrays.asList(1, 2)).getAge());
+        Select<Employee> other = Select.create(em, Employee.class).where((s, e) -> s.in(Arrays.asList(3, 4)).getAge());
+        Select<Employee> three = Select.create(em, Employee.class).where((s, e) -> s.in(Arrays.asList(1, 2, 3)).getAge());
+        assertSame(two.getQueryPlan(), other.getQueryPlan());
+        assertNotSame(two.getQueryPlan(), three.getQueryPlan());
+        assertEquals(3, other.createQuery().getParameterValue("p0"));
+    }
+
+    @Test
+    public void orAndSelections() {
+        Select<Employee> select = Select.create(em, Employee.class);
+        select.where((s, e) -> s.or(() -> {
+            e.setName("a");
+            e.setName("b");
+        })).select(Employee::getName).select(Employee::getAge);
+        String jpql = jpql(select);
+        assertTrue(jpql.contains(" or "));
+        assertEquals(2, select.getQueryPlan().getParameterCount());
+
+        Select<Employee> count = Select.create(em, Employee.class);
+        count.count();
+        assertTrue(jpql(count).contains("count("));
+    }
+
+    @Test
+    public void joins() {
+        Select<Employee> select = Select.create(em, Employee.class);
+        select.<Department>join(() -> select.getTemplate().getDepartment(), (s, d) -> d.setName("sales"));
+        select.leftFetch(() -> select.getTemplate().getDepartment());
+        select.crossJoinManyToOneWhere(Department.class, Employee::getDepartment, d -> d.setId(1L));
+        String jpql = jpql(select);
+        assertTrue(jpql.contains("join"));
+        assertTrue(jpql.contains("fetch"));
+        assertSame(select.getQueryPlan(), select.getQueryPlan());
+    }
+
+    @Test
+    public void materialized() {
+        QueryPlanCache cache = QueryPlanCache.getInstance();
+        long uncacheable = cache.getUncacheableCount();
+        Select<Employee> select = Select.create(em, Employee.class).where(e -> e.setName("x"));
+        select.select(select.getBuilder().upper(select.path(Employee::getName)));
+        QueryPlan plan = select.getQueryPlan();
+        assertNotSame(plan, select.getQueryPlan());
+        assertEquals(uncacheable + 2, cache.getUncacheableCount());
+        assertEquals(0, cache.getSize());
+        assertTrue(jpql(select).contains("upper"));
+    }
+
+    @Test
+    public void deprecatedConstructors() {
+        CriteriaBuilder builder = em.getCriteriaBuilder();
+        CriteriaQuery<Employee> query = builder.createQuery(Employee.class);
+        Root<Employee> root = query.from(Employee.class);
+        Where<Employee> where = new Where<>(em, builder, query, root);
+        where.getTemplate().setName("carol");
+        where.onQuery();
+        assertEquals(1, where.getPredicates().size());
+        String jpql = em.createQuery(query.select(root)).unwrap(org.hibernate.query.Query.class).getQueryString();
+        assertTrue(jpql.contains(".name="), jpql);
+
+        CriteriaQuery<Employee> legacy = builder.createQuery(Employee.class);
+        Root<Employee> legacyRoot = legacy.from(Employee.class);
+        Select<Employee> select = new Select<>(new Where<>(em, builder, legacy, legacyRoot), legacyRoot);
+        select.where(e -> e.setAge(40)).desc(select.getTemplate()::getName);
+        QueryPlanCache cache = QueryPlanCache.getInstance();
+        long uncacheable = cache.getUncacheableCount();
+        assertEquals(0, select.getQueryPlan().getParameterCount());
+        assertEquals(uncacheable + 1, cache.getUncacheableCount());
+        assertTrue(jpql(select).contains("order by"));
+    }
+}
@@ -21,48 +21,50 @@ import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.Predicate;
 
 /**
+ * Values may be literals or expressions, e.g. a ParameterExpression from a compiled QueryPlan.
+ *
  * Created by futeh.
  */
-@SuppressWarnings("squid:S00115")
+@SuppressWarnings({"squid:S00115", "unchecked"})
 public enum Comparison {
     equal {
         Predicate compare(CriteriaBuilder builder, Expression expression, Object object) {
-            return builder.equal(expression, object);
+            return (object instanceof Expression) ? builder.equal(expression, (Expression) object) : builder.equal(expression, object);
         }
     },
     not_equal {
         Predicate compare(CriteriaBuilder builder, Expression expression, Object object) {
-            return builder.notEqual(expression, object);
+            return (object instanceof Expression) ? builder.notEqual(expression, (Expression) object) : builder.notEqual(expression, object);
         }
     },
     less_than {
         Predicate compare(CriteriaBuilder builder, Expression expression, Object object) {
-            return builder.lessThan(expression, (Comparable) object);
+            return (object instanceof Expression) ? builder.lessThan(expression, (Expression) object) : builder.lessThan(expression, (Comparable) object);
         }
     },
     less_than_or_equal {
         Predicate compare(CriteriaBuilder builder, Expression expression, Object object) {
-            return builder.lessThanOrEqualTo(expression, (Comparable) object);
+            return (object instanceof Expression) ? builder.lessThanOrEqualTo(expression, (Expression) object) : builder.lessThanOrEqualTo(expression, (Comparable) object);
         }
     },
     greater_than {
         Predicate compare(CriteriaBuilder builder, Expression expression, Object object) {
-            return builder.greaterThan(expression, (Comparable) object);
+            return (object instanceof Expression) ? builder.greaterThan(expression, (Expression) object) : builder.greaterThan(expression, (Comparable) object);
         }
     },
     greater_than_or_equal {
         Predicate compare(CriteriaBuilder builder, Expression expression, Object object) {
-            return builder.greaterThanOrEqualTo(expression, (Comparable) object);
+            return (object instanceof Expression) ? builder.greaterThanOrEqualTo(expression, (Expression) object) : builder.greaterThanOrEqualTo(expression, (Comparable) object);
         }
     },
     like {
         Predicate compare(CriteriaBuilder builder, Expression expression, Object object) {
-            return builder.like(expression, (String) object);
+            return (object instanceof Expression) ? builder.like(expression, (Expression) object) : builder.like(expression, (String) object);
         }
     },
     in {
         Predicate compare(CriteriaBuilder builder, Expression expression, Object object) {
-            return builder.in(expression).value(object);
+            return (object instanceof Expression) ? builder.in(expression).value((Expression) object) : builder.in(expression).value(object);
         }
     };
     abstract Predicate compare(CriteriaBuilder builder, Expression expression, Object object);
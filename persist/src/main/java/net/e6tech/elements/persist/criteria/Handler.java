@@ -25,55 +25,87 @@ import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Path;
 
 /**
+ * Handlers record into a QueryShape.  getBuilder, getQuery and getPath return live criteria objects and
+ * therefore materialize the shape; the resulting query is not cached.
+ *
  * Created by futeh.
  */
 public abstract class Handler implements InterceptorHandler {
 
     static Interceptor interceptor = Interceptor.getInstance();
 
-    private EntityManager entityManager;
-    private CriteriaBuilder builder;
-    private CriteriaQuery query;
-    private Path path;
+    QueryShape shape;
+    QueryShape.PathRef path;
 
-    public Handler(EntityManager entityManager, CriteriaBuilder builder, CriteriaQuery query, Path path) {
-        this.entityManager = entityManager;
-        this.builder = builder;
-        this.query = query;
+    Handler(QueryShape shape, QueryShape.PathRef path) {
+        this.shape = shape;
         this.path = path;
     }
 
+    /**
+     * @deprecated use Select.create.  Works on the supplied criteria; the query is not cached.
+     */
+    @Deprecated
+    public Handler(EntityManager entityManager, CriteriaBuilder builder, CriteriaQuery query, Path path) {
+        this.shape = new QueryShape(entityManager, builder, query);
+        this.path = shape.live(path).ref();
+    }
+
     public EntityManager getEntityManager() {
-        return entityManager;
+        return shape.getEntityManager();
     }
 
+    /**
+     * @deprecated the entity manager is given to Select.create.
+     */
+    @Deprecated
     public void setEntityManager(EntityManager entityManager) {
-        this.entityManager = entityManager;
+        shape.setEntityManager(entityManager);
     }
 
     public CriteriaBuilder getBuilder() {
-        return builder;
+        return shape.materialize().builder;
     }
 
+    /**
+     * @deprecated materializes the query, which is then not cached.
+     */
+    @Deprecated
     public void setBuilder(CriteriaBuilder builder) {
-        this.builder = builder;
+        shape.materialize().builder = builder;
     }
 
     public CriteriaQuery getQuery() {
-        return query;
+        return shape.materialize().query;
     }
 
+    /**
+     * @deprecated materializes the query, which is then not cached.
+     */
+    @Deprecated
     public void setQuery(CriteriaQuery query) {
-        this.query = query;
+        shape.materialize().query = query;
     }
 
     public Path getPath() {
-        return path;
+        return shape.materialize().path(path);
     }
 
+    /**
+     * @deprecated materializes the query, which is then not cached.
+     */
+    @Deprecated
     public void setPath(Path path) {
-        this.path = path;
+        this.path = shape.live(path).ref();
     }
 
-    public abstract void onQuery();
+    /**
+     * Applies what the handler recorded to the query returned by getQuery.
+     *
+     * @deprecated queries are built when a Select is executed.
+     */
+    @Deprecated
+    public void onQuery() {
+        // nothing recorded by default
+    }
 }
@@ -23,12 +23,9 @@ import net.e6tech.elements.common.reflection.Reflection;
 import javax.persistence.EntityManager;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Order;
 import javax.persistence.criteria.Path;
 import java.beans.PropertyDescriptor;
 import java.lang.reflect.Modifier;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Created by futeh.
@@ -36,15 +33,26 @@ import java.util.List;
 public class OrderBy<T> extends Handler {
 
     boolean desc = true;
-    List<Order> orderByList = new ArrayList<>();
     T template;
+    Class type;
 
+    OrderBy(QueryShape shape, QueryShape.PathRef path, Class type) {
+        super(shape, path);
+        this.type = type;
+    }
+
+    /**
+     * @deprecated use Select.asc or desc.  The query is not cached.
+     */
+    @Deprecated
     public OrderBy(EntityManager entityManager, CriteriaBuilder builder, CriteriaQuery query, Path path) {
         super(entityManager, builder, query, path);
-        template = interceptor.newInstance(path.getJavaType(), this);
+        this.type = path.getJavaType();
     }
 
     public T getTemplate() {
+        if (template == null)
+            template = interceptor.newInstance(type, this);
         return template;
     }
 
@@ -56,16 +64,12 @@ public class OrderBy<T> extends Handler {
     public Object invoke(CallFrame frame) throws Throwable {
         PropertyDescriptor descriptor = Reflection.propertyDescriptor(frame.getMethod());
         String property = descriptor.getName();
-        CriteriaBuilder builder = getBuilder();
         if (frame.getMethod().equals(descriptor.getReadMethod())) {
             // getter
             Class cls = frame.getMethod().getReturnType();
-            Order order = (this.desc) ? builder.desc(getPath().get(property))
-                    : builder.asc(getPath().get(property));
-            orderByList.add(order);
+            shape.getOrders().add(new QueryShape.OrderTerm(path.get(property), desc));
             if (!Modifier.isFinal(cls.getModifiers())) {
-                OrderBy orderBy = new OrderBy(getEntityManager(), getBuilder(), getQuery(), getPath());
-                orderBy.orderByList = orderByList;
+                OrderBy orderBy = new OrderBy(shape, path.get(property), cls);
                 orderBy.desc = this.desc;
                 return orderBy.getTemplate();
             }
@@ -77,9 +81,4 @@ public class OrderBy<T> extends Handler {
             throw new UnsupportedOperationException("Only accepts getter");
         }
     }
-
-    @Override
-    public void onQuery() {
-        // do nothing
-    }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.persist.criteria;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.ParameterExpression;
+import java.util.List;
+
+/**
+ * A compiled CriteriaQuery whose values are ParameterExpressions.  A plan is immutable once compiled and may be
+ * shared by EntityManagers of the same EntityManagerFactory; executing it only creates the query and binds
+ * the values.
+ */
+public class QueryPlan {
+    private final CriteriaQuery<?> criteriaQuery;
+    private final ParameterExpression[] parameters;
+
+    QueryPlan(CriteriaQuery<?> criteriaQuery, ParameterExpression[] parameters) {
+        this.criteriaQuery = criteriaQuery;
+        this.parameters = parameters;
+    }
+
+    public CriteriaQuery<?> getCriteriaQuery() {
+        return criteriaQuery;
+    }
+
+    public int getParameterCount() {
+        return parameters.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Query createQuery(EntityManager entityManager, List<Object> values) {
+        if (values.size() != parameters.length)
+            throw new IllegalArgumentException("Expecting " + parameters.length + " values, got " + values.size());
+        Query query = entityManager.createQuery(criteriaQuery);
+        for (int i = 0; i < parameters.length; i++)
+            query.setParameter(parameters[i], values.get(i));
+        return query;
+    }
+}
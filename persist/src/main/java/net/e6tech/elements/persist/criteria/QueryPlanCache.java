@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.persist.criteria;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.e6tech.elements.common.logging.Logger;
+import net.e6tech.elements.common.resources.Provision;
+import net.e6tech.elements.jmx.JMXService;
+
+import javax.management.JMException;
+import javax.persistence.EntityManagerFactory;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches QueryPlans by EntityManagerFactory and query shape.  The shared instance is registered as
+ * net.e6tech:type=QueryPlanCache.
+ */
+public class QueryPlanCache implements QueryPlanCacheMXBean {
+    public static final String OBJECT_NAME = "net.e6tech:type=QueryPlanCache";
+    public static final long DEFAULT_MAXIMUM_SIZE = 1000;
+    private static final Logger logger = Logger.getLogger();
+    private static final QueryPlanCache instance = new QueryPlanCache(DEFAULT_MAXIMUM_SIZE);
+
+    private final long maximumSize;
+    private final Cache<Key, QueryPlan> plans;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder uncacheable = new LongAdder();
+    private volatile boolean enabled = true;
+
+    static {
+        try {
+            JMXService.registerIfAbsent(OBJECT_NAME, () -> instance);
+        } catch (JMException e) {
+            logger.warn("Cannot register " + OBJECT_NAME, e);
+        }
+    }
+
+    public QueryPlanCache(long maximumSize) {
+        this.maximumSize = maximumSize;
+        plans = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .concurrencyLevel(Provision.cacheBuilderConcurrencyLevel)
+                .build();
+    }
+
+    public static QueryPlanCache getInstance() {
+        return instance;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Number of executions whose statement had been materialized and therefore bypassed the cache.
+     */
+    @Override
+    public long getUncacheableCount() {
+        return uncacheable.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 1.0 : (double) h / total;
+    }
+
+    @Override
+    public long getSize() {
+        return plans.size();
+    }
+
+    @Override
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled)
+            plans.invalidateAll();
+    }
+
+    @Override
+    public void clear() {
+        plans.invalidateAll();
+    }
+
+    QueryPlan getPlan(QueryShape shape) {
+        if (shape.isMaterialized() || !enabled) {
+            uncacheable.increment();
+            return shape.compile();
+        }
+
+        Key key = new Key(shape.getEntityManager().getEntityManagerFactory(), shape.key());
+        QueryPlan plan = plans.getIfPresent(key);
+        if (plan != null) {
+            hits.increment();
+            return plan;
+        }
+
+        // concurrent misses may compile the same shape more than once; the plans are equivalent.
+        misses.increment();
+        plan = shape.compile();
+        plans.put(key, plan);
+        return plan;
+    }
+
+    private static class Key {
+        private final EntityManagerFactory factory;
+        private final String shape;
+        private final int hash;
+
+        Key(EntityManagerFactory factory, String shape) {
+            this.factory = factory;
+            this.shape = shape;
+            this.hash = 31 * System.identityHashCode(factory) + shape.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key))
+                return false;
+            Key key = (Key) object;
+            return factory == key.factory && Objects.equals(shape, key.shape);
+        }
+    }
+}
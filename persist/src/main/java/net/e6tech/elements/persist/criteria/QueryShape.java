@@ -0,0 +1,611 @@
+/*
+ * Copyright 2015 Futeh Kao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.e6tech.elements.persist.criteria;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.*;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.PluralAttribute;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records what a Select describes, i.e. its roots, joins, predicates, selections, orderings and fetches,
+ * without touching the CriteriaBuilder.  Values passed to the templates are collected separately so that
+ * the shape, and therefore the compiled QueryPlan, can be shared by every execution that only differs in
+ * its values.
+ *
+ * Calling getBuilder, getQuery, getFrom or getPath on a statement hands out live criteria objects.  Once that
+ * happens the shape is materialized: criteria built by the caller cannot be described by the key, so the
+ * query is compiled against the materialized CriteriaQuery and is not cached.
+ *
+ * The deprecated constructors of the handlers and statements work on criteria supplied by the caller.  Their
+ * shape starts out materialized on that CriteriaQuery, refers to the supplied paths as live nodes and renders
+ * values as literals, as they were before queries were compiled into plans.
+ */
+@SuppressWarnings("unchecked")
+class QueryShape {
+
+    private EntityManager entityManager;
+    private List<Node> nodes = new ArrayList<>();
+    private List<Term> predicates = new ArrayList<>();
+    private List<Selector> selections = new ArrayList<>();
+    private List<OrderTerm> orders = new ArrayList<>();
+    private List<FetchTerm> fetches = new ArrayList<>();
+    private List<Object> values = new ArrayList<>();
+    private Context context;
+    private boolean literal;
+
+    QueryShape(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    QueryShape(EntityManager entityManager, CriteriaBuilder builder, CriteriaQuery query) {
+        this.entityManager = entityManager;
+        this.context = new Context(builder, query);
+        this.literal = true;
+    }
+
+    EntityManager getEntityManager() {
+        return entityManager;
+    }
+
+    void setEntityManager(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    boolean isLiteral() {
+        return literal;
+    }
+
+    List<Term> getPredicates() {
+        return predicates;
+    }
+
+    List<Selector> getSelections() {
+        return selections;
+    }
+
+    List<OrderTerm> getOrders() {
+        return orders;
+    }
+
+    List<Object> getValues() {
+        return values;
+    }
+
+    boolean isMaterialized() {
+        return context != null;
+    }
+
+    Node root(Class entityClass) {
+        return addNode(new Node(null, null, null, entityClass, entityClass));
+    }
+
+    Node join(Node parent, String property, JoinType joinType) {
+        return addNode(new Node(parent, property, joinType, null, attributeType(parent.javaType, property)));
+    }
+
+    /**
+     * Records a path built by the caller, e.g. a Root passed to a deprecated constructor.  The shape is
+     * materialized.
+     */
+    Node live(Path path) {
+        materialize();
+        Node node = new Node(null, null, null, null, path.getJavaType());
+        node.live = path;
+        return addNode(node);
+    }
+
+    void fetch(Node node, String property, JoinType joinType) {
+        fetches.add(new FetchTerm(node, property, joinType));
+    }
+
+    private Node addNode(Node node) {
+        node.index = nodes.size();
+        nodes.add(node);
+        return node;
+    }
+
+    /**
+     * Records a value and returns its parameter index.
+     */
+    int bind(Object value) {
+        values.add(value);
+        return values.size() - 1;
+    }
+
+    /*
+     * The Java type of an attribute as criteria would report it, i.e. the element type for a plural attribute.
+     */
+    private Class attributeType(Class owner, String property) {
+        ManagedType type = entityManager.getMetamodel().managedType(owner);
+        Attribute attribute = type.getAttribute(property);
+        if (attribute instanceof PluralAttribute)
+            return ((PluralAttribute) attribute).getElementType().getJavaType();
+        return attribute.getJavaType();
+    }
+
+    String key() {
+        StringBuilder builder = new StringBuilder(128);
+        for (Node node : nodes)
+            node.key(builder);
+        builder.append("|W");
+        for (Term term : predicates)
+            term.key(builder);
+        builder.append("|S");
+        for (Selector selector : selections)
+            selector.key(builder);
+        builder.append("|O");
+        for (OrderTerm order : orders)
+            order.key(builder);
+        builder.append("|F");
+        for (FetchTerm fetch : fetches)
+            fetch.key(builder);
+        return builder.toString();
+    }
+
+    Context materialize() {
+        if (context == null) {
+            CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+            context = new Context(builder, builder.createQuery());
+        }
+        return context;
+    }
+
+    /**
+     * Builds the CriteriaQuery described by this shape.  A materialized shape is compiled against its own
+     * CriteriaQuery, otherwise a new one is created.
+     */
+    QueryPlan compile() {
+        Context ctx = context;
+        if (ctx == null) {
+            CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+            ctx = new Context(builder, builder.createQuery());
+        }
+
+        CriteriaQuery query = ctx.query;
+        for (Node node : nodes) {
+            if (node.live == null)
+                ctx.from(node);
+        }
+
+        while (ctx.fetched < fetches.size()) {
+            FetchTerm fetch = fetches.get(ctx.fetched++);
+            ctx.from(fetch.node).fetch(fetch.property, fetch.joinType);
+        }
+
+        ParameterExpression[] parameters = new ParameterExpression[values.size()];
+        ctx.parameters = parameters;
+        if (!predicates.isEmpty())
+            query.where(predicates(ctx, predicates).toArray(new Predicate[0]));
+
+        if (!orders.isEmpty())
+            query.orderBy(orders(ctx));
+
+        if (selections.size() == 1) {
+            query.select(selections.get(0).selection(ctx));
+        } else if (!selections.isEmpty()) {
+            Selection[] array = new Selection[selections.size()];
+            for (int i = 0; i < array.length; i++)
+                array[i] = selections.get(i).selection(ctx);
+            query.multiselect(array);
+        } else {
+            query.select(ctx.from(nodes.get(0)));
+        }
+        return new QueryPlan(query, parameters);
+    }
+
+    static List<Predicate> predicates(Context ctx, List<Term> terms) {
+        List<Predicate> list = new ArrayList<>(terms.size());
+        for (Term term : terms)
+            list.add(term.predicate(ctx));
+        return list;
+    }
+
+    List<Order> orders(Context ctx) {
+        List<Order> list = new ArrayList<>(orders.size());
+        for (OrderTerm order : orders)
+            list.add(order.order(ctx));
+        return list;
+    }
+
+    static class Context {
+        CriteriaBuilder builder;
+        CriteriaQuery query;
+        List<From> froms = new ArrayList<>();
+        ParameterExpression[] parameters;
+        int fetched;
+
+        Context(CriteriaBuilder builder, CriteriaQuery query) {
+            this.builder = builder;
+            this.query = query;
+        }
+
+        From from(Node node) {
+            while (froms.size() <= node.index)
+                froms.add(null);
+            From from = froms.get(node.index);
+            if (from == null && node.live != null) {
+                from = (From) node.live;
+                froms.set(node.index, from);
+            } else if (from == null) {
+                if (node.parent == null)
+                    from = query.from(node.entityClass);
+                else
+                    from = from(node.parent).join(node.property, node.joinType);
+                froms.set(node.index, from);
+            }
+            return from;
+        }
+
+        Path path(PathRef ref) {
+            Path path = (ref.node.live != null) ? ref.node.live : from(ref.node);
+            for (String property : ref.properties)
+                path = path.get(property);
+            return path;
+        }
+
+        ParameterExpression parameter(int index, Class type) {
+            if (parameters[index] == null)
+                parameters[index] = builder.parameter(type, "p" + index);
+            return parameters[index];
+        }
+    }
+
+    /**
+     * A root, or a join from another node.
+     */
+    static class Node {
+        int index;
+        Node parent;
+        String property;
+        JoinType joinType;
+        Class entityClass;
+        Class javaType;
+        Path live; // supplied by the caller
+
+        Node(Node parent, String property, JoinType joinType, Class entityClass, Class javaType) {
+            this.parent = parent;
+            this.property = property;
+            this.joinType = joinType;
+            this.entityClass = entityClass;
+            this.javaType = javaType;
+        }
+
+        PathRef ref() {
+            return new PathRef(this, new String[0]);
+        }
+
+        void key(StringBuilder builder) {
+            if (live != null)
+                builder.append('L').append(System.identityHashCode(live));
+            else if (parent == null)
+                builder.append('R').append(entityClass.getName());
+            else
+                builder.append('J').append(parent.index).append('.').append(property).append(':').append(joinType);
+            builder.append(';');
+        }
+    }
+
+    /**
+     * A property path relative to a node.
+     */
+    static class PathRef {
+        Node node;
+        String[] properties;
+
+        PathRef(Node node, String[] properties) {
+            this.node = node;
+            this.properties = properties;
+        }
+
+        PathRef get(String property) {
+            String[] array = new String[properties.length + 1];
+            System.arraycopy(properties, 0, array, 0, properties.length);
+            array[properties.length] = property;
+            return new PathRef(node, array);
+        }
+
+        void key(StringBuilder builder) {
+            builder.append(node.index);
+            for (String property : properties)
+                builder.append('.').append(property);
+        }
+    }
+
+    interface Term {
+        void key(StringBuilder builder);
+
+        Predicate predicate(Context context);
+    }
+
+    interface Selector {
+        void key(StringBuilder builder);
+
+        Selection selection(Context context);
+    }
+
+    /**
+     * path comparison value.  Null values and empty lists are rendered as literals, everything else
+     * becomes a parameter typed after the value; list elements are bound one parameter each.
+     */
+    static class Condition implements Term {
+        PathRef path;
+        Comparison comparison;
+        Object literal;
+        int index = -1;
+        Class[] types = new Class[0];
+
+        Condition(QueryShape shape, PathRef path, Comparison comparison, Object value) {
+            this.path = path;
+            this.comparison = comparison;
+            if (shape.isLiteral()) {
+                literal = value;
+            } else if (comparison == Comparison.in && value instanceof List && !((List) value).isEmpty() && !((List) value).contains(null)) {
+                List list = (List) value;
+                types = new Class[list.size()];
+                for (int i = 0; i < types.length; i++) {
+                    Object element = list.get(i);
+                    types[i] = element.getClass();
+                    int idx = shape.bind(element);
+                    if (index < 0)
+                        index = idx;
+                }
+            } else if (value != null && comparison != Comparison.in) {
+                types = new Class[] { value.getClass() };
+                index = shape.bind(value);
+            } else {
+                literal = value;
+            }
+        }
+
+        @Override
+        public void key(StringBuilder builder) {
+            builder.append('C');
+            path.key(builder);
+            builder.append(':').append(comparison).append(':');
+            if (types.length == 0)
+                builder.append(literal == null ? "null" : "[]");
+            for (Class type : types)
+                builder.append(type.getName()).append(',');
+            builder.append(';');
+        }
+
+        @Override
+        public Predicate predicate(Context context) {
+            Path current = context.path(path);
+            if (types.length == 0)
+                return comparison.compare(context.builder, current, literal);
+            if (comparison == Comparison.in) {
+                CriteriaBuilder.In in = context.builder.in(current);
+                for (int i = 0; i < types.length; i++)
+                    in.value(context.parameter(index + i, types[i]));
+                return in;
+            }
+            return comparison.compare(context.builder, current, context.parameter(index, types[0]));
+        }
+    }
+
+    static class Or implements Term {
+        List<Term> terms;
+
+        Or(List<Term> terms) {
+            this.terms = terms;
+        }
+
+        @Override
+        public void key(StringBuilder builder) {
+            builder.append("(");
+            for (Term term : terms)
+                term.key(builder);
+            builder.append(");");
+        }
+
+        @Override
+        public Predicate predicate(Context context) {
+            Predicate[] array = new Predicate[terms.size()];
+            for (int i = 0; i < array.length; i++)
+                array[i] = terms.get(i).predicate(context);
+            return context.builder.or(array);
+        }
+    }
+
+    /**
+     * A predicate built by the caller against the materialized query.
+     */
+    static class LiveTerm implements Term {
+        Predicate predicate;
+
+        LiveTerm(Predicate predicate) {
+            this.predicate = predicate;
+        }
+
+        @Override
+        public void key(StringBuilder builder) {
+            builder.append('L').append(System.identityHashCode(predicate)).append(';');
+        }
+
+        @Override
+        public Predicate predicate(Context context) {
+            return predicate;
+        }
+    }
+
+    /**
+     * Join condition between two roots.  For many-to-one, owner.property refers to the joined entity or its id;
+     * for one-to-many, joined.property refers to the owner or its id.
+     */
+    static class CrossJoinCondition implements Term {
+        Node owner;
+        Node joined;
+        String property;
+        boolean manyToOne;
+
+        CrossJoinCondition(Node owner, Node joined, String property, boolean manyToOne) {
+            this.owner = owner;
+            this.joined = joined;
+            this.property = property;
+            this.manyToOne = manyToOne;
+        }
+
+        @Override
+        public void key(StringBuilder builder) {
+            builder.append(manyToOne ? 'M' : 'N').append(owner.index).append('.').append(joined.index)
+                    .append('.').append(property).append(';');
+        }
+
+        @Override
+        public Predicate predicate(Context context) {
+            From from = context.from(owner);
+            From joinRoot = context.from(joined);
+            // the side that holds the property and the side it refers to
+            From holder = manyToOne ? from : joinRoot;
+            From target = manyToOne ? joinRoot : from;
+            Path path = holder.get(property);
+            if (path.getJavaType().equals(target.getJavaType()))
+                return context.builder.equal(path, target);
+
+            EntityType type = (EntityType) target.getModel();
+            String idAttribute = type.getId(type.getIdType().getJavaType()).getName();
+            if (!target.get(idAttribute).getJavaType().equals(path.getJavaType())) {
+                throw new IllegalArgumentException("Type mismatch: cannot join " + type.getName() + "." + idAttribute + " to " + path);
+            }
+            return context.builder.equal(target.get(idAttribute), path);
+        }
+    }
+
+    static class PathSelector implements Selector {
+        PathRef path;
+
+        PathSelector(PathRef path) {
+            this.path = path;
+        }
+
+        @Override
+        public void key(StringBuilder builder) {
+            builder.append('P');
+            path.key(builder);
+            builder.append(';');
+        }
+
+        @Override
+        public Selection selection(Context context) {
+            return context.path(path);
+        }
+    }
+
+    static class CountSelector implements Selector {
+        Node node;
+
+        CountSelector(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        public void key(StringBuilder builder) {
+            builder.append('#').append(node.index).append(';');
+        }
+
+        @Override
+        public Selection selection(Context context) {
+            return context.builder.count(context.from(node));
+        }
+    }
+
+    /**
+     * A selection built by the caller against the materialized query.
+     */
+    static class LiveSelector implements Selector {
+        Selection selection;
+
+        LiveSelector(Selection selection) {
+            this.selection = selection;
+        }
+
+        @Override
+        public void key(StringBuilder builder) {
+            builder.append('L').append(System.identityHashCode(selection)).append(';');
+        }
+
+        @Override
+        public Selection selection(Context context) {
+            return selection;
+        }
+    }
+
+    static class OrderTerm {
+        PathRef path;
+        boolean desc;
+
+        OrderTerm(PathRef path, boolean desc) {
+            this.path = path;
+            this.desc = desc;
+        }
+
+        void key(StringBuilder builder) {
+            builder.append(desc ? 'D' : 'A');
+            path.key(builder);
+            builder.append(';');
+        }
+
+        Order order(Context context) {
+            Path p = context.path(path);
+            return desc ? context.builder.desc(p) : context.builder.asc(p);
+        }
+    }
+
+    /**
+     * An ordering built by the caller against the materialized query.
+     */
+    static class LiveOrder extends OrderTerm {
+        Order live;
+
+        LiveOrder(Order live) {
+            super(null, !live.isAscending());
+            this.live = live;
+        }
+
+        @Override
+        void key(StringBuilder builder) {
+            builder.append('L').append(System.identityHashCode(live)).append(';');
+        }
+
+        @Override
+        Order order(Context context) {
+            return live;
+        }
+    }
+
+    static class FetchTerm {
+        Node node;
+        String property;
+        JoinType joinType;
+
+        FetchTerm(Node node, String property, JoinType joinType) {
+            this.node = node;
+            this.property = property;
+            this.joinType = joinType;
+        }
+
+        void key(StringBuilder builder) {
+            builder.append(node.index).append('.').append(property).append(':').append(joinType).append(';');
+        }
+    }
+}
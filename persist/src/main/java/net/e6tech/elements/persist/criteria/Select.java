@@ -22,9 +22,7 @@ import net.e6tech.elements.common.reflection.Reflection;
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
 import javax.persistence.criteria.*;
-import javax.persistence.metamodel.EntityType;
 import java.beans.PropertyDescriptor;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
@@ -32,6 +30,11 @@ import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
+ * A Select records the shape of the query as the templates are invoked and only builds criteria when the
+ * shape is seen for the first time.  Executions of the same shape reuse the compiled QueryPlan from
+ * QueryPlanCache and merely bind the values.  Calling getBuilder, getQuery, getFrom, path, select(Expression),
+ * sum or coalesce hands out live criteria objects, in which case the query is built for this Select alone.
+ *
  * Created by futeh.
  */
 public class Select<T> extends Statement<T> {
@@ -41,23 +44,36 @@ public class Select<T> extends Statement<T> {
     Select parent;
     int maxResults = -1;
     int firstResult = -1;
-    List<Selection<?>> selections = new ArrayList<>();
 
+    Select(Where<T> where, QueryShape.Node node) {
+        super(where, node);
+    }
+
+    protected Select(Select parent, Where<T> where, QueryShape.Node node) {
+        super(where, node);
+        this.parent = parent;
+    }
+
+    /**
+     * @deprecated use Select.create.  The query is not cached.
+     */
+    @Deprecated
     public Select(Where where, Root<T> root) {
-        super(where, root);
+        this(where, where.shape.live(root));
     }
 
+    /**
+     * @deprecated the query is not cached.
+     */
+    @Deprecated
     protected Select(Select parent, Where where, From<T, T> root) {
-        super(where, root);
-        this.parent = parent;
-        this.selections = parent.selections;
+        this(parent, where, where.shape.live(root));
     }
 
     public static <T> Select<T> create(EntityManager entityManager, Class<T> cls) {
-        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
-        CriteriaQuery query = builder.createQuery();
-        Root<T> root = query.from(cls);
-        Where<T> where = new Where(entityManager, builder, query, root);
+        QueryShape shape = new QueryShape(entityManager);
+        QueryShape.Node root = shape.root(cls);
+        Where<T> where = new Where<>(shape, root.ref(), cls);
         return new Select<>(where, root);
     }
 
@@ -76,66 +92,46 @@ public class Select<T> extends Statement<T> {
 
     public Select<T> where(Consumer<T> consumer) {
         consumer.accept(where.getTemplate());
-        where.onQuery();
         return this;
     }
 
     public Select<T> where(BiConsumer<Select<T>, T> consumer) {
         consumer.accept(this, where.getTemplate());
-        where.onQuery();
         return this;
     }
 
-    public <R> R getSingleResult() {
-        where.onQuery();
-        if (selections.size() == 1) {
-            getQuery().select((Selection<? extends T>) selections.get(0));
-        } else if (!selections.isEmpty()) {
-            getQuery().multiselect(selections);
-        } else {
-            getQuery().select(getFrom());
-        }
-
-        Query query = where.getEntityManager().createQuery(getQuery());
+    public QueryPlan getQueryPlan() {
+        return QueryPlanCache.getInstance().getPlan(where.shape);
+    }
+
+    protected Query createQuery() {
+        Query query = getQueryPlan().createQuery(where.getEntityManager(), where.shape.getValues());
         if (maxResults >= 0)
             query.setMaxResults(maxResults);
 
         if (firstResult >= 0)
             query.setFirstResult(firstResult);
+        return query;
+    }
 
-        return (R) query.getSingleResult();
+    public <R> R getSingleResult() {
+        return (R) createQuery().getSingleResult();
     }
 
     public <R> List<R> getResultList() {
-        where.onQuery();
-        if (selections.size() == 1) {
-            getQuery().select((Selection<? extends T>) selections.get(0));
-        } else if (!selections.isEmpty()) {
-            getQuery().multiselect(selections.toArray(new Selection[selections.size()]));
-        } else {
-            getQuery().select(getFrom());
-        }
-
-        Query query = where.getEntityManager().createQuery(getQuery());
-        if (maxResults >= 0)
-            query.setMaxResults(maxResults);
-
-        if (firstResult >= 0)
-            query.setFirstResult(firstResult);
-
-        return query.getResultList();
+        return createQuery().getResultList();
     }
 
     public Path path(Consumer<T> consumer) {
         Class<T> entityClass = Interceptor.getTargetClass(where.getTemplate());
-        AtomicReference<Path> ref = new AtomicReference<>();
-        T t = applyGetter(entityClass, ref::set);
+        AtomicReference<QueryShape.PathRef> ref = new AtomicReference<>();
+        T t = recordGetter(entityClass, ref::set);
         consumer.accept(t);
-        return ref.get();
+        return where.shape.materialize().path(ref.get());
     }
 
     public Select<T> selectEntity() {
-        selections.add(getFrom());
+        where.shape.getSelections().add(new QueryShape.PathSelector(node.ref()));
         return this;
     }
 
@@ -146,12 +142,13 @@ public class Select<T> extends Statement<T> {
     }
 
     public <R> Select<T> select(Expression<R> expression) {
-        selections.add(expression);
+        where.shape.materialize();
+        where.shape.getSelections().add(new QueryShape.LiveSelector(expression));
         return this;
     }
 
     public Select<T> select(Runnable runnable) {
-        Interceptor.setInterceptorHandler(where.getTemplate(), getter(path -> selections.add(path)));
+        Interceptor.setInterceptorHandler(where.getTemplate(), recorder(path -> where.shape.getSelections().add(new QueryShape.PathSelector(path))));
         runnable.run();
         Interceptor.setInterceptorHandler(where.getTemplate(), where);
         return this;
@@ -159,7 +156,7 @@ public class Select<T> extends Statement<T> {
 
     public Select<T> select(Consumer<T> consumer) {
         Class<T> entityClass = Interceptor.getTargetClass(where.getTemplate());
-        T t = applyGetter(entityClass, path -> selections.add(path));
+        T t = recordGetter(entityClass, path -> where.shape.getSelections().add(new QueryShape.PathSelector(path)));
         consumer.accept(t);
         return this;
     }
@@ -172,26 +169,12 @@ public class Select<T> extends Statement<T> {
         return crossJoinManyToOne(entityClass, joinCondition, nestedSelect -> nestedSelect.where(consumer));
     }
 
-    @SuppressWarnings("squid:S1188")
     public <R> Select<T> crossJoinManyToOne(Class<R> entityClass, Consumer<T> joinCondition, Consumer<Select<R>> consumer) {
-        From<R, R> jointRoot = getQuery().from(entityClass);
+        QueryShape.Node jointRoot = where.shape.root(entityClass);
         Interceptor.setInterceptorHandler(where.getTemplate(), frame -> {
             PropertyDescriptor desc = Reflection.propertyDescriptor(frame.getMethod());
-            String property = desc.getName();
             if (frame.getMethod().equals(desc.getReadMethod())) {
-                Predicate joinPredicate;
-                if (getFrom().get(property).getJavaType().equals(jointRoot.getJavaType())) {
-                    joinPredicate = getBuilder().equal(getFrom().get(property), jointRoot);
-                } else {
-                    EntityType type = (EntityType) jointRoot.getModel();
-                    String parentIdAttribute = type.getId(type.getIdType().getJavaType()).getName();
-                    if (!jointRoot.get(parentIdAttribute).getJavaType().equals(getFrom().get(property).getJavaType())) {
-                        throw new IllegalArgumentException("Type mismatch: cannot join " + type.getName() + "." + parentIdAttribute + " to " +
-                                getFrom().get(property));
-                    }
-                    joinPredicate = getBuilder().equal(jointRoot.get(parentIdAttribute), getFrom().get(property));
-                }
-                this.where.getPredicates().add(joinPredicate);
+                this.where.getTerms().add(new QueryShape.CrossJoinCondition(node, jointRoot, desc.getName(), true));
             } else {
                 throw new UnsupportedOperationException(GETTER_MSG);
             }
@@ -200,7 +183,7 @@ public class Select<T> extends Statement<T> {
         joinCondition.accept(getTemplate());
         Interceptor.setInterceptorHandler(where.getTemplate(), where);
 
-        Where<R> where = new Where<>(this.where, jointRoot);
+        Where<R> where = new Where<>(this.where, jointRoot.ref(), entityClass);
         Select<R> joinSelect = new Select<>(this, where, jointRoot);
         consumer.accept(joinSelect);
         return this;
@@ -214,26 +197,12 @@ public class Select<T> extends Statement<T> {
         return crossJoinOneToMany(entityClass, joinCondition, nestedSelect -> nestedSelect.where(consumer));
     }
 
-    @SuppressWarnings("squid:S1188")
     public <R> Select<T> crossJoinOneToMany(Class<R> entityClass, Consumer<R> joinCondition, Consumer<Select<R>> consumer) {
-        From<R, R> joinRoot = getQuery().from(entityClass);
+        QueryShape.Node joinRoot = where.shape.root(entityClass);
         R joinTemplate = Handler.interceptor.newInstance(entityClass,  frame -> {
             PropertyDescriptor desc = Reflection.propertyDescriptor(frame.getMethod());
-            String property = desc.getName();
             if (frame.getMethod().equals(desc.getReadMethod())) {
-                Predicate joinPredicate;
-                if (joinRoot.get(property).getJavaType().equals(getFrom().getJavaType())) {
-                    joinPredicate = getBuilder().equal(getFrom(), joinRoot.get(property));
-                } else {
-                    EntityType type = (EntityType) getFrom().getModel();
-                    String parentIdAttribute = type.getId(type.getIdType().getJavaType()).getName();
-                    if (!getFrom().get(parentIdAttribute).getJavaType().equals(joinRoot.get(property).getJavaType())) {
-                        throw new IllegalArgumentException("Type mismatch: cannot join " + type.getName() + "." + parentIdAttribute + " to " +
-                        joinRoot.get(property));
-                    }
-                    joinPredicate = getBuilder().equal(getFrom().get(parentIdAttribute), joinRoot.get(property));
-                }
-                this.where.getPredicates().add(joinPredicate);
+                this.where.getTerms().add(new QueryShape.CrossJoinCondition(node, joinRoot, desc.getName(), false));
             } else {
                 throw new UnsupportedOperationException(GETTER_MSG);
             }
@@ -241,7 +210,7 @@ public class Select<T> extends Statement<T> {
         });
         joinCondition.accept(joinTemplate);
 
-        Where<R> where = new Where<>(this.where, joinRoot);
+        Where<R> where = new Where<>(this.where, joinRoot.ref(), entityClass);
         Select<R> joinSelect = new Select<>(this, where, joinRoot);
         consumer.accept(joinSelect);
         return this;
@@ -276,8 +245,8 @@ public class Select<T> extends Statement<T> {
             PropertyDescriptor desc = Reflection.propertyDescriptor(frame.getMethod());
             String property = desc.getName();
             if (frame.getMethod().equals(desc.getReadMethod())) {
-                Join join = getFrom().join(property, type);
-                Where<R> where = new Where<>(this.where, join);
+                QueryShape.Node join = where.shape.join(node, property, type);
+                Where<R> where = new Where<>(this.where, join.ref(), join.javaType);
                 Select<R> joinSelect = new Select<>(this, where, join);
                 consumer.accept(joinSelect, where.getTemplate());
             } else {
@@ -317,7 +286,7 @@ public class Select<T> extends Statement<T> {
             PropertyDescriptor desc = Reflection.propertyDescriptor(frame.getMethod());
             String property = desc.getName();
             if (frame.getMethod().equals(desc.getReadMethod())) {
-                getFrom().fetch(property, type);
+                where.shape.fetch(node, property, type);
             } else {
                 throw new UnsupportedOperationException(GETTER_MSG);
             }
@@ -343,24 +312,22 @@ public class Select<T> extends Statement<T> {
     }
 
     public void count() {
-        selections.add(getBuilder().count(getFrom()));
+        where.shape.getSelections().add(new QueryShape.CountSelector(node));
     }
 
     public Select<T> asc(Runnable runnable) {
-        OrderBy<T> orderBy = new OrderBy(where.getEntityManager(), where.getBuilder(), where.getQuery(), getFrom());
+        OrderBy<T> orderBy = new OrderBy<>(where.shape, node.ref(), node.javaType);
         Interceptor.setInterceptorHandler(where.getTemplate(), orderBy);
         orderBy.desc = false;
-        orderBy.orderByList = where.orderByList;
         runnable.run();
         Interceptor.setInterceptorHandler(where.getTemplate(), where);
         return this;
     }
 
     public Select<T> desc(Runnable runnable) {
-        OrderBy<T> orderBy = new OrderBy(where.getEntityManager(), where.getBuilder(), where.getQuery(), getFrom());
+        OrderBy<T> orderBy = new OrderBy<>(where.shape, node.ref(), node.javaType);
         Interceptor.setInterceptorHandler(where.getTemplate(), orderBy);
         orderBy.desc = true;
-        orderBy.orderByList = where.orderByList;
         runnable.run();
         Interceptor.setInterceptorHandler(where.getTemplate(), where);
         return this;
@@ -22,7 +22,6 @@ import net.e6tech.elements.common.reflection.Reflection;
 
 import javax.persistence.criteria.*;
 import java.beans.PropertyDescriptor;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -32,11 +31,19 @@ import java.util.function.Consumer;
  */
 public class Statement<T> {
     Where<T> where;
-    From<T, T> from;
+    QueryShape.Node node;
 
-    public Statement(Where where, From<T, T> from) {
+    Statement(Where<T> where, QueryShape.Node node) {
         this.where = where;
-        this.from = from;
+        this.node = node;
+    }
+
+    /**
+     * @deprecated use Select.create.  The query is not cached.
+     */
+    @Deprecated
+    public Statement(Where where, From<T, T> from) {
+        this(where, where.shape.live(from));
     }
 
     public CriteriaBuilder getBuilder() {
@@ -51,24 +58,22 @@ public class Statement<T> {
         return where.getTemplate();
     }
 
+    /**
+     * Returns the live From for this statement.  This materializes the query so that it is no longer cached.
+     */
     public From<T, T> getFrom() {
-        return from;
+        return where.shape.materialize().from(node);
     }
 
     public void or(Runnable runnable) {
-        Where<T> wh = new Where(this.where, this.where.getPath());
-        wh.setTemplate(this.where.getTemplate());
+        Where<T> wh = this.where.branch();
         Interceptor.setInterceptorHandler(wh.getTemplate(), wh);
-        wh.predicates = new ArrayList<>();
         runnable.run();
         Interceptor.setInterceptorHandler(wh.getTemplate(), this.where);
 
-        List<Predicate> predicates = wh.getPredicates();
-        if (!predicates.isEmpty()) {
-            CriteriaBuilder builder = this.where.getBuilder();
-            Predicate predicate = builder.or(predicates.toArray(new Predicate[predicates.size()]));
-            this.where.getPredicates().add(predicate);
-        }
+        List<QueryShape.Term> predicates = wh.getTerms();
+        if (!predicates.isEmpty())
+            this.where.getTerms().add(new QueryShape.Or(predicates));
     }
 
     public T equalTo() {
@@ -85,10 +90,8 @@ public class Statement<T> {
 
     public T in(List list) {
         Class<T> entityClass = Interceptor.getTargetClass(where.getTemplate());
-        return applyGetter(entityClass, path ->  {
-            Predicate predicate = Comparison.in.compare(getBuilder(), path, list);
-            where.getPredicates().add(predicate);
-        });
+        return recordGetter(entityClass, path ->
+            where.getTerms().add(new QueryShape.Condition(where.shape, path, Comparison.in, list)));
     }
 
     public T lessThan() {
@@ -109,26 +112,48 @@ public class Statement<T> {
 
     protected T compare(T template, Comparison comparison) {
         Class<T> entityClass = Interceptor.getTargetClass(template);
-        return applySetter(entityClass, (path, args) ->  {
-            Predicate predicate = comparison.compare(getBuilder(), path, args[0]);
-            where.getPredicates().add(predicate);
-        });
+        return recordSetter(entityClass, (path, args) ->
+            where.getTerms().add(new QueryShape.Condition(where.shape, path, comparison, args[0])));
     }
 
-    protected  <R> R applySetter(Class<R> entityClass, BiConsumer<Path, Object[]> consumer) {
-        return Handler.interceptor.newInstance(entityClass, setter(consumer));
+    /**
+     * @deprecated hands out live paths, so the query is not cached.
+     */
+    @Deprecated
+    protected <R> R applySetter(Class<R> entityClass, BiConsumer<Path, Object[]> consumer) {
+        return recordSetter(entityClass, (ref, args) -> consumer.accept(where.shape.materialize().path(ref), args));
     }
 
-    protected <R> R applyGetter(Class<R> entityClass,  Consumer<Path> consumer) {
-        return Handler.interceptor.newInstance(entityClass, getter(consumer));
+    /**
+     * @deprecated hands out live paths, so the query is not cached.
+     */
+    @Deprecated
+    protected <R> R applyGetter(Class<R> entityClass, Consumer<Path> consumer) {
+        return recordGetter(entityClass, ref -> consumer.accept(where.shape.materialize().path(ref)));
     }
 
+    /**
+     * @deprecated hands out live paths, so the query is not cached.
+     */
+    @Deprecated
     protected InterceptorHandler getter(Consumer<Path> consumer) {
+        return recorder(ref -> consumer.accept(where.shape.materialize().path(ref)));
+    }
+
+    <R> R recordSetter(Class<R> entityClass, BiConsumer<QueryShape.PathRef, Object[]> consumer) {
+        return Handler.interceptor.newInstance(entityClass, setter(consumer));
+    }
+
+    <R> R recordGetter(Class<R> entityClass,  Consumer<QueryShape.PathRef> consumer) {
+        return Handler.interceptor.newInstance(entityClass, recorder(consumer));
+    }
+
+    InterceptorHandler recorder(Consumer<QueryShape.PathRef> consumer) {
         return frame -> {
             PropertyDescriptor desc = Reflection.propertyDescriptor(frame.getMethod());
             String property = desc.getName();
             if (frame.getMethod().equals(desc.getReadMethod())) {
-                consumer.accept(where.getPath().get(property));
+                consumer.accept(where.path.get(property));
             } else {
                 throw new UnsupportedOperationException("Only accepts getter");
             }
@@ -136,12 +161,12 @@ public class Statement<T> {
         };
     }
 
-    private InterceptorHandler setter(BiConsumer<Path, Object[]> consumer) {
+    private InterceptorHandler setter(BiConsumer<QueryShape.PathRef, Object[]> consumer) {
         return frame -> {
             PropertyDescriptor desc = Reflection.propertyDescriptor(frame.getMethod());
             String property = desc.getName();
             if (!frame.getMethod().equals(desc.getReadMethod())) {
-                consumer.accept(where.getPath().get(property), frame.getArguments());
+                consumer.accept(where.path.get(property), frame.getArguments());
             } else {
                 throw new UnsupportedOperationException("Only accepts setter");
             }
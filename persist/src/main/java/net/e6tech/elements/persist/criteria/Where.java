@@ -22,7 +22,11 @@ import net.e6tech.elements.common.reflection.Reflection;
 import net.e6tech.elements.common.util.datastructure.Pair;
 
 import javax.persistence.EntityManager;
-import javax.persistence.criteria.*;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
 import java.beans.PropertyDescriptor;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
@@ -40,24 +44,60 @@ public class Where<T> extends Handler {
     Where parent;
     T template;
     Comparison comparison = Comparison.equal;
-    List<Predicate> predicates = new ArrayList<>();
-    List<Order> orderByList = new ArrayList<>();
+    List<QueryShape.Term> predicates;
     Map<Pair, Function> converters = new HashMap<>();
 
-    public Where(Where parent, Path path) {
-        this(parent.getEntityManager(), parent.getBuilder(), parent.getQuery(), path);
+    Where(Where parent, QueryShape.PathRef path, Class type) {
+        super(parent.shape, path);
         this.parent = parent;
         this.predicates = parent.predicates;
         this.comparison = parent.getComparison();
-        this.orderByList = parent.getOrderByList();
         this.converters = parent.getConverters();
+        template = Handler.interceptor.newInstance(type, this);
+    }
+
+    Where(QueryShape shape, QueryShape.PathRef path, Class type) {
+        super(shape, path);
+        this.predicates = shape.getPredicates();
+        template = Handler.interceptor.newInstance(type, this);
+    }
+
+    /**
+     * @deprecated use Select.create.  The query is not cached.
+     */
+    @Deprecated
+    public Where(Where parent, Path path) {
+        this(parent, parent.shape.live(path).ref(), path.getJavaType());
     }
 
+    /**
+     * @deprecated use Select.create.  Works on the supplied criteria; values are rendered as literals and the
+     * query is not cached.  Call onQuery to apply the recorded predicates and orderings to it.
+     */
+    @Deprecated
     public Where(EntityManager entityManager, CriteriaBuilder builder, CriteriaQuery query, Path path) {
         super(entityManager, builder, query, path);
+        this.predicates = shape.getPredicates();
         template = Handler.interceptor.newInstance(path.getJavaType(), this);
     }
 
+    private Where(Where<T> other) {
+        super(other.shape, other.path);
+        this.parent = other.parent;
+        this.template = other.template;
+        this.comparison = other.comparison;
+        this.converters = other.converters;
+        this.predicates = new ArrayList<>();
+    }
+
+    /**
+     * Returns a Where on the same template and path that collects predicates into its own list,
+     * e.g. for a disjunction.
+     */
+    Where<T> branch() {
+        return new Where<>(this);
+    }
+
     public Map<Pair, Function> getConverters() {
         return converters;
     }
@@ -115,41 +155,73 @@ public class Where<T> extends Handler {
         this.comparison = comparison;
     }
 
-    public List<Predicate> getPredicates() {
+    List<QueryShape.Term> getTerms() {
         return predicates;
     }
 
+    /**
+     * @deprecated predicates are recorded, not built, as the template is invoked.  Returns a copy built against
+     * the materialized query, which is then not cached.
+     */
+    @Deprecated
+    public List<Predicate> getPredicates() {
+        return QueryShape.predicates(shape.materialize(), predicates);
+    }
+
+    /**
+     * @deprecated replaces the recorded predicates with ones built against the materialized query.
+     */
+    @Deprecated
     public void setPredicates(List<Predicate> predicates) {
-        this.predicates = predicates;
+        shape.materialize();
+        this.predicates.clear();
+        for (Predicate predicate : predicates)
+            this.predicates.add(new QueryShape.LiveTerm(predicate));
     }
 
+    /**
+     * @deprecated orderings are recorded by Select.asc and desc.  Returns a copy built against the materialized
+     * query, which is then not cached.
+     */
+    @Deprecated
     public List<Order> getOrderByList() {
-        return orderByList;
+        return shape.orders(shape.materialize());
     }
 
+    /**
+     * @deprecated replaces the recorded orderings with ones built against the materialized query.
+     */
+    @Deprecated
     public void setOrderByList(List<Order> orderByList) {
-        this.orderByList = orderByList;
+        shape.materialize();
+        shape.getOrders().clear();
+        for (Order order : orderByList)
+            shape.getOrders().add(new QueryShape.LiveOrder(order));
     }
 
+    /**
+     * @deprecated queries are built when a Select is executed.  Meant for a Where created with the deprecated
+     * constructor, whose values are literals.
+     */
+    @Deprecated
     @Override
     public void onQuery() {
-        if (!getPredicates().isEmpty()) {
-            getQuery().where(getPredicates().toArray(new Predicate[getPredicates().size()]));
-        }
-        if (!orderByList.isEmpty())
-            getQuery().orderBy(orderByList);
+        QueryShape.Context context = shape.materialize();
+        if (!predicates.isEmpty())
+            getQuery().where(QueryShape.predicates(context, predicates).toArray(new Predicate[0]));
+        if (!shape.getOrders().isEmpty())
+            getQuery().orderBy(shape.orders(context));
     }
 
     @Override
     public Object invoke(CallFrame frame) {
         PropertyDescriptor desc = Reflection.propertyDescriptor(frame.getMethod());
         String property = desc.getName();
-        CriteriaBuilder builder = getBuilder();
         if (frame.getMethod().equals(desc.getReadMethod())) {
             // getter
             Class cls = frame.getMethod().getReturnType();
             if (!Modifier.isFinal(cls.getModifiers())) {
-                Where where = new Where(this, getPath().get(property));
+                Where where = new Where(this, path.get(property), cls);
                 return where.getTemplate();
             }
             if (cls.isPrimitive()) {
@@ -158,8 +230,7 @@ public class Where<T> extends Handler {
             return null;
         } else {
             // setter
-            Path current = getPath().get(property);
-            Class javaType = current.getJavaType();
+            Class javaType = desc.getPropertyType();
             Object value = frame.getArguments()[0];
             if (value != null) {
                 Function function = converters.get(new Pair(value.getClass(), javaType));
@@ -167,7 +238,7 @@ public class Where<T> extends Handler {
                     value = function.apply(value);
             }
 
-            predicates.add(comparison.compare(builder, current, value));
+            predicates.add(new QueryShape.Condition(shape, path.get(property), comparison, value));
             return null;
         }
     }
@@ -19,20 +19,30 @@ import net.e6tech.elements.common.util.SystemException;
 
 import javax.crypto.Cipher;
 import java.security.*;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Instances are thread safe.  Ciphers and KeyFactories are kept per thread and shared by all instances
+ * of the same algorithm.
+ *
  * Created by futeh.
  */
 public class AsymmetricCipher {
 
     public static final String ALGORITHM_RSA = "RSA";
 
+    private static final Map<String, ThreadLocal<KeyFactory>> keyFactories = new ConcurrentHashMap<>();
+
     private String algorithm;
     private String transformation;
     private int keyLength;
     private boolean base64 = false;
-    private KeyFactory keyFactory;
+    private ThreadLocalCipher cipher;
+    private ThreadLocal<KeyFactory> keyFactory;
 
     static {
         SymmetricCipher.initialize();
@@ -42,11 +52,16 @@ public class AsymmetricCipher {
         this.algorithm = algorithm;
         this.transformation = algorithm + "/None/OAEPWithSHA256AndMGF1Padding";
         this.keyLength = keyLength;
-        try {
-            this.keyFactory = KeyFactory.getInstance(algorithm);
-        } catch (NoSuchAlgorithmException e) {
-            throw new SystemException(e);
-        }
+        this.cipher = ThreadLocalCipher.getInstance(transformation, "BC");
+        // shared by algorithm, like the Cipher, so that instances created per call reuse it.
+        this.keyFactory = keyFactories.computeIfAbsent(algorithm, a -> ThreadLocal.withInitial(() -> {
+            try {
+                return KeyFactory.getInstance(a);
+            } catch (NoSuchAlgorithmException e) {
+                throw new SystemException(e);
+            }
+        }));
+        keyFactory.get(); // fail early if the algorithm is not available
     }
 
     public static AsymmetricCipher getInstance(String algorithm) {
@@ -75,9 +90,22 @@ public class AsymmetricCipher {
     }
 
     public byte[] encryptBytes(PublicKey publicKey, byte[] plain) throws GeneralSecurityException {
-        Cipher cipher = Cipher.getInstance(transformation, "BC");
-        cipher.init(Cipher.ENCRYPT_MODE, publicKey);
-        return cipher.doFinal(plain);
+        return cipher.doFinal(Cipher.ENCRYPT_MODE, publicKey, null, plain);
+    }
+
+    public List<byte[]> encryptBytes(PublicKey publicKey, List<byte[]> plains) throws GeneralSecurityException {
+        List<byte[]> list = new ArrayList<>(plains.size());
+        for (byte[] plain : plains)
+            list.add(cipher.doFinal(Cipher.ENCRYPT_MODE, publicKey, null, plain));
+        return list;
+    }
+
+    public List<String> encrypt(PublicKey key, List<byte[]> plains) throws GeneralSecurityException {
+        List<byte[]> encrypted = encryptBytes(key, plains);
+        List<String> list = new ArrayList<>(encrypted.size());
+        for (byte[] bytes : encrypted)
+            list.add(base64 ? Base64.getEncoder().encodeToString(bytes) : Hex.toString(bytes));
+        return list;
     }
 
     public byte[] decrypt(PrivateKey key, String encrypted) throws GeneralSecurityException {
@@ -91,9 +119,21 @@ public class AsymmetricCipher {
     }
 
     public byte[] decryptBytes(PrivateKey privateKey, byte[] encrypted) throws GeneralSecurityException {
-        Cipher cipher = Cipher.getInstance(transformation, "BC");
-        cipher.init(Cipher.DECRYPT_MODE, privateKey);
-        return cipher.doFinal(encrypted);
+        return cipher.doFinal(Cipher.DECRYPT_MODE, privateKey, null, encrypted);
+    }
+
+    public List<byte[]> decryptBytes(PrivateKey privateKey, List<byte[]> encrypted) throws GeneralSecurityException {
+        List<byte[]> list = new ArrayList<>(encrypted.size());
+        for (byte[] bytes : encrypted)
+            list.add(cipher.doFinal(Cipher.DECRYPT_MODE, privateKey, null, bytes));
+        return list;
+    }
+
+    public List<byte[]> decrypt(PrivateKey key, List<String> encrypted) throws GeneralSecurityException {
+        List<byte[]> list = new ArrayList<>(encrypted.size());
+        for (String str : encrypted)
+            list.add(base64 ? Base64.getDecoder().decode(str) : Hex.toBytes(str));
+        return decryptBytes(key, list);
     }
 
     public KeyPair generateKeySpec() throws GeneralSecurityException{
@@ -102,7 +142,10 @@ public class AsymmetricCipher {
         return kpg.genKeyPair();
     }
 
+    /**
+     * KeyFactory is not thread safe; the returned instance belongs to the calling thread.
+     */
     public KeyFactory getKeyFactory() {
-        return keyFactory;
+        return keyFactory.get();
     }
 }
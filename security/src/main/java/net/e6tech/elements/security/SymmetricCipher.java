@@ -21,15 +21,22 @@ import net.e6tech.elements.common.util.SystemException;
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
-import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.security.*;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
 import java.util.Map;
 
 /**
+ * Instances are thread safe.  Each thread reuses its own Cipher for the transformation, see ThreadLocalCipher,
+ * whether the instance is kept around or obtained from getInstance for every call.
+ *
  * Created by futeh.
  */
 public class SymmetricCipher {
@@ -40,10 +47,15 @@ public class SymmetricCipher {
 
     static final Logger logger = Logger.getLogger();
 
+    private static final int IV_LENGTH = 16;
+    private static final int BUFFER_SIZE = 8192;
+    private static final byte[] ZERO_IV = new byte[IV_LENGTH];
+
     private String algorithm;
     private String transformation;
     private int keyLength;
     private boolean base64 = false;
+    private ThreadLocalCipher cipher;
 
     static {
         initialize();
@@ -53,6 +65,7 @@ public class SymmetricCipher {
         this.algorithm = algorithm;
         this.transformation = algorithm + "/CBC/PKCS7PADDING";
         this.keyLength = keyLength;
+        this.cipher = ThreadLocalCipher.getInstance(transformation, "BC");
         generateKeySpec(); // prime the pump
     }
 
@@ -186,17 +199,35 @@ public class SymmetricCipher {
     }
 
     public byte[] encryptBytes(SecretKey key, byte[] plain, byte[] initVector) throws GeneralSecurityException {
-        Cipher cipher = Cipher.getInstance(transformation, "BC");
-        byte[] iv = initVector;
-        if (iv != null) {
-            cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
-        } else {
-            iv = new byte[16];
-            for (int i=0; i < iv.length; i++)
-                iv[i] = 0;
-            cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
-        }
-        return cipher.doFinal(plain);
+        return cipher.doFinal(Cipher.ENCRYPT_MODE, key, iv(initVector), plain);
+    }
+
+    /**
+     * Encrypts each element with the same key and iv.
+     */
+    public List<byte[]> encryptBytes(SecretKey key, List<byte[]> plains, byte[] initVector) throws GeneralSecurityException {
+        List<byte[]> list = new ArrayList<>(plains.size());
+        byte[] iv = iv(initVector);
+        for (byte[] plain : plains)
+            list.add(cipher.doFinal(Cipher.ENCRYPT_MODE, key, iv, plain));
+        return list;
+    }
+
+    public List<String> encrypt(SecretKey key, List<byte[]> plains, String initVector) throws GeneralSecurityException {
+        List<byte[]> encrypted = encryptBytes(key, plains, (initVector == null) ? null : toBytes(initVector));
+        List<String> list = new ArrayList<>(encrypted.size());
+        for (byte[] bytes : encrypted)
+            list.add(toString(bytes));
+        return list;
+    }
+
+    /**
+     * Encrypts the input stream into the output stream without buffering the whole payload.  Neither
+     * stream is closed.
+     * @return number of bytes written
+     */
+    public long encrypt(SecretKey key, byte[] initVector, InputStream in, OutputStream out) throws GeneralSecurityException, IOException {
+        return transform(Cipher.ENCRYPT_MODE, key, initVector, in, out);
     }
 
     public byte[] decrypt(SecretKey key, String encrypted, String initVector) throws GeneralSecurityException {
@@ -209,17 +240,61 @@ public class SymmetricCipher {
     }
 
     public byte[] decryptBytes(SecretKey key, byte[] encrypted, byte[] initVector) throws GeneralSecurityException {
-        Cipher cipher = Cipher.getInstance(transformation, "BC");
-        byte[] iv = initVector;
-        if (iv != null) {
-            cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
-        } else {
-            iv= new byte[16];
-            for (int i=0; i < iv.length; i++)
-                iv[i] = 0;
-            cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+        return cipher.doFinal(Cipher.DECRYPT_MODE, key, iv(initVector), encrypted);
+    }
+
+    /**
+     * Decrypts each element with the same key and iv.
+     */
+    public List<byte[]> decryptBytes(SecretKey key, List<byte[]> encrypted, byte[] initVector) throws GeneralSecurityException {
+        List<byte[]> list = new ArrayList<>(encrypted.size());
+        byte[] iv = iv(initVector);
+        for (byte[] bytes : encrypted)
+            list.add(cipher.doFinal(Cipher.DECRYPT_MODE, key, iv, bytes));
+        return list;
+    }
+
+    public List<byte[]> decrypt(SecretKey key, List<String> encrypted, String initVector) throws GeneralSecurityException {
+        List<byte[]> list = new ArrayList<>(encrypted.size());
+        for (String str : encrypted)
+            list.add(toBytes(str));
+        return decryptBytes(key, list, (initVector == null) ? null : toBytes(initVector));
+    }
+
+    /**
+     * Decrypts the input stream into the output stream without buffering the whole payload.  Neither
+     * stream is closed.
+     * @return number of bytes written
+     */
+    public long decrypt(SecretKey key, byte[] initVector, InputStream in, OutputStream out) throws GeneralSecurityException, IOException {
+        return transform(Cipher.DECRYPT_MODE, key, initVector, in, out);
+    }
+
+    private long transform(int mode, SecretKey key, byte[] initVector, InputStream in, OutputStream out) throws GeneralSecurityException, IOException {
+        Cipher c = cipher.acquire(mode, key, iv(initVector));
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            // update may also flush a block held back from the previous call.
+            byte[] output = new byte[c.getOutputSize(BUFFER_SIZE) + c.getBlockSize()];
+            long total = 0;
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                int len = c.update(buffer, 0, read, output);
+                out.write(output, 0, len);
+                total += len;
+            }
+            byte[] last = c.doFinal();
+            out.write(last);
+            return total + last.length;
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            cipher.reset();
+            throw e;
         }
-        return cipher.doFinal(encrypted);
+    }
+
+    // a null iv means an all-zero iv.
+    private static byte[] iv(byte[] initVector) {
+        return (initVector == null) ? ZERO_IV : initVector;
     }
 
     public SecretKey generateKeySpec() {
@@ -238,7 +313,7 @@ public class SymmetricCipher {
     }
 
     public byte[] generateIVBytes() {
-        return RNG.generateSeed(16);
+        return RNG.generateSeed(IV_LENGTH);
     }
 
     public String generateIV() {
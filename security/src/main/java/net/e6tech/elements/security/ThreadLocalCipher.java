@@ -0,0 +1,109 @@
+/*
+Copyright 2015 Futeh Kao
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package net.e6tech.elements.security;
+
+import net.e6tech.elements.common.util.SystemException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import java.security.GeneralSecurityException;
+import java.lang.ref.WeakReference;
+import java.security.Key;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one Cipher per thread for a transformation so that the provider lookup happens once per thread
+ * instead of once per call.  Instances are shared by transformation and provider, see getInstance, so
+ * ciphers created per call still reuse the same Cipher.  A Cipher returns to its initialized state after
+ * doFinal, so init is skipped when the mode, key and iv are the same as the previous call on the thread.
+ * The key is compared by identity and only weakly referenced, so a pool thread does not keep it alive.
+ * A failed operation discards the cached state and the next call initializes the Cipher again.
+ */
+class ThreadLocalCipher {
+    private static final Map<String, ThreadLocalCipher> ciphers = new ConcurrentHashMap<>();
+
+    private final String transformation;
+    private final String provider;
+    private final ThreadLocal<State> local = ThreadLocal.withInitial(this::newState);
+
+    private ThreadLocalCipher(String transformation, String provider) {
+        this.transformation = transformation;
+        this.provider = provider;
+    }
+
+    static ThreadLocalCipher getInstance(String transformation, String provider) {
+        return ciphers.computeIfAbsent(transformation + "@" + provider, k -> new ThreadLocalCipher(transformation, provider));
+    }
+
+    private State newState() {
+        try {
+            return new State(Cipher.getInstance(transformation, provider));
+        } catch (GeneralSecurityException e) {
+            throw new SystemException(e);
+        }
+    }
+
+    /**
+     * Returns this thread's Cipher initialized for mode, key and iv.
+     * @param iv null if the transformation does not take an iv.
+     */
+    Cipher acquire(int mode, Key key, byte[] iv) throws GeneralSecurityException {
+        State state = local.get();
+        if (state.mode != mode || state.key.get() != key || !Arrays.equals(iv, state.iv)) {
+            state.key = State.NO_KEY;
+            if (iv == null)
+                state.cipher.init(mode, key);
+            else
+                state.cipher.init(mode, key, new IvParameterSpec(iv));
+            state.mode = mode;
+            state.key = new WeakReference<>(key);
+            state.iv = (iv == null) ? null : iv.clone();
+        }
+        return state.cipher;
+    }
+
+    /**
+     * Forces the next acquire on this thread to initialize the Cipher.
+     */
+    void reset() {
+        local.get().key = State.NO_KEY;
+    }
+
+    byte[] doFinal(int mode, Key key, byte[] iv, byte[] input) throws GeneralSecurityException {
+        Cipher cipher = acquire(mode, key, iv);
+        try {
+            return cipher.doFinal(input);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            reset();
+            throw e;
+        }
+    }
+
+    private static class State {
+        static final WeakReference<Key> NO_KEY = new WeakReference<>(null);
+        Cipher cipher;
+        int mode;
+        WeakReference<Key> key = NO_KEY;
+        byte[] iv;
+
+        State(Cipher cipher) {
+            this.cipher = cipher;
+        }
+    }
+}
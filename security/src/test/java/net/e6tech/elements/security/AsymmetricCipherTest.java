@@ -21,12 +21,16 @@ import org.junit.jupiter.api.Test;
 import javax.crypto.SecretKey;
 import java.security.GeneralSecurityException;
 import java.security.KeyPair;
+import java.security.PublicKey;
 import java.security.interfaces.RSAPrivateCrtKey;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 class AsymmetricCipherTest {
 
@@ -54,4 +58,21 @@ class AsymmetricCipherTest {
         System.out.println("decrypt " + (System.currentTimeMillis() - start) + "ms");
         assertTrue(Arrays.equals(data, decrypted));
     }
+
+    @Test
+    void bulk() throws GeneralSecurityException {
+        AsymmetricCipher cipher = AsymmetricCipher.getInstance(AsymmetricCipher.ALGORITHM_RSA);
+        KeyPair keyPair = cipher.generateKeySpec();
+        List<byte[]> plains = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            plains.add(("value-" + i).getBytes());
+        List<String> encrypted = cipher.encrypt(keyPair.getPublic(), plains);
+        List<byte[]> decrypted = cipher.decrypt(keyPair.getPrivate(), encrypted);
+        for (int i = 0; i < plains.size(); i++)
+            assertArrayEquals(plains.get(i), decrypted.get(i));
+
+        // keys rebuilt from their encoding work with the cached cipher
+        PublicKey publicKey = cipher.getKeyFactory().generatePublic(new X509EncodedKeySpec(keyPair.getPublic().getEncoded()));
+        assertArrayEquals(plains.get(0), cipher.decryptBytes(keyPair.getPrivate(), cipher.encryptBytes(publicKey, plains.get(0))));
+    }
 }
@@ -18,12 +18,17 @@ package net.e6tech.elements.security;
 
 import org.junit.jupiter.api.Test;
 
+import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.security.GeneralSecurityException;
-import java.util.Arrays;
+import java.util.*;
+import java.util.concurrent.*;
 
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Created by futeh.
@@ -49,6 +54,102 @@ class SymmetricCipherTest {
         assertTrue(Arrays.equals(data, decrypted));
     }
 
+    @Test
+    void bulk() throws GeneralSecurityException {
+        SymmetricCipher cipher = SymmetricCipher.getInstance(SymmetricCipher.ALGORITHM_AES);
+        SecretKey key = cipher.generateKeySpec();
+        String iv = cipher.generateIV();
+        List<byte[]> plains = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            plains.add(("value-" + i).getBytes());
+
+        List<String> encrypted = cipher.encrypt(key, plains, iv);
+        assertEquals(cipher.encrypt(key, plains.get(7), iv), encrypted.get(7));
+        List<byte[]> decrypted = cipher.decrypt(key, encrypted, iv);
+        for (int i = 0; i < plains.size(); i++)
+            assertArrayEquals(plains.get(i), decrypted.get(i));
+
+        // null iv is the all-zero iv
+        assertArrayEquals(cipher.encryptBytes(key, plains.get(0), new byte[16]), cipher.encryptBytes(key, plains.get(0), null));
+    }
+
+    @Test
+    void stream() throws Exception {
+        SymmetricCipher cipher = SymmetricCipher.getInstance(SymmetricCipher.ALGORITHM_AES);
+        SecretKey key = cipher.generateKeySpec();
+        byte[] iv = cipher.generateIVBytes();
+        byte[] payload = new byte[1024 * 1024 + 5];
+        new Random(1).nextBytes(payload);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = cipher.encrypt(key, iv, new ByteArrayInputStream(payload), out);
+        byte[] encrypted = out.toByteArray();
+        assertEquals(encrypted.length, written);
+        assertArrayEquals(cipher.encryptBytes(key, payload, iv), encrypted);
+
+        out = new ByteArrayOutputStream();
+        cipher.decrypt(key, iv, new ByteArrayInputStream(encrypted), out);
+        assertArrayEquals(payload, out.toByteArray());
+    }
+
+    @Test
+    void recoverAfterFailure() throws GeneralSecurityException {
+        SymmetricCipher cipher = SymmetricCipher.getInstance(SymmetricCipher.ALGORITHM_AES);
+        SecretKey key = cipher.generateKeySpec();
+        byte[] data = {0, 1, 2, 3, 4, 5, 6, 7};
+        byte[] encrypted = cipher.encryptBytes(key, data, null);
+        // not a whole number of blocks, so decryption always fails; a flipped byte may still leave valid padding.
+        byte[] corrupted = Arrays.copyOf(encrypted, encrypted.length - 1);
+        assertThrows(GeneralSecurityException.class, () -> cipher.decryptBytes(key, corrupted, null));
+        assertArrayEquals(data, cipher.decryptBytes(key, encrypted, null));
+    }
+
+    @Test
+    void sharedAcrossInstances() throws GeneralSecurityException {
+        SymmetricCipher first = SymmetricCipher.getInstance(SymmetricCipher.ALGORITHM_AES);
+        SymmetricCipher second = SymmetricCipher.getInstance(SymmetricCipher.ALGORITHM_AES);
+        SecretKey key = first.generateKeySpec();
+        byte[] data = {0, 1, 2, 3, 4, 5, 6, 7};
+        byte[] encrypted = first.encryptBytes(key, data, null);
+        assertArrayEquals(encrypted, second.encryptBytes(key, data, null));
+
+        ThreadLocalCipher shared = ThreadLocalCipher.getInstance("AES/CBC/PKCS7PADDING", "BC");
+        assertSame(shared, ThreadLocalCipher.getInstance("AES/CBC/PKCS7PADDING", "BC"));
+        Cipher cipher = shared.acquire(Cipher.ENCRYPT_MODE, key, new byte[16]);
+        assertSame(cipher, shared.acquire(Cipher.ENCRYPT_MODE, key, new byte[16]));
+
+        // keys are compared by identity; an equal key is a different key object and initializes the cipher again.
+        SecretKey copy = new SecretKeySpec(key.getEncoded(), key.getAlgorithm());
+        assertArrayEquals(data, second.decryptBytes(copy, encrypted, null));
+    }
+
+    @Test
+    void concurrent() throws Exception {
+        SymmetricCipher cipher = SymmetricCipher.getInstance(SymmetricCipher.ALGORITHM_AES);
+        SecretKey key1 = cipher.generateKeySpec();
+        SecretKey key2 = cipher.generateKeySpec();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int n = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        SecretKey key = (i % 2 == 0) ? key1 : key2;
+                        byte[] plain = ("thread-" + n + "-" + i).getBytes();
+                        byte[] iv = (i % 3 == 0) ? null : cipher.generateIVBytes();
+                        assertArrayEquals(plain, cipher.decryptBytes(key, cipher.encryptBytes(key, plain, iv), iv));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     void test() {
         byte[] mask = {0, 1, 2, 3, 4, 5, 6, 7};
@@ -26,7 +26,7 @@ import net.e6tech.elements.common.resources.Startable;
 import net.e6tech.elements.common.util.ExceptionMapper;
 import net.e6tech.elements.common.util.datastructure.Pair;
 import net.e6tech.elements.jmx.JMXService;
-import net.e6tech.elements.jmx.stat.Measurement;
+import net.e6tech.elements.jmx.stat.HistogramMeasurement;
 import net.e6tech.elements.security.JavaKeyStore;
 import net.e6tech.elements.security.SelfSignedCert;
 import net.e6tech.elements.web.JaxExceptionHandler;
@@ -42,8 +42,7 @@ import org.apache.cxf.transport.http_jetty.JettyHTTPServerEngineFactory;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 import javax.annotation.Nonnull;
-import javax.management.JMException;
-import javax.management.ObjectInstance;
+import javax.management.ObjectName;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.TrustManager;
 import javax.servlet.http.HttpServletRequest;
@@ -58,6 +57,7 @@ import java.net.URL;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 
 /**
@@ -81,7 +81,8 @@ public class CXFServer implements Initializable, Startable {
     private QueuedThreadPool queuedThreadPool;
     private boolean initialized = false;
     private boolean started = false;
-    private boolean measurement = false;
+    private volatile boolean measurement = false;
+    private final Map<String, HistogramMeasurement> measurements = new ConcurrentHashMap<>();
     private Observer headerObserver;
     private ExceptionMapper exceptionMapper;
     private Map<String, String> responseHeaders = new LinkedHashMap<>();
@@ -196,6 +197,8 @@ public class CXFServer implements Initializable, Startable {
 
     public void setMeasurement(boolean measurement) {
         this.measurement = measurement;
+        for (HistogramMeasurement m : measurements.values())
+            m.setEnabled(measurement);
     }
 
     public ExceptionMapper getExceptionMapper() {
@@ -372,11 +375,10 @@ public class CXFServer implements Initializable, Startable {
     }
 
     void computePerformance(Method method, Map<Method,String> methods, long duration) {
-        ObjectInstance instance = null;
         try {
-            instance = getMeasurement(method, methods);
-            logger.trace("{} call took {}ms",  instance.getObjectName().getCanonicalName(), duration);
-            JMXService.invoke(instance.getObjectName(), "add", duration);
+            HistogramMeasurement m = getMeasurement(method, methods);
+            logger.trace("{} call took {}ms",  m.getName(), duration);
+            m.add(duration);
         } catch (Exception e) {
             logger.debug("Unable to record measurement for " + method, e);
         }
@@ -384,14 +386,14 @@ public class CXFServer implements Initializable, Startable {
 
     void recordFailure(Method method, Map<Method,String> methods) {
         try {
-            ObjectInstance instance = getMeasurement(method, methods);
-            JMXService.invoke(instance.getObjectName(), "fail");
+            getMeasurement(method, methods).fail();
         } catch (Exception e) {
             logger.debug("Unable to record fail measurement for " + method, e);
         }
     }
 
-    private ObjectInstance getMeasurement(Method method, Map<Method, String> methods) throws JMException {
+    // Measurements are cached so that recording does not go through the MBeanServer on every call.
+    private HistogramMeasurement getMeasurement(Method method, Map<Method, String> methods) {
         String methodName = methods.computeIfAbsent(method, m -> {
             StringBuilder builder = new StringBuilder();
             builder.append(m.getDeclaringClass().getTypeName());
@@ -406,8 +408,24 @@ public class CXFServer implements Initializable, Startable {
             return builder.toString();
         });
 
-        String objectName = "net.e6tech:type=Restful,name=" + methodName;
-        return JMXService.registerIfAbsent(objectName, () -> new Measurement(methodName, "ms", isMeasurement()));
+        return measurements.computeIfAbsent(methodName, name -> {
+            HistogramMeasurement measurement = new HistogramMeasurement(name, "ms", isMeasurement());
+            JMXService.registerMBean(measurement, "net.e6tech:type=Restful,server=" + measurementServer() + ",name=" + name);
+            return measurement;
+        });
+    }
+
+    // servers hosting the same resource must not collide in JMX, so measurements are named after the server's addresses.
+    private String measurementServer() {
+        StringBuilder builder = new StringBuilder();
+        for (URL url : urls) {
+            if (builder.length() > 0)
+                builder.append(" ");
+            builder.append(url);
+        }
+        if (builder.length() == 0)
+            builder.append(Integer.toHexString(System.identityHashCode(this)));
+        return ObjectName.quote(builder.toString());
     }
 
     void checkInvocation(Method method, Object[] args) {
@@ -18,10 +18,12 @@ package net.e6tech.elements.web.cxf;
 
 import net.e6tech.elements.common.inject.Module;
 import net.e6tech.elements.common.interceptor.CallFrame;
+import net.e6tech.elements.common.interceptor.Interceptor;
 import net.e6tech.elements.common.interceptor.InterceptorHandler;
 import net.e6tech.elements.common.logging.Logger;
 import net.e6tech.elements.common.reflection.Reflection;
 import net.e6tech.elements.common.resources.Provision;
+import net.e6tech.elements.common.resources.Resources;
 import net.e6tech.elements.common.resources.UnitOfWork;
 import net.e6tech.elements.common.util.ExceptionMapper;
 import net.e6tech.elements.common.util.datastructure.Pair;
@@ -32,19 +34,47 @@ import org.apache.cxf.message.Message;
 import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+/**
+ * Creates a new resource instance per request.  To keep the per request allocation down, anything that
+ * does not depend on the request is computed once: the preOpen consumer, and per resource method, an
+ * InvocationPlan holding the annotations to be put into the UnitOfWork.  Interceptor proxies are
+ * returned to a bounded pool when CXF releases the instance and are rebound to the next request's
+ * target and handler state.  Proxies of resources that use asynchronous invocation, i.e. a method with a
+ * {@code @Suspended AsyncResponse} parameter or returning a CompletionStage or Future, are never pooled
+ * since the proxy may still be called after CXF has released it.  A resource that hands {@code this} to a
+ * callback outliving the request should set the proxy pool size to 0.
+ */
 class InstanceResourceProvider extends PerRequestResourceProvider {
+    static final int DEFAULT_PROXY_POOL_SIZE = 64;
     private Provision provision;
     private Observer observer;
     private Module module;
     private Map<Method, String> methods = new ConcurrentHashMap<>();
+    private Map<Method, InvocationPlan> plans = new ConcurrentHashMap<>();
     private Object prototype;
     private CXFServer server;
+    private Consumer<Resources> preOpen;
+    private Queue<Object> proxies = new ConcurrentLinkedQueue<>();
+    private AtomicInteger pooled = new AtomicInteger();
+    private int proxyPoolSize = DEFAULT_PROXY_POOL_SIZE;
+    private boolean async;
 
+    @SuppressWarnings("unchecked")
     InstanceResourceProvider(JaxRSServer server, Class resourceClass, Object prototype, Module module, Provision provision, Observer observer) {
         super(resourceClass);
         this.server = server;
@@ -52,46 +82,128 @@ class InstanceResourceProvider extends PerRequestResourceProvider {
         this.observer = observer;
         this.module = module;
         this.prototype = prototype;
+        this.async = isAsync(resourceClass);
+        this.preOpen = res -> {
+            if (module != null)
+                res.addModule(module);
+            if (server.getExceptionMapper() != null) {
+                res.rebind(ExceptionMapper.class, server.getExceptionMapper());
+                res.rebind((Class<ExceptionMapper>) server.getExceptionMapper().getClass(), server.getExceptionMapper());
+            }
+        };
+    }
+
+    private static boolean isAsync(Class<?> resourceClass) {
+        for (Method method : resourceClass.getMethods()) {
+            if (CompletionStage.class.isAssignableFrom(method.getReturnType())
+                    || Future.class.isAssignableFrom(method.getReturnType()))
+                return true;
+            Class<?>[] types = method.getParameterTypes();
+            Annotation[][] annotations = method.getParameterAnnotations();
+            for (int i = 0; i < types.length; i++) {
+                if (AsyncResponse.class.isAssignableFrom(types[i]))
+                    return true;
+                for (Annotation annotation : annotations[i])
+                    if (annotation.annotationType() == Suspended.class)
+                        return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isAsync() {
+        return async;
+    }
+
+    int getProxyPoolSize() {
+        return proxyPoolSize;
+    }
+
+    void setProxyPoolSize(int proxyPoolSize) {
+        this.proxyPoolSize = proxyPoolSize;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     protected Object createInstance(Message message) {
         Object instance = super.createInstance(message);
         if (prototype != null)
             Reflection.copyInstance(instance, prototype);
         Observer cloneObserver = (observer == null) ? null : observer.clone();
-        UnitOfWork uow = provision.preOpen(res -> {
-            if (module != null)
-                res.addModule(module);
-            if (server.getExceptionMapper() != null) {
-                res.rebind(ExceptionMapper.class, server.getExceptionMapper());
-                res.rebind((Class<ExceptionMapper>) server.getExceptionMapper().getClass(), server.getExceptionMapper());
-            }
-        });
-        return server.getInterceptor().newInterceptor(instance, new Handler(uow, methods, cloneObserver, message));
+        UnitOfWork uow = provision.preOpen(preOpen);
+
+        Object proxy = proxies.poll();
+        if (proxy != null) {
+            pooled.decrementAndGet();
+            Handler handler = Interceptor.getInterceptorHandler(proxy);
+            handler.bind(uow, cloneObserver, message);
+            Interceptor.setTarget(proxy, instance);
+            return proxy;
+        }
+        return server.getInterceptor().newInterceptor(instance, new Handler(uow, cloneObserver, message));
+    }
+
+    @Override
+    public void releaseInstance(Message message, Object instance) {
+        super.releaseInstance(message, instance);
+        // an asynchronous response may still run against the proxy, so it keeps its target and handler.
+        if (async || proxyPoolSize <= 0 || !Interceptor.isProxyObject(instance))
+            return;
+        InterceptorHandler handler = Interceptor.getInterceptorHandler(instance);
+        if (!(handler instanceof Handler))
+            return;
+        ((Handler) handler).unbind();
+        Interceptor.setTarget(instance, null);
+        if (pooled.incrementAndGet() <= proxyPoolSize) {
+            proxies.offer(instance);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    private InvocationPlan plan(Object target, Method method) {
+        return plans.computeIfAbsent(method, m -> new InvocationPlan(target.getClass(), m));
+    }
+
+    /*
+     * Everything about invoking a resource method that does not depend on the request.
+     */
+    private static class InvocationPlan {
+        final Map<Class, Annotation> annotations;
+        final boolean preDestroy;
+
+        InvocationPlan(Class cls, Method method) {
+            Map<Class, Annotation> map = new LinkedHashMap<>();
+            // method annotations override class annotations of the same type.
+            for (Annotation annotation : cls.getAnnotations())
+                map.put(annotation.annotationType(), annotation);
+            for (Annotation annotation : method.getAnnotations())
+                map.put(annotation.annotationType(), annotation);
+            annotations = Collections.unmodifiableMap(map);
+            preDestroy = method.getAnnotation(PreDestroy.class) != null;
+        }
     }
 
     private class Handler implements InterceptorHandler {
         UnitOfWork uow;
         Message message;
         Observer observer;
-        Map<Method, String> methods;
 
-        Handler(UnitOfWork uow, Map<Method, String> methods, Observer observer, Message message) {
+        Handler(UnitOfWork uow, Observer observer, Message message) {
+            bind(uow, observer, message);
+        }
+
+        void bind(UnitOfWork uow, Observer observer, Message message) {
             this.uow = uow;
             this.message = message;
             this.observer = observer;
-            this.methods = methods;
         }
 
-        @SuppressWarnings("unchecked")
-        private void open(Object target, Method method) {
-            Class cls = target.getClass();
-            for (Annotation annotation : cls.getAnnotations())
-                uow.put((Class) annotation.annotationType(), annotation);
-            for (Annotation annotation : method.getAnnotations())
-                uow.put((Class) annotation.annotationType(), annotation);
+        void unbind() {
+            bind(null, null, null);
+        }
+
+        private void open(InvocationPlan plan) {
+            uow.putAll(plan.annotations);
             uow.open();
         }
 
@@ -100,14 +212,15 @@ class InstanceResourceProvider extends PerRequestResourceProvider {
             boolean abort = false;
             Object result = null;
             boolean ignored = false;
+            InvocationPlan plan = plan(frame.getTarget(), frame.getMethod());
 
             // Note PostConstruct is handled by CXF during createInstance
             boolean uowOpen = false;
-            if (frame.getAnnotation(PreDestroy.class) != null) {
+            if (plan.preDestroy) {
                 ignored = true;
             } else {
                 try {
-                    open(frame.getTarget(), frame.getMethod());
+                    open(plan);
                     uowOpen = true;
                 } catch (Exception th) {
                     JaxRSServer.getLogger().debug(th.getMessage(), th);